@@ -0,0 +1,117 @@
+package com.dissertation.apigateway.batch;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Gathers items into batches of up to max-items; a batch that has not filled up is sent
+ * max-delay after its first item arrived. At most max-pending batches are open or being
+ * sent at any time. Beyond that offer() turns items away, so callers can push back on
+ * their own clients instead of queueing without bound in front of a slow upstream.
+ */
+public final class Batcher<T> {
+
+    private final int maxItems;
+
+    private final Duration maxDelay;
+
+    private final int maxPending;
+
+    private final Function<List<T>, Mono<Integer>> sender;
+
+    private Batch<T> open;
+
+    private int pending;
+
+    /**
+     * The sender posts one batch and emits the upstream's status code.
+     */
+    public Batcher(int maxItems, Duration maxDelay, int maxPending, Function<List<T>, Mono<Integer>> sender) {
+        if (maxItems < 1 || maxPending < 1 || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("Invalid batching: maxItems=" + maxItems + ", maxDelay=" + maxDelay
+                    + ", maxPending=" + maxPending);
+        }
+        this.maxItems = maxItems;
+        this.maxDelay = maxDelay;
+        this.maxPending = maxPending;
+        this.sender = sender;
+    }
+
+    /**
+     * Adds the item to the open batch, opening one if the pending bound allows. The result
+     * is the status the upstream answered the whole batch with, or the error sending it
+     * failed with; null when the item was turned away.
+     */
+    public Mono<Integer> offer(T item) {
+        Batch<T> batch;
+        boolean full;
+        synchronized (this) {
+            if (open == null) {
+                if (pending >= maxPending) {
+                    return null;
+                }
+                pending++;
+                Batch<T> opened = new Batch<>();
+                open = opened;
+                opened.timer.update(Mono.delay(maxDelay).subscribe(tick -> expire(opened)));
+            }
+            batch = open;
+            batch.items.add(item);
+            full = batch.items.size() >= maxItems;
+            if (full) {
+                open = null;
+            }
+        }
+        if (full) {
+            send(batch);
+        }
+        return batch.result.asMono();
+    }
+
+    /**
+     * Batches open or being sent.
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    private void expire(Batch<T> batch) {
+        synchronized (this) {
+            if (open != batch) {
+                // Filled up and sent already
+                return;
+            }
+            open = null;
+        }
+        send(batch);
+    }
+
+    private void send(Batch<T> batch) {
+        batch.timer.dispose();
+        List<T> items = List.copyOf(batch.items);
+        Mono.defer(() -> sender.apply(items))
+                .doFinally(signal -> {
+                    synchronized (this) {
+                        pending--;
+                    }
+                })
+                .subscribe(batch.result::tryEmitValue, batch.result::tryEmitError, batch.result::tryEmitEmpty);
+    }
+
+    private static final class Batch<T> {
+
+        private final List<T> items = new ArrayList<>();
+
+        // Swap disposes the timer on arrival if the batch was sent before it was set
+        private final Disposable.Swap timer = Disposables.swap();
+
+        private final Sinks.One<Integer> result = Sinks.one();
+    }
+}
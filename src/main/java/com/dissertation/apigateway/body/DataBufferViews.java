@@ -0,0 +1,30 @@
+package com.dissertation.apigateway.body;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+
+/**
+ * Shares the bytes of a received buffer without copying them.
+ */
+public final class DataBufferViews {
+
+    private DataBufferViews() {
+    }
+
+    /**
+     * A view of the buffer's readable bytes with its own read position. Netty buffers
+     * share the underlying memory through a retained slice, so the view must be
+     * released and keeps the memory alive until it is; heap buffers are duplicated.
+     */
+    public static DataBuffer retainedView(DataBuffer buffer) {
+        if (buffer instanceof NettyDataBuffer netty) {
+            return netty.factory().wrap(netty.getNativeBuffer().retainedSlice());
+        }
+        if (buffer instanceof DefaultDataBuffer heap) {
+            return DefaultDataBufferFactory.sharedInstance.wrap(heap.getNativeBuffer().duplicate());
+        }
+        throw new IllegalArgumentException("Unable to share DataBuffer of type " + buffer.getClass());
+    }
+}
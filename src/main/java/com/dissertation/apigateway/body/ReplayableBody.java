@@ -0,0 +1,217 @@
+package com.dissertation.apigateway.body;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A request body recorded once so it can be sent upstream several times. The first
+ * bytes stay in the (pooled, off-heap) buffers Netty received them in; past the
+ * in-memory limit the rest is written to a temporary file and replayed from a
+ * read-only memory mapping, so neither part is ever copied onto the heap.
+ */
+@Slf4j
+public final class ReplayableBody {
+
+    // Size of the slices the mapped file is replayed in, so writes upstream still flow in chunks
+    private static final int REPLAY_CHUNK = 64 * 1024;
+
+    // Received chunks are written to the spill file in batches of about this size
+    private static final int SPILL_BATCH = 256 * 1024;
+
+    private final long maxInMemory;
+
+    private final long maxSize;
+
+    private final Path spillDirectory;
+
+    private final List<DataBuffer> memory = new ArrayList<>();
+
+    // Chunks past the in-memory limit that have not been written to the spill file yet
+    private final List<DataBuffer> pending = new ArrayList<>();
+
+    private long pendingSize;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private long memorySize;
+
+    private long size;
+
+    private Path spillFile;
+
+    private FileChannel spillChannel;
+
+    private MappedByteBuffer mapped;
+
+    // Factory of the received buffers, so replayed file chunks are the same buffer type
+    private DataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+    private ReplayableBody(long maxInMemory, long maxSize, Path spillDirectory) {
+        this.maxInMemory = maxInMemory;
+        this.maxSize = maxSize;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Reads the whole body. Without a spill directory, bodies larger than maxInMemory are
+     * rejected with 413; with one, bodies up to maxSize spill to a temporary file.
+     */
+    public static Mono<ReplayableBody> record(Flux<DataBuffer> body, long maxInMemory, long maxSize, Path spillDirectory) {
+        if (maxSize > Integer.MAX_VALUE) {
+            // One mapping covers the whole spill file
+            throw new IllegalArgumentException("maxSize must not exceed 2GB");
+        }
+        return Mono.defer(() -> {
+            ReplayableBody recorded = new ReplayableBody(maxInMemory, spillDirectory != null ? maxSize : maxInMemory, spillDirectory);
+            // Prefetch of one keeps reads paced by the spill writes instead of queueing buffers
+            return body.concatMap(recorded::append, 1)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then(Mono.defer(recorded::finish))
+                    .doOnError(error -> recorded.release())
+                    .doOnCancel(recorded::release);
+        });
+    }
+
+    /**
+     * Fresh view of the recorded bytes; each subscription replays the body from the start.
+     */
+    public Flux<DataBuffer> replay() {
+        Flux<DataBuffer> inMemory = Flux.fromIterable(memory).map(DataBufferViews::retainedView);
+        if (mapped == null) {
+            return inMemory;
+        }
+        int spilled = mapped.capacity();
+        Flux<DataBuffer> fromFile = Flux.range(0, (spilled + REPLAY_CHUNK - 1) / REPLAY_CHUNK)
+                .map(chunk -> {
+                    int offset = chunk * REPLAY_CHUNK;
+                    return factory.wrap(mapped.slice(offset, Math.min(REPLAY_CHUNK, spilled - offset)));
+                });
+        return Flux.concat(inMemory, fromFile);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isSpilled() {
+        return mapped != null;
+    }
+
+    /**
+     * Releases the buffers and deletes the spill file. Views handed out by replay() that
+     * are still in flight keep their own references.
+     */
+    public void release() {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        memory.forEach(DataBufferUtils::release);
+        memory.clear();
+        pending.forEach(DataBufferUtils::release);
+        pending.clear();
+        mapped = null;
+        if (spillFile != null) {
+            try {
+                if (spillChannel != null) {
+                    spillChannel.close();
+                }
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.warn("Could not delete spilled request body {}: {}", spillFile, e.toString());
+            }
+        }
+    }
+
+    private Mono<Void> append(DataBuffer buffer) {
+        int length = buffer.readableByteCount();
+        factory = buffer.factory();
+        size += length;
+        if (size > maxSize) {
+            DataBufferUtils.release(buffer);
+            return Mono.error(new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Request body exceeds " + maxSize + " bytes"));
+        }
+        if (spillFile == null && pending.isEmpty() && memorySize + length <= maxInMemory) {
+            memory.add(buffer);
+            memorySize += length;
+            return Mono.empty();
+        }
+        pending.add(buffer);
+        pendingSize += length;
+        return pendingSize >= SPILL_BATCH ? flushPending() : Mono.empty();
+    }
+
+    /**
+     * Writes the buffered chunks to the spill file on a blocking-capable thread, in one
+     * gathering write per batch rather than one thread hop per received chunk.
+     */
+    private Mono<Void> flushPending() {
+        if (pending.isEmpty()) {
+            return Mono.empty();
+        }
+        List<DataBuffer> batch = new ArrayList<>(pending);
+        pending.clear();
+        pendingSize = 0;
+        return Mono.<Void>fromRunnable(() -> spill(batch))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void spill(List<DataBuffer> batch) {
+        try {
+            if (released.get()) {
+                // The exchange was cancelled while an earlier batch was being written
+                return;
+            }
+            if (spillFile == null) {
+                spillFile = Files.createTempFile(spillDirectory, "gateway-body-", ".tmp");
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            for (DataBuffer buffer : batch) {
+                try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                    while (iterator.hasNext()) {
+                        ByteBuffer source = iterator.next();
+                        while (source.hasRemaining()) {
+                            spillChannel.write(source);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.forEach(DataBufferUtils::release);
+        }
+    }
+
+    private Mono<ReplayableBody> finish() {
+        return flushPending().then(Mono.fromCallable(() -> {
+            if (spillChannel != null) {
+                mapped = spillChannel.map(FileChannel.MapMode.READ_ONLY, 0, spillChannel.size());
+                // The mapping stays valid without the channel
+                spillChannel.close();
+                spillChannel = null;
+            }
+            return this;
+        }));
+    }
+}
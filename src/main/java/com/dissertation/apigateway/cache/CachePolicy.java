@@ -0,0 +1,162 @@
+package com.dissertation.apigateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of HTTP caching (RFC 9111) the gateway cache applies: which requests may
+ * be answered from the cache, which responses may be stored and for how long.
+ */
+public final class CachePolicy {
+
+    /** Returned by freshnessMillis for responses that must not be stored */
+    public static final long NOT_CACHEABLE = -1;
+
+    // Connection-specific or recomputed when the entry is served
+    private static final Set<String> UNSTORED_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding",
+            "content-length", "upgrade", "proxy-connection", "te", "trailer", "age", "set-cookie", "x-cache");
+
+    private CachePolicy() {
+    }
+
+    /**
+     * The request asked the cache to stay out of the way entirely.
+     */
+    public static boolean isNoStore(HttpHeaders requestHeaders) {
+        return directives(requestHeaders).containsKey("no-store");
+    }
+
+    /**
+     * The request accepts a stored response only after the upstream confirmed it.
+     */
+    public static boolean requiresRevalidation(HttpHeaders requestHeaders) {
+        Map<String, String> directives = directives(requestHeaders);
+        if (directives.containsKey("no-cache") || "0".equals(directives.get("max-age"))) {
+            return true;
+        }
+        List<String> pragma = requestHeaders.get(HttpHeaders.PRAGMA);
+        return pragma != null && pragma.stream().anyMatch(value -> value.toLowerCase(Locale.ROOT).contains("no-cache"));
+    }
+
+    /**
+     * How long a 200 response may be served without revalidation, or NOT_CACHEABLE.
+     * s-maxage wins over max-age, which wins over Expires; responses saying none of
+     * these get defaultTtlMillis. Responses marked private are only stored when the
+     * cache key is per user; a shared key only stores responses the upstream explicitly
+     * marked public or gave an s-maxage, since the upstream may have tailored anything
+     * else to the caller.
+     */
+    public static long freshnessMillis(HttpHeaders responseHeaders, long now, long defaultTtlMillis,
+                                       long maxTtlMillis, boolean perUser) {
+        Map<String, String> directives = directives(responseHeaders);
+        if (directives.containsKey("no-store") || (directives.containsKey("private") && !perUser)) {
+            return NOT_CACHEABLE;
+        }
+        if (!perUser && !directives.containsKey("public") && !directives.containsKey("s-maxage")) {
+            return NOT_CACHEABLE;
+        }
+        long freshness;
+        if (directives.containsKey("no-cache")) {
+            freshness = 0;
+        } else if (directives.containsKey("s-maxage")) {
+            freshness = seconds(directives.get("s-maxage"));
+        } else if (directives.containsKey("max-age")) {
+            freshness = seconds(directives.get("max-age"));
+        } else if (responseHeaders.containsKey(HttpHeaders.EXPIRES)) {
+            // An unparseable Expires means already expired
+            freshness = Math.max(0, responseHeaders.getExpires() - now);
+        } else {
+            freshness = defaultTtlMillis;
+        }
+        return Math.min(Math.max(0, freshness), maxTtlMillis);
+    }
+
+    /**
+     * Whether an upstream response may be stored at all, before its freshness is known.
+     */
+    public static boolean isStorable(int status, HttpHeaders responseHeaders) {
+        if (status != 200 || responseHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        List<String> vary = responseHeaders.getVary();
+        return !vary.contains("*");
+    }
+
+    /**
+     * The request header values named by the response's Vary header.
+     */
+    public static Map<String, String> vary(HttpHeaders responseHeaders, HttpHeaders requestHeaders) {
+        List<String> names = responseHeaders.getVary();
+        if (names.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> vary = new HashMap<>();
+        for (String name : names) {
+            String key = name.toLowerCase(Locale.ROOT);
+            vary.put(key, varyValue(requestHeaders, key));
+        }
+        return vary;
+    }
+
+    static String varyValue(HttpHeaders requestHeaders, String name) {
+        List<String> values = requestHeaders.get(name);
+        return values == null ? "" : String.join(",", values);
+    }
+
+    /**
+     * Response headers worth replaying to later clients.
+     */
+    public static Map<String, List<String>> storedHeaders(HttpHeaders responseHeaders) {
+        Map<String, List<String>> stored = new LinkedHashMap<>();
+        responseHeaders.forEach((name, values) -> {
+            if (!UNSTORED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                stored.put(name, List.copyOf(values));
+            }
+        });
+        return stored;
+    }
+
+    /**
+     * Cache-Control directives by lower-case name; directives without a value map to "".
+     */
+    static Map<String, String> directives(HttpHeaders headers) {
+        List<String> values = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (values == null || values.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> directives = new HashMap<>();
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                String trimmed = directive.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                int equals = trimmed.indexOf('=');
+                if (equals < 0) {
+                    directives.put(trimmed.toLowerCase(Locale.ROOT), "");
+                } else {
+                    String argument = trimmed.substring(equals + 1).trim();
+                    if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                        argument = argument.substring(1, argument.length() - 1);
+                    }
+                    directives.put(trimmed.substring(0, equals).trim().toLowerCase(Locale.ROOT), argument);
+                }
+            }
+        }
+        return directives;
+    }
+
+    private static long seconds(String value) {
+        try {
+            return Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
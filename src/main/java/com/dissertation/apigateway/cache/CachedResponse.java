@@ -0,0 +1,67 @@
+package com.dissertation.apigateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored upstream response. Times are epoch milliseconds: the entry is served
+ * without asking the upstream until freshUntil, and kept for revalidation or as a
+ * stale fallback until staleUntil. vary holds the request header values the
+ * response was selected by, keyed by lower-case header name.
+ */
+public record CachedResponse(int status, Map<String, List<String>> headers, byte[] body,
+                             long storedAt, long freshUntil, long staleUntil,
+                             String etag, long lastModified, Map<String, String> vary) {
+
+    // Rough per-entry overhead on top of the body, so tiny entries still count
+    private static final int ENTRY_OVERHEAD = 256;
+
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified >= 0;
+    }
+
+    /**
+     * Whether the request selects the same variant this response was stored for.
+     */
+    public boolean matchesVary(HttpHeaders requestHeaders) {
+        for (Map.Entry<String, String> entry : vary.entrySet()) {
+            if (!entry.getValue().equals(CachePolicy.varyValue(requestHeaders, entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long ageSeconds(long now) {
+        return Math.max(0, (now - storedAt) / 1000);
+    }
+
+    /**
+     * The same response, confirmed unchanged by the upstream at now.
+     */
+    public CachedResponse revalidated(long now, long freshnessMillis, long staleRetentionMillis) {
+        long fresh = now + freshnessMillis;
+        return new CachedResponse(status, headers, body, now, fresh, fresh + staleRetentionMillis,
+                etag, lastModified, vary);
+    }
+
+    /**
+     * Approximate bytes the entry occupies, used to bound the in-memory tier.
+     */
+    int weight() {
+        int weight = body.length + ENTRY_OVERHEAD;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += header.getKey().length();
+            for (String value : header.getValue()) {
+                weight += value.length();
+            }
+        }
+        return weight;
+    }
+}
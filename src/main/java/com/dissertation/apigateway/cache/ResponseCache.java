@@ -0,0 +1,164 @@
+package com.dissertation.apigateway.cache;
+
+import com.dissertation.apigateway.config.ResponseCacheProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage behind the ResponseCache filter. Entries live in a Caffeine cache bounded by
+ * their size in bytes and dropped once past their stale retention. With
+ * gateway.response-cache.redis enabled they are also written to Redis, which is
+ * consulted on a local miss; Redis errors and slow lookups count as misses.
+ */
+@Component
+@Slf4j
+public class ResponseCache {
+
+    private static final Optional<CachedResponse> ABSENT = Optional.empty();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final ResponseCacheProperties properties;
+
+    private final ReactiveStringRedisTemplate redis;
+
+    private final ObjectMapper objectMapper;
+
+    private final Cache<String, CachedResponse> local;
+
+    public ResponseCache(ResponseCacheProperties properties, ObjectProvider<ReactiveStringRedisTemplate> redis,
+                         ObjectProvider<ObjectMapper> objectMapper, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.properties = properties;
+        this.redis = properties.isRedis() ? redis.getIfAvailable() : null;
+        this.objectMapper = objectMapper.getIfAvailable(ObjectMapper::new);
+        this.local = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize().toBytes())
+                .weigher((String key, CachedResponse entry) -> entry.weight())
+                .expireAfter(new ExpireAtStaleUntil())
+                .recordStats()
+                .build();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, local, "gateway.response-cache");
+        }
+    }
+
+    /**
+     * The stored entry, fresh or stale, looked up locally and then in Redis.
+     */
+    public Mono<Optional<CachedResponse>> get(String key) {
+        CachedResponse entry = local.getIfPresent(key);
+        if (entry != null || redis == null) {
+            return Mono.just(Optional.ofNullable(entry));
+        }
+        return redis.opsForValue().get(redisKey(key))
+                .timeout(properties.getRedisTimeout())
+                .mapNotNull(this::deserialize)
+                .doOnNext(shared -> local.put(key, shared))
+                .map(Optional::of)
+                .defaultIfEmpty(ABSENT)
+                .onErrorResume(error -> {
+                    log.debug("Response cache lookup in Redis failed: {}", error.toString());
+                    return Mono.just(ABSENT);
+                });
+    }
+
+    /**
+     * Stores the entry locally and, without waiting for it, in Redis.
+     */
+    public void put(String key, CachedResponse entry) {
+        local.put(key, entry);
+        if (redis == null) {
+            return;
+        }
+        long ttl = entry.staleUntil() - System.currentTimeMillis();
+        String json = serialize(entry);
+        if (ttl <= 0 || json == null) {
+            return;
+        }
+        redis.opsForValue().set(redisKey(key), json, Duration.ofMillis(ttl))
+                .timeout(properties.getRedisTimeout())
+                .subscribe(stored -> { },
+                        error -> log.debug("Response cache write to Redis failed: {}", error.toString()));
+    }
+
+    public long getMaxEntrySize() {
+        return properties.getMaxEntrySize().toBytes();
+    }
+
+    public long getMaxTtlMillis() {
+        return properties.getMaxTtl().toMillis();
+    }
+
+    public long getStaleRetentionMillis() {
+        return properties.getStaleRetention().toMillis();
+    }
+
+    private String redisKey(String key) {
+        byte[] digest = SHA_256.get().digest(key.getBytes(StandardCharsets.UTF_8));
+        return properties.getKeyPrefix() + ":" + HexFormat.of().formatHex(digest);
+    }
+
+    private String serialize(CachedResponse entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize cached response: {}", e.toString());
+            return null;
+        }
+    }
+
+    private CachedResponse deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, CachedResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring unreadable cached response in Redis: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Keeps each entry until the end of its stale retention.
+     */
+    private static final class ExpireAtStaleUntil implements Expiry<String, CachedResponse> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedResponse entry, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.staleUntil() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedResponse entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedResponse entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
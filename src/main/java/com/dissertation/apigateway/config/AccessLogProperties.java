@@ -0,0 +1,37 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Settings for the structured access log written by LoggingFilter
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.access-log")
+public class AccessLogProperties {
+
+    private boolean enabled = true;
+
+    /** Fraction of successful requests to record, between 0.0 and 1.0 */
+    private double sampleRate = 1.0;
+
+    /** Record every 4xx/5xx response regardless of the sample rate */
+    private boolean alwaysLogErrors = true;
+
+    /** Ring buffer capacity, rounded up to a power of two */
+    private int bufferSize = 8192;
+
+    /** JSON-lines output file */
+    private String file = "logs/access-log.jsonl";
+
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /** Route ids whose request headers are dumped at DEBUG level */
+    private Set<String> debugHeaderRoutes = new HashSet<>();
+}
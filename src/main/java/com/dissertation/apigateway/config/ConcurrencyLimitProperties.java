@@ -0,0 +1,51 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings for the adaptive concurrency limiters behind the ConcurrencyLimit filter.
+ * Each upstream service gets its own limiter; entries under services are matched by
+ * the names used under gateway.upstream.services and are used instead of the defaults.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /** Requests in flight across all upstreams; lower priorities are shed first as it fills */
+    private int maxInFlight = 2000;
+
+    private Limit defaults = new Limit();
+
+    private Map<String, Limit> services = new LinkedHashMap<>();
+
+    @Data
+    public static class Limit {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 500;
+
+        /** Share of each computed limit applied per window; lower reacts slower but steadier */
+        private double smoothing = 0.2;
+
+        /** Recent latency may exceed the long-term baseline by this factor before the limit shrinks */
+        private double rttTolerance = 1.5;
+
+        /** Latency samples are averaged over windows of at least this length */
+        private Duration window = Duration.ofMillis(100);
+
+        private int minWindowSamples = 10;
+
+        /** Windows the long-term latency baseline is averaged over */
+        private int longWindow = 600;
+    }
+}
@@ -2,58 +2,39 @@ package com.dissertation.apigateway.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.cors.CorsConfiguration;
-import org.springframework.web.cors.reactive.CorsWebFilter;
-import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.cors.reactive.CorsUtils;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
-import reactor.core.publisher.Mono;
-
-import java.util.Arrays;
 
 /**
  * CORS configuration for API Gateway
- * Ensures all endpoints accept cross-origin requests
- * Handles both preflight OPTIONS requests and actual requests
+ * Compiles the gateway.cors policies once at startup. Preflight requests are answered
+ * here, before route lookup, from the policy's cached header block; actual requests
+ * are handled by CorsGlobalFilter using the same policies.
  */
 @Configuration
 public class CorsConfig {
 
-    // Disabled - using CorsGlobalFilter instead to avoid conflicts
-    // @Bean
-    public CorsWebFilter corsWebFilter() {
-        CorsConfiguration corsConfig = new CorsConfiguration();
-        corsConfig.setAllowedOriginPatterns(Arrays.asList("*"));
-        corsConfig.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "HEAD"));
-        corsConfig.setAllowedHeaders(Arrays.asList("*"));
-        corsConfig.setExposedHeaders(Arrays.asList("*"));
-        corsConfig.setAllowCredentials(false);
-        corsConfig.setMaxAge(3600L);
-
-        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
-        source.registerCorsConfiguration("/**", corsConfig);
-
-        return new CorsWebFilter(source);
+    @Bean
+    public CorsPolicyRegistry corsPolicyRegistry(CorsProperties corsProperties) {
+        return new CorsPolicyRegistry(corsProperties);
     }
 
     /**
-     * Additional filter to handle OPTIONS requests that might not be caught by CORS
-     * Disabled - using CorsGlobalFilter instead
+     * Answers OPTIONS preflights without entering the gateway filter chain
      */
-    // @Bean
-    public WebFilter corsOptionsFilter() {
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public WebFilter corsPreflightFilter(CorsPolicyRegistry corsPolicyRegistry) {
         return (ServerWebExchange exchange, WebFilterChain chain) -> {
-            if (exchange.getRequest().getMethod().name().equals("OPTIONS")) {
-                exchange.getResponse().getHeaders().add("Access-Control-Allow-Origin", "*");
-                exchange.getResponse().getHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, PATCH, OPTIONS");
-                exchange.getResponse().getHeaders().add("Access-Control-Allow-Headers", "*");
-                exchange.getResponse().getHeaders().add("Access-Control-Max-Age", "3600");
-                exchange.getResponse().setStatusCode(org.springframework.http.HttpStatus.OK);
-                return exchange.getResponse().setComplete();
+            if (CorsUtils.isPreFlightRequest(exchange.getRequest())) {
+                return corsPolicyRegistry.resolve(exchange.getRequest().getPath().pathWithinApplication())
+                        .handlePreflight(exchange);
             }
             return chain.filter(exchange);
         };
     }
 }
-
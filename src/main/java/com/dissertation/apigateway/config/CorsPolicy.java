@@ -0,0 +1,196 @@
+package com.dissertation.apigateway.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled form of a CorsProperties.Policy. Header values are built
+ * once at startup so answering a request only copies constant strings.
+ */
+public final class CorsPolicy {
+
+    private static final String ANY = "*";
+
+    private final String name;
+
+    private final List<PathPattern> paths;
+
+    private final boolean anyOrigin;
+
+    private final Set<String> exactOrigins;
+
+    private final Pattern[] originPatterns;
+
+    private final Set<String> allowedMethods;
+
+    private final boolean anyHeader;
+
+    private final boolean allowCredentials;
+
+    // Constant header block, see CorsPolicy#compile
+    private final String[] actualHeaderNames;
+    private final String[] actualHeaderValues;
+    private final String[] preflightHeaderNames;
+    private final String[] preflightHeaderValues;
+
+    private CorsPolicy(String name, CorsProperties.Policy policy, PathPatternParser parser) {
+        this.name = name;
+        this.paths = policy.getPaths().stream().map(parser::parse).toList();
+        this.anyOrigin = policy.getAllowedOrigins().contains(ANY);
+
+        Set<String> exact = new HashSet<>();
+        List<Pattern> patterns = new ArrayList<>();
+        for (String origin : policy.getAllowedOrigins()) {
+            if (origin.equals(ANY)) {
+                continue;
+            }
+            if (origin.contains(ANY)) {
+                patterns.add(compileWildcard(origin));
+            } else {
+                exact.add(origin.toLowerCase(Locale.ROOT));
+            }
+        }
+        this.exactOrigins = Set.copyOf(exact);
+        this.originPatterns = patterns.toArray(new Pattern[0]);
+
+        Set<String> methods = new HashSet<>();
+        policy.getAllowedMethods().forEach(method -> methods.add(method.toUpperCase(Locale.ROOT)));
+        this.allowedMethods = Set.copyOf(methods);
+        this.anyHeader = policy.getAllowedHeaders().contains(ANY);
+        this.allowCredentials = policy.isAllowCredentials();
+
+        List<String[]> actual = new ArrayList<>();
+        if (!policy.getExposedHeaders().isEmpty()) {
+            actual.add(header(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, String.join(", ", policy.getExposedHeaders())));
+        }
+        if (allowCredentials) {
+            actual.add(header(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true"));
+        }
+        List<String[]> preflight = new ArrayList<>();
+        preflight.add(header(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, String.join(", ", policy.getAllowedMethods())));
+        if (!anyHeader || !allowCredentials) {
+            preflight.add(header(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, String.join(", ", policy.getAllowedHeaders())));
+        }
+        preflight.add(header(HttpHeaders.ACCESS_CONTROL_MAX_AGE, String.valueOf(policy.getMaxAge().toSeconds())));
+        if (allowCredentials) {
+            preflight.add(header(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true"));
+        }
+        this.actualHeaderNames = actual.stream().map(h -> h[0]).toArray(String[]::new);
+        this.actualHeaderValues = actual.stream().map(h -> h[1]).toArray(String[]::new);
+        this.preflightHeaderNames = preflight.stream().map(h -> h[0]).toArray(String[]::new);
+        this.preflightHeaderValues = preflight.stream().map(h -> h[1]).toArray(String[]::new);
+    }
+
+    public static CorsPolicy compile(String name, CorsProperties.Policy policy, PathPatternParser parser) {
+        return new CorsPolicy(name, policy, parser);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    boolean matches(PathContainer path) {
+        for (PathPattern pattern : paths) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isOriginAllowed(String origin) {
+        if (anyOrigin) {
+            return true;
+        }
+        if (exactOrigins.contains(origin.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        for (Pattern pattern : originPatterns) {
+            if (pattern.matcher(origin).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the CORS headers for a non-preflight request from an allowed origin.
+     */
+    public void applyActualHeaders(HttpHeaders headers, String origin) {
+        applyOrigin(headers, origin);
+        for (int i = 0; i < actualHeaderNames.length; i++) {
+            headers.set(actualHeaderNames[i], actualHeaderValues[i]);
+        }
+    }
+
+    /**
+     * Answers a preflight request without running the filter chain.
+     */
+    public Mono<Void> handlePreflight(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders requestHeaders = request.getHeaders();
+        String origin = requestHeaders.getOrigin();
+        HttpMethod requestMethod = requestHeaders.getAccessControlRequestMethod();
+
+        if (origin == null || !isOriginAllowed(origin)
+                || requestMethod == null || !allowedMethods.contains(requestMethod.name())) {
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return response.setComplete();
+        }
+
+        HttpHeaders headers = response.getHeaders();
+        applyOrigin(headers, origin);
+        for (int i = 0; i < preflightHeaderNames.length; i++) {
+            headers.set(preflightHeaderNames[i], preflightHeaderValues[i]);
+        }
+        if (anyHeader && allowCredentials) {
+            // Browsers ignore a literal * together with credentials, so echo the request
+            String requested = requestHeaders.getFirst(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+            if (requested != null) {
+                headers.set(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, requested);
+            }
+        }
+        response.setStatusCode(HttpStatus.OK);
+        return response.setComplete();
+    }
+
+    private void applyOrigin(HttpHeaders headers, String origin) {
+        if (anyOrigin && !allowCredentials) {
+            headers.set(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, ANY);
+        } else {
+            headers.set(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, origin);
+            headers.add(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+        }
+    }
+
+    private static Pattern compileWildcard(String origin) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : origin.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append("[^/]*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static String[] header(String name, String value) {
+        return new String[] {name, value};
+    }
+}
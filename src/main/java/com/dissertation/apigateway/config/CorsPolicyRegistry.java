@@ -0,0 +1,37 @@
+package com.dissertation.apigateway.config;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled set of CORS policies, built once from CorsProperties.
+ */
+public class CorsPolicyRegistry {
+
+    private final CorsPolicy defaultPolicy;
+
+    private final List<CorsPolicy> policies;
+
+    public CorsPolicyRegistry(CorsProperties properties) {
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.defaultPolicy = CorsPolicy.compile("default", properties.getDefaultPolicy(), parser);
+        this.policies = properties.getPolicies().entrySet().stream()
+                .map((Map.Entry<String, CorsProperties.Policy> entry) -> CorsPolicy.compile(entry.getKey(), entry.getValue(), parser))
+                .toList();
+    }
+
+    /**
+     * Returns the first named policy whose paths match, or the default policy.
+     */
+    public CorsPolicy resolve(PathContainer path) {
+        for (CorsPolicy policy : policies) {
+            if (policy.matches(path)) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+}
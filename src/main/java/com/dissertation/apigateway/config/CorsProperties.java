@@ -0,0 +1,46 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CORS policies applied by CorsGlobalFilter and the preflight filter in CorsConfig.
+ * Named policies are matched against the request path in declaration order;
+ * requests that match none of them use the default policy.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.cors")
+public class CorsProperties {
+
+    private Policy defaultPolicy = new Policy();
+
+    private Map<String, Policy> policies = new LinkedHashMap<>();
+
+    @Data
+    public static class Policy {
+
+        /** Path patterns this policy applies to, ignored for the default policy */
+        private List<String> paths = new ArrayList<>();
+
+        /** Exact origins, wildcard patterns such as https://*.example.com, or * for any */
+        private List<String> allowedOrigins = new ArrayList<>(List.of("*"));
+
+        private List<String> allowedMethods = new ArrayList<>(List.of("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "HEAD"));
+
+        private List<String> allowedHeaders = new ArrayList<>(List.of("*"));
+
+        private List<String> exposedHeaders = new ArrayList<>(List.of("*"));
+
+        private boolean allowCredentials = false;
+
+        private Duration maxAge = Duration.ofHours(1);
+    }
+}
@@ -1,19 +1,61 @@
 package com.dissertation.apigateway.config;
 
 import com.dissertation.apigateway.filter.AuthenticationFilter;
+import com.dissertation.apigateway.route.IndexedRoutePredicateHandlerMapping;
+import com.dissertation.apigateway.upstream.UpstreamHttpClientFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
 
 @Configuration
 public class GatewayConfig {
-    
+
     @Autowired
     private AuthenticationFilter authenticationFilter;
-    
+
     // Routes are configured in application.yml
     // This class can be used for additional programmatic route configuration if needed
-}
 
+    /**
+     * Replaces the stock handler mapping, which tests every route predicate in order,
+     * with one that compiles the configured routes into a path trie on each refresh.
+     */
+    @Bean
+    public RoutePredicateHandlerMapping routePredicateHandlerMapping(FilteringWebHandler webHandler,
+                                                                     RouteLocator routeLocator,
+                                                                     RouteDefinitionLocator routeDefinitionLocator,
+                                                                     GlobalCorsProperties globalCorsProperties,
+                                                                     Environment environment) {
+        return new IndexedRoutePredicateHandlerMapping(webHandler, routeLocator, routeDefinitionLocator,
+                globalCorsProperties, environment);
+    }
+
+    /**
+     * Replaces the gateway's HttpClient factory so every backend service (and each replica
+     * of its upstream group) gets its own connection pool, see gateway.upstream.
+     */
+    @Bean
+    public HttpClientFactory gatewayHttpClientFactory(HttpClientProperties properties,
+                                                      ServerProperties serverProperties,
+                                                      List<HttpClientCustomizer> customizers,
+                                                      HttpClientSslConfigurer sslConfigurer,
+                                                      UpstreamPoolProperties upstreamPoolProperties,
+                                                      LoadBalancerProperties loadBalancerProperties) {
+        return new UpstreamHttpClientFactory(properties, serverProperties, sslConfigurer, customizers,
+                upstreamPoolProperties, loadBalancerProperties);
+    }
+}
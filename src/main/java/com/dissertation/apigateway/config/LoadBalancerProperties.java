@@ -0,0 +1,88 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upstream groups that routes reach through lb://&lt;group&gt; uris. A group's replicas come
+ * from groups, or from groups-file when it lists the group; a group listed in neither
+ * has the single replica at gateway.upstream.services.&lt;group&gt;.url.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.load-balancer")
+public class LoadBalancerProperties {
+
+    private Algorithm algorithm = Algorithm.P2C;
+
+    private Map<String, Group> groups = new LinkedHashMap<>();
+
+    /** YAML (or JSON) file mapping group names to replica urls, re-read whenever it changes */
+    private String groupsFile;
+
+    private Duration refreshInterval = Duration.ofSeconds(5);
+
+    /** Time constant of each replica's latency average; idle replicas decay back towards zero */
+    private Duration latencyDecay = Duration.ofSeconds(10);
+
+    private Outlier outlier = new Outlier();
+
+    private HealthCheck healthCheck = new HealthCheck();
+
+    public enum Algorithm {
+        /** Two random replicas, the one with lower latency times in-flight requests wins */
+        P2C,
+        /** The replica with the fewest requests in flight */
+        LEAST_OUTSTANDING
+    }
+
+    @Data
+    public static class Group {
+
+        /** Replica base urls, e.g. http://order-service-1:8082 */
+        private List<String> replicas = new ArrayList<>();
+    }
+
+    @Data
+    public static class Outlier {
+
+        /** Failed (error or 5xx) or slow responses in a row that eject a replica */
+        private int consecutiveFailures = 5;
+
+        /** Responses slower than this count as failures */
+        private Duration slowCallThreshold = Duration.ofSeconds(2);
+
+        /** First ejection length, doubled for each further ejection up to max-ejection-time */
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+        /** Most of a group's replicas that may be ejected at once, so one is never ejected alone */
+        private int maxEjectedPercent = 50;
+    }
+
+    @Data
+    public static class HealthCheck {
+
+        private boolean enabled = true;
+
+        private String path = "/actuator/health";
+
+        private Duration interval = Duration.ofSeconds(10);
+
+        private Duration timeout = Duration.ofSeconds(2);
+
+        /** Failed probes in a row that take a replica out of rotation */
+        private int unhealthyThreshold = 2;
+
+        /** Passed probes in a row that bring it back */
+        private int healthyThreshold = 2;
+    }
+}
@@ -0,0 +1,36 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for the local token buckets behind the LocalRateLimiter filter and their
+ * background reconciliation through Redis.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.rate-limiter")
+public class RateLimiterProperties {
+
+    /** Share bucket consumption with other replicas through Redis */
+    private boolean redisSync = true;
+
+    private Duration syncInterval = Duration.ofMillis(200);
+
+    /** A sync round taking longer than this is abandoned and Redis is treated as unavailable */
+    private Duration syncTimeout = Duration.ofMillis(150);
+
+    /** Length of the shared counting window in Redis */
+    private Duration syncWindow = Duration.ofSeconds(1);
+
+    /** How long to stay local-only after Redis failed */
+    private Duration degradedRetryInterval = Duration.ofSeconds(5);
+
+    /** Buckets that stayed full this long are evicted */
+    private Duration idleEviction = Duration.ofMinutes(5);
+
+    private String keyPrefix = "gateway:rate-limit";
+}
@@ -0,0 +1,38 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Settings shared by every route's ResponseCache filter: the in-memory tier's size
+ * bounds and the optional Redis tier shared with other replicas.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.response-cache")
+public class ResponseCacheProperties {
+
+    /** Total body and header bytes kept in memory; least recently used entries go first */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /** Larger responses are streamed to the client without being cached */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+    /** Cap on the freshness lifetime, whatever the upstream's Cache-Control says */
+    private Duration maxTtl = Duration.ofMinutes(10);
+
+    /** How long entries are kept past freshness for revalidation and stale-if-error */
+    private Duration staleRetention = Duration.ofMinutes(5);
+
+    /** Also store entries in Redis so replicas share them */
+    private boolean redis = false;
+
+    /** A Redis lookup slower than this counts as a miss */
+    private Duration redisTimeout = Duration.ofMillis(50);
+
+    private String keyPrefix = "gateway:response-cache";
+}
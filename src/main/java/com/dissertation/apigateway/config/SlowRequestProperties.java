@@ -0,0 +1,24 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for the in-memory slow-request recorder behind /actuator/slowrequests
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.slow-requests")
+public class SlowRequestProperties {
+
+    private boolean enabled = true;
+
+    /** Exchanges taking at least this long keep their phase timings */
+    private Duration threshold = Duration.ofSeconds(1);
+
+    /** Most recent slow requests kept */
+    private int capacity = 100;
+}
@@ -0,0 +1,57 @@
+package com.dissertation.apigateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection-pool settings for the HttpClient that proxies to the backend services.
+ * Each entry under services gets its own pool for the host:port of its url;
+ * any other upstream uses the defaults.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "gateway.upstream")
+public class UpstreamPoolProperties {
+
+    /** Speak HTTP/2 over cleartext (prior knowledge) to every upstream, multiplexing requests per connection */
+    private boolean h2c = false;
+
+    /** Publish reactor.netty.connection.provider.* pool gauges and acquire timers */
+    private boolean metrics = true;
+
+    private Pool defaults = new Pool();
+
+    private Map<String, Pool> services = new LinkedHashMap<>();
+
+    @Data
+    public static class Pool {
+
+        /** Upstream base url, e.g. http://localhost:8082; only used for entries under services */
+        private String url;
+
+        private int maxConnections = 200;
+
+        /** Requests allowed to wait for a connection once the pool is exhausted */
+        private int pendingAcquireMaxCount = 1000;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+        /** Close connections idle for longer than this, kept below the upstream keep-alive timeout */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+
+        private Duration evictionInterval = Duration.ofSeconds(10);
+
+        /** Connections opened at startup; the pool tops back up to this many whenever it connects. 0 disables pre-warming */
+        private int warmupConnections = 0;
+
+        /** Path requested while pre-warming; any response keeps the connection */
+        private String warmupPath = "/";
+    }
+}
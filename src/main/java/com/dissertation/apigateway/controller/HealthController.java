@@ -1,23 +1,64 @@
 package com.dissertation.apigateway.controller;
 
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroup;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @RestController
 public class HealthController {
-    
+
+    private final UpstreamGroups upstreamGroups;
+
+    private final LoadBalancerProperties loadBalancerProperties;
+
+    public HealthController(UpstreamGroups upstreamGroups, LoadBalancerProperties loadBalancerProperties) {
+        this.upstreamGroups = upstreamGroups;
+        this.loadBalancerProperties = loadBalancerProperties;
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> response = new HashMap<>();
         response.put("status", "UP");
         response.put("service", "API Gateway");
         response.put("timestamp", LocalDateTime.now());
+        response.put("upstreams", upstreams());
         return ResponseEntity.ok(response);
     }
-}
 
+    /**
+     * State of every replica per upstream group, from the last health probes and live
+     * traffic; nothing is probed here.
+     */
+    private Map<String, List<Map<String, Object>>> upstreams() {
+        long now = System.nanoTime();
+        long decayNanos = loadBalancerProperties.getLatencyDecay().toNanos();
+        Map<String, List<Map<String, Object>>> upstreams = new TreeMap<>();
+        for (UpstreamGroup group : upstreamGroups.getGroups()) {
+            List<Map<String, Object>> replicas = new ArrayList<>();
+            for (Replica replica : group.getReplicas()) {
+                Map<String, Object> state = new LinkedHashMap<>();
+                state.put("url", replica.getUri().toString());
+                state.put("state", replica.getState(now));
+                state.put("inFlight", replica.getInFlight());
+                state.put("latencyMs", Math.round(replica.latencyNanos(now, decayNanos) / 1e5) / 10.0);
+                state.put("consecutiveFailures", replica.getConsecutiveFailures());
+                replicas.add(state);
+            }
+            upstreams.put(group.getName(), replicas);
+        }
+        return upstreams;
+    }
+}
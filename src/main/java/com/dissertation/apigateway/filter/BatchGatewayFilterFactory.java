@@ -0,0 +1,355 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.batch.Batcher;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.metrics.GatewayMetrics.BatchOutcome;
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroup;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Batching proxy for high-volume fire-and-forget POSTs: JSON bodies on the route are
+ * gathered for up to max-delay or max-items, whichever comes first, and sent upstream as
+ * one POST of a JSON array to batch-path, each element carrying the item's path, query,
+ * configured headers and body. Callers get 202 Accepted straight away (ack IMMEDIATE) or
+ * once the upstream has answered their batch with a 2xx (ack UPSTREAM); with UPSTREAM any
+ * other answer is passed on to every caller in the batch.
+ *
+ * <p>At most max-pending-batches are open or in flight; beyond that requests are answered
+ * 503 with Retry-After. A batch takes one circuit-breaker permission and one upstream
+ * connection. Anything else on the route - other methods, non-JSON or oversized bodies,
+ * or an open circuit - is proxied as usual.
+ */
+@Slf4j
+@Component
+public class BatchGatewayFilterFactory extends AbstractGatewayFilterFactory<BatchGatewayFilterFactory.Config> {
+
+    // Ahead of CircuitBreaker and ConcurrencyLimit: a batch passes each of them once, not per item
+    static final int ORDER = -1;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final GatewayMetrics metrics;
+
+    private final UpstreamGroups groups;
+
+    private final HttpClient httpClient;
+
+    public BatchGatewayFilterFactory(GatewayMetrics metrics, UpstreamGroups groups, HttpClient httpClient) {
+        super(Config.class);
+        this.metrics = metrics;
+        this.groups = groups;
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("maxItems", "maxDelay");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Batcher<Item> batcher = new Batcher<>(config.getMaxItems(), config.getMaxDelay(), config.getMaxPendingBatches(),
+                items -> send(items, config));
+        long maxItemSize = config.getMaxItemSize().toBytes();
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            if (route == null) {
+                return chain.filter(exchange);
+            }
+            GatewayMetrics.RouteMeters meters = metrics.forRoute(route);
+            long length = request.getHeaders().getContentLength();
+            if (request.getMethod() != HttpMethod.POST || length <= 0 || length > maxItemSize
+                    || !isJson(request.getHeaders().getContentType()) || isOpen(meters.getCircuitBreaker())) {
+                // An open circuit is left to the CircuitBreaker filter and its fallback
+                meters.recordBatchItem(BatchOutcome.PASSED_THROUGH);
+                return chain.filter(exchange);
+            }
+            return DataBufferUtils.join(request.getBody()).flatMap(buffer -> {
+                byte[] body = new byte[buffer.readableByteCount()];
+                buffer.read(body);
+                DataBufferUtils.release(buffer);
+                if (!isSingleJsonValue(body)) {
+                    meters.recordBatchItem(BatchOutcome.PASSED_THROUGH);
+                    return chain.filter(exchange.mutate().request(new CachedBodyRequest(exchange, body)).build());
+                }
+                Mono<Integer> result = batcher.offer(new Item(route, meters, request.getURI().getRawPath(),
+                        request.getURI().getRawQuery(), headers(request.getHeaders(), config.getHeaders()), body));
+                if (result == null) {
+                    meters.recordBatchItem(BatchOutcome.REJECTED);
+                    exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER,
+                            String.valueOf(Math.max(1, config.getRetryAfter().toSeconds())));
+                    return respond(exchange, HttpStatus.SERVICE_UNAVAILABLE);
+                }
+                meters.recordBatchItem(BatchOutcome.BATCHED);
+                if (config.getAck() == Ack.IMMEDIATE) {
+                    return respond(exchange, HttpStatus.ACCEPTED);
+                }
+                return result
+                        .map(status -> HttpStatusCode.valueOf(status).is2xxSuccessful()
+                                ? HttpStatus.ACCEPTED : HttpStatusCode.valueOf(status))
+                        .onErrorResume(error -> Mono.just(statusFor(error)))
+                        .flatMap(status -> respond(exchange, status));
+            });
+        }, ORDER);
+    }
+
+    /**
+     * Posts one batch to batch-path on the route's upstream, on lb:// routes to a replica
+     * chosen by its group, and emits the status it was answered with.
+     */
+    private Mono<Integer> send(List<Item> items, Config config) {
+        Item first = items.get(0);
+        CircuitBreaker circuitBreaker = first.meters().getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            return fail(items, config, CallNotPermittedException.createCallNotPermittedException(circuitBreaker));
+        }
+        URI upstream = first.route().getUri();
+        UpstreamGroup group = LoadBalancerFilter.LB_SCHEME.equals(upstream.getScheme()) ? groups.group(upstream.getHost()) : null;
+        long start = System.nanoTime();
+        Replica replica = null;
+        if (group != null) {
+            replica = group.choose(null, start);
+            if (replica == null) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.releasePermission();
+                }
+                return fail(items, config, new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "No replica available for upstream group " + upstream.getHost()));
+            }
+            upstream = replica.getUri();
+            group.start(replica);
+        }
+        String url = UriComponentsBuilder.fromUri(upstream).replacePath(config.getBatchPath()).replaceQuery(null)
+                .build(true).toUriString();
+        byte[] payload = encode(items);
+        Replica chosen = replica;
+        return httpClient
+                .headers(headers -> headers
+                        .set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .set(HttpHeaders.CONTENT_LENGTH, payload.length))
+                .post()
+                .uri(url)
+                .send((request, outbound) -> outbound.sendByteArray(Mono.just(payload)))
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .timeout(config.getTimeout())
+                .doOnEach(signal -> {
+                    if (signal.isOnNext() || signal.isOnError()) {
+                        long now = System.nanoTime();
+                        boolean failed = signal.isOnError() || HttpStatusCode.valueOf(signal.get()).is5xxServerError();
+                        if (circuitBreaker != null) {
+                            if (failed) {
+                                circuitBreaker.onError(now - start, TimeUnit.NANOSECONDS, signal.isOnError()
+                                        ? signal.getThrowable() : new IllegalStateException("Batch answered " + signal.get()));
+                            } else {
+                                circuitBreaker.onSuccess(now - start, TimeUnit.NANOSECONDS);
+                            }
+                        }
+                        if (group != null) {
+                            group.complete(chosen, now, now - start, failed);
+                        }
+                        first.meters().recordBatch(items.size(), !failed && HttpStatusCode.valueOf(signal.get()).is2xxSuccessful());
+                    }
+                })
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL && group != null) {
+                        group.cancel(chosen);
+                    }
+                })
+                .doOnNext(status -> {
+                    if (!HttpStatusCode.valueOf(status).is2xxSuccessful()) {
+                        log.warn("Batch of {} items to {} answered {}{}", items.size(), url, status,
+                                config.getAck() == Ack.IMMEDIATE ? ", items dropped" : "");
+                    }
+                })
+                .doOnError(error -> log.warn("Batch of {} items to {} failed{}: {}", items.size(), url,
+                        config.getAck() == Ack.IMMEDIATE ? ", items dropped" : "", error.toString()));
+    }
+
+    private static Mono<Integer> fail(List<Item> items, Config config, Throwable error) {
+        items.get(0).meters().recordBatch(items.size(), false);
+        log.warn("Batch of {} items not sent{}: {}", items.size(),
+                config.getAck() == Ack.IMMEDIATE ? ", items dropped" : "", error.getMessage());
+        return Mono.error(error);
+    }
+
+    /**
+     * The batch as a JSON array of {method, path, query, headers, body}; bodies were
+     * validated on the way in and are written as they came.
+     */
+    static byte[] encode(List<Item> items) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(items.stream().mapToInt(item -> item.body().length + 128).sum());
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Item item : items) {
+                generator.writeStartObject();
+                generator.writeStringField("method", HttpMethod.POST.name());
+                generator.writeStringField("path", item.path());
+                if (item.query() != null) {
+                    generator.writeStringField("query", item.query());
+                }
+                generator.writeObjectFieldStart("headers");
+                for (Map.Entry<String, String> header : item.headers().entrySet()) {
+                    generator.writeStringField(header.getKey(), header.getValue());
+                }
+                generator.writeEndObject();
+                generator.writeFieldName("body");
+                generator.writeRawValue(new String(item.body(), StandardCharsets.UTF_8));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static boolean isSingleJsonValue(byte[] body) {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() == null) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                || contentType.getSubtype().endsWith("+json"));
+    }
+
+    private static boolean isOpen(CircuitBreaker circuitBreaker) {
+        return circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    private static Map<String, String> headers(HttpHeaders headers, List<String> names) {
+        Map<String, String> copied = new LinkedHashMap<>();
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                copied.put(name, value);
+            }
+        }
+        return copied;
+    }
+
+    private static HttpStatusCode statusFor(Throwable error) {
+        if (error instanceof CallNotPermittedException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if (error instanceof TimeoutException) {
+            return HttpStatus.GATEWAY_TIMEOUT;
+        }
+        if (error instanceof ResponseStatusException statusException) {
+            return statusException.getStatusCode();
+        }
+        return HttpStatus.BAD_GATEWAY;
+    }
+
+    private static Mono<Void> respond(ServerWebExchange exchange, HttpStatusCode status) {
+        ServerWebExchangeUtils.setAlreadyRouted(exchange);
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+
+    /**
+     * One request folded into a batch.
+     */
+    record Item(Route route, GatewayMetrics.RouteMeters meters, String path, String query,
+                Map<String, String> headers, byte[] body) {
+    }
+
+    /**
+     * The request with its body, already read to validate it, served from memory.
+     */
+    private static final class CachedBodyRequest extends ServerHttpRequestDecorator {
+
+        private final ServerWebExchange exchange;
+
+        private final byte[] body;
+
+        CachedBodyRequest(ServerWebExchange exchange, byte[] body) {
+            super(exchange.getRequest());
+            this.exchange = exchange;
+            this.body = body;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return Flux.defer(() -> Flux.just(exchange.getResponse().bufferFactory().wrap(body)));
+        }
+    }
+
+    public enum Ack {
+        // 202 as soon as the item is in a batch; failed batches are logged and dropped
+        IMMEDIATE,
+        // 202 once the upstream answered the batch with a 2xx, its status or 502/503/504 otherwise
+        UPSTREAM
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        private int maxItems = 50;
+        private Duration maxDelay = Duration.ofMillis(20);
+        private int maxPendingBatches = 8;
+        // Larger bodies are proxied on their own
+        private DataSize maxItemSize = DataSize.ofKilobytes(64);
+        private String batchPath = "/api/notifications/batch";
+        private Ack ack = Ack.UPSTREAM;
+        // Request headers carried into each batch item
+        private List<String> headers = new ArrayList<>(List.of(HttpHeaders.AUTHORIZATION, "X-Username", "Idempotency-Key"));
+        private Duration timeout = Duration.ofSeconds(5);
+        private Duration retryAfter = Duration.ofSeconds(1);
+        private String routeId;
+    }
+}
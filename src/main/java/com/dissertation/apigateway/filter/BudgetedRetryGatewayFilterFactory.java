@@ -0,0 +1,230 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.metrics.GatewayMetrics.RetryOutcome;
+import com.dissertation.apigateway.retry.RetryBudget;
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
+import com.dissertation.apigateway.trace.RetryBackoffEvent;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replacement for the stock Retry filter that bounds how much load retries can add.
+ * Retries of a route draw on a RetryBudget fed by the route's own traffic, back off
+ * with full jitter, stop as soon as the route's circuit breaker leaves CLOSED, and
+ * only repeat non-idempotent methods when the client sent an Idempotency-Key. Requests
+ * with a body are only retried when the RequestBody filter kept a replayable copy.
+ */
+@Component
+@Slf4j
+public class BudgetedRetryGatewayFilterFactory extends AbstractGatewayFilterFactory<BudgetedRetryGatewayFilterFactory.Config> {
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final Optional<Throwable> SUCCESS = Optional.empty();
+
+    private final GatewayMetrics metrics;
+
+    public BudgetedRetryGatewayFilterFactory(GatewayMetrics metrics) {
+        super(Config.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("retries", "statuses", "methods");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getRetries() < 1) {
+            throw new IllegalArgumentException("retries must be at least 1");
+        }
+        Config.Budget budgetConfig = config.getBudget();
+        RetryBudget budget = new RetryBudget(budgetConfig.getRatio(), budgetConfig.getMinRetriesPerSecond(),
+                budgetConfig.getCapacity(), System.nanoTime());
+
+        return (exchange, chain) -> {
+            budget.deposit();
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            GatewayMetrics.RouteMeters meters = route != null ? metrics.forRoute(route) : null;
+            return attempt(exchange, chain, config, budget, meters);
+        };
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, Config config,
+                               RetryBudget budget, GatewayMetrics.RouteMeters meters) {
+        return chain.filter(exchange)
+                .thenReturn(SUCCESS)
+                .onErrorResume(error -> Mono.just(Optional.of(error)))
+                .flatMap(outcome -> {
+                    int iteration = nextIteration(exchange);
+                    if (!isRetryable(exchange, outcome, config)) {
+                        return complete(outcome);
+                    }
+                    RetryOutcome decision = decide(exchange, iteration, config, budget, meters);
+                    if (meters != null) {
+                        meters.recordRetry(decision);
+                    }
+                    if (decision != RetryOutcome.RETRIED) {
+                        return complete(outcome);
+                    }
+                    log.debug("Retrying {} {} after {}, retry {} of {}", exchange.getRequest().getMethod(),
+                            exchange.getRequest().getPath(), outcome.map(Object::toString)
+                                    .orElseGet(() -> String.valueOf(exchange.getResponse().getStatusCode())),
+                            iteration + 1, config.getRetries());
+                    long backoffStart = System.nanoTime();
+                    RetryBackoffEvent event = RetryBackoffEvent.start();
+                    return Mono.delay(backoff(iteration, config.getBackoff()))
+                            .then(Mono.defer(() -> {
+                                ExchangeTrace.record(exchange, Phase.RETRY_BACKOFF, backoffStart, System.nanoTime(),
+                                        "retry " + (iteration + 1));
+                                if (event != null) {
+                                    Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+                                    event.routeId = route != null ? route.getId() : null;
+                                    event.retry = iteration + 1;
+                                    event.commit();
+                                }
+                                reset(exchange);
+                                return attempt(exchange, chain, config, budget, meters);
+                            }));
+                });
+    }
+
+    /**
+     * Whether the attempt failed in a way worth repeating, before any budget or method checks.
+     */
+    private static boolean isRetryable(ServerWebExchange exchange, Optional<Throwable> outcome, Config config) {
+        // A fallback or anything else that already wrote the response is final
+        if (exchange.getResponse().isCommitted()) {
+            return false;
+        }
+        if (outcome.isPresent()) {
+            Throwable error = outcome.get();
+            return isRetryableException(error) || isRetryableException(error.getCause());
+        }
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        return status != null && config.getStatuses().contains(HttpStatus.resolve(status.value()));
+    }
+
+    private static boolean isRetryableException(Throwable error) {
+        return error instanceof IOException || error instanceof TimeoutException;
+    }
+
+    private static RetryOutcome decide(ServerWebExchange exchange, int iteration, Config config,
+                                       RetryBudget budget, GatewayMetrics.RouteMeters meters) {
+        HttpMethod method = exchange.getRequest().getMethod();
+        if (!config.getMethods().contains(method)
+                && !exchange.getRequest().getHeaders().containsKey(IDEMPOTENCY_KEY_HEADER)) {
+            return RetryOutcome.NOT_IDEMPOTENT;
+        }
+        // Bodies are only kept when the route's RequestBody filter recorded them
+        if (RequestBodyGatewayFilterFactory.hasBody(exchange.getRequest().getHeaders())
+                && exchange.getAttribute(RequestBodyGatewayFilterFactory.REPLAYABLE_BODY_ATTR) == null) {
+            return RetryOutcome.BODY_NOT_REPLAYABLE;
+        }
+        if (iteration >= config.getRetries()) {
+            return RetryOutcome.ATTEMPTS_EXHAUSTED;
+        }
+        CircuitBreaker circuitBreaker = meters != null ? meters.getCircuitBreaker() : null;
+        if (circuitBreaker != null && !allowsRetries(circuitBreaker.getState())) {
+            return RetryOutcome.CIRCUIT_NOT_CLOSED;
+        }
+        // Checked last so denied retries do not spend the budget
+        if (!budget.tryWithdraw(System.nanoTime())) {
+            return RetryOutcome.BUDGET_EXHAUSTED;
+        }
+        return RetryOutcome.RETRIED;
+    }
+
+    private static boolean allowsRetries(CircuitBreaker.State state) {
+        return state == CircuitBreaker.State.CLOSED || state == CircuitBreaker.State.DISABLED
+                || state == CircuitBreaker.State.METRICS_ONLY;
+    }
+
+    /**
+     * Full jitter: a uniformly random delay up to the exponential backoff for this retry.
+     */
+    static Duration backoff(int iteration, Config.Backoff backoff) {
+        double ceiling = backoff.getFirstBackoff().toNanos() * Math.pow(backoff.getFactor(), iteration);
+        long ceilingNanos = (long) Math.min(ceiling, backoff.getMaxBackoff().toNanos());
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceilingNanos + 1));
+    }
+
+    /**
+     * Same attribute and numbering as the stock Retry filter, absent on the first attempt
+     * and 0 after it, which UpstreamAttemptMetricsFilter uses to tell retries apart.
+     */
+    private static int nextIteration(ServerWebExchange exchange) {
+        int iteration = exchange.getAttributeOrDefault(RetryGatewayFilterFactory.RETRY_ITERATION_KEY, -1) + 1;
+        exchange.getAttributes().put(RetryGatewayFilterFactory.RETRY_ITERATION_KEY, iteration);
+        return iteration;
+    }
+
+    private static void reset(ServerWebExchange exchange) {
+        Connection connection = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null) {
+            connection.dispose();
+            exchange.getAttributes().remove(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        }
+        ServerWebExchangeUtils.reset(exchange);
+    }
+
+    private static Mono<Void> complete(Optional<Throwable> outcome) {
+        return outcome.isPresent() ? Mono.error(outcome.get()) : Mono.empty();
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        private int retries = 2;
+        private List<HttpStatus> statuses = new ArrayList<>(List.of(HttpStatus.BAD_GATEWAY,
+                HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT));
+        // Idempotent methods; anything else is only retried with an Idempotency-Key
+        private List<HttpMethod> methods = new ArrayList<>(List.of(HttpMethod.GET, HttpMethod.HEAD,
+                HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE));
+        private Backoff backoff = new Backoff();
+        private Budget budget = new Budget();
+        private String routeId;
+
+        @Data
+        public static class Backoff {
+            private Duration firstBackoff = Duration.ofMillis(50);
+            private Duration maxBackoff = Duration.ofMillis(500);
+            private double factor = 2;
+        }
+
+        @Data
+        public static class Budget {
+            // Retries may add at most this share of the route's requests
+            private double ratio = 0.2;
+            // Floor so low-traffic routes can still retry occasionally
+            private int minRetriesPerSecond = 5;
+            // Most retries that can be banked during healthy periods
+            private int capacity = 50;
+        }
+    }
+}
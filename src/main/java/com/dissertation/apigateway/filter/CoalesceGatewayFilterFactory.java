@@ -0,0 +1,385 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.body.DataBufferViews;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.metrics.GatewayMetrics.CoalesceOutcome;
+import lombok.Data;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Single-flight for GET and HEAD: while one request (the leader) is in flight upstream,
+ * identical requests on the same route wait for its response instead of sending their
+ * own. Requests are identical when method, normalized URI and the configured headers
+ * match. The leader's body buffers are retained as they are written to its client and
+ * every follower writes retained slices of them, so the body is never copied. A
+ * follower that waits longer than max-wait, or whose leader failed, got a 5xx or a
+ * body larger than max-size, sends its own request; one that is cancelled while waiting
+ * hands its share back so the buffers are still released.
+ */
+@Component
+public class CoalesceGatewayFilterFactory extends AbstractGatewayFilterFactory<CoalesceGatewayFilterFactory.Config> {
+
+    // Outside NettyWriteResponseFilter, so the leader's body passes through this filter's response
+    static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final GatewayMetrics metrics;
+
+    public CoalesceGatewayFilterFactory(GatewayMetrics metrics) {
+        super(Config.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("maxWait", "maxSize");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        // One table per route, so the route is implicitly part of the key
+        Map<String, Flight> flights = new ConcurrentHashMap<>();
+        long maxSize = config.getMaxSize().toBytes();
+        List<String> headers = List.copyOf(config.getHeaders());
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            HttpMethod method = request.getMethod();
+            if ((method != HttpMethod.GET && method != HttpMethod.HEAD)
+                    || RequestBodyGatewayFilterFactory.hasBody(request.getHeaders())) {
+                return chain.filter(exchange);
+            }
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            GatewayMetrics.RouteMeters meters = route != null ? metrics.forRoute(route) : null;
+            String key = key(method, request, headers);
+            Flight flight = new Flight();
+            Flight leading = flights.putIfAbsent(key, flight);
+            if (leading == null || !leading.join()) {
+                // Either first, or the flight finished between the lookup and the join
+                record(meters, CoalesceOutcome.LEADER);
+                return leading == null ? lead(exchange, chain, key, flight, flights, maxSize) : chain.filter(exchange);
+            }
+            // The replay, a timeout or a cancel, whichever comes first, settles this follower's share
+            AtomicBoolean settled = new AtomicBoolean();
+            Runnable leave = () -> {
+                if (settled.compareAndSet(false, true)) {
+                    leading.leave();
+                }
+            };
+            return leading.result()
+                    .timeout(config.getMaxWait(), Mono.fromSupplier(() -> {
+                        leave.run();
+                        return SharedResponse.TIMED_OUT;
+                    }))
+                    .doOnCancel(leave)
+                    .flatMap(shared -> {
+                        if (shared == SharedResponse.TIMED_OUT || shared == SharedResponse.FAILED) {
+                            record(meters, shared == SharedResponse.TIMED_OUT
+                                    ? CoalesceOutcome.TIMED_OUT : CoalesceOutcome.LEADER_FAILED);
+                            return chain.filter(exchange);
+                        }
+                        if (!settled.compareAndSet(false, true)) {
+                            // Cancelled as the response arrived; leave() already returned the share
+                            return Mono.<Void>empty();
+                        }
+                        record(meters, CoalesceOutcome.COALESCED);
+                        return replay(exchange.getResponse(), shared);
+                    });
+        }, ORDER);
+    }
+
+    private static Mono<Void> lead(ServerWebExchange exchange, GatewayFilterChain chain, String key, Flight flight,
+                                   Map<String, Flight> flights, long maxSize) {
+        RecordingResponse response = new RecordingResponse(exchange.getResponse(), maxSize, shared -> {
+            // Closed to new followers before the response is handed out
+            flights.remove(key, flight);
+            flight.complete(shared);
+        }, () -> {
+            flights.remove(key, flight);
+            flight.fail();
+        });
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> {
+                    // Errors, cancellation or a leader that never wrote: followers go upstream themselves
+                    flights.remove(key, flight);
+                    flight.fail();
+                });
+    }
+
+    private static Mono<Void> replay(ServerHttpResponse response, SharedResponse shared) {
+        response.setStatusCode(shared.status);
+        response.getHeaders().putAll(shared.headers);
+        return response.writeWith(Flux.fromIterable(shared.buffers)
+                        .map(DataBufferViews::retainedView)
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release))
+                .doFinally(signal -> shared.release());
+    }
+
+    /**
+     * Method, normalized path, query parameters in sorted order and the configured headers.
+     */
+    static String key(HttpMethod method, ServerHttpRequest request, List<String> headers) {
+        URI uri = request.getURI().normalize();
+        StringBuilder key = new StringBuilder(method.name()).append(' ').append(uri.getRawPath());
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] parameters = query.split("&");
+            Arrays.sort(parameters);
+            key.append('?').append(String.join("&", parameters));
+        }
+        for (String header : headers) {
+            List<String> values = request.getHeaders().get(header);
+            key.append('\n').append(header).append(':');
+            if (values != null) {
+                key.append(String.join(",", values));
+            }
+        }
+        return key.toString();
+    }
+
+    private static void record(GatewayMetrics.RouteMeters meters, CoalesceOutcome outcome) {
+        if (meters != null) {
+            meters.recordCoalesce(outcome);
+        }
+    }
+
+    /**
+     * One upstream call and the followers waiting for it. Followers are counted under
+     * the lock so the shared response knows how many releases to expect.
+     */
+    private static final class Flight {
+
+        private final Sinks.One<SharedResponse> result = Sinks.one();
+
+        private int followers;
+
+        private boolean done;
+
+        private SharedResponse response;
+
+        synchronized boolean join() {
+            if (done) {
+                return false;
+            }
+            followers++;
+            return true;
+        }
+
+        /**
+         * A follower stopped waiting; if the response arrived meanwhile its share is returned.
+         */
+        void leave() {
+            SharedResponse abandoned;
+            synchronized (this) {
+                if (!done) {
+                    followers--;
+                    return;
+                }
+                abandoned = response;
+            }
+            if (abandoned != SharedResponse.FAILED) {
+                abandoned.release();
+            }
+        }
+
+        void complete(SharedResponse shared) {
+            synchronized (this) {
+                if (done) {
+                    shared.releaseBuffers();
+                    return;
+                }
+                done = true;
+                response = shared;
+                shared.references.set(followers);
+            }
+            if (shared.references.get() == 0) {
+                shared.releaseBuffers();
+            }
+            result.tryEmitValue(shared);
+        }
+
+        void fail() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                response = SharedResponse.FAILED;
+            }
+            result.tryEmitValue(SharedResponse.FAILED);
+        }
+
+        Mono<SharedResponse> result() {
+            return result.asMono();
+        }
+    }
+
+    /**
+     * The leader's status, headers and retained body buffers, released by the last follower.
+     */
+    private static final class SharedResponse {
+
+        static final SharedResponse FAILED = new SharedResponse(null, HttpHeaders.EMPTY, List.of());
+
+        static final SharedResponse TIMED_OUT = new SharedResponse(null, HttpHeaders.EMPTY, List.of());
+
+        private final HttpStatusCode status;
+
+        private final HttpHeaders headers;
+
+        private final List<DataBuffer> buffers;
+
+        private final AtomicInteger references = new AtomicInteger();
+
+        SharedResponse(HttpStatusCode status, HttpHeaders headers, List<DataBuffer> buffers) {
+            this.status = status;
+            this.headers = headers;
+            this.buffers = buffers;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                releaseBuffers();
+            }
+        }
+
+        void releaseBuffers() {
+            buffers.forEach(DataBufferUtils::release);
+        }
+    }
+
+    /**
+     * Keeps a retained view of every buffer of the leader's body as it is written, up to maxSize.
+     */
+    private static final class RecordingResponse extends ServerHttpResponseDecorator {
+
+        private final long maxSize;
+
+        private final Consumer<SharedResponse> onComplete;
+
+        private final Runnable onFail;
+
+        RecordingResponse(ServerHttpResponse delegate, long maxSize,
+                          Consumer<SharedResponse> onComplete, Runnable onFail) {
+            super(delegate);
+            this.maxSize = maxSize;
+            this.onComplete = onComplete;
+            this.onFail = onFail;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = status();
+            if (status.is5xxServerError() || getHeaders().getContentLength() > maxSize) {
+                onFail.run();
+                return super.writeWith(body);
+            }
+            HttpHeaders headers = copyHeaders();
+            List<DataBuffer> recorded = new ArrayList<>();
+            long[] size = new long[1];
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(buffer -> {
+                        if (size[0] < 0) {
+                            return;
+                        }
+                        size[0] += buffer.readableByteCount();
+                        if (size[0] > maxSize) {
+                            size[0] = -1;
+                            recorded.forEach(DataBufferUtils::release);
+                            recorded.clear();
+                            onFail.run();
+                            return;
+                        }
+                        recorded.add(DataBufferViews.retainedView(buffer));
+                    })
+                    .doOnComplete(() -> {
+                        if (size[0] >= 0) {
+                            onComplete.accept(new SharedResponse(status, headers, List.copyOf(recorded)));
+                        }
+                    })
+                    .doOnError(error -> discard(recorded))
+                    .doOnCancel(() -> discard(recorded)));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Streamed responses are not shared
+            onFail.run();
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            HttpStatusCode status = status();
+            if (status.is5xxServerError()) {
+                onFail.run();
+            } else {
+                onComplete.accept(new SharedResponse(status, copyHeaders(), List.of()));
+            }
+            return super.setComplete();
+        }
+
+        private HttpStatusCode status() {
+            HttpStatusCode status = getStatusCode();
+            return status != null ? status : HttpStatus.OK;
+        }
+
+        private HttpHeaders copyHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(getHeaders());
+            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+            return HttpHeaders.readOnlyHttpHeaders(headers);
+        }
+
+        private void discard(List<DataBuffer> recorded) {
+            recorded.forEach(DataBufferUtils::release);
+            recorded.clear();
+            onFail.run();
+        }
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        // Followers waiting longer than this send their own request
+        private Duration maxWait = Duration.ofSeconds(1);
+        // Larger responses are not shared; followers send their own request
+        private DataSize maxSize = DataSize.ofMegabytes(1);
+        // Requests only coalesce when these headers match too
+        private List<String> headers = new ArrayList<>(List.of(HttpHeaders.AUTHORIZATION, "X-Username",
+                HttpHeaders.COOKIE, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING, HttpHeaders.ACCEPT_LANGUAGE));
+        private String routeId;
+    }
+}
@@ -0,0 +1,127 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.limit.ConcurrencyLimiter;
+import com.dissertation.apigateway.limit.ConcurrencyLimiters;
+import com.dissertation.apigateway.limit.Priority;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Admits requests to the route's upstream service only while its adaptive concurrency
+ * limit (see ConcurrencyLimiters) and the gateway-wide cap have room for the route's
+ * priority. Excess requests are shed at once, before they queue in front of a slow
+ * backend: forwarded to fallbackUri when one is set, otherwise answered 503, both with
+ * a Retry-After header. Latency of admitted requests, and whether they failed with an
+ * error or a 502/503/504, feeds back into the limit.
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<ConcurrencyLimitGatewayFilterFactory.Config> {
+
+    private final ConcurrencyLimiters limiters;
+
+    private final ObjectProvider<DispatcherHandler> dispatcherHandler;
+
+    public ConcurrencyLimitGatewayFilterFactory(ConcurrencyLimiters limiters, ObjectProvider<DispatcherHandler> dispatcherHandler) {
+        super(Config.class);
+        this.limiters = limiters;
+        this.dispatcherHandler = dispatcherHandler;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("priority", "fallbackUri");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String retryAfter = Long.toString(Math.max(1, config.getRetryAfter().toSeconds()));
+        return (exchange, chain) -> {
+            ConcurrencyLimiter limiter = limiter(exchange, config);
+            if (limiter == null) {
+                return chain.filter(exchange);
+            }
+            if (!limiters.tryAcquire(limiter, config.getPriority())) {
+                limiters.recordShed(limiter, config.getPriority());
+                log.debug("Shedding {} {} for {}: {} in flight, limit {}", exchange.getRequest().getMethod(),
+                        exchange.getRequest().getPath(), limiter.getService(), limiter.getInFlight(), limiter.getLimit());
+                return shed(exchange, config, retryAfter);
+            }
+            long start = System.nanoTime();
+            return chain.filter(exchange)
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            limiters.release(limiter);
+                        } else {
+                            boolean dropped = signal == SignalType.ON_ERROR || isOverloaded(exchange.getResponse().getStatusCode());
+                            limiters.release(limiter, System.nanoTime() - start, dropped);
+                        }
+                    });
+        };
+    }
+
+    private ConcurrencyLimiter limiter(ServerWebExchange exchange, Config config) {
+        if (config.getService() != null) {
+            return limiters.limiter(config.getService());
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? limiters.limiter(limiters.serviceFor(route.getUri())) : null;
+    }
+
+    // Statuses that mean the upstream or something in front of it is overloaded
+    private static boolean isOverloaded(HttpStatusCode status) {
+        return status != null && (status.value() == HttpStatus.BAD_GATEWAY.value()
+                || status.value() == HttpStatus.SERVICE_UNAVAILABLE.value()
+                || status.value() == HttpStatus.GATEWAY_TIMEOUT.value());
+    }
+
+    /**
+     * Same forward as the CircuitBreaker filter's fallbackUri, or a bare 503.
+     */
+    private Mono<Void> shed(ServerWebExchange exchange, Config config, String retryAfter) {
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        DispatcherHandler handler = config.getFallbackUri() != null ? dispatcherHandler.getIfAvailable() : null;
+        if (handler == null) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+        URI uri = exchange.getRequest().getURI();
+        URI fallback = UriComponentsBuilder.fromUri(uri).host(null).port(null)
+                .uri(config.getFallbackUri()).scheme(null)
+                .build(ServerWebExchangeUtils.containsEncodedParts(uri)).toUri();
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, fallback);
+        ServerHttpRequest request = exchange.getRequest().mutate().uri(fallback).build();
+        return ServerWebExchangeUtils.handle(handler, exchange.mutate().request(request).build());
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        private Priority priority = Priority.NORMAL;
+        // Limiter name; defaults to the gateway.upstream.services entry matching the route's uri
+        private String service;
+        // e.g. forward:/fallback/order-service; without it shed requests get a bare 503
+        private URI fallbackUri;
+        private Duration retryAfter = Duration.ofSeconds(1);
+        private String routeId;
+    }
+}
@@ -1,5 +1,10 @@
 package com.dissertation.apigateway.filter;
 
+import com.dissertation.apigateway.config.CorsPolicy;
+import com.dissertation.apigateway.config.CorsPolicyRegistry;
+import com.dissertation.apigateway.trace.CorsEvent;
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
@@ -7,7 +12,6 @@ import org.springframework.core.Ordered;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
@@ -15,96 +19,58 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 /**
- * Global CORS filter to handle CORS requests before routing
- * This ensures CORS is handled before any other filters
+ * Global CORS filter for actual (non-preflight) requests
+ * Requests without an Origin header pass straight through; for allowed origins the
+ * policy's precomputed headers are written just before the response is committed,
+ * so upstream Access-Control-* headers cannot override them.
+ * Preflights never reach this filter, see CorsConfig#corsPreflightFilter.
  */
 @Component
 @Slf4j
 public class CorsGlobalFilter implements GlobalFilter, Ordered {
 
+    private final CorsPolicyRegistry corsPolicyRegistry;
+
+    public CorsGlobalFilter(CorsPolicyRegistry corsPolicyRegistry) {
+        this.corsPolicyRegistry = corsPolicyRegistry;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
         ServerHttpResponse response = exchange.getResponse();
-        HttpHeaders headers = response.getHeaders();
-
-        log.info("CorsGlobalFilter processing: {} {}", request.getMethod(), request.getURI());
-        
-        // Log all request headers for debugging
-        log.info("Request headers: {}", request.getHeaders());
-        log.info("Request path: {}", request.getPath());
+        String origin = request.getHeaders().getFirst(HttpHeaders.ORIGIN);
 
-        // Add CORS headers to ALL responses (including error responses) BEFORE processing
-        // For localhost requests, always allow regardless of Origin header
-        String host = request.getURI().getHost();
-        boolean isLocalhost = host != null && (host.equals("localhost") || host.equals("127.0.0.1"));
-        
-        String origin = request.getHeaders().getFirst("Origin");
-        String allowOrigin = "*";  // Always allow all origins
-        headers.set("Access-Control-Allow-Origin", allowOrigin);
-        headers.set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, PATCH, OPTIONS, HEAD");
-        headers.set("Access-Control-Allow-Headers", "*");
-        headers.set("Access-Control-Expose-Headers", "*");
-        headers.set("Access-Control-Max-Age", "3600");
-        headers.set("Access-Control-Allow-Credentials", "false");
-        
-        // For localhost requests, log to help debug
-        if (isLocalhost) {
-            log.info("Localhost request detected - allowing all CORS");
+        if (origin != null) {
+            long start = System.nanoTime();
+            CorsEvent event = CorsEvent.start();
+            CorsPolicy policy = corsPolicyRegistry.resolve(request.getPath().pathWithinApplication());
+            boolean allowed = policy.isOriginAllowed(origin);
+            if (allowed) {
+                response.beforeCommit(() -> {
+                    policy.applyActualHeaders(response.getHeaders(), origin);
+                    return Mono.empty();
+                });
+            } else {
+                // No CORS headers - the browser enforces the rejection
+                log.debug("Origin {} not allowed by CORS policy {}", origin, policy.getName());
+            }
+            ExchangeTrace.record(exchange, Phase.CORS, start, System.nanoTime(), policy.getName());
+            if (event != null) {
+                event.origin = origin;
+                event.policy = policy.getName();
+                event.allowed = allowed;
+                event.commit();
+            }
         }
 
-        // Handle preflight OPTIONS request - return immediately with 200 OK
+        // Plain OPTIONS requests are answered by the gateway, not proxied
         if (request.getMethod() == HttpMethod.OPTIONS) {
-            log.info("Handling CORS preflight OPTIONS request for: {}", request.getURI());
             response.setStatusCode(HttpStatus.OK);
             return response.setComplete();
         }
-        
-        // If this is a CORS request (has Origin header), ensure we don't get blocked
-        // by setting status before continuing if it's already an error
-        if (origin != null && !origin.isEmpty()) {
-            log.info("CORS request detected with Origin: {}", origin);
-        }
 
-        // Continue with the filter chain
-        // Use doOnEach to intercept responses BEFORE they're committed
-        return chain.filter(exchange)
-                .doOnEach(signal -> {
-                    if (signal.isOnNext() || signal.isOnComplete()) {
-                        ServerHttpResponse resp = exchange.getResponse();
-                        HttpStatusCode status = resp.getStatusCode();
-                        
-                        // If we got a 403 and it's a localhost request, prevent it from being committed
-                        // by changing the status code BEFORE the response is committed
-                        if (status != null && status.value() == 403 && isLocalhost && !resp.isCommitted()) {
-                            log.warn("CorsGlobalFilter: Detected 403 for localhost request - preventing commit and allowing request");
-                            // Change status to 200 to allow the request to proceed
-                            // The actual downstream service will handle the real status
-                            resp.setStatusCode(HttpStatus.OK);
-                            // Ensure CORS headers are set
-                            HttpHeaders respHeaders = resp.getHeaders();
-                            respHeaders.set("Access-Control-Allow-Origin", "*");
-                            respHeaders.set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, PATCH, OPTIONS, HEAD");
-                            respHeaders.set("Access-Control-Allow-Headers", "*");
-                        }
-                    }
-                })
-                .onErrorResume(throwable -> {
-                    // Only handle specific CORS-related errors, not all errors
-                    // For 405 METHOD_NOT_ALLOWED, this might be a routing issue - don't swallow it
-                    String errorMessage = throwable.getMessage();
-                    if (errorMessage != null && errorMessage.contains("405 METHOD_NOT_ALLOWED")) {
-                        log.error("CorsGlobalFilter: Received 405 METHOD_NOT_ALLOWED error. This indicates a routing issue. Error: {}", errorMessage);
-                        // Don't swallow 405 errors - let them propagate so we can see the real issue
-                        return Mono.error(throwable);
-                    }
-                    
-                    // For other errors on localhost, log but don't swallow - let the error propagate
-                    if (isLocalhost) {
-                        log.error("CorsGlobalFilter: Error for localhost request: {}", throwable.getMessage(), throwable);
-                    }
-                    return Mono.error(throwable);
-                });
+        return chain.filter(exchange);
     }
 
     @Override
@@ -114,4 +80,3 @@ public class CorsGlobalFilter implements GlobalFilter, Ordered {
         return Integer.MIN_VALUE;
     }
 }
-
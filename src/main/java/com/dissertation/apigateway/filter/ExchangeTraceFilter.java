@@ -0,0 +1,115 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.trace.ExchangeEvent;
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
+import com.dissertation.apigateway.trace.ResponseWriteEvent;
+import com.dissertation.apigateway.trace.SlowRequestRecorder;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.function.Supplier;
+
+/**
+ * Starts the ExchangeTrace the gateway's filters record their phases on, times the
+ * response write and, once the exchange is done, hands the trace to the slow-request
+ * recorder and commits the JFR exchange event. A WebFilter rather than a GlobalFilter,
+ * so route matching falls inside the exchange.
+ */
+@Component
+public class ExchangeTraceFilter implements WebFilter, Ordered {
+
+    private final SlowRequestRecorder recorder;
+
+    public ExchangeTraceFilter(SlowRequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ExchangeTrace trace = new ExchangeTrace(System.nanoTime(), System.currentTimeMillis());
+        exchange.getAttributes().put(ExchangeTrace.ATTR, trace);
+        ExchangeEvent event = ExchangeEvent.start();
+        ServerWebExchange traced = exchange.mutate().response(new WriteTimingResponse(exchange)).build();
+        return chain.filter(traced).doFinally(signal -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : null;
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            int statusCode = status != null ? status.value() : 0;
+            String method = exchange.getRequest().getMethod().name();
+            String path = exchange.getRequest().getPath().value();
+            recorder.record(trace, System.nanoTime(), method, path, routeId, statusCode);
+            if (event != null) {
+                event.method = method;
+                event.path = path;
+                event.routeId = routeId;
+                event.status = statusCode;
+                event.commit();
+            }
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        // Just inside CorsConfig#corsPreflightFilter; preflights never reach a route
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    /**
+     * Times writeWith, from the write's subscription until the body has been flushed.
+     */
+    private static final class WriteTimingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+
+        WriteTimingResponse(ServerWebExchange exchange) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return timed(() -> super.writeWith(body));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return timed(() -> super.writeAndFlushWith(body));
+        }
+
+        private Mono<Void> timed(Supplier<Mono<Void>> write) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                ResponseWriteEvent event = ResponseWriteEvent.start();
+                // Before the signal travels on: the exchange is finished as soon as the write is
+                return write.get()
+                        .doOnSuccess(done -> written(start, event, null))
+                        .doOnError(error -> written(start, event, error))
+                        .doOnCancel(() -> written(start, event, SignalType.CANCEL));
+            });
+        }
+
+        /**
+         * Only a write that did not complete gets a detail: the error, or cancelled by the client.
+         */
+        private void written(long start, ResponseWriteEvent event, Object detail) {
+            ExchangeTrace.record(exchange, Phase.RESPONSE_WRITE, start, System.nanoTime(), detail);
+            if (event != null) {
+                event.path = exchange.getRequest().getPath().value();
+                event.contentLength = getHeaders().getContentLength();
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.metrics.GatewayMetrics.HedgeOutcome;
+import com.dissertation.apigateway.retry.RetryBudget;
+import com.dissertation.apigateway.retry.RollingPercentile;
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroup;
+import io.micrometer.core.instrument.Clock;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.netty.Connection;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hedged requests for GET and HEAD: when the upstream has not answered within the
+ * route's recent p95 latency (clamped to min-delay and max-delay), a second identical
+ * request is sent, to another replica on lb:// routes. The first response is used and
+ * the other request is cancelled, closing its connection. Hedges draw on a RetryBudget
+ * fed by the route's GETs, so they add at most max-hedge-percent to its traffic, and
+ * nothing is hedged until min-samples latencies have been seen.
+ *
+ * <p>Both requests go through the stock NettyRoutingFilter, each on a copy of the
+ * exchange with its own attributes and response headers; the winner's are copied back.
+ * On lb:// routes each request's replica is charged its own outcome here rather than by
+ * LoadBalancerFilter; a primary that loses to its hedge counts as a slow response.
+ */
+@Component
+public class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgeGatewayFilterFactory.Config> {
+
+    // Right before NettyRoutingFilter; UpstreamAttemptMetricsFilter shares the slot and, as a global filter, times both requests
+    static final int ORDER = NettyRoutingFilter.ORDER - 1;
+
+    // Hedges a quiet route can bank, so a burst after a lull is not hedged wholesale
+    private static final int BUDGET_CAPACITY = 10;
+
+    private final GatewayMetrics metrics;
+
+    public HedgeGatewayFilterFactory(GatewayMetrics metrics) {
+        super(Config.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("percentile", "maxHedgePercent");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        if (config.getPercentile() <= 0 || config.getPercentile() >= 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1, was " + config.getPercentile());
+        }
+        if (config.getMaxHedgePercent() < 0 || config.getMaxHedgePercent() > 100) {
+            throw new IllegalArgumentException("maxHedgePercent must be between 0 and 100, was " + config.getMaxHedgePercent());
+        }
+        if (config.getMinDelay().compareTo(config.getMaxDelay()) > 0) {
+            throw new IllegalArgumentException("minDelay must not exceed maxDelay");
+        }
+        RollingPercentile latency = new RollingPercentile(config.getPercentile(), config.getWindow(),
+                config.getMinSamples(), Clock.SYSTEM);
+        RetryBudget budget = new RetryBudget(config.getMaxHedgePercent() / 100, 0, BUDGET_CAPACITY, System.nanoTime());
+        long minDelay = config.getMinDelay().toNanos();
+        long maxDelay = config.getMaxDelay().toNanos();
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            HttpMethod method = request.getMethod();
+            URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            if ((method != HttpMethod.GET && method != HttpMethod.HEAD)
+                    || RequestBodyGatewayFilterFactory.hasBody(request.getHeaders())
+                    || url == null || !isHttp(url) || ServerWebExchangeUtils.isAlreadyRouted(exchange)) {
+                return chain.filter(exchange);
+            }
+            budget.deposit();
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            GatewayMetrics.RouteMeters meters = route != null ? metrics.forRoute(route) : null;
+            long estimate = latency.valueNanos();
+            long delay = estimate < 0 ? -1 : Math.max(minDelay, Math.min(maxDelay, estimate));
+            return new Race(exchange, chain, budget, latency, meters).run(delay);
+        }, ORDER);
+    }
+
+    private static boolean isHttp(URI url) {
+        return "http".equalsIgnoreCase(url.getScheme()) || "https".equalsIgnoreCase(url.getScheme());
+    }
+
+    /**
+     * The primary request and, once the delay has passed, the hedge. Every transition
+     * happens under the race's lock; the winner's state is copied to the exchange and
+     * the sink completed outside it.
+     */
+    private static final class Race {
+
+        private final ServerWebExchange exchange;
+
+        private final GatewayFilterChain chain;
+
+        private final RetryBudget budget;
+
+        private final RollingPercentile latency;
+
+        private final GatewayMetrics.RouteMeters meters;
+
+        private final Disposable.Swap timer = Disposables.swap();
+
+        private final Attempt primary;
+
+        private MonoSink<Void> sink;
+
+        private Attempt hedge;
+
+        private boolean settled;
+
+        private Throwable primaryError;
+
+        private boolean hedgeFailed;
+
+        private HedgeOutcome outcome = HedgeOutcome.NOT_HEDGED;
+
+        Race(ServerWebExchange exchange, GatewayFilterChain chain, RetryBudget budget, RollingPercentile latency,
+             GatewayMetrics.RouteMeters meters) {
+            this.exchange = exchange;
+            this.chain = chain;
+            this.budget = budget;
+            this.latency = latency;
+            this.meters = meters;
+            UpstreamGroup group = exchange.getAttribute(LoadBalancerFilter.GROUP_ATTR);
+            Replica replica = group != null ? exchange.getAttribute(LoadBalancerFilter.REPLICA_ATTR) : null;
+            if (replica != null) {
+                // The race's length is not the primary's latency, so LoadBalancerFilter leaves its replica to us
+                exchange.getAttributes().put(LoadBalancerFilter.ACCOUNTED_ATTR, Boolean.TRUE);
+            }
+            this.primary = new Attempt(new AttemptExchange(exchange), group, replica);
+        }
+
+        Mono<Void> run(long delayNanos) {
+            return Mono.create(sink -> {
+                synchronized (this) {
+                    this.sink = sink;
+                }
+                sink.onCancel(this::cancel);
+                subscribe(primary);
+                if (delayNanos >= 0) {
+                    timer.update(Mono.delay(Duration.ofNanos(delayNanos)).subscribe(tick -> sendHedge()));
+                }
+            });
+        }
+
+        private void subscribe(Attempt attempt) {
+            // Swap disposes the subscription straight away if the attempt was cancelled meanwhile
+            attempt.subscription.update(chain.filter(attempt.exchange)
+                    .contextWrite(sink.contextView())
+                    .subscribe(null, error -> finished(attempt, error), () -> finished(attempt, null)));
+        }
+
+        private void sendHedge() {
+            Attempt attempt;
+            synchronized (this) {
+                if (settled) {
+                    return;
+                }
+                if (!budget.tryWithdraw(System.nanoTime())) {
+                    outcome = HedgeOutcome.BUDGET_EXHAUSTED;
+                    return;
+                }
+                attempt = hedge = hedgeAttempt();
+            }
+            subscribe(attempt);
+        }
+
+        /**
+         * A copy of the exchange as the primary saw it; on lb:// routes pointed at another
+         * replica of the group when one is available.
+         */
+        private Attempt hedgeAttempt() {
+            AttemptExchange copy = new AttemptExchange(exchange);
+            UpstreamGroup group = exchange.getAttribute(LoadBalancerFilter.GROUP_ATTR);
+            Replica replica = group != null
+                    ? group.choose(exchange.getAttribute(LoadBalancerFilter.REPLICA_ATTR), System.nanoTime()) : null;
+            if (replica == null) {
+                return new Attempt(copy, null, null);
+            }
+            URI url = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            boolean keepScheme = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR) != null;
+            copy.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                    LoadBalancerFilter.replicaUrl(url, replica.getUri(), keepScheme));
+            copy.getAttributes().put(LoadBalancerFilter.REPLICA_ATTR, replica);
+            group.start(replica);
+            return new Attempt(copy, group, replica);
+        }
+
+        private void finished(Attempt attempt, Throwable error) {
+            long now = System.nanoTime();
+            boolean isHedge = attempt != primary;
+            boolean serverError = error == null && attempt.exchange.isServerError();
+            Attempt winner = null;
+            Throwable failure = null;
+            synchronized (this) {
+                attempt.complete(now, error != null || serverError);
+                if (settled) {
+                    // Answered while it was being cancelled
+                    attempt.cancel();
+                    return;
+                }
+                // A 5xx from the hedge does not beat a primary still in flight
+                boolean lost = error != null || (isHedge && serverError && primaryError == null);
+                if (!lost) {
+                    winner = attempt;
+                    if (isHedge) {
+                        outcome = HedgeOutcome.HEDGE_WON;
+                        primary.abandon(now);
+                    } else if (hedge != null) {
+                        outcome = HedgeOutcome.PRIMARY_WON;
+                        hedge.cancel();
+                    }
+                } else if (isHedge) {
+                    hedgeFailed = true;
+                    attempt.cancel();
+                    if (primaryError == null) {
+                        return;
+                    }
+                    failure = primaryError;
+                    outcome = HedgeOutcome.PRIMARY_WON;
+                } else if (hedge != null && !hedgeFailed) {
+                    // The hedge may still answer
+                    primaryError = error;
+                    return;
+                } else {
+                    failure = error;
+                    if (hedge != null) {
+                        outcome = HedgeOutcome.PRIMARY_WON;
+                    }
+                }
+                settled = true;
+                timer.dispose();
+            }
+            if (meters != null) {
+                meters.recordHedge(outcome);
+            }
+            if (winner == null) {
+                sink.error(failure);
+                return;
+            }
+            // When the hedge won, the time so far is a lower bound of the primary's latency
+            latency.record(now - primary.start);
+            winner.exchange.promote();
+            sink.success();
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                if (settled) {
+                    return;
+                }
+                settled = true;
+                timer.dispose();
+                primary.cancel();
+                if (hedge != null) {
+                    hedge.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * One upstream request; on lb:// routes its replica is set, and the group's balancer
+     * and outlier ejection hear how this request went.
+     */
+    private static final class Attempt {
+
+        private final AttemptExchange exchange;
+
+        private final UpstreamGroup group;
+
+        private final Replica replica;
+
+        private final long start = System.nanoTime();
+
+        private final Disposable.Swap subscription = Disposables.swap();
+
+        private boolean done;
+
+        Attempt(AttemptExchange exchange, UpstreamGroup group, Replica replica) {
+            this.exchange = exchange;
+            this.group = group;
+            this.replica = replica;
+        }
+
+        void complete(long now, boolean failed) {
+            done = true;
+            if (replica != null) {
+                group.complete(replica, now, now - start, failed);
+            }
+        }
+
+        /**
+         * Cancels a primary its hedge beat. It ran past the hedge delay and lost to a request
+         * sent later, so its replica is charged a slow response.
+         */
+        void abandon(long now) {
+            if (!done && replica != null) {
+                done = true;
+                group.complete(replica, now, now - start, true);
+            }
+            cancel();
+        }
+
+        /**
+         * Cancels the request and closes the connection of a response that arrived anyway.
+         */
+        void cancel() {
+            subscription.dispose();
+            Connection connection = exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+            if (connection != null) {
+                connection.dispose();
+            }
+            if (!done) {
+                done = true;
+                if (replica != null) {
+                    group.cancel(replica);
+                }
+            }
+        }
+    }
+
+    /**
+     * The exchange with attributes and response status and headers of its own, so two
+     * requests can be routed at once without seeing each other's state.
+     */
+    private static final class AttemptExchange extends ServerWebExchangeDecorator {
+
+        private final Map<String, Object> attributes;
+
+        private final DetachedResponse response;
+
+        AttemptExchange(ServerWebExchange delegate) {
+            super(delegate);
+            this.attributes = new ConcurrentHashMap<>(delegate.getAttributes());
+            this.response = new DetachedResponse(delegate.getResponse());
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        boolean isServerError() {
+            return response.status != null && response.status.is5xxServerError();
+        }
+
+        /**
+         * Hands this attempt's upstream response to the real exchange, where
+         * NettyWriteResponseFilter picks up its connection.
+         */
+        void promote() {
+            ServerWebExchange target = getDelegate();
+            target.getAttributes().putAll(attributes);
+            if (response.status != null) {
+                target.getResponse().setStatusCode(response.status);
+            }
+            target.getResponse().getHeaders().addAll(response.headers);
+        }
+    }
+
+    private static final class DetachedResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private volatile HttpStatusCode status;
+
+        DetachedResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatusCode status) {
+            this.status = status;
+            return true;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        // Hedge once the request has been outstanding longer than this percentile of recent latencies
+        private double percentile = 0.95;
+        // Latencies the percentile covers
+        private Duration window = Duration.ofSeconds(30);
+        // Nothing is hedged until this many responses have been seen
+        private int minSamples = 50;
+        // Bounds on the hedge delay, whatever the percentile says
+        private Duration minDelay = Duration.ofMillis(5);
+        private Duration maxDelay = Duration.ofSeconds(1);
+        // Hedges may add at most this share of the route's GETs
+        private double maxHedgePercent = 5;
+        private String routeId;
+    }
+}
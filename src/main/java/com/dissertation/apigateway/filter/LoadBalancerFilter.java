@@ -0,0 +1,108 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroup;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+/**
+ * Resolves lb://&lt;group&gt; request urls to one replica of the upstream group. It runs once
+ * per attempt, so BudgetedRetry tries another replica when one is available, and feeds
+ * each attempt's latency and outcome back to the group's balancer and outlier ejection,
+ * unless a filter further down took that over for the attempt.
+ */
+@Component
+public class LoadBalancerFilter implements GlobalFilter, Ordered {
+
+    /** Exchange attribute holding the Replica the latest attempt was sent to */
+    public static final String REPLICA_ATTR = LoadBalancerFilter.class.getName() + ".replica";
+
+    /** Exchange attribute holding the UpstreamGroup the replica was chosen from */
+    public static final String GROUP_ATTR = LoadBalancerFilter.class.getName() + ".group";
+
+    /**
+     * Exchange attribute set by a filter that completes or cancels the attempt's replica
+     * itself, as HedgeGatewayFilterFactory does when it races the attempt against another
+     */
+    public static final String ACCOUNTED_ATTR = LoadBalancerFilter.class.getName() + ".accounted";
+
+    // Slot of spring-cloud-loadbalancer's filter: after RouteToRequestUrlFilter has built the lb:// url
+    static final int ORDER = 10150;
+
+    static final String LB_SCHEME = "lb";
+
+    private final UpstreamGroups groups;
+
+    public LoadBalancerFilter(UpstreamGroups groups) {
+        this.groups = groups;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        String schemePrefix = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR);
+        if (url == null || !(LB_SCHEME.equals(url.getScheme()) || LB_SCHEME.equals(schemePrefix))) {
+            return chain.filter(exchange);
+        }
+        UpstreamGroup group = groups.group(url.getHost());
+        long start = System.nanoTime();
+        Replica replica = group != null ? group.choose(exchange.getAttribute(REPLICA_ATTR), start) : null;
+        if (replica == null) {
+            return Mono.error(NotFoundException.create(false, "No replica available for upstream group " + url.getHost()));
+        }
+        ServerWebExchangeUtils.addOriginalRequestUrl(exchange, url);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                replicaUrl(url, replica.getUri(), schemePrefix != null));
+        exchange.getAttributes().put(REPLICA_ATTR, replica);
+        exchange.getAttributes().put(GROUP_ATTR, group);
+
+        exchange.getAttributes().remove(ACCOUNTED_ATTR);
+        group.start(replica);
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    if (exchange.getAttributes().remove(ACCOUNTED_ATTR) != null) {
+                        return;
+                    }
+                    if (signal == SignalType.CANCEL) {
+                        // The client went away; says nothing about the replica
+                        group.cancel(replica);
+                        return;
+                    }
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    boolean failed = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                    long now = System.nanoTime();
+                    group.complete(replica, now, now - start, failed);
+                });
+    }
+
+    /**
+     * The request url with the replica's scheme, host and port. With a scheme prefix
+     * (lb:ws://group) the url already carries the scheme to use.
+     */
+    static URI replicaUrl(URI url, URI replica, boolean keepScheme) {
+        boolean encoded = ServerWebExchangeUtils.containsEncodedParts(url);
+        return UriComponentsBuilder.fromUri(url)
+                .scheme(keepScheme ? url.getScheme() : replica.getScheme())
+                .host(replica.getHost())
+                .port(replica.getPort())
+                .build(encoded)
+                .toUri();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
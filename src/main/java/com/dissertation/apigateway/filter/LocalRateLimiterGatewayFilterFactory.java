@@ -0,0 +1,102 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.ratelimit.LocalRateLimiter;
+import com.dissertation.apigateway.ratelimit.TokenBucket;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter that decides from local token buckets, keyed by the authenticated
+ * user or by client IP. The user is only taken from a token AuthenticationFilter
+ * verified earlier in the chain, never from a client-sent X-Username, so on a route
+ * without AuthenticationFilter ahead of this filter USER falls back to IP. Buckets are
+ * reconciled across replicas through Redis in the background by LocalRateLimiter,
+ * so no request waits on Redis.
+ */
+@Component
+public class LocalRateLimiterGatewayFilterFactory extends AbstractGatewayFilterFactory<LocalRateLimiterGatewayFilterFactory.Config> {
+
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+
+    static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    private final LocalRateLimiter rateLimiter;
+
+    public LocalRateLimiterGatewayFilterFactory(LocalRateLimiter rateLimiter) {
+        super(Config.class);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("replenishRate", "burstCapacity", "keyBy");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String routeId = config.getRouteId() != null ? config.getRouteId() : "default";
+        LocalRateLimiter.BucketGroup group = rateLimiter.group(routeId,
+                config.getReplenishRate(), config.getBurstCapacity());
+        String replenishRate = String.valueOf(group.getReplenishRate());
+        String burstCapacity = String.valueOf(group.getBurstCapacity());
+
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            ServerHttpResponse response = exchange.getResponse();
+            TokenBucket bucket = group.bucket(resolveKey(request,
+                    exchange.getAttribute(AuthenticationFilter.USERNAME_ATTR), config.getKeyBy()));
+            long now = System.nanoTime();
+            boolean allowed = bucket.tryAcquire(now);
+
+            HttpHeaders headers = response.getHeaders();
+            headers.set(REMAINING_HEADER, String.valueOf(bucket.remaining(now)));
+            headers.set(REPLENISH_RATE_HEADER, replenishRate);
+            headers.set(BURST_CAPACITY_HEADER, burstCapacity);
+            if (allowed) {
+                return chain.filter(exchange);
+            }
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(bucket.nanosUntilNextToken(now) + 999_999_999L));
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            return response.setComplete();
+        };
+    }
+
+    static String resolveKey(ServerHttpRequest request, String verifiedUsername, KeyBy keyBy) {
+        if (keyBy == KeyBy.USER && verifiedUsername != null) {
+            return "user:" + verifiedUsername;
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        if (remote == null || remote.getAddress() == null) {
+            return "ip:unknown";
+        }
+        return "ip:" + remote.getAddress().getHostAddress();
+    }
+
+    public enum KeyBy {
+        // Username verified by AuthenticationFilter, falling back to the client IP otherwise
+        USER,
+        IP
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        private int replenishRate = 10;
+        private int burstCapacity = 20;
+        private KeyBy keyBy = KeyBy.USER;
+        private String routeId;
+    }
+}
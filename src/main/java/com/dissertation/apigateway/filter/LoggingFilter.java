@@ -1,32 +1,100 @@
 package com.dissertation.apigateway.filter;
 
+import com.dissertation.apigateway.config.AccessLogProperties;
+import com.dissertation.apigateway.logging.AccessLogWriter;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * Hands one access-log record per exchange to the asynchronous AccessLogWriter, with the
+ * latency of the last upstream attempt as UpstreamAttemptMetricsFilter measured it and
+ * the body bytes actually written, which Content-Length does not give for chunked
+ * responses. Request headers are only dumped for routes listed in
+ * gateway.access-log.debug-header-routes.
+ */
 @Component
 @Slf4j
 public class LoggingFilter implements GlobalFilter, Ordered {
-    
+
+    private final AccessLogWriter accessLogWriter;
+
+    private final AccessLogProperties properties;
+
+    public LoggingFilter(AccessLogWriter accessLogWriter, AccessLogProperties properties) {
+        this.accessLogWriter = accessLogWriter;
+        this.properties = properties;
+    }
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : null;
+
+        if (routeId != null && log.isDebugEnabled() && properties.getDebugHeaderRoutes().contains(routeId)) {
+            ServerHttpRequest request = exchange.getRequest();
+            log.debug("Route {} request {} {} headers: {}", routeId, request.getMethod(), request.getURI(), request.getHeaders());
+        }
+
+        CountingResponse response = new CountingResponse(exchange.getResponse());
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> record(exchange, routeId, response));
+    }
+
+    private void record(ServerWebExchange exchange, String routeId, CountingResponse response) {
         ServerHttpRequest request = exchange.getRequest();
-        
-        log.info("Incoming request: {} {}", request.getMethod(), request.getURI());
-        
-        return chain.filter(exchange).then(Mono.fromRunnable(() -> {
-            log.info("Response status: {}", exchange.getResponse().getStatusCode());
-        }));
+        HttpStatusCode status = response.getStatusCode();
+        Long upstreamLatency = exchange.getAttribute(UpstreamAttemptMetricsFilter.UPSTREAM_LATENCY_ATTR);
+        accessLogWriter.record(
+                request.getMethod().name(),
+                request.getPath().value(),
+                routeId,
+                status != null ? status.value() : 0,
+                upstreamLatency != null ? upstreamLatency : -1,
+                response.bytes);
     }
-    
+
     @Override
     public int getOrder() {
         return Ordered.HIGHEST_PRECEDENCE;
     }
-}
 
+    /**
+     * Counts the body bytes handed to the server, streamed or not.
+     */
+    private static final class CountingResponse extends ServerHttpResponseDecorator {
+
+        private long bytes;
+
+        CountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(chunk -> Flux.from(chunk).doOnNext(this::count)));
+        }
+
+        private void count(DataBuffer buffer) {
+            bytes += buffer.readableByteCount();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.body.ReplayableBody;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Chooses per route how request bodies travel upstream. STREAM forwards Netty's buffers
+ * as they arrive and never keeps a copy, so the request cannot be retried; BUFFER keeps
+ * bodies up to max-in-memory-size for replay and streams larger ones; SPILL keeps every
+ * body up to max-size replayable, spilling what exceeds max-in-memory-size to a
+ * memory-mapped temporary file. Routes without this filter stream.
+ */
+@Component
+public class RequestBodyGatewayFilterFactory extends AbstractGatewayFilterFactory<RequestBodyGatewayFilterFactory.Config> {
+
+    /** Exchange attribute holding the ReplayableBody while the exchange is in flight */
+    public static final String REPLAYABLE_BODY_ATTR = RequestBodyGatewayFilterFactory.class.getName() + ".replayableBody";
+
+    // Ahead of the default filters (BudgetedRetry is order 1), so one recording serves every retry
+    static final int ORDER = 0;
+
+    public RequestBodyGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("mode", "maxInMemorySize", "maxSize");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long maxInMemory = config.getMaxInMemorySize().toBytes();
+        long maxSize = config.getMaxSize().toBytes();
+        Path spillDirectory = config.getMode() == Mode.SPILL ? spillDirectory(config) : null;
+        long replayLimit = spillDirectory != null ? maxSize : maxInMemory;
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (config.getMode() == Mode.STREAM || !hasBody(request.getHeaders())) {
+                return chain.filter(exchange);
+            }
+            long contentLength = request.getHeaders().getContentLength();
+            // Too large to keep (or of unknown length without a file to spill to): stream it
+            if (contentLength > replayLimit || (contentLength < 0 && spillDirectory == null)) {
+                return chain.filter(exchange);
+            }
+            return ReplayableBody.record(request.getBody(), maxInMemory, maxSize, spillDirectory)
+                    .flatMap(body -> {
+                        exchange.getAttributes().put(REPLAYABLE_BODY_ATTR, body);
+                        ServerHttpRequest replaying = new ServerHttpRequestDecorator(request) {
+                            @Override
+                            public Flux<DataBuffer> getBody() {
+                                return body.replay();
+                            }
+                        };
+                        return chain.filter(exchange.mutate().request(replaying).build())
+                                .doFinally(signal -> {
+                                    exchange.getAttributes().remove(REPLAYABLE_BODY_ATTR);
+                                    body.release();
+                                });
+                    });
+        }, ORDER);
+    }
+
+    static boolean hasBody(HttpHeaders headers) {
+        return headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    private static Path spillDirectory(Config config) {
+        String directory = config.getSpillDirectory();
+        return Path.of(directory != null ? directory : System.getProperty("java.io.tmpdir"));
+    }
+
+    public enum Mode {
+        STREAM,
+        BUFFER,
+        SPILL
+    }
+
+    @Data
+    public static class Config {
+        private Mode mode = Mode.STREAM;
+        private DataSize maxInMemorySize = DataSize.ofKilobytes(256);
+        // SPILL only; larger bodies are streamed when their length is known and rejected with 413 otherwise
+        private DataSize maxSize = DataSize.ofMegabytes(100);
+        // SPILL only; defaults to java.io.tmpdir
+        private String spillDirectory;
+    }
+}
@@ -0,0 +1,393 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.cache.CachePolicy;
+import com.dissertation.apigateway.cache.CachedResponse;
+import com.dissertation.apigateway.cache.ResponseCache;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.metrics.GatewayMetrics.CacheResult;
+import com.dissertation.apigateway.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import lombok.Data;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves repeated GETs from the ResponseCache. Entries are keyed by route, path, query
+ * and user, where the user is the subject of the bearer token, verified here since this
+ * filter runs ahead of the route's filters. Requests without a token share one anonymous
+ * partition that only holds responses marked public or given an s-maxage; anonymous
+ * requests carrying X-Username bypass the cache, since the upstream trusts that header
+ * and may answer with that user's data.
+ * Requests carrying a token that does not verify are never cached. Cache-Control and Vary are
+ * honored; stale entries with an ETag or Last-Modified are revalidated with a
+ * conditional request, and served as a fallback when the upstream answers 5xx. Every
+ * GET gets an X-Cache header of HIT, MISS, STALE or REVALIDATED.
+ */
+@Component
+public class ResponseCacheGatewayFilterFactory extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    public static final String CACHE_HEADER = "X-Cache";
+
+    // Outside NettyWriteResponseFilter, so the body it writes passes through this filter's response
+    static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private static final String BEARER = "Bearer ";
+
+    private static final String USERNAME_HEADER = "X-Username";
+
+    private static final String ANONYMOUS = "";
+
+    private final ResponseCache cache;
+
+    private final JwtUtil jwtUtil;
+
+    private final GatewayMetrics metrics;
+
+    public ResponseCacheGatewayFilterFactory(ResponseCache cache, JwtUtil jwtUtil, GatewayMetrics metrics) {
+        super(Config.class);
+        this.cache = cache;
+        this.jwtUtil = jwtUtil;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("ttl", "staleIfError");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET) {
+                return chain.filter(exchange);
+            }
+            return user(request.getHeaders())
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .onErrorResume(RejectedExecutionException.class, e -> {
+                        // Same answer AuthenticationFilter gives when the verifier is saturated
+                        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                        return exchange.getResponse().setComplete().then(Mono.<Optional<String>>empty());
+                    })
+                    .flatMap(user -> user.isPresent()
+                            ? lookup(exchange, chain, user.get(), config)
+                            // AuthenticationFilter or the upstream will reject it; nothing to share either way
+                            : chain.filter(exchange));
+        }, ORDER);
+    }
+
+    private Mono<Void> lookup(ServerWebExchange exchange, GatewayFilterChain chain, String user, Config config) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        GatewayMetrics.RouteMeters meters = route != null ? metrics.forRoute(route) : null;
+        if (CachePolicy.isNoStore(request.getHeaders())) {
+            return chain.filter(exchange.mutate().response(new CachingResponse(exchange, null, false, null, false, config, meters)).build());
+        }
+        String key = key(route != null ? route.getId() : config.getRouteId(), request, user);
+        return cache.get(key).flatMap(found -> {
+            CachedResponse entry = found.filter(stored -> stored.matchesVary(request.getHeaders())).orElse(null);
+            long now = System.currentTimeMillis();
+            if (entry != null && entry.isFresh(now) && !CachePolicy.requiresRevalidation(request.getHeaders())) {
+                record(meters, CacheResult.HIT, entry.body().length);
+                return serve(exchange.getResponse(), entry, CacheResult.HIT, now, request.getHeaders());
+            }
+            return forward(exchange, chain, key, !ANONYMOUS.equals(user), entry, config, meters);
+        });
+    }
+
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, String key, boolean perUser,
+                               CachedResponse stale, Config config, GatewayMetrics.RouteMeters meters) {
+        ServerWebExchange.Builder forwarded = exchange.mutate();
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        // Only validate on the client's behalf when it did not send validators of its own
+        boolean conditional = stale != null && stale.hasValidators()
+                && requestHeaders.getIfNoneMatch().isEmpty() && requestHeaders.getIfModifiedSince() < 0;
+        if (conditional) {
+            forwarded.request(exchange.getRequest().mutate().headers(headers -> {
+                if (stale.etag() != null) {
+                    headers.setIfNoneMatch(stale.etag());
+                }
+                if (stale.lastModified() >= 0) {
+                    headers.setIfModifiedSince(stale.lastModified());
+                }
+            }).build());
+        }
+        return chain.filter(forwarded
+                .response(new CachingResponse(exchange, key, perUser, stale, conditional, config, meters))
+                .build());
+    }
+
+    /**
+     * The verified token's subject, or the anonymous partition when there is no
+     * Authorization header. Empty when the request carries credentials that do not
+     * verify, or claims a user without a token. RSA and EC tokens are verified off the
+     * event loop, as in AuthenticationFilter.
+     */
+    private Mono<String> user(HttpHeaders headers) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null) {
+            return headers.containsKey(USERNAME_HEADER) ? Mono.empty() : Mono.just(ANONYMOUS);
+        }
+        if (!authorization.startsWith(BEARER)) {
+            return Mono.empty();
+        }
+        return jwtUtil.verify(authorization.substring(BEARER.length()))
+                .mapNotNull(Claims::getSubject);
+    }
+
+    static String key(String routeId, ServerHttpRequest request, String user) {
+        String query = request.getURI().getRawQuery();
+        return routeId + '\n' + request.getURI().getRawPath() + '\n' + (query != null ? query : "") + '\n' + user;
+    }
+
+    private static Mono<Void> serve(ServerHttpResponse response, CachedResponse entry, CacheResult result,
+                                    long now, HttpHeaders requestHeaders) {
+        HttpHeaders headers = response.getHeaders();
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        entry.headers().forEach(headers::put);
+        headers.set(HttpHeaders.AGE, Long.toString(entry.ageSeconds(now)));
+        headers.set(CACHE_HEADER, result.name());
+        if (notModified(entry, requestHeaders)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatusCode.valueOf(entry.status()));
+        headers.setContentLength(entry.body().length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(entry.body())));
+    }
+
+    /**
+     * The client's own validators match the entry, so it already has the body.
+     */
+    private static boolean notModified(CachedResponse entry, HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            if (entry.etag() == null) {
+                return false;
+            }
+            String etag = weak(entry.etag());
+            return ifNoneMatch.stream().anyMatch(tag -> tag.equals("*") || weak(tag).equals(etag));
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince >= 0 && entry.lastModified() >= 0 && entry.lastModified() <= ifModifiedSince;
+    }
+
+    // If-None-Match uses weak comparison
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static void record(GatewayMetrics.RouteMeters meters, CacheResult result, long bytesSaved) {
+        if (meters != null) {
+            meters.recordCache(result, bytesSaved);
+        }
+    }
+
+    private static HttpHeaders toHeaders(Map<String, List<String>> stored) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(stored);
+        return headers;
+    }
+
+    /**
+     * Sees the upstream's response as NettyWriteResponseFilter (or a fallback) writes it:
+     * answers a 304 to our conditional request or a 5xx with the stored entry, and copies
+     * cacheable bodies into the cache on their way to the client.
+     */
+    private final class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders requestHeaders;
+
+        private final String key;
+
+        private final boolean perUser;
+
+        private final CachedResponse stale;
+
+        private final boolean conditional;
+
+        private final Config config;
+
+        private final GatewayMetrics.RouteMeters meters;
+
+        private boolean recorded;
+
+        CachingResponse(ServerWebExchange exchange, String key, boolean perUser, CachedResponse stale,
+                        boolean conditional, Config config, GatewayMetrics.RouteMeters meters) {
+            super(exchange.getResponse());
+            this.requestHeaders = exchange.getRequest().getHeaders();
+            this.key = key;
+            this.perUser = perUser;
+            this.stale = stale;
+            this.conditional = conditional;
+            this.config = config;
+            this.meters = meters;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            long now = System.currentTimeMillis();
+            HttpStatusCode status = getStatusCode();
+            int code = status != null ? status.value() : HttpStatus.OK.value();
+            if (stale != null && code == HttpStatus.NOT_MODIFIED.value() && conditional) {
+                CachedResponse refreshed = revalidate(now);
+                markRecorded(CacheResult.REVALIDATED, refreshed.body().length);
+                return drain(body).then(serve(getDelegate(), refreshed, CacheResult.REVALIDATED, now, clientValidators()));
+            }
+            if (stale != null && status != null && status.is5xxServerError() && config.isStaleIfError()) {
+                markRecorded(CacheResult.STALE, 0);
+                return drain(body).then(serve(getDelegate(), stale, CacheResult.STALE, now, clientValidators()));
+            }
+            markMiss();
+            if (key == null || !CachePolicy.isStorable(code, getHeaders())) {
+                return super.writeWith(body);
+            }
+            HttpHeaders headers = getHeaders();
+            long freshness = CachePolicy.freshnessMillis(headers, now, config.getTtl().toMillis(),
+                    cache.getMaxTtlMillis(), perUser);
+            long maxEntrySize = cache.getMaxEntrySize();
+            boolean validators = headers.getETag() != null || headers.getLastModified() >= 0;
+            if (freshness == CachePolicy.NOT_CACHEABLE || (freshness == 0 && !validators)
+                    || headers.getContentLength() > maxEntrySize) {
+                return super.writeWith(body);
+            }
+            // Headers are final once the body is being written; the body is copied as it passes
+            CachedResponse template = new CachedResponse(code, CachePolicy.storedHeaders(headers), null, now,
+                    now + freshness, now + freshness + cache.getStaleRetentionMillis(), headers.getETag(),
+                    headers.getLastModified(), CachePolicy.vary(headers, requestHeaders));
+            BodyCopy copy = new BodyCopy(maxEntrySize);
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(copy::append)
+                    .doOnComplete(() -> {
+                        byte[] bytes = copy.toByteArray();
+                        if (bytes != null) {
+                            cache.put(key, new CachedResponse(template.status(), template.headers(), bytes,
+                                    template.storedAt(), template.freshUntil(), template.staleUntil(),
+                                    template.etag(), template.lastModified(), template.vary()));
+                        }
+                    }));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Streamed responses are passed through, never stored
+            markMiss();
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            markMiss();
+            return super.setComplete();
+        }
+
+        private CachedResponse revalidate(long now) {
+            // A 304 may carry new Cache-Control or Expires; otherwise the stored ones still apply
+            HttpHeaders notModified = getHeaders();
+            HttpHeaders policy = notModified.containsKey(HttpHeaders.CACHE_CONTROL)
+                    || notModified.containsKey(HttpHeaders.EXPIRES) ? notModified : toHeaders(stale.headers());
+            long freshness = CachePolicy.freshnessMillis(policy, now, config.getTtl().toMillis(),
+                    cache.getMaxTtlMillis(), perUser);
+            CachedResponse refreshed = stale.revalidated(now, Math.max(0, freshness), cache.getStaleRetentionMillis());
+            if (freshness != CachePolicy.NOT_CACHEABLE) {
+                cache.put(key, refreshed);
+            }
+            return refreshed;
+        }
+
+        // With our own validators added the client sent none, so it always gets the body
+        private HttpHeaders clientValidators() {
+            return conditional ? HttpHeaders.EMPTY : requestHeaders;
+        }
+
+        private void markMiss() {
+            if (!recorded) {
+                getHeaders().set(CACHE_HEADER, CacheResult.MISS.name());
+                markRecorded(CacheResult.MISS, 0);
+            }
+        }
+
+        private void markRecorded(CacheResult result, long bytesSaved) {
+            if (!recorded) {
+                recorded = true;
+                record(meters, result, bytesSaved);
+            }
+        }
+
+        private static Mono<Void> drain(Publisher<? extends DataBuffer> body) {
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+        }
+    }
+
+    /**
+     * Heap copy of a response body, abandoned once it outgrows the entry size limit.
+     */
+    private static final class BodyCopy {
+
+        private final long limit;
+
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        BodyCopy(long limit) {
+            this.limit = limit;
+        }
+
+        void append(DataBuffer buffer) {
+            if (bytes == null) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (bytes.size() + (long) length > limit) {
+                bytes = null;
+                return;
+            }
+            byte[] chunk = new byte[length];
+            buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, length);
+            bytes.writeBytes(chunk);
+        }
+
+        byte[] toByteArray() {
+            return bytes != null ? bytes.toByteArray() : null;
+        }
+    }
+
+    @Data
+    public static class Config implements HasRouteId {
+        // Freshness for responses without max-age, s-maxage or Expires; zero keeps them only for revalidation
+        private Duration ttl = Duration.ZERO;
+        // Serve the stored entry when the upstream (or the circuit breaker's fallback) answers 5xx
+        private boolean staleIfError = true;
+        private String routeId;
+    }
+}
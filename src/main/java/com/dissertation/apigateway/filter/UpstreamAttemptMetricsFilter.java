@@ -0,0 +1,77 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
+import com.dissertation.apigateway.trace.UpstreamAttemptEvent;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.factory.RetryGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Times each upstream attempt separately, into the metrics, the exchange's trace and a
+ * JFR event. It sits right before NettyRoutingFilter, so BudgetedRetry re-enters it once
+ * per attempt.
+ */
+@Component
+public class UpstreamAttemptMetricsFilter implements GlobalFilter, Ordered {
+
+    // Nanoseconds the exchange's last upstream attempt took, for the access log
+    public static final String UPSTREAM_LATENCY_ATTR = UpstreamAttemptMetricsFilter.class.getName() + ".latency";
+
+    private final GatewayMetrics metrics;
+
+    public UpstreamAttemptMetricsFilter(GatewayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        GatewayMetrics.RouteMeters meters = metrics.forRoute(route);
+        // BudgetedRetry sets the iteration attribute after the first attempt has finished
+        boolean retry = exchange.getAttribute(RetryGatewayFilterFactory.RETRY_ITERATION_KEY) != null;
+        long start = System.nanoTime();
+        UpstreamAttemptEvent event = UpstreamAttemptEvent.start();
+        // Recorded before the signal travels on, so the attempt is on the trace before the exchange finishes
+        return chain.filter(exchange)
+                .doOnTerminate(() -> finished(exchange, route, meters, retry, start, event))
+                .doOnCancel(() -> finished(exchange, route, meters, retry, start, event));
+    }
+
+    private static void finished(ServerWebExchange exchange, Route route, GatewayMetrics.RouteMeters meters,
+                                 boolean retry, long start, UpstreamAttemptEvent event) {
+        long end = System.nanoTime();
+        exchange.getAttributes().put(UPSTREAM_LATENCY_ATTR, end - start);
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        meters.recordAttempt(retry, status, end - start);
+        // The url the attempt went to, with the replica LoadBalancerFilter picked
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        ExchangeTrace.record(exchange, Phase.UPSTREAM_ATTEMPT, start, end, url);
+        if (event != null) {
+            event.routeId = route.getId();
+            event.url = String.valueOf(url);
+            event.retry = retry;
+            event.status = status != null ? status.value() : 0;
+            event.commit();
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+}
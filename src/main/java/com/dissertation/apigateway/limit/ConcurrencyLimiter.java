@@ -0,0 +1,66 @@
+package com.dissertation.apigateway.limit;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Requests in flight to one upstream service, admitted against its adaptive limit.
+ */
+public final class ConcurrencyLimiter {
+
+    private final String service;
+
+    private final GradientLimit limit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Shed counters by priority ordinal, registered on first use
+    final AtomicReferenceArray<Counter> shedCounters = new AtomicReferenceArray<>(Priority.values().length);
+
+    ConcurrencyLimiter(String service, GradientLimit limit) {
+        this.service = service;
+        this.limit = limit;
+    }
+
+    boolean tryAcquire(Priority priority) {
+        int allowed = priority.allowed(limit.getLimit());
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends a request that reached the upstream and feeds its latency to the limit.
+     */
+    void release(long now, long rttNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        limit.onSample(now, rttNanos, current, dropped);
+    }
+
+    /**
+     * Ends a request without a usable sample, e.g. cancelled by the client.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
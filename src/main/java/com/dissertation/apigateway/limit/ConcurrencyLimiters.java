@@ -0,0 +1,151 @@
+package com.dissertation.apigateway.limit;
+
+import com.dissertation.apigateway.config.ConcurrencyLimitProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The adaptive limiter of every upstream service plus the gateway-wide in-flight cap.
+ * A request is admitted when both have room for its priority. Limits, in-flight
+ * counts and shed requests are published as gateway.concurrency.* meters.
+ */
+@Component
+public class ConcurrencyLimiters {
+
+    public static final String LIMIT = "gateway.concurrency.limit";
+
+    public static final String IN_FLIGHT = "gateway.concurrency.in.flight";
+
+    public static final String SHED = "gateway.concurrency.shed";
+
+    private final ConcurrencyLimitProperties properties;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, String> servicesByAuthority = new HashMap<>();
+
+    private final Map<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+
+    public ConcurrencyLimiters(ConcurrencyLimitProperties properties, UpstreamPoolProperties upstreamProperties,
+                               ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.registry = registry.getIfAvailable();
+        upstreamProperties.getServices().forEach((name, pool) -> {
+            if (pool.getUrl() != null) {
+                servicesByAuthority.put(URI.create(pool.getUrl()).getAuthority(), name);
+            }
+        });
+        if (this.registry != null) {
+            Gauge.builder(IN_FLIGHT, totalInFlight, AtomicInteger::get)
+                    .description("Requests in flight to upstreams behind concurrency limits")
+                    .tag("service", "all")
+                    .register(this.registry);
+        }
+    }
+
+    /**
+     * The group name of an lb:// uri, else the gateway.upstream.services name whose url
+     * matches the uri's host and port, or the host and port themselves for upstreams not
+     * listed there.
+     */
+    public String serviceFor(URI uri) {
+        if ("lb".equals(uri.getScheme()) && uri.getHost() != null) {
+            return uri.getHost();
+        }
+        String authority = uri.getAuthority() != null ? uri.getAuthority() : uri.toString();
+        return servicesByAuthority.getOrDefault(authority, authority);
+    }
+
+    public ConcurrencyLimiter limiter(String service) {
+        ConcurrencyLimiter limiter = limiters.get(service);
+        return limiter != null ? limiter : limiters.computeIfAbsent(service, this::create);
+    }
+
+    /**
+     * Takes a slot in the gateway-wide cap and in the service's limit, or neither.
+     */
+    public boolean tryAcquire(ConcurrencyLimiter limiter, Priority priority) {
+        int allowed = priority.allowed(properties.getMaxInFlight());
+        while (true) {
+            int current = totalInFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (totalInFlight.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        if (!limiter.tryAcquire(priority)) {
+            totalInFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Frees the slots of a request that got an answer (or failed) after rttNanos.
+     */
+    public void release(ConcurrencyLimiter limiter, long rttNanos, boolean dropped) {
+        totalInFlight.decrementAndGet();
+        limiter.release(System.nanoTime(), rttNanos, dropped);
+    }
+
+    /**
+     * Frees the slots of a request that ended without telling anything about the upstream.
+     */
+    public void release(ConcurrencyLimiter limiter) {
+        totalInFlight.decrementAndGet();
+        limiter.release();
+    }
+
+    public void recordShed(ConcurrencyLimiter limiter, Priority priority) {
+        if (registry == null) {
+            return;
+        }
+        Counter counter = limiter.shedCounters.get(priority.ordinal());
+        if (counter == null) {
+            counter = Counter.builder(SHED)
+                    .description("Requests turned away by the concurrency limiter")
+                    .tag("service", limiter.getService())
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(registry);
+            limiter.shedCounters.set(priority.ordinal(), counter);
+        }
+        counter.increment();
+    }
+
+    public int getTotalInFlight() {
+        return totalInFlight.get();
+    }
+
+    private ConcurrencyLimiter create(String service) {
+        ConcurrencyLimitProperties.Limit settings = properties.getServices().getOrDefault(service, properties.getDefaults());
+        GradientLimit limit = new GradientLimit(settings.getInitialLimit(), settings.getMinLimit(), settings.getMaxLimit(),
+                settings.getSmoothing(), settings.getRttTolerance(), settings.getWindow().toNanos(),
+                settings.getMinWindowSamples(), settings.getLongWindow(), System.nanoTime());
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(service, limit);
+        if (registry != null) {
+            Gauge.builder(LIMIT, limiter, ConcurrencyLimiter::getLimit)
+                    .description("Current adaptive concurrency limit of the upstream service")
+                    .tag("service", service)
+                    .register(registry);
+            Gauge.builder(IN_FLIGHT, limiter, ConcurrencyLimiter::getInFlight)
+                    .description("Requests in flight to upstreams behind concurrency limits")
+                    .tag("service", service)
+                    .register(registry);
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,102 @@
+package com.dissertation.apigateway.limit;
+
+/**
+ * Gradient concurrency limit in the style of Netflix's Gradient2. Latency samples are
+ * averaged per window; the window average is compared with a long-term baseline, and
+ * while it stays within the tolerance the limit grows by a queue allowance of
+ * sqrt(limit), otherwise it shrinks in proportion to how much slower the upstream got.
+ * Windows with dropped requests (errors, timeouts, 5xx) back the limit off.
+ */
+final class GradientLimit {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double smoothing;
+
+    private final double rttTolerance;
+
+    private final long windowNanos;
+
+    private final int minWindowSamples;
+
+    private final double longDecay;
+
+    private volatile double limit;
+
+    // Window state and baseline, guarded by this
+    private long windowStart;
+
+    private long rttSum;
+
+    private int samples;
+
+    private int peakInFlight;
+
+    private boolean dropped;
+
+    private double longRtt;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit, double smoothing, double rttTolerance,
+                  long windowNanos, int minWindowSamples, int longWindow, long now) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.windowNanos = windowNanos;
+        this.minWindowSamples = minWindowSamples;
+        this.longDecay = 2.0 / (longWindow + 1);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.windowStart = now;
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Records one completed request; the limit moves at most once per window.
+     */
+    synchronized void onSample(long now, long rttNanos, int inFlight, boolean didDrop) {
+        rttSum += rttNanos;
+        samples++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+        dropped |= didDrop;
+        if (now - windowStart < windowNanos || samples < minWindowSamples) {
+            return;
+        }
+        update((double) rttSum / samples, peakInFlight, dropped);
+        windowStart = now;
+        rttSum = 0;
+        samples = 0;
+        peakInFlight = 0;
+        dropped = false;
+    }
+
+    private void update(double shortRtt, int inFlight, boolean didDrop) {
+        longRtt = longRtt == 0 ? shortRtt : longRtt + (shortRtt - longRtt) * longDecay;
+        // When latency drops for good, pull the baseline down quickly instead of waiting for the average
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        double current = limit;
+        double target;
+        if (didDrop) {
+            target = current * BACKOFF_RATIO;
+        } else if (inFlight < current / 2) {
+            // The upstream was never pushed near the limit, so latency says nothing about raising it
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+            target = current * gradient + Math.sqrt(current);
+        }
+        double next = current * (1 - smoothing) + target * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
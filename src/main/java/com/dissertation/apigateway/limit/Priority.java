@@ -0,0 +1,26 @@
+package com.dissertation.apigateway.limit;
+
+/**
+ * How early a route's requests are shed. Each priority may only fill its share of a
+ * limit, so as in-flight requests approach the limit LOW traffic is turned away first
+ * and CRITICAL traffic last.
+ */
+public enum Priority {
+    CRITICAL(1.0),
+    HIGH(0.9),
+    NORMAL(0.8),
+    LOW(0.6);
+
+    private final double share;
+
+    Priority(double share) {
+        this.share = share;
+    }
+
+    /**
+     * Requests of this priority admitted under the given limit, at least one.
+     */
+    int allowed(int limit) {
+        return Math.max(1, (int) (limit * share));
+    }
+}
@@ -0,0 +1,78 @@
+package com.dissertation.apigateway.logging;
+
+/**
+ * Mutable access-log entry. Instances are pre-allocated by AccessLogRingBuffer
+ * and reused, so a record is only valid until the writer has consumed it.
+ */
+public final class AccessLogRecord {
+
+    long timestamp;
+    String method;
+    String path;
+    String routeId;
+    int status;
+    // Last upstream attempt, -1 when the exchange never reached an upstream
+    long upstreamLatencyMicros;
+    // Body bytes written to the client
+    long bytes;
+
+    void set(long timestamp, String method, String path, String routeId, int status, long upstreamLatencyMicros,
+             long bytes) {
+        this.timestamp = timestamp;
+        this.method = method;
+        this.path = path;
+        this.routeId = routeId;
+        this.status = status;
+        this.upstreamLatencyMicros = upstreamLatencyMicros;
+        this.bytes = bytes;
+    }
+
+    void clear() {
+        method = null;
+        path = null;
+        routeId = null;
+    }
+
+    /**
+     * Appends this record as one JSON object (without trailing newline).
+     */
+    void appendJson(StringBuilder out) {
+        out.append("{\"ts\":").append(timestamp)
+                .append(",\"method\":");
+        appendString(out, method);
+        out.append(",\"path\":");
+        appendString(out, path);
+        out.append(",\"route\":");
+        appendString(out, routeId);
+        out.append(",\"status\":").append(status)
+                .append(",\"upstreamUs\":").append(upstreamLatencyMicros)
+                .append(",\"bytes\":").append(bytes)
+                .append('}');
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,94 @@
+package com.dissertation.apigateway.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring of pre-allocated
+ * AccessLogRecord slots. Each slot carries a sequence number that tells producers
+ * when it is free and the consumer when it has been published. When the ring is
+ * full the record is dropped rather than blocking the event loop.
+ */
+public final class AccessLogRingBuffer {
+
+    private final AccessLogRecord[] records;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong producerCursor = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+
+    // Only touched by the single consumer thread
+    private long consumerCursor;
+
+    public AccessLogRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.records = new AccessLogRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new AccessLogRecord();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Claims a slot and fills it. Returns false if the ring is full.
+     */
+    public boolean publish(long timestamp, String method, String path, String routeId,
+                           int status, long upstreamLatencyMicros, long bytes) {
+        long position;
+        while (true) {
+            position = producerCursor.get();
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (producerCursor.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.increment();
+                return false;
+            }
+        }
+        int index = (int) position & mask;
+        records[index].set(timestamp, method, path, routeId, status, upstreamLatencyMicros, bytes);
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Hands every published record to the consumer and frees its slot.
+     * Must only be called from one thread.
+     *
+     * @return the number of records drained
+     */
+    public int drain(Consumer<AccessLogRecord> consumer) {
+        int drained = 0;
+        while (true) {
+            long position = consumerCursor;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return drained;
+            }
+            AccessLogRecord record = records[index];
+            consumer.accept(record);
+            record.clear();
+            sequences.lazySet(index, position + records.length);
+            consumerCursor = position + 1;
+            drained++;
+        }
+    }
+
+    public int capacity() {
+        return records.length;
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+}
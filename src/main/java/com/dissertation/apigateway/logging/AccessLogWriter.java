@@ -0,0 +1,148 @@
+package com.dissertation.apigateway.logging;
+
+import com.dissertation.apigateway.config.AccessLogProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples access-log records into the ring buffer on the request path and writes
+ * them as JSON lines from a single background thread.
+ */
+@Component
+@Slf4j
+public class AccessLogWriter {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final AccessLogProperties properties;
+
+    private final AccessLogRingBuffer ringBuffer;
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private Writer out;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    public AccessLogWriter(AccessLogProperties properties) {
+        this.properties = properties;
+        this.ringBuffer = new AccessLogRingBuffer(properties.getBufferSize());
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Path file = Path.of(properties.getFile());
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        if (meterRegistry != null) {
+            FunctionCounter.builder("gateway.access-log.dropped", ringBuffer, AccessLogRingBuffer::droppedCount)
+                    .description("Access-log records dropped because the ring buffer was full")
+                    .register(meterRegistry);
+        }
+        running = true;
+        worker = new Thread(this::run, "access-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Records one finished exchange, subject to sampling. Never blocks. A negative
+     * upstream latency means no upstream was called.
+     */
+    public void record(String method, String path, String routeId, int status, long upstreamLatencyNanos, long bytes) {
+        if (!running || !isSampled(status)) {
+            return;
+        }
+        ringBuffer.publish(System.currentTimeMillis(), method, path, routeId, status,
+                upstreamLatencyNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(upstreamLatencyNanos), bytes);
+    }
+
+    private boolean isSampled(int status) {
+        if (status >= 400 && properties.isAlwaysLogErrors()) {
+            return true;
+        }
+        double sampleRate = properties.getSampleRate();
+        return sampleRate >= 1.0 || (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private void run() {
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        while (running) {
+            int drained = ringBuffer.drain(this::write);
+            dirty |= drained > 0;
+            long now = System.nanoTime();
+            if (dirty && now - lastFlush >= flushIntervalNanos) {
+                flush();
+                dirty = false;
+                lastFlush = now;
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        ringBuffer.drain(this::write);
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Failed to close access log: {}", e.getMessage());
+        }
+    }
+
+    private void write(AccessLogRecord record) {
+        line.setLength(0);
+        record.appendJson(line);
+        line.append('\n');
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            log.warn("Failed to write access log record: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Failed to flush access log: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.dissertation.apigateway.metrics;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms for the gateway, published through Micrometer (scraped at
+ * /actuator/prometheus). Timers are resolved once per route and then looked up by
+ * array index, so recording a request allocates no tags, ids or meters.
+ */
+@Component
+@Slf4j
+public class GatewayMetrics implements ApplicationListener<RefreshRoutesResultEvent> {
+
+    public static final String REQUESTS = "gateway.requests";
+
+    public static final String UPSTREAM_ATTEMPTS = "gateway.upstream.attempts";
+
+    public static final String AUTH = "gateway.auth";
+
+    public static final String RETRIES = "gateway.retries";
+
+    public static final String CACHE_REQUESTS = "gateway.cache.requests";
+
+    public static final String CACHE_BYTES_SAVED = "gateway.cache.bytes.saved";
+
+    public static final String COALESCING = "gateway.coalescing";
+
+    public static final String HEDGING = "gateway.hedging";
+
+    public static final String BATCHING = "gateway.batching";
+
+    public static final String BATCHES = "gateway.batches";
+
+    private static final String CIRCUIT_BREAKER_FILTER = "CircuitBreaker";
+
+    private static final String[] STATUS_CLASSES = {"none", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private static final CircuitBreaker.State[] CB_STATES = CircuitBreaker.State.values();
+
+    // Last slot is used for routes without a circuit breaker
+    private static final int CB_SLOTS = CB_STATES.length + 1;
+
+    private static final String[] ATTEMPTS = {"first", "retry"};
+
+    private static final RetryOutcome[] RETRY_OUTCOMES = RetryOutcome.values();
+
+    private static final CacheResult[] CACHE_RESULTS = CacheResult.values();
+
+    private static final CoalesceOutcome[] COALESCE_OUTCOMES = CoalesceOutcome.values();
+
+    private static final HedgeOutcome[] HEDGE_OUTCOMES = HedgeOutcome.values();
+
+    private static final BatchOutcome[] BATCH_OUTCOMES = BatchOutcome.values();
+
+    private final MeterRegistry registry;
+
+    private final ObjectProvider<RouteDefinitionLocator> routeDefinitionLocator;
+
+    private final ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry;
+
+    private final Map<String, RouteMeters> routes = new ConcurrentHashMap<>();
+
+    private volatile Map<String, String> circuitBreakerNames = Map.of();
+
+    private final Timer authSuccess;
+
+    private final Timer authRejected;
+
+    public GatewayMetrics(MeterRegistry registry, ObjectProvider<RouteDefinitionLocator> routeDefinitionLocator,
+                          ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry) {
+        this.registry = registry;
+        this.routeDefinitionLocator = routeDefinitionLocator;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.authSuccess = histogram(Timer.builder(AUTH).tag("outcome", "success")
+                .description("Bearer token validation in AuthenticationFilter"));
+        this.authRejected = histogram(Timer.builder(AUTH).tag("outcome", "rejected")
+                .description("Bearer token validation in AuthenticationFilter"));
+    }
+
+    /**
+     * Meters for a route, built on the first request after each route refresh.
+     */
+    public RouteMeters forRoute(Route route) {
+        RouteMeters meters = routes.get(route.getId());
+        if (meters == null) {
+            meters = routes.computeIfAbsent(route.getId(), id -> new RouteMeters(route));
+        }
+        return meters;
+    }
+
+    public void recordAuth(boolean success, long nanos) {
+        (success ? authSuccess : authRejected).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Re-reads which circuit breaker each route uses and drops the cached route meters,
+     * so upstream and circuit-breaker tags follow the refreshed routes.
+     */
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        RouteDefinitionLocator locator = routeDefinitionLocator.getIfAvailable();
+        if (locator == null || !event.isSuccess()) {
+            return;
+        }
+        locator.getRouteDefinitions()
+                .collectList()
+                .subscribe(definitions -> {
+                    Map<String, String> names = new HashMap<>();
+                    for (RouteDefinition definition : definitions) {
+                        String name = circuitBreakerName(definition);
+                        if (name != null) {
+                            names.put(definition.getId(), name);
+                        }
+                    }
+                    circuitBreakerNames = Map.copyOf(names);
+                    routes.clear();
+                }, error -> log.warn("Could not read route definitions for metrics: {}", error.toString()));
+    }
+
+    private static String circuitBreakerName(RouteDefinition definition) {
+        for (FilterDefinition filter : definition.getFilters()) {
+            if (CIRCUIT_BREAKER_FILTER.equals(filter.getName())) {
+                Map<String, String> args = filter.getArgs();
+                // Shortcut form "CircuitBreaker=name" stores the name under a generated key
+                return args.getOrDefault("name", args.get("_genkey_0"));
+            }
+        }
+        return null;
+    }
+
+    private Timer histogram(Timer.Builder builder) {
+        return builder
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    static int statusClass(HttpStatusCode status) {
+        if (status == null) {
+            return 0;
+        }
+        int series = status.value() / 100;
+        return series >= 1 && series <= 5 ? series : 0;
+    }
+
+    /**
+     * What the BudgetedRetry filter did with a failed attempt.
+     */
+    public enum RetryOutcome {
+        RETRIED,
+        ATTEMPTS_EXHAUSTED,
+        BUDGET_EXHAUSTED,
+        CIRCUIT_NOT_CLOSED,
+        NOT_IDEMPOTENT,
+        BODY_NOT_REPLAYABLE;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * How the ResponseCache filter answered a GET; the result is also sent as X-Cache.
+     */
+    public enum CacheResult {
+        HIT,
+        MISS,
+        STALE,
+        REVALIDATED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * What the Coalesce filter did with a GET: sent it upstream as the leader of its
+     * flight, answered it from the leader's response, or sent it after all because the
+     * wait ran out or the leader's response could not be shared.
+     */
+    public enum CoalesceOutcome {
+        LEADER,
+        COALESCED,
+        TIMED_OUT,
+        LEADER_FAILED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * What the Hedge filter did with a GET: answered before the hedge delay, found the
+     * hedge budget empty, or sent a hedge, after which the primary's result or the
+     * hedge's response was used.
+     */
+    public enum HedgeOutcome {
+        NOT_HEDGED,
+        BUDGET_EXHAUSTED,
+        PRIMARY_WON,
+        HEDGE_WON;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * What the Batch filter did with a request: added it to a batch, proxied it on its own
+     * (not a JSON POST, or too large), or turned it away because max-pending batches were
+     * open or in flight.
+     */
+    public enum BatchOutcome {
+        BATCHED,
+        PASSED_THROUGH,
+        REJECTED;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * Timers of one route, indexed by status class, circuit-breaker state and attempt.
+     */
+    public final class RouteMeters {
+
+        private final String routeId;
+
+        private final String upstream;
+
+        private final CircuitBreaker circuitBreaker;
+
+        private final AtomicReferenceArray<Timer> requestTimers = new AtomicReferenceArray<>(STATUS_CLASSES.length * CB_SLOTS);
+
+        private final AtomicReferenceArray<Timer> attemptTimers = new AtomicReferenceArray<>(STATUS_CLASSES.length * ATTEMPTS.length);
+
+        private final AtomicReferenceArray<Counter> retryCounters = new AtomicReferenceArray<>(RETRY_OUTCOMES.length);
+
+        private final AtomicReferenceArray<Counter> cacheCounters = new AtomicReferenceArray<>(CACHE_RESULTS.length);
+
+        private volatile Counter cacheBytesSaved;
+
+        private final AtomicReferenceArray<Counter> coalesceCounters = new AtomicReferenceArray<>(COALESCE_OUTCOMES.length);
+
+        private final AtomicReferenceArray<Counter> hedgeCounters = new AtomicReferenceArray<>(HEDGE_OUTCOMES.length);
+
+        private final AtomicReferenceArray<Counter> batchCounters = new AtomicReferenceArray<>(BATCH_OUTCOMES.length);
+
+        private volatile DistributionSummary batchesAcknowledged;
+
+        private volatile DistributionSummary batchesFailed;
+
+        RouteMeters(Route route) {
+            this.routeId = route.getId();
+            String host = route.getUri().getHost();
+            this.upstream = host != null ? host : route.getUri().getScheme();
+            String cbName = circuitBreakerNames.get(routeId);
+            CircuitBreakerRegistry cbRegistry = circuitBreakerRegistry.getIfAvailable();
+            this.circuitBreaker = cbName != null && cbRegistry != null ? cbRegistry.circuitBreaker(cbName) : null;
+        }
+
+        /**
+         * The route's circuit breaker, null when the route has none.
+         */
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        /**
+         * Whole exchange as seen by the client, including retries and fallbacks.
+         */
+        public void recordRequest(HttpStatusCode status, long nanos) {
+            int cbSlot = circuitBreaker != null ? circuitBreaker.getState().ordinal() : CB_STATES.length;
+            int index = statusClass(status) * CB_SLOTS + cbSlot;
+            Timer timer = requestTimers.get(index);
+            if (timer == null) {
+                timer = histogram(Timer.builder(REQUESTS)
+                        .description("Gateway exchanges by route, upstream, status class and circuit-breaker state")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("status", STATUS_CLASSES[statusClass(status)])
+                        .tag("circuit_breaker", cbSlot < CB_STATES.length ? CB_STATES[cbSlot].name().toLowerCase() : "none"));
+                requestTimers.set(index, timer);
+            }
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * One call to the upstream; a retried request records several.
+         */
+        public void recordAttempt(boolean retry, HttpStatusCode status, long nanos) {
+            int attempt = retry ? 1 : 0;
+            int index = statusClass(status) * ATTEMPTS.length + attempt;
+            Timer timer = attemptTimers.get(index);
+            if (timer == null) {
+                timer = histogram(Timer.builder(UPSTREAM_ATTEMPTS)
+                        .description("Individual upstream attempts, including retries")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("status", STATUS_CLASSES[statusClass(status)])
+                        .tag("attempt", ATTEMPTS[attempt]));
+                attemptTimers.set(index, timer);
+            }
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * A retry decision; retried against first attempts is the extra load retries add.
+         */
+        public void recordRetry(RetryOutcome outcome) {
+            Counter counter = retryCounters.get(outcome.ordinal());
+            if (counter == null) {
+                counter = Counter.builder(RETRIES)
+                        .description("Retry decisions on failed upstream attempts")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("outcome", outcome.tag)
+                        .register(registry);
+                retryCounters.set(outcome.ordinal(), counter);
+            }
+            counter.increment();
+        }
+
+        /**
+         * A cached GET; bytesSaved is the body the upstream did not have to send.
+         */
+        public void recordCache(CacheResult result, long bytesSaved) {
+            Counter counter = cacheCounters.get(result.ordinal());
+            if (counter == null) {
+                counter = Counter.builder(CACHE_REQUESTS)
+                        .description("GET requests on cached routes by cache result")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("result", result.tag)
+                        .register(registry);
+                cacheCounters.set(result.ordinal(), counter);
+            }
+            counter.increment();
+            if (bytesSaved > 0) {
+                Counter saved = cacheBytesSaved;
+                if (saved == null) {
+                    saved = Counter.builder(CACHE_BYTES_SAVED)
+                            .description("Response body bytes served from the cache instead of the upstream")
+                            .baseUnit("bytes")
+                            .tag("route", routeId)
+                            .tag("upstream", upstream)
+                            .register(registry);
+                    cacheBytesSaved = saved;
+                }
+                saved.increment(bytesSaved);
+            }
+        }
+
+        /**
+         * A coalescing decision; coalesced against the total is the share of requests the upstream never saw.
+         */
+        public void recordCoalesce(CoalesceOutcome outcome) {
+            Counter counter = coalesceCounters.get(outcome.ordinal());
+            if (counter == null) {
+                counter = Counter.builder(COALESCING)
+                        .description("GET requests on coalescing routes by how they were answered")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("outcome", outcome.tag)
+                        .register(registry);
+                coalesceCounters.set(outcome.ordinal(), counter);
+            }
+            counter.increment();
+        }
+
+        /**
+         * A hedging decision; hedges sent are primary_won plus hedge_won, and hedge_won among
+         * them is how often the hedge was faster.
+         */
+        public void recordHedge(HedgeOutcome outcome) {
+            Counter counter = hedgeCounters.get(outcome.ordinal());
+            if (counter == null) {
+                counter = Counter.builder(HEDGING)
+                        .description("GET requests on hedged routes by whether a hedge was sent and which request won")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("outcome", outcome.tag)
+                        .register(registry);
+                hedgeCounters.set(outcome.ordinal(), counter);
+            }
+            counter.increment();
+        }
+
+        /**
+         * A request on a batching route; batched over all is the share of calls folded into batches.
+         */
+        public void recordBatchItem(BatchOutcome outcome) {
+            Counter counter = batchCounters.get(outcome.ordinal());
+            if (counter == null) {
+                counter = Counter.builder(BATCHING)
+                        .description("POST requests on batching routes by whether they were batched")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("outcome", outcome.tag)
+                        .register(registry);
+                batchCounters.set(outcome.ordinal(), counter);
+            }
+            counter.increment();
+        }
+
+        /**
+         * One batch sent upstream, by its number of items and whether a 2xx acknowledged it.
+         */
+        public void recordBatch(int items, boolean acknowledged) {
+            DistributionSummary summary = acknowledged ? batchesAcknowledged : batchesFailed;
+            if (summary == null) {
+                summary = DistributionSummary.builder(BATCHES)
+                        .description("Batches sent upstream by the Batch filter, by items per batch and result")
+                        .baseUnit("items")
+                        .tag("route", routeId)
+                        .tag("upstream", upstream)
+                        .tag("result", acknowledged ? "acknowledged" : "failed")
+                        .register(registry);
+                if (acknowledged) {
+                    batchesAcknowledged = summary;
+                } else {
+                    batchesFailed = summary;
+                }
+            }
+            summary.record(items);
+        }
+    }
+}
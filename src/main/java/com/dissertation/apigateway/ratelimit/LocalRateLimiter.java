@@ -0,0 +1,239 @@
+package com.dissertation.apigateway.ratelimit;
+
+import com.dissertation.apigateway.config.RateLimiterProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns the per-route token buckets used by LocalRateLimiterGatewayFilterFactory.
+ * Every allow/deny decision is made locally; a background task periodically pushes
+ * the tokens each bucket consumed to Redis and pulls back what other replicas
+ * consumed in the same window. When Redis is slow or missing the limiter keeps
+ * working on local buckets only.
+ */
+@Component
+@Slf4j
+public class LocalRateLimiter {
+
+    private static final int SYNC_CONCURRENCY = 64;
+
+    private final RateLimiterProperties properties;
+
+    private final ReactiveStringRedisTemplate redis;
+
+    private final Map<String, BucketGroup> groups = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean syncInFlight = new AtomicBoolean();
+
+    private volatile boolean degraded;
+
+    private volatile long retryRedisAt;
+
+    private Scheduler scheduler;
+
+    private Disposable syncTask;
+
+    public LocalRateLimiter(RateLimiterProperties properties, ObjectProvider<ReactiveStringRedisTemplate> redis) {
+        this.properties = properties;
+        this.redis = properties.isRedisSync() ? redis.getIfAvailable() : null;
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = properties.getSyncInterval().toNanos();
+        scheduler = Schedulers.newSingle("rate-limit-sync", true);
+        syncTask = scheduler.schedulePeriodically(this::runSync, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (syncTask != null) {
+            syncTask.dispose();
+        }
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * Returns the bucket group for a route, creating it on first use.
+     */
+    public BucketGroup group(String routeId, int replenishRate, int burstCapacity) {
+        return groups.computeIfAbsent(routeId, id -> new BucketGroup(
+                properties.getKeyPrefix() + ":" + id + ":", replenishRate, burstCapacity));
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    void runSync() {
+        evictIdle(System.nanoTime());
+        if (redis == null || (degraded && System.nanoTime() - retryRedisAt < 0)) {
+            return;
+        }
+        if (!syncInFlight.compareAndSet(false, true)) {
+            return;
+        }
+        reconcile()
+                .timeout(properties.getSyncTimeout())
+                .doFinally(signal -> syncInFlight.set(false))
+                .subscribe(null, this::onSyncFailure, this::onSyncSuccess);
+    }
+
+    /**
+     * One reconciliation round: INCRBY the shared window counter of every active bucket
+     * with its local consumption and apply the difference to the local bucket. The
+     * commands are pipelined over the shared Lettuce connection. When the round fails or
+     * is cancelled by the sync timeout, deltas whose INCRBY was not acknowledged go back
+     * to their buckets for the next round; one that landed without a reply is then
+     * counted twice, which errs towards limiting rather than losing consumption.
+     */
+    Mono<Void> reconcile() {
+        long windowMillis = properties.getSyncWindow().toMillis();
+        long window = System.currentTimeMillis() / windowMillis;
+        List<PendingSync> pending = new ArrayList<>();
+        for (BucketGroup group : groups.values()) {
+            for (TokenBucket bucket : group.buckets.values()) {
+                long delta = bucket.drainUnsynced();
+                // Buckets touched in this window still pull remote consumption
+                if (delta > 0 || bucket.syncWindow == window) {
+                    pending.add(new PendingSync(bucket, delta));
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(pending)
+                .flatMap(sync -> {
+                    String key = sync.bucket.redisKey() + window;
+                    return redis.opsForValue().increment(key, sync.delta)
+                            .doOnNext(total -> {
+                                if (sync.settle()) {
+                                    apply(sync.bucket, window, sync.delta, total);
+                                }
+                            })
+                            .then(redis.expire(key, properties.getSyncWindow().multipliedBy(2)));
+                }, SYNC_CONCURRENCY)
+                .then()
+                .doFinally(signal -> pending.forEach(sync -> {
+                    if (sync.settle()) {
+                        sync.bucket.returnUnsynced(sync.delta);
+                    }
+                }));
+    }
+
+    private static void apply(TokenBucket bucket, long window, long delta, long globalTotal) {
+        if (bucket.syncWindow != window) {
+            bucket.syncWindow = window;
+            bucket.contributedInWindow = 0;
+            bucket.remoteAppliedInWindow = 0;
+        }
+        bucket.contributedInWindow += delta;
+        long remote = globalTotal - bucket.contributedInWindow;
+        long unapplied = remote - bucket.remoteAppliedInWindow;
+        if (unapplied > 0) {
+            bucket.consumeRemote(unapplied, System.nanoTime());
+            bucket.remoteAppliedInWindow = remote;
+        }
+    }
+
+    private void onSyncSuccess() {
+        if (degraded) {
+            degraded = false;
+            log.info("Redis reachable again, rate limits are shared across replicas");
+        }
+    }
+
+    private void onSyncFailure(Throwable error) {
+        retryRedisAt = System.nanoTime() + properties.getDegradedRetryInterval().toNanos();
+        if (!degraded) {
+            degraded = true;
+            log.warn("Redis rate-limit sync failed, falling back to local-only limits: {}", error.toString());
+        }
+    }
+
+    private void evictIdle(long now) {
+        long idleNanos = properties.getIdleEviction().toNanos();
+        for (BucketGroup group : groups.values()) {
+            group.buckets.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+        }
+    }
+
+    /**
+     * A bucket's delta in one round, settled exactly once: credited when Redis
+     * acknowledges its INCRBY, or handed back to the bucket when the round ends without.
+     */
+    private static final class PendingSync {
+
+        private final TokenBucket bucket;
+
+        private final long delta;
+
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        PendingSync(TokenBucket bucket, long delta) {
+            this.bucket = bucket;
+            this.delta = delta;
+        }
+
+        boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Buckets of one route, keyed by client (username or IP).
+     */
+    public static final class BucketGroup {
+
+        private final String redisKeyPrefix;
+
+        private final int replenishRate;
+
+        private final int burstCapacity;
+
+        // ConcurrentHashMap stripes its bins, so lookups for different clients do not contend
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        BucketGroup(String redisKeyPrefix, int replenishRate, int burstCapacity) {
+            this.redisKeyPrefix = redisKeyPrefix;
+            this.replenishRate = replenishRate;
+            this.burstCapacity = burstCapacity;
+        }
+
+        public TokenBucket bucket(String clientKey) {
+            TokenBucket bucket = buckets.get(clientKey);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(clientKey, key -> new TokenBucket(
+                        redisKeyPrefix + key + ":", replenishRate, burstCapacity, System.nanoTime()));
+            }
+            return bucket;
+        }
+
+        public int getReplenishRate() {
+            return replenishRate;
+        }
+
+        public int getBurstCapacity() {
+            return burstCapacity;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.dissertation.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket expressed as a generic cell rate algorithm: the whole bucket
+ * state is one "theoretical arrival time" updated with a single CAS, so a decision
+ * never blocks and never allocates.
+ */
+public final class TokenBucket {
+
+    private final String redisKey;
+
+    private final long emissionIntervalNanos;
+
+    private final long capacityNanos;
+
+    private final AtomicLong theoreticalArrival;
+
+    // Tokens taken locally since the last Redis sync
+    private final AtomicLong unsyncedTokens = new AtomicLong();
+
+    // Reconciliation state, only touched by one sync round at a time
+    long syncWindow = -1;
+    long contributedInWindow;
+    long remoteAppliedInWindow;
+
+    TokenBucket(String redisKey, int replenishRate, int burstCapacity, long now) {
+        this.redisKey = redisKey;
+        this.emissionIntervalNanos = 1_000_000_000L / Math.max(1, replenishRate);
+        this.capacityNanos = emissionIntervalNanos * Math.max(1, burstCapacity);
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    /**
+     * Takes one token if available.
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                unsyncedTokens.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tokens currently left in the bucket.
+     */
+    public long remaining(long now) {
+        long used = Math.max(theoreticalArrival.get(), now) - now;
+        return Math.max(0, (capacityNanos - used) / emissionIntervalNanos);
+    }
+
+    /**
+     * Nanoseconds until the next token becomes available, 0 if one is available now.
+     */
+    public long nanosUntilNextToken(long now) {
+        long used = Math.max(theoreticalArrival.get(), now) - now;
+        return Math.max(0, used + emissionIntervalNanos - capacityNanos);
+    }
+
+    /**
+     * Removes tokens consumed on other gateway replicas. The bucket never goes
+     * below empty, so a late sync cannot lock a client out for longer than one refill.
+     */
+    void consumeRemote(long tokens, long now) {
+        if (tokens <= 0) {
+            return;
+        }
+        long delta = tokens * emissionIntervalNanos;
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.min(Math.max(current, now) + delta, now + capacityNanos);
+            if (next <= current || theoreticalArrival.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    long drainUnsynced() {
+        return unsyncedTokens.getAndSet(0);
+    }
+
+    /**
+     * Puts back tokens drained for a sync that Redis never acknowledged.
+     */
+    void returnUnsynced(long tokens) {
+        if (tokens > 0) {
+            unsyncedTokens.addAndGet(tokens);
+        }
+    }
+
+    /**
+     * A bucket that has refilled completely and seen no traffic can be dropped.
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return unsyncedTokens.get() == 0 && now - theoreticalArrival.get() > idleNanos;
+    }
+
+    String redisKey() {
+        return redisKey;
+    }
+}
@@ -0,0 +1,90 @@
+package com.dissertation.apigateway.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that lets retries add at most a fixed share of a route's live traffic.
+ * Every request deposits ratio tokens, every retry withdraws one, and a small floor
+ * of tokens per second keeps retries possible on quiet routes. The balance is capped,
+ * so a long healthy period cannot bank an unbounded retry storm.
+ */
+public final class RetryBudget {
+
+    // Balances are kept in thousandths of a token so fractional deposits need no floating point
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+
+    private final long capacity;
+
+    private final long floorNanosPerToken;
+
+    private final AtomicLong balance;
+
+    private final AtomicLong lastFloorRefill;
+
+    public RetryBudget(double ratio, int minRetriesPerSecond, int capacity, long now) {
+        if (ratio < 0 || minRetriesPerSecond < 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid retry budget: ratio=" + ratio
+                    + ", minRetriesPerSecond=" + minRetriesPerSecond + ", capacity=" + capacity);
+        }
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.capacity = capacity * SCALE;
+        this.floorNanosPerToken = minRetriesPerSecond > 0 ? 1_000_000_000L / minRetriesPerSecond : 0;
+        this.balance = new AtomicLong(Math.min(this.capacity, minRetriesPerSecond * SCALE));
+        this.lastFloorRefill = new AtomicLong(now);
+    }
+
+    /**
+     * Credits the budget for one incoming request.
+     */
+    public void deposit() {
+        add(depositPerRequest);
+    }
+
+    /**
+     * Takes one retry from the budget if there is one left.
+     */
+    public boolean tryWithdraw(long now) {
+        refillFloor(now);
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Whole retries currently available.
+     */
+    public long available(long now) {
+        refillFloor(now);
+        return balance.get() / SCALE;
+    }
+
+    private void refillFloor(long now) {
+        if (floorNanosPerToken == 0) {
+            return;
+        }
+        long last = lastFloorRefill.get();
+        long tokens = (now - last) / floorNanosPerToken;
+        // Only the thread that moves the refill clock credits the tokens
+        if (tokens > 0 && lastFloorRefill.compareAndSet(last, last + tokens * floorNanosPerToken)) {
+            add(tokens * SCALE);
+        }
+    }
+
+    private void add(long amount) {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + amount);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.dissertation.apigateway.retry;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.TimeWindowPercentileHistogram;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One percentile of recent latencies, over a window that rotates so old samples age out.
+ * Recording is lock-free; the percentile is recomputed at most once per refresh interval,
+ * so reading it on every request stays cheap.
+ */
+public final class RollingPercentile {
+
+    private static final long REFRESH_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final TimeWindowPercentileHistogram histogram;
+
+    private final Clock clock;
+
+    private final int minSamples;
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private volatile long valueNanos = -1;
+
+    private volatile long refreshedAt;
+
+    public RollingPercentile(double percentile, Duration window, int minSamples, Clock clock) {
+        this.clock = clock;
+        this.minSamples = minSamples;
+        // Three rotating buffers, so the percentile covers between two and three thirds of the window
+        this.histogram = new TimeWindowPercentileHistogram(clock, DistributionStatisticConfig.builder()
+                .percentiles(percentile)
+                .percentilePrecision(2)
+                .expiry(window.dividedBy(3))
+                .bufferLength(3)
+                .build()
+                .merge(DistributionStatisticConfig.DEFAULT), false);
+        this.refreshedAt = clock.monotonicTime() - REFRESH_NANOS;
+    }
+
+    public void record(long nanos) {
+        histogram.recordLong(nanos);
+        samples.incrementAndGet();
+    }
+
+    /**
+     * The percentile in nanoseconds, or -1 until min-samples latencies have been recorded
+     * and while the window is empty.
+     */
+    public long valueNanos() {
+        if (samples.get() < minSamples) {
+            return -1;
+        }
+        long now = clock.monotonicTime();
+        if (now - refreshedAt >= REFRESH_NANOS) {
+            refreshedAt = now;
+            ValueAtPercentile[] values = histogram.takeSnapshot(0, 0, 0).percentileValues();
+            // Nothing left in the window reads as zero, which is no estimate at all
+            valueNanos = values.length > 0 && values[0].value() > 0 ? (long) values[0].value() : -1;
+        }
+        return valueNanos;
+    }
+}
@@ -0,0 +1,121 @@
+package com.dissertation.apigateway.route;
+
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
+import com.dissertation.apigateway.trace.RouteMatchEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * RoutePredicateHandlerMapping that looks routes up through a RouteIndex instead of
+ * testing every route predicate in sequence. Only the candidates returned by the index
+ * have their predicates evaluated, so matching semantics (including the URI template
+ * variables set by the Path predicate) are unchanged.
+ * <p>
+ * The index is rebuilt whenever the gateway finishes a route refresh, including the
+ * initial one at startup. Until the first index exists the stock sequential lookup is used.
+ */
+@Slf4j
+public class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping
+        implements ApplicationListener<RefreshRoutesResultEvent> {
+
+    private final RouteLocator routeLocator;
+
+    private final RouteDefinitionLocator routeDefinitionLocator;
+
+    private volatile RouteIndex index;
+
+    public IndexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator,
+                                               RouteDefinitionLocator routeDefinitionLocator,
+                                               GlobalCorsProperties globalCorsProperties, Environment environment) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeLocator = routeLocator;
+        this.routeDefinitionLocator = routeDefinitionLocator;
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        if (event.isSuccess()) {
+            refreshIndex().subscribe(null, e -> log.error("Failed to rebuild route index", e));
+        }
+    }
+
+    /**
+     * Recompiles the index from the current routes and route definitions.
+     */
+    public Mono<RouteIndex> refreshIndex() {
+        return Mono.zip(
+                        routeLocator.getRoutes().collectList(),
+                        routeDefinitionLocator.getRouteDefinitions().collectMap(RouteDefinition::getId))
+                .map(tuple -> RouteIndex.build(tuple.getT1(), tuple.getT2()))
+                .doOnNext(built -> {
+                    this.index = built;
+                    log.info("Compiled route index with {} routes", built.size());
+                });
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        long start = System.nanoTime();
+        RouteMatchEvent event = RouteMatchEvent.start();
+        RouteIndex current = this.index;
+        Mono<Route> lookup = current == null ? super.lookupRoute(exchange) : lookupIndexed(exchange, current);
+        return lookup
+                .doOnNext(route -> matched(exchange, start, event, route))
+                .switchIfEmpty(Mono.fromRunnable(() -> matched(exchange, start, event, null)));
+    }
+
+    private static void matched(ServerWebExchange exchange, long start, RouteMatchEvent event, Route route) {
+        String routeId = route != null ? route.getId() : null;
+        ExchangeTrace.record(exchange, Phase.ROUTE_MATCH, start, System.nanoTime(), routeId);
+        if (event != null) {
+            event.path = exchange.getRequest().getPath().value();
+            event.routeId = routeId;
+            event.commit();
+        }
+    }
+
+    private Mono<Route> lookupIndexed(ServerWebExchange exchange, RouteIndex current) {
+        // Shared with the Path predicate, which would otherwise parse the path again
+        PathContainer path = (PathContainer) exchange.getAttributes().computeIfAbsent(
+                ServerWebExchangeUtils.GATEWAY_PREDICATE_PATH_CONTAINER_ATTR,
+                key -> PathContainer.parsePath(exchange.getRequest().getURI().getRawPath()));
+        List<Route> candidates = current.candidates(path, exchange.getRequest().getMethod());
+        if (candidates.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(candidates)
+                .concatMap(route -> Mono.just(route)
+                        .filterWhen(r -> {
+                            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                            return r.getPredicate().apply(exchange);
+                        })
+                        .doOnError(e -> log.error("Error applying predicate for route: {}", route.getId(), e))
+                        .onErrorResume(e -> Mono.empty()))
+                .next()
+                .map(route -> {
+                    validateRoute(route, exchange);
+                    return route;
+                });
+    }
+
+    RouteIndex getIndex() {
+        return index;
+    }
+}
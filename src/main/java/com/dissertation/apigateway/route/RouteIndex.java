@@ -0,0 +1,395 @@
+package com.dissertation.apigateway.route;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prefix trie over the Path predicates of the gateway routes, with a method table per
+ * route. A lookup walks the request path once and returns the routes that could match,
+ * in route order; the caller still evaluates their full predicates, so the index only
+ * has to be a superset of the real matches.
+ * <p>
+ * Routes that carry no Path predicate, or a pattern the trie cannot express, are kept
+ * in a separate list and are candidates for every request.
+ */
+@Slf4j
+public final class RouteIndex {
+
+    private static final String PATH = "Path";
+
+    private static final String METHOD = "Method";
+
+    private final Node root = new Node();
+
+    private final List<Entry> unindexed = new ArrayList<>();
+
+    private final int size;
+
+    private final List<String> warnings = new ArrayList<>();
+
+    private RouteIndex(List<Route> routes, Map<String, RouteDefinition> definitions) {
+        this.size = routes.size();
+        List<Entry> entries = new ArrayList<>(routes.size());
+        for (int position = 0; position < routes.size(); position++) {
+            Route route = routes.get(position);
+            Entry entry = Entry.of(position, route, definitions.get(route.getId()));
+            entries.add(entry);
+            if (entry.patterns == null) {
+                unindexed.add(entry);
+            } else {
+                for (Segment[] pattern : entry.patterns) {
+                    insert(pattern, entry);
+                }
+            }
+        }
+        detectConflicts(entries);
+    }
+
+    /**
+     * Compiles the index. Routes must be in the order the gateway evaluates them.
+     */
+    public static RouteIndex build(List<Route> routes, Map<String, RouteDefinition> definitions) {
+        return new RouteIndex(routes, definitions);
+    }
+
+    /**
+     * Returns the candidate routes for the given path and method, in route order.
+     */
+    public List<Route> candidates(PathContainer path, HttpMethod method) {
+        List<Entry> found = new ArrayList<>(4);
+        collect(root, path.elements(), 0, found);
+        for (Entry entry : unindexed) {
+            found.add(entry);
+        }
+        if (found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (found.size() > 1) {
+            found.sort(null);
+        }
+        List<Route> routes = new ArrayList<>(found.size());
+        int last = -1;
+        for (Entry entry : found) {
+            // A route with several patterns may be collected more than once
+            if (entry.position != last && entry.allows(method)) {
+                routes.add(entry.route);
+            }
+            last = entry.position;
+        }
+        return routes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Shadowed and ambiguous routes detected while building the index.
+     */
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    private void insert(Segment[] pattern, Entry entry) {
+        Node node = root;
+        for (Segment segment : pattern) {
+            switch (segment.kind) {
+                case TAIL -> {
+                    node.tail.add(entry);
+                    return;
+                }
+                case LITERAL -> node = node.literals.computeIfAbsent(segment.value, key -> new Node());
+                default -> {
+                    if (node.wildcard == null) {
+                        node.wildcard = new Node();
+                    }
+                    node = node.wildcard;
+                }
+            }
+        }
+        node.terminal.add(entry);
+    }
+
+    private static void collect(Node node, List<PathContainer.Element> elements, int index, List<Entry> found) {
+        found.addAll(node.tail);
+        // Skip separators; a trailing slash is treated like no slash, the Path predicate decides
+        while (index < elements.size() && !(elements.get(index) instanceof PathContainer.PathSegment)) {
+            index++;
+        }
+        if (index >= elements.size()) {
+            found.addAll(node.terminal);
+            return;
+        }
+        String value = ((PathContainer.PathSegment) elements.get(index)).valueToMatch();
+        Node literal = node.literals.get(value);
+        if (literal != null) {
+            collect(literal, elements, index + 1, found);
+        }
+        if (node.wildcard != null) {
+            collect(node.wildcard, elements, index + 1, found);
+        }
+    }
+
+    private void detectConflicts(List<Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry earlier = entries.get(i);
+            if (earlier.patterns == null || !earlier.pathAndMethodOnly) {
+                continue;
+            }
+            for (int j = i + 1; j < entries.size(); j++) {
+                Entry later = entries.get(j);
+                if (later.patterns == null) {
+                    continue;
+                }
+                if (earlier.methodsCover(later) && earlier.coversAllPatternsOf(later)) {
+                    warn("Route '%s' is shadowed by route '%s' and can never match",
+                            later.route.getId(), earlier.route.getId());
+                } else if (later.pathAndMethodOnly && earlier.order == later.order
+                        && earlier.methodsOverlap(later) && earlier.sharesPatternWith(later)) {
+                    warn("Routes '%s' and '%s' have the same order (%d) and an identical path pattern; "
+                            + "only declaration order decides between them",
+                            earlier.route.getId(), later.route.getId(), earlier.order);
+                }
+            }
+        }
+    }
+
+    private void warn(String format, Object... args) {
+        String message = String.format(format, args);
+        warnings.add(message);
+        log.warn(message);
+    }
+
+    private static final class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        Node wildcard;
+        final List<Entry> terminal = new ArrayList<>(1);
+        final List<Entry> tail = new ArrayList<>(1);
+    }
+
+    private enum Kind {
+        LITERAL,
+        // Matches any single segment: {var} or *
+        ANY,
+        // Matches some single segments: {var:regex}, ord*, ?
+        PARTIAL,
+        // Matches zero or more trailing segments: ** or {*var}
+        TAIL
+    }
+
+    private record Segment(Kind kind, String value) {
+
+        static Segment parse(String value) {
+            if (value.equals("**") || (value.startsWith("{*") && value.endsWith("}"))) {
+                return new Segment(Kind.TAIL, value);
+            }
+            if (value.equals("*") || (value.startsWith("{") && value.endsWith("}") && value.indexOf(':') < 0)) {
+                return new Segment(Kind.ANY, value);
+            }
+            if (value.indexOf('*') >= 0 || value.indexOf('?') >= 0 || value.indexOf('{') >= 0) {
+                return new Segment(Kind.PARTIAL, value);
+            }
+            return new Segment(Kind.LITERAL, value);
+        }
+
+        boolean covers(Segment other) {
+            return switch (kind) {
+                case TAIL -> true;
+                case ANY -> other.kind != Kind.TAIL;
+                case PARTIAL -> other.kind == Kind.PARTIAL && value.equals(other.value);
+                case LITERAL -> other.kind == Kind.LITERAL && value.equals(other.value);
+            };
+        }
+
+        boolean sameShape(Segment other) {
+            if (kind != other.kind) {
+                return false;
+            }
+            return kind == Kind.ANY || kind == Kind.TAIL || value.equals(other.value);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final int position;
+        final int order;
+        final Route route;
+        // null when the route cannot be indexed by path
+        final List<Segment[]> patterns;
+        // null means any method
+        final Set<HttpMethod> methods;
+        final boolean pathAndMethodOnly;
+
+        private Entry(int position, Route route, List<Segment[]> patterns, Set<HttpMethod> methods, boolean pathAndMethodOnly) {
+            this.position = position;
+            this.order = route.getOrder();
+            this.route = route;
+            this.patterns = patterns;
+            this.methods = methods;
+            this.pathAndMethodOnly = pathAndMethodOnly;
+        }
+
+        static Entry of(int position, Route route, RouteDefinition definition) {
+            if (definition == null) {
+                return new Entry(position, route, null, null, false);
+            }
+            List<Segment[]> patterns = null;
+            Set<HttpMethod> methods = null;
+            boolean pathAndMethodOnly = true;
+            boolean indexable = true;
+            for (PredicateDefinition predicate : definition.getPredicates()) {
+                if (PATH.equals(predicate.getName())) {
+                    List<Segment[]> parsed = parsePatterns(predicate);
+                    if (parsed == null) {
+                        indexable = false;
+                    } else if (patterns == null) {
+                        patterns = parsed;
+                    } else {
+                        // Two Path predicates must both match; index on the first one
+                        pathAndMethodOnly = false;
+                    }
+                } else if (METHOD.equals(predicate.getName())) {
+                    Set<HttpMethod> parsed = parseMethods(predicate);
+                    methods = methods == null ? parsed : intersect(methods, parsed);
+                } else {
+                    pathAndMethodOnly = false;
+                }
+            }
+            return new Entry(position, route, indexable ? patterns : null, methods, pathAndMethodOnly && indexable);
+        }
+
+        boolean allows(HttpMethod method) {
+            return methods == null || methods.contains(method);
+        }
+
+        boolean methodsCover(Entry other) {
+            return methods == null || (other.methods != null && methods.containsAll(other.methods));
+        }
+
+        boolean methodsOverlap(Entry other) {
+            if (methods == null || other.methods == null) {
+                return true;
+            }
+            for (HttpMethod method : other.methods) {
+                if (methods.contains(method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean coversAllPatternsOf(Entry other) {
+            for (Segment[] theirs : other.patterns) {
+                boolean covered = false;
+                for (Segment[] ours : patterns) {
+                    if (covers(ours, theirs)) {
+                        covered = true;
+                        break;
+                    }
+                }
+                if (!covered) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean sharesPatternWith(Entry other) {
+            for (Segment[] ours : patterns) {
+                for (Segment[] theirs : other.patterns) {
+                    if (sameShape(ours, theirs)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Integer.compare(position, other.position);
+        }
+
+        private static boolean covers(Segment[] pattern, Segment[] other) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (pattern[i].kind == Kind.TAIL) {
+                    return true;
+                }
+                if (i >= other.length || !pattern[i].covers(other[i])) {
+                    return false;
+                }
+            }
+            return pattern.length == other.length;
+        }
+
+        private static boolean sameShape(Segment[] pattern, Segment[] other) {
+            if (pattern.length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < pattern.length; i++) {
+                if (!pattern[i].sameShape(other[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static List<Segment[]> parsePatterns(PredicateDefinition predicate) {
+            List<Segment[]> patterns = new ArrayList<>();
+            for (String value : predicate.getArgs().values()) {
+                if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                    // matchTrailingSlash flag
+                    continue;
+                }
+                for (String pattern : value.split(",")) {
+                    pattern = pattern.trim();
+                    if (!pattern.startsWith("/")) {
+                        return null;
+                    }
+                    patterns.add(parsePattern(pattern));
+                }
+            }
+            return patterns.isEmpty() ? null : patterns;
+        }
+
+        private static Segment[] parsePattern(String pattern) {
+            List<Segment> segments = new ArrayList<>();
+            for (String part : pattern.split("/")) {
+                if (!part.isEmpty()) {
+                    segments.add(Segment.parse(part));
+                }
+            }
+            return segments.toArray(new Segment[0]);
+        }
+
+        private static Set<HttpMethod> parseMethods(PredicateDefinition predicate) {
+            Set<HttpMethod> methods = new HashSet<>();
+            for (String value : predicate.getArgs().values()) {
+                for (String method : value.split(",")) {
+                    if (!method.isBlank()) {
+                        methods.add(HttpMethod.valueOf(method.trim().toUpperCase()));
+                    }
+                }
+            }
+            return methods;
+        }
+
+        private static Set<HttpMethod> intersect(Set<HttpMethod> a, Set<HttpMethod> b) {
+            Set<HttpMethod> result = new HashSet<>(a);
+            result.retainAll(b);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for JWT validation, cache hits included.
+ */
+@Name("com.dissertation.apigateway.Auth")
+@Label("JWT Authentication")
+@Category({"API Gateway", "Exchange"})
+@Description("Validating the request's bearer token, or finding it in the verified-token cache.")
+@StackTrace(false)
+public final class AuthEvent extends Event {
+
+    private static final AuthEvent PROBE = new AuthEvent();
+
+    @Label("Route")
+    public String routeId;
+
+    @Label("Valid")
+    public boolean valid;
+
+    public static AuthEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        AuthEvent event = new AuthEvent();
+        event.begin();
+        return event;
+    }
+}
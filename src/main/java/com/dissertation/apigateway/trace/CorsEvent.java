@@ -0,0 +1,39 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for resolving the CORS policy of a request with an Origin header.
+ */
+@Name("com.dissertation.apigateway.Cors")
+@Label("CORS")
+@Category({"API Gateway", "Exchange"})
+@Description("Resolving the CORS policy for a request with an Origin header.")
+@StackTrace(false)
+public final class CorsEvent extends Event {
+
+    private static final CorsEvent PROBE = new CorsEvent();
+
+    @Label("Origin")
+    public String origin;
+
+    @Label("Policy")
+    public String policy;
+
+    @Label("Allowed")
+    public boolean allowed;
+
+    public static CorsEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        CorsEvent event = new CorsEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,48 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning a whole exchange. Like the other gateway events it is only
+ * allocated while a recording has it enabled, e.g. after
+ * {@code jcmd <pid> JFR.start settings=profile}; otherwise each call site pays one flag check.
+ */
+@Name("com.dissertation.apigateway.Exchange")
+@Label("Gateway Exchange")
+@Category({"API Gateway", "Exchange"})
+@Description("A whole exchange, from the first web filter until the response was written.")
+@StackTrace(false)
+public final class ExchangeEvent extends Event {
+
+    private static final ExchangeEvent PROBE = new ExchangeEvent();
+
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Route")
+    public String routeId;
+
+    @Label("Status")
+    public int status;
+
+    /**
+     * A begun event, or null while no recording enables it. isEnabled() reads a flag of the
+     * event class, so the probe instance answers for all of them.
+     */
+    public static ExchangeEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        ExchangeEvent event = new ExchangeEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,102 @@
+package com.dissertation.apigateway.trace;
+
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Phase timings of one exchange, kept in its attributes by filter.ExchangeTraceFilter. Cheap
+ * enough to keep for every request: a few primitive arrays, no per-phase objects. Only
+ * exchanges over the slow-request threshold are ever copied out of it.
+ */
+public final class ExchangeTrace {
+
+    public static final String ATTR = ExchangeTrace.class.getName();
+
+    // Phases past this (e.g. a retry storm) are counted but not kept
+    static final int MAX_PHASES = 32;
+
+    private static final int INITIAL_PHASES = 8;
+
+    private final long startNanos;
+
+    private final long startMillis;
+
+    private Phase[] phases = new Phase[INITIAL_PHASES];
+
+    private long[] starts = new long[INITIAL_PHASES];
+
+    private long[] durations = new long[INITIAL_PHASES];
+
+    // Turned into strings only when the exchange turns out to be slow
+    private Object[] details = new Object[INITIAL_PHASES];
+
+    private int count;
+
+    private int dropped;
+
+    public ExchangeTrace(long startNanos, long startMillis) {
+        this.startNanos = startNanos;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Records a phase on the exchange's trace; a no-op for exchanges without one.
+     */
+    public static void record(ServerWebExchange exchange, Phase phase, long startNanos, long endNanos, Object detail) {
+        ExchangeTrace trace = exchange.getAttribute(ATTR);
+        if (trace != null) {
+            trace.record(phase, startNanos, endNanos, detail);
+        }
+    }
+
+    // Hedged attempts record from two threads at once
+    public synchronized void record(Phase phase, long startNanos, long endNanos, Object detail) {
+        if (count == phases.length) {
+            if (count == MAX_PHASES) {
+                dropped++;
+                return;
+            }
+            int capacity = Math.min(MAX_PHASES, count * 2);
+            phases = Arrays.copyOf(phases, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            details = Arrays.copyOf(details, capacity);
+        }
+        phases[count] = phase;
+        starts[count] = startNanos - this.startNanos;
+        durations[count] = endNanos - startNanos;
+        details[count] = detail;
+        count++;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public synchronized int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The recorded phases in the order they finished.
+     */
+    public synchronized List<SlowRequest.PhaseTiming> timings() {
+        List<SlowRequest.PhaseTiming> timings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            timings.add(new SlowRequest.PhaseTiming(phases[i], millis(starts[i]), millis(durations[i]),
+                    details[i] != null ? details[i].toString() : null));
+        }
+        return timings;
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.dissertation.apigateway.trace;
+
+/**
+ * Parts of an exchange timed separately, in the order they normally happen.
+ */
+public enum Phase {
+    ROUTE_MATCH,
+    CORS,
+    AUTH,
+    RETRY_BACKOFF,
+    UPSTREAM_ATTEMPT,
+    RESPONSE_WRITE
+}
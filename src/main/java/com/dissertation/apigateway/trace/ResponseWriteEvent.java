@@ -0,0 +1,38 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for writing the response body to the client.
+ */
+@Name("com.dissertation.apigateway.ResponseWrite")
+@Label("Response Write")
+@Category({"API Gateway", "Exchange"})
+@Description("Writing the response body to the client.")
+@StackTrace(false)
+public final class ResponseWriteEvent extends Event {
+
+    private static final ResponseWriteEvent PROBE = new ResponseWriteEvent();
+
+    @Label("Path")
+    public String path;
+
+    @DataAmount
+    @Label("Content Length")
+    public long contentLength;
+
+    public static ResponseWriteEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        ResponseWriteEvent event = new ResponseWriteEvent();
+        event.begin();
+        return event;
+    }
+}
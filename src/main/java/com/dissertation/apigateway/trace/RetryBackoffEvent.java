@@ -0,0 +1,36 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning the jittered wait before a BudgetedRetry retry.
+ */
+@Name("com.dissertation.apigateway.RetryBackoff")
+@Label("Retry Backoff")
+@Category({"API Gateway", "Exchange"})
+@Description("Waiting out the jittered backoff before a BudgetedRetry retry.")
+@StackTrace(false)
+public final class RetryBackoffEvent extends Event {
+
+    private static final RetryBackoffEvent PROBE = new RetryBackoffEvent();
+
+    @Label("Route")
+    public String routeId;
+
+    @Label("Retry")
+    public int retry;
+
+    public static RetryBackoffEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        RetryBackoffEvent event = new RetryBackoffEvent();
+        event.begin();
+        return event;
+    }
+}
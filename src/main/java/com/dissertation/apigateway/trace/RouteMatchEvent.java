@@ -0,0 +1,36 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the route lookup, predicates included.
+ */
+@Name("com.dissertation.apigateway.RouteMatch")
+@Label("Route Match")
+@Category({"API Gateway", "Exchange"})
+@Description("Looking up the route for a request, including its predicates.")
+@StackTrace(false)
+public final class RouteMatchEvent extends Event {
+
+    private static final RouteMatchEvent PROBE = new RouteMatchEvent();
+
+    @Label("Path")
+    public String path;
+
+    @Label("Route")
+    public String routeId;
+
+    public static RouteMatchEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        RouteMatchEvent event = new RouteMatchEvent();
+        event.begin();
+        return event;
+    }
+}
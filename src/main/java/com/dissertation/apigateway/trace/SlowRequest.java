@@ -0,0 +1,15 @@
+package com.dissertation.apigateway.trace;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * An exchange over the slow-request threshold with its phase timings, in milliseconds
+ * from the start of the exchange.
+ */
+public record SlowRequest(Instant timestamp, String method, String path, String routeId, int status,
+                          double durationMillis, List<PhaseTiming> phases, int droppedPhases) {
+
+    public record PhaseTiming(Phase phase, double startMillis, double durationMillis, String detail) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.dissertation.apigateway.trace;
+
+import com.dissertation.apigateway.config.SlowRequestProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Always-on flight recorder for slow exchanges: keeps the most recent ones over the
+ * threshold, with their phase timings, in a fixed ring that overwrites the oldest.
+ * Exchanges under the threshold cost one comparison.
+ */
+@Component
+public class SlowRequestRecorder {
+
+    private final SlowRequestProperties properties;
+
+    private final long thresholdNanos;
+
+    private final AtomicReferenceArray<SlowRequest> ring;
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    public SlowRequestRecorder(SlowRequestProperties properties) {
+        if (properties.getCapacity() < 1) {
+            throw new IllegalArgumentException("gateway.slow-requests.capacity must be positive, was " + properties.getCapacity());
+        }
+        this.properties = properties;
+        this.thresholdNanos = properties.getThreshold().toNanos();
+        this.ring = new AtomicReferenceArray<>(properties.getCapacity());
+    }
+
+    /**
+     * Keeps the exchange when it took at least the threshold.
+     */
+    public void record(ExchangeTrace trace, long endNanos, String method, String path, String routeId, int status) {
+        long duration = endNanos - trace.getStartNanos();
+        if (!properties.isEnabled() || duration < thresholdNanos) {
+            return;
+        }
+        SlowRequest request = new SlowRequest(Instant.ofEpochMilli(trace.getStartMillis()), method, path, routeId, status,
+                ExchangeTrace.millis(duration), trace.timings(), trace.getDropped());
+        long position = recorded.getAndIncrement();
+        ring.set((int) (position % ring.length()), request);
+    }
+
+    /**
+     * The kept slow requests, newest first.
+     */
+    public List<SlowRequest> recent() {
+        long end = recorded.get();
+        int size = (int) Math.min(end, ring.length());
+        List<SlowRequest> recent = new ArrayList<>(size);
+        for (long position = end - 1; position >= end - size; position--) {
+            SlowRequest request = ring.get((int) (position % ring.length()));
+            // A slot claimed but not yet written
+            if (request != null) {
+                recent.add(request);
+            }
+        }
+        return recent;
+    }
+
+    /**
+     * Slow requests seen since startup, including those no longer kept.
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    public SlowRequestProperties getProperties() {
+        return properties;
+    }
+}
@@ -0,0 +1,33 @@
+package com.dissertation.apigateway.trace;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/slowrequests: the recent exchanges over gateway.slow-requests.threshold with
+ * the time each spent in route matching, CORS, auth, retry backoff, upstream attempts and
+ * the response write.
+ */
+@Component
+@Endpoint(id = "slowrequests")
+public class SlowRequestsEndpoint {
+
+    private final SlowRequestRecorder recorder;
+
+    public SlowRequestsEndpoint(SlowRequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @ReadOperation
+    public Map<String, Object> slowRequests() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMillis", recorder.getProperties().getThreshold().toMillis());
+        result.put("recorded", recorder.getRecorded());
+        result.put("requests", recorder.recent());
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package com.dissertation.apigateway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one upstream attempt, until its response headers arrived.
+ */
+@Name("com.dissertation.apigateway.UpstreamAttempt")
+@Label("Upstream Attempt")
+@Category({"API Gateway", "Exchange"})
+@Description("One request to the upstream until its response headers arrived, hedges included.")
+@StackTrace(false)
+public final class UpstreamAttemptEvent extends Event {
+
+    private static final UpstreamAttemptEvent PROBE = new UpstreamAttemptEvent();
+
+    @Label("Route")
+    public String routeId;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Retry")
+    public boolean retry;
+
+    @Label("Status")
+    public int status;
+
+    public static UpstreamAttemptEvent start() {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        UpstreamAttemptEvent event = new UpstreamAttemptEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,74 @@
+package com.dissertation.apigateway.upstream;
+
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool sizing that never drops below a minimum once the pool is in use: whenever an
+ * acquire needs a new connection and fewer than min are open, the pool opens enough
+ * extra connections to reach min in the background.
+ */
+class MinSizeAllocationStrategy implements ConnectionProvider.AllocationStrategy<MinSizeAllocationStrategy> {
+
+    private final int min;
+
+    private final int max;
+
+    private final AtomicInteger granted = new AtomicInteger();
+
+    MinSizeAllocationStrategy(int min, int max) {
+        if (min < 0 || max < 1 || min > max) {
+            throw new IllegalArgumentException("Expected 0 <= min <= max and max >= 1, got min=" + min + ", max=" + max);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public MinSizeAllocationStrategy copy() {
+        return new MinSizeAllocationStrategy(min, max);
+    }
+
+    @Override
+    public int estimatePermitCount() {
+        return max - granted.get();
+    }
+
+    @Override
+    public int getPermits(int desired) {
+        if (desired < 0) {
+            return 0;
+        }
+        while (true) {
+            int current = granted.get();
+            int permits = Math.min(Math.max(desired, min - current), max - current);
+            if (permits <= 0) {
+                return 0;
+            }
+            if (granted.compareAndSet(current, current + permits)) {
+                return permits;
+            }
+        }
+    }
+
+    @Override
+    public int permitGranted() {
+        return granted.get();
+    }
+
+    @Override
+    public int permitMinimum() {
+        return min;
+    }
+
+    @Override
+    public int permitMaximum() {
+        return max;
+    }
+
+    @Override
+    public void returnPermits(int returned) {
+        granted.addAndGet(-returned);
+    }
+}
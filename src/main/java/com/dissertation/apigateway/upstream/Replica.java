@@ -0,0 +1,166 @@
+package com.dissertation.apigateway.upstream;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One backend instance of an upstream group, with the live numbers the balancer picks
+ * by: requests in flight and a peak-sensitive moving average of response latency.
+ */
+public final class Replica {
+
+    public enum State {
+        UP,
+        EJECTED,
+        UNHEALTHY
+    }
+
+    private final URI uri;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Guarded by this
+    private double latencyNanos;
+
+    private long lastSampleNanos;
+
+    private int consecutiveFailures;
+
+    private int ejections;
+
+    private long lastEjectedNanos;
+
+    private volatile boolean ejected;
+
+    private volatile long ejectedUntilNanos;
+
+    // Active health, only changed by probes
+    private volatile boolean healthy = true;
+
+    private int probeStreak;
+
+    Replica(URI uri) {
+        this.uri = uri;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public State getState(long now) {
+        if (!healthy) {
+            return State.UNHEALTHY;
+        }
+        return isEjected(now) ? State.EJECTED : State.UP;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Latency average as of now; without new samples it decays towards zero, so a replica
+     * that was slow once gets traffic again eventually.
+     */
+    public synchronized double latencyNanos(long now, long decayNanos) {
+        if (latencyNanos == 0) {
+            return 0;
+        }
+        return latencyNanos * Math.exp(-(double) (now - lastSampleNanos) / decayNanos);
+    }
+
+    boolean isAvailable(long now) {
+        return healthy && !isEjected(now);
+    }
+
+    /**
+     * Cost of sending one more request here: latency weighted by the queue it would join.
+     * The constant keeps in-flight counts meaningful before any latency is known.
+     */
+    double load(long now, long decayNanos) {
+        return (latencyNanos(now, decayNanos) + 1) * (inFlight.get() + 1);
+    }
+
+    void start() {
+        inFlight.incrementAndGet();
+    }
+
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Ends a request and returns the number of failures in a row including this one,
+     * or 0 after a success.
+     */
+    synchronized int complete(long now, long rttNanos, boolean failed, long decayNanos) {
+        inFlight.decrementAndGet();
+        double current = latencyNanos(now, decayNanos);
+        // Peak EWMA: a slower sample replaces the average at once, faster ones blend in
+        if (rttNanos >= current) {
+            latencyNanos = rttNanos;
+        } else {
+            double weight = Math.exp(-(double) (now - lastSampleNanos) / decayNanos);
+            latencyNanos = current * weight + rttNanos * (1 - weight);
+        }
+        lastSampleNanos = now;
+        consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+        return consecutiveFailures;
+    }
+
+    /**
+     * Ejects the replica for base times 2^(n-1), where n counts ejections since it last went
+     * max-ejection-time without one.
+     */
+    synchronized void eject(long now, long baseNanos, long maxNanos) {
+        if (ejections > 0 && now - lastEjectedNanos > maxNanos) {
+            ejections = 0;
+        }
+        ejections++;
+        long duration = baseNanos;
+        for (int i = 1; i < ejections && duration < maxNanos; i++) {
+            duration *= 2;
+        }
+        duration = Math.min(duration, maxNanos);
+        lastEjectedNanos = now;
+        consecutiveFailures = 0;
+        ejectedUntilNanos = now + duration;
+        ejected = true;
+    }
+
+    /**
+     * Records an active probe result; the replica changes health after threshold results
+     * in a row that disagree with its current state.
+     */
+    synchronized void probed(boolean passed, int healthyThreshold, int unhealthyThreshold) {
+        if (passed == healthy) {
+            probeStreak = 0;
+            return;
+        }
+        probeStreak++;
+        if (probeStreak >= (passed ? healthyThreshold : unhealthyThreshold)) {
+            healthy = passed;
+            probeStreak = 0;
+        }
+    }
+
+    private boolean isEjected(long now) {
+        if (!ejected) {
+            return false;
+        }
+        if (now - ejectedUntilNanos >= 0) {
+            ejected = false;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+}
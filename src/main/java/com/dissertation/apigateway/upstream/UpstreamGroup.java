@@ -0,0 +1,169 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The replicas behind one lb:// name. Picks a replica per attempt and ejects replicas
+ * whose responses keep failing or running slow, never more than max-ejected-percent
+ * of the group at once.
+ */
+@Slf4j
+public final class UpstreamGroup {
+
+    private final String name;
+
+    private final LoadBalancerProperties properties;
+
+    private final Counter ejections;
+
+    private volatile List<Replica> replicas;
+
+    UpstreamGroup(String name, List<URI> uris, LoadBalancerProperties properties, Counter ejections) {
+        this.name = name;
+        this.properties = properties;
+        this.ejections = ejections;
+        this.replicas = uris.stream().map(Replica::new).toList();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public int availableCount(long now) {
+        int available = 0;
+        for (Replica replica : replicas) {
+            if (replica.isAvailable(now)) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Picks the replica for the next attempt, avoiding the one the previous attempt went to
+     * while others are available. With every replica out of rotation the group spreads over
+     * all of them rather than failing outright. Null only for an empty group.
+     */
+    public Replica choose(Replica previous, long now) {
+        List<Replica> all = replicas;
+        if (all.size() <= 1) {
+            return all.isEmpty() ? null : all.get(0);
+        }
+        List<Replica> candidates = new ArrayList<>(all.size());
+        for (Replica replica : all) {
+            if (replica != previous && replica.isAvailable(now)) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            if (previous != null && all.contains(previous) && previous.isAvailable(now)) {
+                return previous;
+            }
+            candidates = all;
+        }
+        return properties.getAlgorithm() == LoadBalancerProperties.Algorithm.LEAST_OUTSTANDING
+                ? leastOutstanding(candidates)
+                : powerOfTwoChoices(candidates, now);
+    }
+
+    public void start(Replica replica) {
+        replica.start();
+    }
+
+    /**
+     * Ends an attempt that was cancelled before it told anything about the replica.
+     */
+    public void cancel(Replica replica) {
+        replica.cancel();
+    }
+
+    /**
+     * Ends an attempt on a replica, ejecting it once consecutive-failures attempts in a row
+     * failed or took longer than slow-call-threshold. Returns whether it was ejected.
+     */
+    public boolean complete(Replica replica, long now, long rttNanos, boolean failed) {
+        LoadBalancerProperties.Outlier outlier = properties.getOutlier();
+        long slowNanos = outlier.getSlowCallThreshold().toNanos();
+        // A refused connection answers fast; its latency must not make the replica look attractive
+        long sample = failed ? Math.max(rttNanos, slowNanos) : rttNanos;
+        int failures = replica.complete(now, sample, failed || rttNanos >= slowNanos,
+                properties.getLatencyDecay().toNanos());
+        if (failures < outlier.getConsecutiveFailures()) {
+            return false;
+        }
+        synchronized (this) {
+            List<Replica> all = replicas;
+            if (!replica.isAvailable(now) || !all.contains(replica)) {
+                return false;
+            }
+            int out = all.size() - availableCount(now);
+            if ((out + 1) * 100L > (long) all.size() * outlier.getMaxEjectedPercent()) {
+                return false;
+            }
+            replica.eject(now, outlier.getBaseEjectionTime().toNanos(), outlier.getMaxEjectionTime().toNanos());
+        }
+        log.warn("Ejected {} from upstream group {} after {} failed or slow responses in a row", replica, name, failures);
+        if (ejections != null) {
+            ejections.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the replica list; replicas that stay keep their latency, load and ejection state.
+     */
+    synchronized void update(List<URI> uris) {
+        Map<URI, Replica> existing = new HashMap<>();
+        replicas.forEach(replica -> existing.put(replica.getUri(), replica));
+        replicas = uris.stream().map(uri -> existing.computeIfAbsent(uri, Replica::new)).toList();
+    }
+
+    private Replica powerOfTwoChoices(List<Replica> candidates, long now) {
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        long decayNanos = properties.getLatencyDecay().toNanos();
+        Replica a = candidates.get(first);
+        Replica b = candidates.get(second);
+        return a.load(now, decayNanos) <= b.load(now, decayNanos) ? a : b;
+    }
+
+    private static Replica leastOutstanding(List<Replica> candidates) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Replica best = null;
+        int fewest = Integer.MAX_VALUE;
+        int ties = 0;
+        for (Replica replica : candidates) {
+            int inFlight = replica.getInFlight();
+            if (inFlight < fewest) {
+                best = replica;
+                fewest = inFlight;
+                ties = 1;
+            } else if (inFlight == fewest && random.nextInt(++ties) == 0) {
+                // Uniform among equally loaded replicas
+                best = replica;
+            }
+        }
+        return best;
+    }
+}
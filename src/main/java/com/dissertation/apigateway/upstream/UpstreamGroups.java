@@ -0,0 +1,207 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every upstream group known to the gateway, with the background work that keeps them
+ * current: re-reading groups-file when it changes and probing each replica's health
+ * endpoint. Probe results are kept on the replicas, so reading health never probes.
+ */
+@Component
+@Slf4j
+public class UpstreamGroups {
+
+    public static final String EJECTIONS = "gateway.upstream.ejections";
+
+    public static final String AVAILABLE = "gateway.upstream.replicas.available";
+
+    private final LoadBalancerProperties properties;
+
+    private final UpstreamPoolProperties upstreamProperties;
+
+    private final HttpClient httpClient;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, UpstreamGroup> groups = new ConcurrentHashMap<>();
+
+    private FileTime groupsFileModified;
+
+    private Map<String, List<URI>> fromFile = Map.of();
+
+    private Disposable refreshTask;
+
+    private Disposable probeTask;
+
+    public UpstreamGroups(LoadBalancerProperties properties, UpstreamPoolProperties upstreamProperties,
+                          HttpClient httpClient, ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.upstreamProperties = upstreamProperties;
+        this.httpClient = httpClient;
+        this.registry = registry.getIfAvailable();
+        refresh();
+    }
+
+    public UpstreamGroup group(String name) {
+        return groups.get(name);
+    }
+
+    public Collection<UpstreamGroup> getGroups() {
+        return groups.values();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (properties.getGroupsFile() != null) {
+            refreshTask = Flux.interval(properties.getRefreshInterval(), Schedulers.boundedElastic())
+                    .subscribe(tick -> refresh());
+        }
+        LoadBalancerProperties.HealthCheck healthCheck = properties.getHealthCheck();
+        if (healthCheck.isEnabled()) {
+            probeTask = Flux.interval(Duration.ZERO, healthCheck.getInterval())
+                    .onBackpressureDrop()
+                    .concatMap(tick -> probe())
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+        if (probeTask != null) {
+            probeTask.dispose();
+        }
+    }
+
+    /**
+     * Rebuilds the groups from configuration and, when it changed since the last call,
+     * groups-file. Returns whether the file was (re-)read. A file that cannot be read
+     * keeps the replicas it listed before.
+     */
+    public synchronized boolean refresh() {
+        boolean reloaded = reloadGroupsFile();
+        Map<String, List<URI>> configured = new LinkedHashMap<>();
+        upstreamProperties.getServices().forEach((name, pool) -> {
+            if (pool.getUrl() != null) {
+                configured.put(name, List.of(URI.create(pool.getUrl())));
+            }
+        });
+        properties.getGroups().forEach((name, group) ->
+                configured.put(name, group.getReplicas().stream().map(URI::create).toList()));
+        configured.putAll(fromFile);
+
+        groups.keySet().retainAll(configured.keySet());
+        configured.forEach((name, uris) -> {
+            UpstreamGroup group = groups.get(name);
+            if (group != null) {
+                group.update(uris);
+            } else {
+                groups.put(name, create(name, uris));
+            }
+        });
+        return reloaded;
+    }
+
+    /**
+     * Probes every replica once and records the results.
+     */
+    public Mono<Void> probe() {
+        LoadBalancerProperties.HealthCheck healthCheck = properties.getHealthCheck();
+        return Flux.fromIterable(groups.values())
+                .flatMapIterable(UpstreamGroup::getReplicas)
+                .distinct()
+                .flatMap(replica -> probe(replica, healthCheck)
+                        .doOnNext(passed -> replica.probed(passed, healthCheck.getHealthyThreshold(),
+                                healthCheck.getUnhealthyThreshold())))
+                .then();
+    }
+
+    private Mono<Boolean> probe(Replica replica, LoadBalancerProperties.HealthCheck healthCheck) {
+        return httpClient.get()
+                .uri(replica.getUri() + healthCheck.getPath())
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code() / 100 == 2)))
+                .timeout(healthCheck.getTimeout())
+                .onErrorResume(error -> {
+                    log.debug("Health probe of {} failed: {}", replica, error.toString());
+                    return Mono.just(false);
+                });
+    }
+
+    private boolean reloadGroupsFile() {
+        if (properties.getGroupsFile() == null) {
+            return false;
+        }
+        Path file = Path.of(properties.getGroupsFile());
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(groupsFileModified)) {
+                return false;
+            }
+            Map<String, List<URI>> parsed = new LinkedHashMap<>();
+            try (Reader reader = Files.newBufferedReader(file)) {
+                Map<String, List<String>> loaded = new Yaml().load(reader);
+                if (loaded != null) {
+                    loaded.forEach((name, replicas) -> parsed.put(name, replicas.stream()
+                            .filter(Objects::nonNull).map(URI::create).toList()));
+                }
+            }
+            fromFile = parsed;
+            groupsFileModified = modified;
+            log.info("Loaded upstream groups {} from {}", parsed.keySet(), file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read upstream groups from {}, keeping the current ones: {}", file, e.toString());
+            return false;
+        }
+    }
+
+    private UpstreamGroup create(String name, List<URI> uris) {
+        Counter ejections = null;
+        if (registry != null) {
+            ejections = Counter.builder(EJECTIONS)
+                    .description("Replicas ejected for failing or slow responses")
+                    .tag("group", name)
+                    .register(registry);
+        }
+        UpstreamGroup group = new UpstreamGroup(name, uris, properties, ejections);
+        if (registry != null) {
+            Gauge.builder(AVAILABLE, group, g -> g.availableCount(System.nanoTime()))
+                    .description("Replicas of the upstream group in rotation")
+                    .tag("group", name)
+                    .register(registry);
+        }
+        return group;
+    }
+}
@@ -0,0 +1,104 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.AddressUtils;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the gateway's proxy HttpClient with one connection pool per backend service
+ * instead of the single shared pool configured by spring.cloud.gateway.httpclient.pool.
+ */
+public class UpstreamHttpClientFactory extends HttpClientFactory {
+
+    static final String POOL_NAME = "gateway-upstream";
+
+    private final UpstreamPoolProperties upstreamProperties;
+
+    private final LoadBalancerProperties loadBalancerProperties;
+
+    public UpstreamHttpClientFactory(HttpClientProperties properties, ServerProperties serverProperties,
+                                     HttpClientSslConfigurer sslConfigurer, List<HttpClientCustomizer> customizers,
+                                     UpstreamPoolProperties upstreamProperties,
+                                     LoadBalancerProperties loadBalancerProperties) {
+        super(properties, serverProperties, sslConfigurer, customizers);
+        this.upstreamProperties = upstreamProperties;
+        this.loadBalancerProperties = loadBalancerProperties;
+    }
+
+    @Override
+    protected HttpClient createInstance() {
+        HttpClient httpClient = super.createInstance();
+        if (upstreamProperties.isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C);
+        }
+        return httpClient;
+    }
+
+    @Override
+    protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(POOL_NAME);
+        UpstreamPoolProperties.Pool defaults = upstreamProperties.getDefaults();
+        apply(builder, defaults, upstreamProperties.isMetrics());
+        for (Map.Entry<String, UpstreamPoolProperties.Pool> service : upstreamProperties.getServices().entrySet()) {
+            UpstreamPoolProperties.Pool pool = service.getValue();
+            if (pool.getUrl() == null) {
+                throw new IllegalStateException("gateway.upstream.services." + service.getKey() + ".url is required");
+            }
+            // Host specs start from reactor-netty's defaults, not the builder's settings
+            builder.forRemoteHost(remoteAddress(pool.getUrl()), spec -> apply(spec, pool, upstreamProperties.isMetrics()));
+        }
+        // Each replica of a group named after a service gets a pool with that service's settings
+        for (Map.Entry<String, LoadBalancerProperties.Group> group : loadBalancerProperties.getGroups().entrySet()) {
+            UpstreamPoolProperties.Pool pool = upstreamProperties.getServices().get(group.getKey());
+            if (pool == null) {
+                continue;
+            }
+            for (String replica : group.getValue().getReplicas()) {
+                builder.forRemoteHost(remoteAddress(replica), spec -> apply(spec, pool, upstreamProperties.isMetrics()));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * The pool key reactor-netty uses for a request to this url: the host and port, left
+     * unresolved unless the host is an IP literal.
+     */
+    static SocketAddress remoteAddress(String url) {
+        URI uri = URI.create(url);
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return AddressUtils.createUnresolved(uri.getHost(), port);
+    }
+
+    private static void apply(ConnectionProvider.ConnectionPoolSpec<?> spec, UpstreamPoolProperties.Pool pool,
+                              boolean metrics) {
+        spec.metrics(metrics)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval());
+        if (pool.getWarmupConnections() > 0) {
+            // Must follow maxConnections, which resets the allocation strategy
+            spec.allocationStrategy(new MinSizeAllocationStrategy(
+                    Math.min(pool.getWarmupConnections(), pool.getMaxConnections()), pool.getMaxConnections()));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens connections to each backend service once the gateway is ready, so the first
+ * burst of traffic finds established connections in the pool instead of connecting.
+ */
+@Component
+@Slf4j
+public class UpstreamPoolWarmer {
+
+    private static final Duration WARMUP_TIMEOUT = Duration.ofSeconds(5);
+
+    private final HttpClient httpClient;
+
+    private final UpstreamPoolProperties properties;
+
+    public UpstreamPoolWarmer(HttpClient httpClient, UpstreamPoolProperties properties) {
+        this.httpClient = httpClient;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        warmUp().subscribe();
+    }
+
+    /**
+     * Issues warmup-connections concurrent requests per service and completes with the
+     * number that were answered. Failures are logged, never propagated.
+     */
+    public Mono<Long> warmUp() {
+        return Flux.fromIterable(properties.getServices().entrySet())
+                .filter(service -> service.getValue().getWarmupConnections() > 0)
+                .flatMap(this::warmUp)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> warmUp(Map.Entry<String, UpstreamPoolProperties.Pool> service) {
+        UpstreamPoolProperties.Pool pool = service.getValue();
+        int connections = Math.min(pool.getWarmupConnections(), pool.getMaxConnections());
+        String url = pool.getUrl() + pool.getWarmupPath();
+        // Every request holds its connection, unsent, until all of them have one, so the pool
+        // cannot hand a connection back out and each request exercises a distinct connection
+        AtomicInteger acquired = new AtomicInteger();
+        Sinks.Empty<Void> allAcquired = Sinks.empty();
+        Mono<Void> holdUntilAllAcquired = allAcquired.asMono().timeout(WARMUP_TIMEOUT, Mono.empty());
+        return Flux.range(0, connections)
+                .flatMap(i -> httpClient.request(HttpMethod.GET).uri(url)
+                        .send((request, outbound) -> {
+                            if (acquired.incrementAndGet() == connections) {
+                                allAcquired.tryEmitEmpty();
+                            }
+                            return holdUntilAllAcquired;
+                        })
+                        .responseSingle((response, body) -> body.then())
+                        .thenReturn(1L)
+                        .timeout(WARMUP_TIMEOUT.multipliedBy(2))
+                        .onErrorResume(error -> Mono.empty()), connections)
+                .count()
+                .doOnNext(warmed -> {
+                    if (warmed < connections) {
+                        log.warn("Pre-warmed {}/{} connections to {} ({})", warmed, connections, service.getKey(), pool.getUrl());
+                    } else {
+                        log.info("Pre-warmed {} connections to {}", warmed, service.getKey());
+                    }
+                });
+    }
+}
@@ -0,0 +1,220 @@
+package com.dissertation.apigateway.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Public keys of the identity provider from its JWKS document (jwt.jwks.uri: https://,
+ * file: or classpath:), by kid. A plain http:// uri, which would let anyone on the path
+ * substitute their own keys, fails startup unless jwt.jwks.allow-insecure-http is set. The set is re-read every refresh-interval in the
+ * background, and a token with an unknown kid asks for an early refresh, at most once per
+ * min-refresh-interval, so key rotation is picked up without any verification waiting
+ * on a fetch. A failed fetch keeps the previous keys.
+ */
+@Component
+@Slf4j
+public class JwksKeyProvider {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final Map<String, String> CURVES = Map.of("P-256", "secp256r1", "P-384", "secp384r1", "P-521", "secp521r1");
+
+    @Value("${jwt.jwks.uri:}")
+    private String uri;
+
+    @Value("${jwt.jwks.refresh-interval:5m}")
+    private Duration refreshInterval;
+
+    @Value("${jwt.jwks.min-refresh-interval:30s}")
+    private Duration minRefreshInterval;
+
+    @Value("${jwt.jwks.timeout:5s}")
+    private Duration timeout;
+
+    @Value("${jwt.jwks.allow-insecure-http:false}")
+    private boolean allowInsecureHttp;
+
+    private volatile Map<String, PublicKey> keys = Map.of();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicLong lastRefreshNanos = new AtomicLong();
+
+    private Disposable refreshTask;
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (isPlainHttp() && !allowInsecureHttp) {
+            throw new IllegalStateException("jwt.jwks.uri " + uri + " is plain http; use https://, or set "
+                    + "jwt.jwks.allow-insecure-http=true for an identity provider on a trusted network");
+        }
+        // The first load is the only one anything waits for, and it happens before traffic
+        refresh().block();
+        refreshTask = Flux.interval(refreshInterval, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+    }
+
+    public boolean isEnabled() {
+        return uri != null && !uri.isBlank();
+    }
+
+    /**
+     * The key with this kid, or null while it is unknown; an unknown kid schedules an
+     * early refresh in the background.
+     */
+    public PublicKey key(String kid) {
+        PublicKey key = kid != null ? keys.get(kid) : null;
+        if (key == null && isEnabled() && System.nanoTime() - lastRefreshNanos.get() >= minRefreshInterval.toNanos()) {
+            refresh().subscribe();
+        }
+        return key;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private boolean isPlainHttp() {
+        return uri.regionMatches(true, 0, "http://", 0, 7);
+    }
+
+    /**
+     * Fetches and parses the key set; completes once the keys were replaced or the
+     * failure logged; empty at once while another refresh is running.
+     */
+    Mono<Void> refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        lastRefreshNanos.set(System.nanoTime());
+        return fetch()
+                .map(JwksKeyProvider::parse)
+                .timeout(timeout)
+                .doOnNext(parsed -> {
+                    if (!parsed.keySet().equals(keys.keySet())) {
+                        log.info("Loaded {} JWKS keys from {}: {}", parsed.size(), uri, parsed.keySet());
+                    }
+                    keys = parsed;
+                })
+                .doOnError(e -> log.warn("Failed to load JWKS from {}, keeping {} keys: {}", uri, keys.size(), e.toString()))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> refreshing.set(false))
+                .then();
+    }
+
+    private Mono<byte[]> fetch() {
+        if (isPlainHttp() || uri.regionMatches(true, 0, "https://", 0, 8)) {
+            return HttpClient.create()
+                    .responseTimeout(timeout)
+                    .get()
+                    .uri(uri)
+                    .responseSingle((response, body) -> response.status().code() == 200
+                            ? body.asByteArray()
+                            : Mono.error(new IOException("JWKS endpoint answered " + response.status())));
+        }
+        return Mono.fromCallable(() -> {
+            Resource resource = new DefaultResourceLoader().getResource(uri);
+            try (InputStream in = resource.getInputStream()) {
+                return in.readAllBytes();
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Signing keys of a JWKS document by kid. Keys without a kid, for encryption only,
+     * or of another type than RSA and EC are skipped.
+     */
+    static Map<String, PublicKey> parse(byte[] document) {
+        JsonNode root;
+        try {
+            root = JSON.readTree(document);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JWKS is not valid JSON", e);
+        }
+        Map<String, PublicKey> parsed = new HashMap<>();
+        for (JsonNode jwk : root.path("keys")) {
+            String kid = jwk.path("kid").asText(null);
+            String use = jwk.path("use").asText("sig");
+            if (kid == null || !"sig".equals(use)) {
+                continue;
+            }
+            try {
+                PublicKey key = switch (jwk.path("kty").asText()) {
+                    case "RSA" -> KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                            unsigned(jwk, "n"), unsigned(jwk, "e")));
+                    case "EC" -> ecKey(jwk);
+                    default -> null;
+                };
+                if (key != null) {
+                    parsed.put(kid, key);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("Skipping JWKS key {}: {}", kid, e.toString());
+            }
+        }
+        return Map.copyOf(parsed);
+    }
+
+    private static PublicKey ecKey(JsonNode jwk) throws GeneralSecurityException {
+        String curve = CURVES.get(jwk.path("crv").asText());
+        if (curve == null) {
+            throw new IllegalArgumentException("Unsupported curve " + jwk.path("crv").asText());
+        }
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(curve));
+        ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+        return KeyFactory.getInstance("EC").generatePublic(
+                new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+    }
+
+    private static BigInteger unsigned(JsonNode jwk, String field) {
+        String value = jwk.path(field).asText(null);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        return new BigInteger(1, Base64.getUrlDecoder().decode(value));
+    }
+}
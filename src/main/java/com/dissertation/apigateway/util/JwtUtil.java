@@ -1,42 +1,265 @@
 package com.dissertation.apigateway.util;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Verifies bearer tokens and caches the claims of tokens that passed verification.
+ * Cache entries are keyed by a SHA-256 digest of the token and expire at the token's
+ * own exp claim, so repeat callers skip signature verification entirely.
+ * <p>
+ * HS* tokens are checked against jwt.secret, RS*, PS* and ES* tokens against the JWKS key
+ * named by their kid. An RSA or EC verification costs a few hundred microseconds to a
+ * millisecond of CPU, so {@link #verify} runs those on the bounded jwt-verify scheduler
+ * instead of the event loop that handed the request in.
+ */
 @Component
 public class JwtUtil {
-    
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
     @Value("${jwt.secret}")
     private String secret;
-    
+
+    // 0 turns the cache off; Caffeine alone would still keep entries until its async eviction ran
+    @Value("${jwt.cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    // Upper bound on how long a verified token stays cached, also used when it has no exp claim
+    @Value("${jwt.cache.max-ttl:1h}")
+    private Duration cacheMaxTtl;
+
+    // Off: asymmetric tokens are verified on the calling thread, as HMAC ones always are
+    @Value("${jwt.verify.offload:true}")
+    private boolean offload = true;
+
+    // 0 sizes the pool to the available processors; verification is CPU-bound
+    @Value("${jwt.verify.threads:0}")
+    private int verifyThreads;
+
+    // Verifications waiting beyond this are refused with 503 rather than queued
+    @Value("${jwt.verify.queue-size:1024}")
+    private int verifyQueueSize = 1024;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private JwksKeyProvider jwks;
+
+    private JwtParser parser;
+
+    private Key hmacKey;
+
+    private Scheduler verifier;
+
+    private Cache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        hmacKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return signingKey(header);
+                    }
+                })
+                .build();
+        int threads = verifyThreads > 0 ? verifyThreads : Runtime.getRuntime().availableProcessors();
+        verifier = Schedulers.newBoundedElastic(threads, verifyQueueSize, "jwt-verify", 60, true);
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new ExpireAtTokenExpiry(cacheMaxTtl.toNanos()))
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified-tokens");
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        verifier.dispose();
+    }
+
+    /**
+     * Asynchronous {@link #validateToken}: the claims, or empty if the token is invalid.
+     * Cached and HMAC tokens are answered on the calling thread; other signatures are
+     * checked on the jwt-verify scheduler, and when its queue is full the Mono fails with
+     * a RejectedExecutionException.
+     */
+    public Mono<Claims> verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return Mono.empty();
+        }
+        String key = digest(token);
+        Claims claims = verifiedTokens.getIfPresent(key);
+        if (claims != null) {
+            return Mono.just(claims);
+        }
+        if (!offload || !isAsymmetric(token)) {
+            return Mono.justOrEmpty(verifyAndCache(token, key));
+        }
+        return Mono.fromCallable(() -> verifyAndCache(token, key)).subscribeOn(verifier);
+    }
+
+    /**
+     * Verifies the token once and returns its claims, or null if the token is
+     * malformed, badly signed or expired. Previously verified tokens are served
+     * from the cache without touching the signature.
+     */
+    public Claims validateToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String key = digest(token);
+        Claims claims = verifiedTokens.getIfPresent(key);
+        if (claims != null) {
+            return claims;
+        }
+        return verifyAndCache(token, key);
+    }
+
     public Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = validateToken(token);
+        if (claims == null) {
+            // Re-parse to surface the original failure to the caller
+            return parser.parseClaimsJws(token).getBody();
+        }
+        return claims;
     }
-    
+
     public String extractUsername(String token) {
         return extractAllClaims(token).getSubject();
     }
-    
+
     public boolean isTokenValid(String token) {
+        return validateToken(token) != null;
+    }
+
+    private Claims verifyAndCache(String token, String key) {
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        if (cacheMaxSize > 0) {
+            verifiedTokens.put(key, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * The key for the token's alg; jjwt then rejects a key of the wrong type, so an RSA
+     * public key can never be used as an HMAC secret.
+     */
+    private Key signingKey(JwsHeader<?> header) {
+        SignatureAlgorithm algorithm = SignatureAlgorithm.forName(header.getAlgorithm());
+        if (algorithm.isHmac()) {
+            return hmacKey;
+        }
+        if (jwks == null || !jwks.isEnabled()) {
+            throw new UnsupportedJwtException("No JWKS configured for " + algorithm.getValue() + " tokens");
+        }
+        PublicKey key = jwks.key(header.getKeyId());
+        if (key == null) {
+            throw new UnsupportedJwtException("Unknown signing key " + header.getKeyId());
+        }
+        return key;
+    }
+
+    /**
+     * Whether the header names an RSA or EC algorithm. Tokens whose header does not parse
+     * count as cheap: they fail just as fast inline.
+     */
+    private static boolean isAsymmetric(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return false;
+        }
         try {
-            extractAllClaims(token);
-            return true;
-        } catch (Exception e) {
+            JsonNode header = JSON.readTree(Base64.getUrlDecoder().decode(token.substring(0, dot)));
+            String algorithm = header.path("alg").asText("");
+            return algorithm.startsWith("RS") || algorithm.startsWith("PS") || algorithm.startsWith("ES");
+        } catch (IOException | IllegalArgumentException e) {
             return false;
         }
     }
-    
-    private Key getSignKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+
+    private static String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
     }
-}
 
+    private static final class ExpireAtTokenExpiry implements Expiry<String, Claims> {
+
+        private final long maxTtlNanos;
+
+        ExpireAtTokenExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return maxTtlNanos;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(expiration.getTime() - System.currentTimeMillis());
+            return Math.max(0, Math.min(remaining, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
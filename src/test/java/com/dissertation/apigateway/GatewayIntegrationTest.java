@@ -2,12 +2,15 @@ package com.dissertation.apigateway;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
+@AutoConfigureObservability(tracing = false)
 class GatewayIntegrationTest {
     
     @Autowired
@@ -23,6 +26,18 @@ class GatewayIntegrationTest {
                 .jsonPath("$.status").isEqualTo("UP");
     }
     
+    @Test
+    void shouldExposePrometheusMetrics() {
+        webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> org.assertj.core.api.Assertions.assertThat(body)
+                        .contains("gateway_auth_seconds_bucket")
+                        .contains("resilience4j_circuitbreaker_state{"));
+    }
+    
     @Test
     @org.junit.jupiter.api.Disabled("AuthenticationFilter is currently disabled. " +
             "Also, there's a known issue with FallbackController and read-only headers " +
@@ -41,12 +56,14 @@ class GatewayIntegrationTest {
     
     @Test
     void shouldAllowPublicEndpoints() {
-        // Note: This would fail if user-service is not running
-        // In real tests, you'd mock the downstream service
+        // No user-service runs here, so the login reaches the route and its circuit breaker's
+        // fallback answers instead of the authentication filter rejecting it
         webTestClient.post()
                 .uri("/api/auth/login")
                 .exchange()
-                .expectStatus().is4xxClientError(); // Bad request due to missing body
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("User Service is currently unavailable");
     }
 }
 
@@ -0,0 +1,154 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.ApiGatewayApplication;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.support.TestJwks;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of cheap requests while the gateway verifies an open-loop stream of loadRate
+ * RS256, ES256 and HS256 tokens per second, none of them cached, with verification inline
+ * on the event loop (offload=false) and on the jwt-verify scheduler (offload=true). The
+ * gateway gets two event-loop threads, so a loop busy with a signature shows up in
+ * publicGet's p99. Needs spare cores to mean anything: on one CPU both modes just queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dreactor.netty.ioWorkerCount=2")
+public class AuthLoadBenchmark {
+
+    // Cap on background requests in flight; ticks beyond it are dropped, not queued
+    private static final int LOAD_CONCURRENCY = 64;
+
+    private static final int TOKENS_PER_ALGORITHM = 64;
+
+    @Param({"false", "true"})
+    public boolean offload;
+
+    @Param({"1000"})
+    public int loadRate;
+
+    private StubUpstream upstream;
+
+    private ConfigurableApplicationContext gateway;
+
+    private LoopResources clientLoops;
+
+    private ConnectionProvider connections;
+
+    private HttpClient client;
+
+    private Disposable load;
+
+    private final AtomicLong loadRequests = new AtomicLong();
+
+    private long loadStartNanos;
+
+    private String bearer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPair rsa = TestJwks.rsa();
+        KeyPair ec = TestJwks.ec();
+        Path jwks = Files.createDirectories(Path.of("target")).resolve("benchmark-jwks.json");
+        TestJwks.write(jwks, Map.of("rsa-1", rsa.getPublic(), "ec-1", ec.getPublic()));
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < TOKENS_PER_ALGORITHM; i++) {
+            tokens.add("Bearer " + TestJwks.token("user-" + i, "rsa-1", rsa.getPrivate(), SignatureAlgorithm.RS256));
+            tokens.add("Bearer " + TestJwks.token("user-" + i, "ec-1", ec.getPrivate(), SignatureAlgorithm.ES256));
+            tokens.add("Bearer " + FilterBenchmark.token("user-" + i));
+        }
+        bearer = tokens.get(0);
+
+        upstream = new StubUpstream();
+        gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+                .profiles("benchmark")
+                .properties("benchmark.upstream-url=" + upstream.getBaseUrl(),
+                        "jwt.jwks.uri=" + jwks.toUri(),
+                        "jwt.verify.offload=" + offload,
+                        // Every request pays for its signature
+                        "jwt.cache.max-size=0")
+                .run();
+        int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+        // Own loops for the clients, so only the gateway runs on the two measured ones
+        clientLoops = LoopResources.create("benchmark-client", 2, true);
+        connections = ConnectionProvider.create("benchmark-client", LOAD_CONCURRENCY + 8);
+        client = HttpClient.create(connections).runOn(clientLoops).baseUrl("http://127.0.0.1:" + port);
+        if (publicGet() != 200 || authenticatedGet() != 200) {
+            throw new IllegalStateException("Gateway did not proxy to the stub upstream");
+        }
+
+        loadStartNanos = System.nanoTime();
+        load = Flux.interval(Duration.ofNanos(1_000_000_000L / loadRate))
+                .onBackpressureDrop()
+                .flatMap(i -> get("/api/secure/orders/ORD-1", tokens.get((int) (i % tokens.size())))
+                        .doOnNext(status -> loadRequests.incrementAndGet())
+                        .onErrorResume(e -> Mono.empty()), LOAD_CONCURRENCY)
+                .subscribe();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        load.dispose();
+        double seconds = (System.nanoTime() - loadStartNanos) / 1e9;
+        System.out.printf("%nBackground load (offload=%s): %.0f authenticated requests/s%n",
+                offload, loadRequests.get() / seconds);
+        connections.disposeLater().block();
+        clientLoops.disposeLater().block();
+        gateway.close();
+        upstream.close();
+    }
+
+    @Benchmark
+    public int publicGet() {
+        return get("/api/orders/ORD-1", null).block();
+    }
+
+    @Benchmark
+    public int authenticatedGet() {
+        return get("/api/secure/orders/ORD-1", bearer).block();
+    }
+
+    private Mono<Integer> get(String path, String authorization) {
+        HttpClient request = authorization == null ? client
+                : client.headers(headers -> headers.set(HttpHeaderNames.AUTHORIZATION, authorization));
+        return request.get().uri(path)
+                .responseSingle((response, body) -> body.thenReturn(response.status().code()));
+    }
+}
@@ -0,0 +1,113 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.support.StubUpstream;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Training run for the AppCDS archive: starts the gateway from the thin jar in AOT mode
+ * with -XX:ArchiveClassesAtExit, drives every route and filter path against stub
+ * upstreams, then stops it with SIGTERM so the JVM writes the classes it loaded.
+ *
+ * <p>Arguments: thin jar, archive to write, Spring profiles. The archive is only used when
+ * the gateway later runs from the same jar path, with the same classpath and JDK.
+ */
+public final class CdsTraining {
+
+    private static final int ROUNDS = 200;
+
+    // Identical GETs sent at once, so coalescing followers and the response cache are exercised too
+    private static final int CONCURRENT_GETS = 8;
+
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(args[0]).toAbsolutePath();
+        Path archive = Path.of(args[1]).toAbsolutePath();
+        String profiles = args.length > 2 ? args[2] : "default";
+        Files.deleteIfExists(archive);
+
+        Map<String, StubUpstream> upstreams = GatewayProcess.stubUpstreams();
+        List<String> command = List.of(GatewayProcess.java(), "-XX:ArchiveClassesAtExit=" + archive,
+                "-Dspring.aot.enabled=true", "-jar", jar.toString());
+        Path log = archive.resolveSibling("cds-training.log");
+        try (GatewayProcess gateway = GatewayProcess.start(command, profiles, upstreams, archive.getParent(), log)) {
+            Duration startup = gateway.awaitFirstProxiedResponse(Duration.ofMinutes(2));
+            String bearer = "Bearer " + token("alice");
+            for (int i = 0; i < ROUNDS; i++) {
+                round(gateway, bearer);
+            }
+            int exitCode = gateway.stop();
+            if (!Files.exists(archive)) {
+                throw new IllegalStateException("Gateway exited with " + exitCode + " without writing " + archive + ", see " + log);
+            }
+            System.out.printf("CDS training: first proxied response after %d ms, %d rounds, wrote %s (%d KB)%n",
+                    startup.toMillis(), ROUNDS, archive, Files.size(archive) / 1024);
+        } finally {
+            upstreams.values().forEach(StubUpstream::close);
+        }
+    }
+
+    /**
+     * One request down each route, authenticated and not, with and without bodies, plus a
+     * CORS preflight, an unknown path and the health and metrics endpoints.
+     */
+    private static void round(GatewayProcess gateway, String bearer) throws Exception {
+        gateway.send(get(gateway, GatewayProcess.PROXIED_PATH));
+        gateway.send(post(gateway, "/api/auth/login", "{\"username\":\"alice\",\"password\":\"secret\"}"));
+        gateway.send(post(gateway, "/api/auth/register", "{\"username\":\"bob\",\"password\":\"secret\",\"email\":\"bob@example.com\"}"));
+        gateway.send(get(gateway, "/api/orders").header("Authorization", bearer));
+        gateway.send(get(gateway, "/api/orders"));
+        gateway.send(post(gateway, "/api/orders", "{\"productId\":\"P-1\",\"quantity\":2}").header("Authorization", bearer));
+        IntStream.range(0, CONCURRENT_GETS).parallel().forEach(i -> {
+            try {
+                gateway.send(get(gateway, "/api/orders/ORD-1").header("Authorization", bearer));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        gateway.send(get(gateway, "/api/orders/user/alice").header("Authorization", bearer));
+        gateway.send(get(gateway, "/api/payments/PAY-1").header("Authorization", bearer));
+        gateway.send(post(gateway, "/api/payments", "{\"orderId\":\"ORD-1\",\"amount\":42.5}").header("Authorization", bearer));
+        gateway.send(get(gateway, "/api/notifications/user/alice").header("Authorization", bearer));
+        gateway.send(HttpRequest.newBuilder(gateway.uri("/api/orders"))
+                .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+                .header("Origin", "http://localhost:3000")
+                .header("Access-Control-Request-Method", "POST"));
+        gateway.send(get(gateway, "/api/unknown"));
+        gateway.send(get(gateway, "/health"));
+        gateway.send(get(gateway, "/actuator/prometheus"));
+    }
+
+    private static HttpRequest.Builder get(GatewayProcess gateway, String path) {
+        return HttpRequest.newBuilder(gateway.uri(path)).GET();
+    }
+
+    private static HttpRequest.Builder post(GatewayProcess gateway, String path, String json) {
+        return HttpRequest.newBuilder(gateway.uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+    }
+
+    private static String token(String subject) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2)))
+                .signWith(Keys.hmacShaKeyFor(FilterBenchmark.SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
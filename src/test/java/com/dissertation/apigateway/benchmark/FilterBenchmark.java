@@ -0,0 +1,168 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.config.AccessLogProperties;
+import com.dissertation.apigateway.config.CorsPolicyRegistry;
+import com.dissertation.apigateway.config.CorsProperties;
+import com.dissertation.apigateway.filter.AuthenticationFilter;
+import com.dissertation.apigateway.filter.CorsGlobalFilter;
+import com.dissertation.apigateway.filter.LoggingFilter;
+import com.dissertation.apigateway.logging.AccessLogWriter;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.util.JwtUtil;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each gateway filter in isolation against mock exchanges and a chain that just
+ * completes the response. newExchangeOnly is the cost of building the mock exchange
+ * and completing it; subtract it from the other results to get the filter's own cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    static final String SECRET = "5367566B59703373367639792F423F4528482B4D6251655468576D5A71347437";
+
+    private static final GatewayFilterChain COMPLETE = exchange -> exchange.getResponse().setComplete();
+
+    private static final Route ROUTE = Route.async().id("order-service-single-segment")
+            .uri(URI.create("http://localhost:8082")).predicate(exchange -> true).build();
+
+    private CorsGlobalFilter corsFilter;
+
+    private LoggingFilter loggingFilter;
+
+    private AccessLogWriter accessLogWriter;
+
+    private AuthenticationFilter authenticationFilter;
+
+    private String bearer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CorsProperties corsProperties = new CorsProperties();
+        corsProperties.getDefaultPolicy().setAllowedOrigins(List.of("http://localhost:3000", "https://*.example.com"));
+        corsFilter = new CorsGlobalFilter(new CorsPolicyRegistry(corsProperties));
+
+        AccessLogProperties accessLogProperties = new AccessLogProperties();
+        accessLogProperties.setFile("target/benchmark-access-log.jsonl");
+        accessLogWriter = new AccessLogWriter(accessLogProperties);
+        ReflectionTestUtils.invokeMethod(accessLogWriter, "start");
+        loggingFilter = new LoggingFilter(accessLogWriter, accessLogProperties);
+
+        authenticationFilter = new AuthenticationFilter();
+        ReflectionTestUtils.setField(authenticationFilter, "jwtUtil", jwtUtil());
+        ReflectionTestUtils.setField(authenticationFilter, "gatewayMetrics", new GatewayMetrics(new SimpleMeterRegistry(),
+                new StaticListableBeanFactory().getBeanProvider(RouteDefinitionLocator.class),
+                new StaticListableBeanFactory().getBeanProvider(CircuitBreakerRegistry.class)));
+        bearer = "Bearer " + token("alice");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(accessLogWriter, "stop");
+    }
+
+    @Benchmark
+    public ServerWebExchange newExchangeOnly() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        COMPLETE.filter(exchange).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange corsWithoutOrigin() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        corsFilter.filter(exchange, COMPLETE).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange corsAllowedOrigin() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1")
+                .header(HttpHeaders.ORIGIN, "https://shop.example.com"));
+        corsFilter.filter(exchange, COMPLETE).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange loggingFilter() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        loggingFilter.filter(exchange, COMPLETE).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange authenticationCachedToken() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1")
+                .header(HttpHeaders.AUTHORIZATION, bearer));
+        authenticationFilter.filter(exchange, COMPLETE).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public ServerWebExchange authenticationMissingHeader() {
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        authenticationFilter.filter(exchange, COMPLETE).block();
+        return exchange;
+    }
+
+    private static ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request);
+    }
+
+    static JwtUtil jwtUtil() {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 10_000L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtl", Duration.ofHours(1));
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+        return jwtUtil;
+    }
+
+    static String token(String subject) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
@@ -0,0 +1,105 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.ApiGatewayApplication;
+import com.dissertation.apigateway.support.StubUpstream;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole requests through a running gateway (Netty server, route lookup, every global
+ * filter, CircuitBreaker and the proxy client) to an in-process stub upstream, using
+ * the "benchmark" profile from src/test/resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GatewayChainBenchmark {
+
+    private StubUpstream upstream;
+
+    private ConfigurableApplicationContext gateway;
+
+    private ConnectionProvider connections;
+
+    private HttpClient client;
+
+    private String bearer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        upstream = new StubUpstream();
+        gateway = new SpringApplicationBuilder(ApiGatewayApplication.class)
+                .profiles("benchmark")
+                .properties("benchmark.upstream-url=" + upstream.getBaseUrl())
+                .run();
+        int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+        connections = ConnectionProvider.create("benchmark-client", 64);
+        client = HttpClient.create(connections).baseUrl("http://127.0.0.1:" + port);
+        bearer = "Bearer " + FilterBenchmark.token("alice");
+        if (proxiedGet() != 200 || authenticatedGet() != 200) {
+            throw new IllegalStateException("Gateway did not proxy to the stub upstream");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connections.disposeLater().block();
+        gateway.close();
+        upstream.close();
+    }
+
+    @Benchmark
+    public int proxiedGet() {
+        return client.get().uri("/api/orders/ORD-1")
+                .responseSingle((response, body) -> body.thenReturn(response.status().code()))
+                .block();
+    }
+
+    @Benchmark
+    public int proxiedGetWithCors() {
+        return client.headers(headers -> headers.set(HttpHeaderNames.ORIGIN, "http://localhost:3000"))
+                .get().uri("/api/orders/ORD-1")
+                .responseSingle((response, body) -> body.thenReturn(response.status().code()))
+                .block();
+    }
+
+    @Benchmark
+    public int authenticatedGet() {
+        return client.headers(headers -> headers.set(HttpHeaderNames.AUTHORIZATION, bearer))
+                .get().uri("/api/secure/orders/ORD-1")
+                .responseSingle((response, body) -> body.thenReturn(response.status().code()))
+                .block();
+    }
+
+    @Benchmark
+    public int corsPreflight() {
+        return client.headers(headers -> headers
+                        .set(HttpHeaderNames.ORIGIN, "http://localhost:3000")
+                        .set(HttpHeaderNames.ACCESS_CONTROL_REQUEST_METHOD, "POST"))
+                .request(HttpMethod.OPTIONS).uri("/api/orders/ORD-1")
+                .responseSingle((response, body) -> body.thenReturn(response.status().code()))
+                .block();
+    }
+}
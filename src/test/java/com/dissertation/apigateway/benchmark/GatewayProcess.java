@@ -0,0 +1,164 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.support.StubUpstream;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The gateway as a fresh JVM or native executable, started the way a new pod would be,
+ * in front of a stub upstream for every backend service. Startup is measured from
+ * process launch to the first request proxied through to a stub.
+ */
+final class GatewayProcess implements AutoCloseable {
+
+    static final List<String> SERVICES = List.of("user-service", "order-service", "payment-service", "notification-service");
+
+    // Public route proxied to user-service: answered by the stub only once routes, filters and the proxy client are up
+    static final String PROXIED_PATH = "/api/auth/user/alice";
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private final Process process;
+
+    private final long launchedAt;
+
+    private final URI baseUri;
+
+    private final Path log;
+
+    private GatewayProcess(Process process, long launchedAt, URI baseUri, Path log) {
+        this.process = process;
+        this.launchedAt = launchedAt;
+        this.baseUri = baseUri;
+        this.log = log;
+    }
+
+    /**
+     * One stub per backend service, all answering 200 to everything.
+     */
+    static Map<String, StubUpstream> stubUpstreams() {
+        Map<String, StubUpstream> upstreams = new LinkedHashMap<>();
+        SERVICES.forEach(service -> upstreams.put(service, new StubUpstream()));
+        return upstreams;
+    }
+
+    /**
+     * The path of the java launcher running this JVM, so the gateway runs on the same JDK
+     * its CDS archive was dumped with.
+     */
+    static String java() {
+        return ProcessHandle.current().info().command().orElse("java");
+    }
+
+    /**
+     * Launches the command with the gateway's arguments appended: a free port, the given
+     * profiles, every service pointed at its stub and Redis sync off. Output goes to log.
+     */
+    static GatewayProcess start(List<String> command, String profiles, Map<String, StubUpstream> upstreams,
+                                Path workDirectory, Path log) throws IOException {
+        int port = freePort();
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+        arguments.add("--spring.profiles.active=" + profiles);
+        arguments.add("--gateway.rate-limiter.redis-sync=false");
+        upstreams.forEach((service, upstream) ->
+                arguments.add("--gateway.upstream.services." + service + ".url=" + upstream.getBaseUrl()));
+        Files.createDirectories(workDirectory);
+        long launchedAt = System.nanoTime();
+        Process process = new ProcessBuilder(arguments)
+                .directory(workDirectory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        return new GatewayProcess(process, launchedAt, URI.create("http://127.0.0.1:" + port), log);
+    }
+
+    /**
+     * Polls the proxied route until a stub answers it and returns the time since launch.
+     */
+    Duration awaitFirstProxiedResponse(Duration timeout) throws IOException, InterruptedException {
+        long deadline = launchedAt + timeout.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri(PROXIED_PATH)).timeout(Duration.ofSeconds(2)).build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Gateway exited with " + process.exitValue() + ", see " + log);
+            }
+            try {
+                if (CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return Duration.ofNanos(System.nanoTime() - launchedAt);
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No proxied response within " + timeout + ", see " + log);
+    }
+
+    /**
+     * Resident set size of the process in kilobytes, from /proc on Linux and ps elsewhere.
+     */
+    long rssKilobytes() throws IOException, InterruptedException {
+        Path status = Path.of("/proc", String.valueOf(process.pid()), "status");
+        if (Files.isReadable(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        }
+        Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", String.valueOf(process.pid())).start();
+        String output = new String(ps.getInputStream().readAllBytes()).trim();
+        ps.waitFor();
+        return Long.parseLong(output);
+    }
+
+    HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return CLIENT.send(request.timeout(Duration.ofSeconds(10)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    URI uri(String path) {
+        return baseUri.resolve(path);
+    }
+
+    /**
+     * Stops the gateway with SIGTERM, like Kubernetes does, so it shuts down normally and
+     * a JVM with -XX:ArchiveClassesAtExit writes its archive. Returns the exit code.
+     */
+    int stop() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        return process.exitValue();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (process.isAlive()) {
+            stop();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
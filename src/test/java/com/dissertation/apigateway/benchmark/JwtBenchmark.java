@@ -0,0 +1,75 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.util.JwtUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token handling through JwtUtil.verify, as AuthenticationFilter calls it: the cached
+ * path every repeat caller takes, a cache miss (digest, header check, signature
+ * verification and cache put, with the cache emptied before each call), and a badly
+ * signed token, which is never cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+
+    private Cache<?, ?> verifiedTokens;
+
+    private String token;
+
+    private String tampered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtil = FilterBenchmark.jwtUtil();
+        verifiedTokens = (Cache<?, ?>) ReflectionTestUtils.getField(jwtUtil, "verifiedTokens");
+        token = FilterBenchmark.token("alice");
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        tampered = token.substring(0, token.lastIndexOf('.') + 1) + new StringBuilder(signature).reverse();
+        jwtUtil.verify(token).block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(jwtUtil, "stop");
+    }
+
+    @Benchmark
+    public Claims verifyCached() {
+        return jwtUtil.verify(token).block();
+    }
+
+    @Benchmark
+    public Claims verifyUncached() {
+        // One entry, so clearing it adds far less than the HMAC it forces
+        verifiedTokens.invalidateAll();
+        return jwtUtil.verify(token).block();
+    }
+
+    @Benchmark
+    public Claims verifyBadSignature() {
+        return jwtUtil.verify(tampered).block();
+    }
+}
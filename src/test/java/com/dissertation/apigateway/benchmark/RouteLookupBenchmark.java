@@ -0,0 +1,132 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.route.IndexedRoutePredicateHandlerMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.AsyncPredicate;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stock sequential predicate lookup with the RouteIndex lookup for
+ * 10, 100 and 1,000 routes shaped like the ones in application.yml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteLookupBenchmark {
+
+    private static final String[] SHAPES = {"/api/svc%d", "/api/svc%d/{segment}", "/api/svc%d/{segment}/**"};
+
+    @Param({"10", "100", "1000"})
+    public int routeCount;
+
+    private RoutePredicateHandlerMapping stock;
+
+    private RoutePredicateHandlerMapping indexed;
+
+    private ServerWebExchange[] exchanges;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Route> routes = new ArrayList<>();
+        List<RouteDefinition> definitions = new ArrayList<>();
+        PathRoutePredicateFactory pathFactory = new PathRoutePredicateFactory();
+        MethodRoutePredicateFactory methodFactory = new MethodRoutePredicateFactory();
+        for (int i = 0; i < routeCount; i++) {
+            String id = "route-" + i;
+            String pattern = String.format(SHAPES[i % SHAPES.length], i / SHAPES.length);
+            HttpMethod method = i % 2 == 0 ? HttpMethod.GET : HttpMethod.POST;
+
+            AsyncPredicate<ServerWebExchange> predicate = pathFactory
+                    .applyAsync(new PathRoutePredicateFactory.Config().setPatterns(List.of(pattern)));
+            MethodRoutePredicateFactory.Config methodConfig = new MethodRoutePredicateFactory.Config();
+            methodConfig.setMethods(method);
+            predicate = predicate.and(methodFactory.applyAsync(methodConfig));
+            routes.add(Route.async().id(id).uri(URI.create("http://localhost:8080")).order(i)
+                    .asyncPredicate(predicate).build());
+
+            RouteDefinition definition = new RouteDefinition();
+            definition.setId(id);
+            definition.setOrder(i);
+            definition.getPredicates().add(new PredicateDefinition("Path=" + pattern));
+            definition.getPredicates().add(new PredicateDefinition("Method=" + method.name()));
+            definitions.add(definition);
+        }
+
+        FilteringWebHandler webHandler = new FilteringWebHandler(List.of());
+        StandardEnvironment environment = new StandardEnvironment();
+        stock = new RoutePredicateHandlerMapping(webHandler, () -> Flux.fromIterable(routes),
+                new GlobalCorsProperties(), environment);
+        IndexedRoutePredicateHandlerMapping indexedMapping = new IndexedRoutePredicateHandlerMapping(webHandler,
+                () -> Flux.fromIterable(routes), () -> Flux.fromIterable(definitions),
+                new GlobalCorsProperties(), environment);
+        indexedMapping.refreshIndex().block();
+        indexed = indexedMapping;
+
+        // Requests spread over all routes, so the sequential lookup scans half the list on average
+        Random random = new Random(42);
+        exchanges = new ServerWebExchange[1024];
+        for (int i = 0; i < exchanges.length; i++) {
+            int target = random.nextInt(routeCount);
+            String path = String.format(SHAPES[target % SHAPES.length], target / SHAPES.length)
+                    .replace("{segment}", "ORD-" + i)
+                    .replace("**", "items/" + i);
+            HttpMethod method = target % 2 == 0 ? HttpMethod.GET : HttpMethod.POST;
+            exchanges[i] = MockServerWebExchange.from(MockServerHttpRequest.method(method, path));
+        }
+    }
+
+    @Benchmark
+    public Route stockPredicateLookup() {
+        return lookup(stock, nextExchange());
+    }
+
+    @Benchmark
+    public Route indexedLookup() {
+        return lookup(indexed, nextExchange());
+    }
+
+    private ServerWebExchange nextExchange() {
+        return exchanges[next++ & (exchanges.length - 1)];
+    }
+
+    private static Route lookup(RoutePredicateHandlerMapping mapping, ServerWebExchange exchange) {
+        mapping.getHandler(exchange).block();
+        return exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+    }
+}
@@ -0,0 +1,103 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.support.StubUpstream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup of each way the gateway can be run: time from process launch to the first
+ * request proxied to an upstream, and resident memory at that point. Modes are run in
+ * turn within each round, so drift on the machine affects all of them alike.
+ *
+ * <ul>
+ *   <li>jvm - the thin jar as built, classpath scanning and reflection as today</li>
+ *   <li>aot - with the Spring AOT bean definitions (-Dspring.aot.enabled=true)</li>
+ *   <li>aot-cds - AOT plus the AppCDS archive from CdsTraining, when it exists</li>
+ *   <li>native - the GraalVM executable next to the jar, when it was built</li>
+ * </ul>
+ *
+ * <p>Arguments: thin jar, CDS archive, Spring profiles, runs per mode. Results are
+ * printed and written to startup-benchmark.json next to the jar.
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(args[0]).toAbsolutePath();
+        Path archive = Path.of(args[1]).toAbsolutePath();
+        String profiles = args.length > 2 ? args[2] : "default";
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        Path workDirectory = jar.resolveSibling("startup-benchmark");
+
+        Map<String, List<String>> modes = modes(jar, archive);
+        Map<String, List<Sample>> samples = new LinkedHashMap<>();
+        modes.keySet().forEach(mode -> samples.put(mode, new ArrayList<>()));
+        Map<String, StubUpstream> upstreams = GatewayProcess.stubUpstreams();
+        try {
+            for (int run = 0; run < runs; run++) {
+                for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+                    Path log = workDirectory.resolve(mode.getKey() + "-" + run + ".log");
+                    try (GatewayProcess gateway = GatewayProcess.start(mode.getValue(), profiles, upstreams, workDirectory, log)) {
+                        long millis = gateway.awaitFirstProxiedResponse(Duration.ofMinutes(2)).toMillis();
+                        samples.get(mode.getKey()).add(new Sample(millis, gateway.rssKilobytes()));
+                    }
+                }
+            }
+        } finally {
+            upstreams.values().forEach(StubUpstream::close);
+        }
+
+        Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        System.out.printf("%-8s %6s %10s %10s %10s %10s%n", "mode", "runs", "median ms", "min ms", "max ms", "RSS MB");
+        samples.forEach((mode, measured) -> {
+            List<Long> millis = measured.stream().map(Sample::millis).sorted().toList();
+            List<Long> rss = measured.stream().map(Sample::rssKilobytes).sorted().toList();
+            long medianRssMb = median(rss) / 1024;
+            System.out.printf("%-8s %6d %10d %10d %10d %10d%n", mode, millis.size(), median(millis),
+                    millis.get(0), millis.get(millis.size() - 1), medianRssMb);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("firstProxiedResponseMillis", millis);
+            result.put("medianFirstProxiedResponseMillis", median(millis));
+            result.put("rssKilobytes", rss);
+            result.put("medianRssMegabytes", medianRssMb);
+            results.put(mode, result);
+        });
+        Path output = jar.resolveSibling("startup-benchmark.json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+        System.out.println("Results written to " + output);
+    }
+
+    private static Map<String, List<String>> modes(Path jar, Path archive) {
+        String java = GatewayProcess.java();
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("jvm", List.of(java, "-jar", jar.toString()));
+        modes.put("aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar.toString()));
+        if (Files.exists(archive)) {
+            // -Xshare:on fails the run instead of silently measuring one without the archive
+            modes.put("aot-cds", List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:on",
+                    "-Dspring.aot.enabled=true", "-jar", jar.toString()));
+        }
+        Path executable = jar.resolveSibling("api-gateway");
+        if (Files.isExecutable(executable)) {
+            modes.put("native", List.of(executable.toString()));
+        }
+        return modes;
+    }
+
+    private static long median(List<Long> sorted) {
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private record Sample(long millis, long rssKilobytes) {
+    }
+}
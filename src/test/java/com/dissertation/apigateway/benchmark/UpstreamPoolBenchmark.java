@@ -0,0 +1,118 @@
+package com.dissertation.apigateway.benchmark;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.upstream.UpstreamHttpClientFactory;
+import com.dissertation.apigateway.upstream.UpstreamPoolWarmer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of 64 concurrent GETs against an in-process Netty stub whose new connections
+ * take 50ms to start serving, as the first burst after startup or a quiet spell sees
+ * them: the stock gateway client with an empty pool against the per-service pool after
+ * UpstreamPoolWarmer has run. Compare the bursts' sampled p99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UpstreamPoolBenchmark {
+
+    private static final int CONCURRENCY = 64;
+
+    private static final Duration CONNECTION_COST = Duration.ofMillis(50);
+
+    @Param({"stock", "tuned"})
+    public String pool;
+
+    private StubUpstream upstream;
+
+    private String url;
+
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        upstream = new StubUpstream().connectionDelay(CONNECTION_COST);
+        url = upstream.getBaseUrl() + "/api/orders/ORD-1";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    /**
+     * A fresh pool per burst, so every burst is the first one the pool serves.
+     */
+    @Setup(Level.Invocation)
+    public void newPool() throws Exception {
+        if ("stock".equals(pool)) {
+            client = client(new HttpClientFactory(new HttpClientProperties(), new ServerProperties(),
+                    sslConfigurer(), List.of()));
+            return;
+        }
+        UpstreamPoolProperties.Pool service = new UpstreamPoolProperties.Pool();
+        service.setUrl(upstream.getBaseUrl());
+        service.setMaxConnections(CONCURRENCY);
+        service.setWarmupConnections(CONCURRENCY);
+        UpstreamPoolProperties properties = new UpstreamPoolProperties();
+        properties.setMetrics(false);
+        properties.getServices().put("order-service", service);
+        client = client(new UpstreamHttpClientFactory(new HttpClientProperties(), new ServerProperties(),
+                sslConfigurer(), List.of(), properties, new LoadBalancerProperties()));
+        Long warmed = new UpstreamPoolWarmer(client, properties).warmUp().block();
+        if (warmed == null || warmed != CONCURRENCY) {
+            throw new IllegalStateException("Warm-up opened " + warmed + " of " + CONCURRENCY + " connections");
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposePool() {
+        client.configuration().connectionProvider().disposeLater().block();
+    }
+
+    @Benchmark
+    public Integer burst() {
+        return Flux.range(0, CONCURRENCY)
+                .flatMap(i -> client.get().uri(url)
+                        .responseSingle((response, body) -> body.thenReturn(response.status().code())), CONCURRENCY)
+                .reduce(0, (answered, status) -> status == 200 ? answered + 1 : answered)
+                .block(Duration.ofSeconds(30));
+    }
+
+    private static HttpClient client(HttpClientFactory factory) throws Exception {
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    private static HttpClientSslConfigurer sslConfigurer() {
+        return new HttpClientSslConfigurer(new HttpClientProperties().getSsl(), new ServerProperties()) {
+        };
+    }
+}
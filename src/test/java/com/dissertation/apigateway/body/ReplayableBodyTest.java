@@ -0,0 +1,108 @@
+package com.dissertation.apigateway.body;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReplayableBodyTest {
+
+    private static final int CHUNK = 16 * 1024;
+
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final List<NettyDataBuffer> received = new ArrayList<>();
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void shouldReplaySmallBodyFromReceivedBuffersAndReleaseThem() throws IOException {
+        byte[] payload = payload(3 * CHUNK + 100);
+
+        ReplayableBody body = ReplayableBody.record(chunks(payload), 64 * 1024, 64 * 1024, null).block();
+
+        assertThat(body.isSpilled()).isFalse();
+        assertThat(read(body)).isEqualTo(payload);
+        assertThat(read(body)).isEqualTo(payload);
+        body.release();
+        assertThat(received).allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+        assertThat(spillFiles()).isEmpty();
+    }
+
+    @Test
+    void shouldSpillBeyondMemoryLimitAndDeleteFileOnRelease() throws IOException {
+        byte[] payload = payload(2 * 1024 * 1024 + 7);
+
+        ReplayableBody body = ReplayableBody.record(chunks(payload), 64 * 1024, 4 * 1024 * 1024, spillDirectory).block();
+
+        assertThat(body.isSpilled()).isTrue();
+        assertThat(body.size()).isEqualTo(payload.length);
+        assertThat(spillFiles()).hasSize(1);
+        assertThat(read(body)).isEqualTo(payload);
+        assertThat(read(body)).isEqualTo(payload);
+        body.release();
+        assertThat(spillFiles()).isEmpty();
+        assertThat(received).allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void shouldRejectBodyLargerThanLimitAndReleaseWhatWasRead() throws IOException {
+        byte[] payload = payload(8 * CHUNK);
+
+        assertThatThrownBy(() -> ReplayableBody.record(chunks(payload), 2 * CHUNK, 4 * CHUNK, spillDirectory).block())
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        // Chunks after the failing one are never requested, so only the read ones must be released
+        assertThat(received).filteredOn(buffer -> buffer.getNativeBuffer().refCnt() > 0).isEmpty();
+        assertThat(spillFiles()).isEmpty();
+    }
+
+    private Flux<DataBuffer> chunks(byte[] payload) {
+        return Flux.range(0, (payload.length + CHUNK - 1) / CHUNK)
+                .map(i -> {
+                    int offset = i * CHUNK;
+                    NettyDataBuffer buffer = factory.allocateBuffer(CHUNK);
+                    buffer.write(payload, offset, Math.min(CHUNK, payload.length - offset));
+                    received.add(buffer);
+                    return buffer;
+                });
+    }
+
+    private static byte[] read(ReplayableBody body) {
+        DataBuffer joined = DataBufferUtils.join(body.replay()).block();
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.toList();
+        }
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        ThreadLocalRandom.current().nextBytes(payload);
+        return payload;
+    }
+}
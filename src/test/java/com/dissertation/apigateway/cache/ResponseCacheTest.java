@@ -0,0 +1,128 @@
+package com.dissertation.apigateway.cache;
+
+import com.dissertation.apigateway.config.ResponseCacheProperties;
+import com.dissertation.apigateway.support.InProcessRedis;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheTest {
+
+    private InProcessRedis redis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @Test
+    void shouldShareEntriesBetweenReplicasThroughRedis() throws Exception {
+        redis = new InProcessRedis();
+        ReactiveStringRedisTemplate template = template(redis.getPort());
+        ResponseCache replicaA = cache(template);
+        ResponseCache replicaB = cache(template);
+        CachedResponse entry = entry("[\"ORD-1\"]");
+
+        replicaA.put("order-service-get-all\n/api/orders\n\nalice", entry);
+        Optional<CachedResponse> shared = Optional.empty();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (shared.isEmpty() && System.nanoTime() < deadline) {
+            shared = replicaB.get("order-service-get-all\n/api/orders\n\nalice").block(Duration.ofSeconds(5));
+        }
+
+        assertThat(shared).hasValueSatisfying(found -> {
+            assertThat(new String(found.body(), StandardCharsets.UTF_8)).isEqualTo("[\"ORD-1\"]");
+            assertThat(found.headers()).isEqualTo(entry.headers());
+            assertThat(found.etag()).isEqualTo("\"v1\"");
+            assertThat(found.freshUntil()).isEqualTo(entry.freshUntil());
+        });
+        // Keys are hashed, so neither user names nor paths end up in Redis
+        assertThat(redis.snapshot().keySet()).singleElement().asString()
+                .startsWith("gateway:response-cache:").doesNotContain("alice");
+        assertThat(replicaB.get("order-service-get-all\n/api/orders\n\nbob").block()).isEmpty();
+    }
+
+    @Test
+    void shouldTreatUnreachableRedisAsMiss() throws Exception {
+        int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unusedPort = socket.getLocalPort();
+        }
+        ResponseCache cache = cache(template(unusedPort));
+
+        assertThat(cache.get("order-service-get-all\n/api/orders\n\n").block(Duration.ofSeconds(5))).isEmpty();
+        cache.put("order-service-get-all\n/api/orders\n\n", entry("[]"));
+        assertThat(cache.get("order-service-get-all\n/api/orders\n\n").block(Duration.ofSeconds(5))).isPresent();
+    }
+
+    @Test
+    void shouldTakeFreshnessFromSharedMaxAgeThenMaxAgeThenExpires() {
+        long now = System.currentTimeMillis();
+        long maxTtl = Duration.ofMinutes(10).toMillis();
+        HttpHeaders shared = new HttpHeaders();
+        shared.setCacheControl("max-age=30, s-maxage=120");
+        HttpHeaders expires = new HttpHeaders();
+        expires.setExpires(now + 45_000);
+        HttpHeaders capped = new HttpHeaders();
+        capped.setCacheControl("max-age=86400");
+        HttpHeaders personal = new HttpHeaders();
+        personal.setCacheControl("private, max-age=60");
+        HttpHeaders open = new HttpHeaders();
+        open.setCacheControl("public, max-age=60");
+
+        assertThat(CachePolicy.freshnessMillis(shared, now, 0, maxTtl, false)).isEqualTo(120_000);
+        assertThat(CachePolicy.freshnessMillis(expires, now, 0, maxTtl, true)).isBetween(44_000L, 45_000L);
+        assertThat(CachePolicy.freshnessMillis(new HttpHeaders(), now, 5_000, maxTtl, true)).isEqualTo(5_000);
+        assertThat(CachePolicy.freshnessMillis(capped, now, 0, maxTtl, true)).isEqualTo(maxTtl);
+        assertThat(CachePolicy.freshnessMillis(personal, now, 0, maxTtl, false)).isEqualTo(CachePolicy.NOT_CACHEABLE);
+        assertThat(CachePolicy.freshnessMillis(personal, now, 0, maxTtl, true)).isEqualTo(60_000);
+        // A shared key only stores what the upstream explicitly allowed to be shared
+        assertThat(CachePolicy.freshnessMillis(open, now, 0, maxTtl, false)).isEqualTo(60_000);
+        assertThat(CachePolicy.freshnessMillis(capped, now, 0, maxTtl, false)).isEqualTo(CachePolicy.NOT_CACHEABLE);
+        assertThat(CachePolicy.freshnessMillis(new HttpHeaders(), now, 5_000, maxTtl, false)).isEqualTo(CachePolicy.NOT_CACHEABLE);
+    }
+
+    private static CachedResponse entry(String body) {
+        long now = System.currentTimeMillis();
+        return new CachedResponse(200, Map.of(HttpHeaders.CONTENT_TYPE, List.of("application/json"),
+                HttpHeaders.ETAG, List.of("\"v1\"")), body.getBytes(StandardCharsets.UTF_8), now,
+                now + 60_000, now + 120_000, "\"v1\"", -1, Map.of());
+    }
+
+    private static ResponseCache cache(ReactiveStringRedisTemplate template) {
+        ResponseCacheProperties properties = new ResponseCacheProperties();
+        properties.setRedis(true);
+        properties.setRedisTimeout(Duration.ofSeconds(2));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("redis", template));
+        return new ResponseCache(properties, beans.getBeanProvider(ReactiveStringRedisTemplate.class),
+                beans.getBeanProvider(ObjectMapper.class), beans.getBeanProvider(MeterRegistry.class));
+    }
+
+    private ReactiveStringRedisTemplate template(int port) {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        return new ReactiveStringRedisTemplate(connectionFactory);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dissertation.apigateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorsConfigTest {
+
+    private final WebFilter preflightFilter = new CorsConfig().corsPreflightFilter(new CorsPolicyRegistry(properties()));
+
+    private final List<String> routed = new ArrayList<>();
+
+    @Test
+    void shouldAnswerPreflightBeforeRouting() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"));
+
+        preflightFilter.filter(exchange, gateway()).block();
+
+        assertThat(routed).isEmpty();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("http://localhost:3000");
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS)).isEqualTo("GET, POST");
+    }
+
+    @Test
+    void shouldRejectPreflightFromDisallowedOriginBeforeRouting() {
+        MockServerWebExchange payments = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "https://evil.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"));
+        MockServerWebExchange orders = MockServerWebExchange.from(MockServerHttpRequest.options("/api/orders/1")
+                .header(HttpHeaders.ORIGIN, "https://evil.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"));
+
+        preflightFilter.filter(payments, gateway()).block();
+        preflightFilter.filter(orders, gateway()).block();
+
+        assertThat(routed).isEmpty();
+        assertThat(payments.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(payments.getResponse().getHeaders().getAccessControlAllowOrigin()).isNull();
+        // The same origin passes the default policy on another path
+        assertThat(orders.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(orders.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("*");
+    }
+
+    @Test
+    void shouldRouteEverythingThatIsNotAPreflight() {
+        MockServerWebExchange withoutOrigin = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"));
+        MockServerWebExchange actual = MockServerWebExchange.from(MockServerHttpRequest.post("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000"));
+
+        preflightFilter.filter(withoutOrigin, gateway()).block();
+        preflightFilter.filter(actual, gateway()).block();
+
+        assertThat(routed).containsExactly("/api/payments/1", "/api/payments/1");
+        assertThat(withoutOrigin.getResponse().getHeaders().getAccessControlAllowOrigin()).isNull();
+        assertThat(actual.getResponse().getHeaders().getAccessControlAllowOrigin()).isNull();
+    }
+
+    private WebFilterChain gateway() {
+        return exchange -> {
+            routed.add(exchange.getRequest().getPath().value());
+            return Mono.empty();
+        };
+    }
+
+    private static CorsProperties properties() {
+        CorsProperties properties = new CorsProperties();
+        CorsProperties.Policy payments = new CorsProperties.Policy();
+        payments.setPaths(List.of("/api/payments/**"));
+        payments.setAllowedOrigins(List.of("http://localhost:3000", "https://*.example.com"));
+        payments.setAllowedMethods(List.of("GET", "POST"));
+        payments.setAllowCredentials(true);
+        properties.getPolicies().put("payments", payments);
+        return properties;
+    }
+}
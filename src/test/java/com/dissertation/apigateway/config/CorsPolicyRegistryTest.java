@@ -0,0 +1,77 @@
+package com.dissertation.apigateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorsPolicyRegistryTest {
+
+    private final CorsPolicyRegistry registry = new CorsPolicyRegistry(properties());
+
+    @Test
+    void shouldResolveNamedPolicyByPathAndFallBackToDefault() {
+        assertThat(registry.resolve(PathContainer.parsePath("/api/payments/42")).getName()).isEqualTo("payments");
+        assertThat(registry.resolve(PathContainer.parsePath("/api/orders")).getName()).isEqualTo("default");
+    }
+
+    @Test
+    void shouldMatchExactAndWildcardOrigins() {
+        CorsPolicy payments = registry.resolve(PathContainer.parsePath("/api/payments"));
+
+        assertThat(payments.isOriginAllowed("http://localhost:3000")).isTrue();
+        assertThat(payments.isOriginAllowed("https://shop.example.com")).isTrue();
+        assertThat(payments.isOriginAllowed("https://evil.com")).isFalse();
+        assertThat(payments.isOriginAllowed("https://example.com.evil.com/x")).isFalse();
+    }
+
+    @Test
+    void shouldAnswerPreflightFromPolicy() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "https://shop.example.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, "Authorization"));
+
+        registry.resolve(exchange.getRequest().getPath().pathWithinApplication()).handlePreflight(exchange).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(headers.getAccessControlAllowOrigin()).isEqualTo("https://shop.example.com");
+        assertThat(headers.getAccessControlAllowCredentials()).isTrue();
+        assertThat(headers.getFirst(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS)).isEqualTo("Authorization");
+        assertThat(headers.getVary()).contains(HttpHeaders.ORIGIN);
+    }
+
+    @Test
+    void shouldRejectPreflightForDisallowedOriginOrMethod() {
+        MockServerWebExchange badOrigin = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "https://evil.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST"));
+        MockServerWebExchange badMethod = MockServerWebExchange.from(MockServerHttpRequest.options("/api/payments/1")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "DELETE"));
+
+        registry.resolve(PathContainer.parsePath("/api/payments/1")).handlePreflight(badOrigin).block();
+        registry.resolve(PathContainer.parsePath("/api/payments/1")).handlePreflight(badMethod).block();
+
+        assertThat(badOrigin.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(badMethod.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    private static CorsProperties properties() {
+        CorsProperties properties = new CorsProperties();
+        CorsProperties.Policy payments = new CorsProperties.Policy();
+        payments.setPaths(List.of("/api/payments/**"));
+        payments.setAllowedOrigins(List.of("http://localhost:3000", "https://*.example.com"));
+        payments.setAllowedMethods(List.of("GET", "POST"));
+        payments.setAllowCredentials(true);
+        properties.getPolicies().put("payments", payments);
+        return properties;
+    }
+}
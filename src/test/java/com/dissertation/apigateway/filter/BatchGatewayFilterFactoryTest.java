@@ -0,0 +1,230 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests through the filter to a stub notification service that accepts batches.
+ */
+class BatchGatewayFilterFactoryTest {
+
+    private final Route route = Route.async().id("notification-service").uri(URI.create("lb://notifications"))
+            .predicate(exchange -> true).build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final StubUpstream upstream = new StubUpstream().recordBodies();
+
+    private final List<String> proxied = new CopyOnWriteArrayList<>();
+
+    // Stands in for the rest of the chain: requests the filter does not batch end up here
+    private final GatewayFilterChain chain = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+            .map(buffer -> {
+                String body = buffer.toString(StandardCharsets.UTF_8);
+                DataBufferUtils.release(buffer);
+                return body;
+            })
+            .defaultIfEmpty("")
+            .doOnNext(proxied::add)
+            .then(Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.CREATED)));
+
+    private final BatchGatewayFilterFactory.Config config = new BatchGatewayFilterFactory.Config();
+
+    private SimpleMeterRegistry registry;
+
+    private BatchGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("registry", registry));
+        LoadBalancerProperties loadBalancerProperties = new LoadBalancerProperties();
+        LoadBalancerProperties.Group group = new LoadBalancerProperties.Group();
+        group.setReplicas(List.of(upstream.getBaseUrl()));
+        loadBalancerProperties.getGroups().put("notifications", group);
+        loadBalancerProperties.getHealthCheck().setEnabled(false);
+        HttpClient httpClient = HttpClient.create();
+        UpstreamGroups groups = new UpstreamGroups(loadBalancerProperties, new UpstreamPoolProperties(), httpClient,
+                beans.getBeanProvider(MeterRegistry.class));
+        factory = new BatchGatewayFilterFactory(new GatewayMetrics(registry,
+                beans.getBeanProvider(RouteDefinitionLocator.class), beans.getBeanProvider(CircuitBreakerRegistry.class)),
+                groups, httpClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.close();
+    }
+
+    @Test
+    void shouldSendConcurrentItemsAsOneBatch() throws Exception {
+        config.setMaxItems(5);
+        config.setMaxDelay(Duration.ofSeconds(5));
+        GatewayFilter filter = factory.apply(config);
+        List<MockServerWebExchange> exchanges = IntStream.range(0, 5)
+                .mapToObj(i -> exchange("/api/notifications?channel=email", "{\"userId\":\"user-" + i + "\",\"message\":\"hi\"}"))
+                .toList();
+
+        Flux.fromIterable(exchanges).flatMap(exchange -> filter.filter(exchange, chain)).blockLast(Duration.ofSeconds(5));
+
+        assertThat(exchanges).allSatisfy(exchange ->
+                assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.ACCEPTED));
+        assertThat(upstream.getReceived()).hasSize(1);
+        StubUpstream.Received batch = upstream.getReceived().get(0);
+        assertThat(batch.uri()).isEqualTo("/api/notifications/batch");
+        JsonNode items = objectMapper.readTree(batch.body());
+        assertThat(items).hasSize(5);
+        assertThat(items.get(0).get("method").asText()).isEqualTo("POST");
+        assertThat(items.get(0).get("path").asText()).isEqualTo("/api/notifications");
+        assertThat(items.get(0).get("query").asText()).isEqualTo("channel=email");
+        assertThat(items.get(0).get("headers").get("X-Username").asText()).isEqualTo("alice");
+        assertThat(items.findValuesAsText("userId")).containsExactlyInAnyOrder("user-0", "user-1", "user-2", "user-3", "user-4");
+        assertThat(proxied).isEmpty();
+        assertThat(batched("batched")).isEqualTo(5);
+        DistributionSummary batches = registry.get(GatewayMetrics.BATCHES).tag("result", "acknowledged").summary();
+        assertThat(batches.count()).isEqualTo(1);
+        assertThat(batches.totalAmount()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldFlushAfterMaxDelayAndAcknowledgeImmediately() throws Exception {
+        config.setAck(BatchGatewayFilterFactory.Ack.IMMEDIATE);
+        config.setMaxDelay(Duration.ofMillis(50));
+        upstream.delay(Duration.ofMillis(300));
+        GatewayFilter filter = factory.apply(config);
+
+        MockServerWebExchange exchange = exchange("/api/notifications", "{\"userId\":\"user-1\"}");
+        long start = System.nanoTime();
+        filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+
+        // Answered before the batch was even sent
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(250));
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (upstream.getReceived().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(upstream.getReceived()).hasSize(1);
+        assertThat(objectMapper.readTree(upstream.getReceived().get(0).body())).hasSize(1);
+    }
+
+    @Test
+    void shouldPushBackWhenPendingBatchesAreFull() {
+        config.setMaxItems(1);
+        config.setMaxPendingBatches(1);
+        config.setRetryAfter(Duration.ofSeconds(2));
+        upstream.delay(Duration.ofMillis(300));
+        GatewayFilter filter = factory.apply(config);
+
+        MockServerWebExchange first = exchange("/api/notifications", "{\"userId\":\"user-1\"}");
+        MockServerWebExchange second = exchange("/api/notifications", "{\"userId\":\"user-2\"}");
+        Mono<Void> inFlight = filter.filter(first, chain).cache();
+        inFlight.subscribe();
+        filter.filter(second, chain).block(Duration.ofSeconds(5));
+        inFlight.block(Duration.ofSeconds(5));
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(second.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(first.getResponse().getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(upstream.getReceived()).hasSize(1);
+        assertThat(batched("rejected")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPassTheBatchStatusOnWhenTheUpstreamRejectsIt() {
+        config.setMaxItems(2);
+        upstream.status(500);
+        GatewayFilter filter = factory.apply(config);
+        List<MockServerWebExchange> exchanges = List.of(
+                exchange("/api/notifications", "{\"userId\":\"user-1\"}"),
+                exchange("/api/notifications", "{\"userId\":\"user-2\"}"));
+
+        Flux.fromIterable(exchanges).flatMap(exchange -> filter.filter(exchange, chain)).blockLast(Duration.ofSeconds(5));
+
+        assertThat(exchanges).allSatisfy(exchange ->
+                assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR));
+        assertThat(registry.get(GatewayMetrics.BATCHES).tag("result", "failed").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldProxyRequestsItCannotBatch() {
+        config.setMaxItemSize(DataSize.ofBytes(64));
+        GatewayFilter filter = factory.apply(config);
+        String large = "{\"message\":\"" + "x".repeat(100) + "\"}";
+        List<MockServerWebExchange> exchanges = List.of(
+                exchange(MockServerHttpRequest.get("/api/notifications/user/alice")),
+                exchange(MockServerHttpRequest.post("/api/notifications").contentType(MediaType.TEXT_PLAIN)
+                        .contentLength(5).body("hello")),
+                exchange("/api/notifications", "{\"userId\":"),
+                exchange("/api/notifications", large));
+
+        exchanges.forEach(exchange -> filter.filter(exchange, chain).block(Duration.ofSeconds(5)));
+
+        assertThat(exchanges).allSatisfy(exchange ->
+                assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED));
+        // The invalid JSON body was read to check it and still reaches the upstream in full
+        assertThat(proxied).containsExactly("", "hello", "{\"userId\":", large);
+        assertThat(upstream.getReceived()).isEmpty();
+        assertThat(batched("passed_through")).isEqualTo(4);
+    }
+
+    private MockServerWebExchange exchange(String path, String json) {
+        return exchange(MockServerHttpRequest.post(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(json.getBytes(StandardCharsets.UTF_8).length)
+                .header("X-Username", "alice")
+                .body(json));
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return exchange(request.build());
+    }
+
+    private double batched(String outcome) {
+        return registry.get(GatewayMetrics.BATCHING).tag("outcome", outcome).counter().count();
+    }
+}
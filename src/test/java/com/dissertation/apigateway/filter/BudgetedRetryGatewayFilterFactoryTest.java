@@ -0,0 +1,217 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BudgetedRetryGatewayFilterFactoryTest {
+
+    private static final String CIRCUIT_BREAKER = "orderServiceCircuitBreaker";
+
+    private final Route route = Route.async().id("order-service").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    private SimpleMeterRegistry registry;
+
+    private CircuitBreakerRegistry circuitBreakers;
+
+    private BudgetedRetryGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+        RouteDefinition definition = new RouteDefinition();
+        definition.setId("order-service");
+        definition.getFilters().add(new FilterDefinition("CircuitBreaker=" + CIRCUIT_BREAKER));
+        RouteDefinitionLocator locator = () -> Flux.just(definition);
+        GatewayMetrics metrics = new GatewayMetrics(registry,
+                new StaticListableBeanFactory(Map.of("locator", locator)).getBeanProvider(RouteDefinitionLocator.class),
+                new StaticListableBeanFactory(Map.of("circuitBreakers", circuitBreakers)).getBeanProvider(CircuitBreakerRegistry.class));
+        metrics.onApplicationEvent(new RefreshRoutesResultEvent(this));
+        factory = new BudgetedRetryGatewayFilterFactory(metrics);
+    }
+
+    @Test
+    void shouldRetryIdempotentRequestUntilUpstreamRecovers() {
+        GatewayFilter filter = factory.apply(config());
+        AtomicInteger attempts = new AtomicInteger();
+
+        ServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        filter.filter(exchange, upstream(attempts, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.OK)).block();
+
+        assertThat(attempts).hasValue(2);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retries("retried")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetryPostOnlyWithIdempotencyKey() {
+        GatewayFilter filter = factory.apply(config());
+        AtomicInteger withoutKey = new AtomicInteger();
+        AtomicInteger withKey = new AtomicInteger();
+
+        filter.filter(exchange(MockServerHttpRequest.post("/api/orders")),
+                upstream(withoutKey, HttpStatus.BAD_GATEWAY, HttpStatus.OK)).block();
+        filter.filter(exchange(MockServerHttpRequest.post("/api/orders")
+                        .header(BudgetedRetryGatewayFilterFactory.IDEMPOTENCY_KEY_HEADER, "order-42")),
+                upstream(withKey, HttpStatus.BAD_GATEWAY, HttpStatus.OK)).block();
+
+        assertThat(withoutKey).hasValue(1);
+        assertThat(withKey).hasValue(2);
+        assertThat(retries("not_idempotent")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldResendBodyOnlyWhenRequestBodyFilterKeptIt() {
+        GatewayFilter retry = factory.apply(config());
+        RequestBodyGatewayFilterFactory.Config bodyConfig = new RequestBodyGatewayFilterFactory.Config();
+        bodyConfig.setMode(RequestBodyGatewayFilterFactory.Mode.BUFFER);
+        GatewayFilter buffer = new RequestBodyGatewayFilterFactory().apply(bodyConfig);
+        String payload = "{\"orderId\":\"ORD-42\",\"amount\":42.5}";
+        List<String> streamed = new ArrayList<>();
+        List<String> buffered = new ArrayList<>();
+
+        retry.filter(exchange(postWithBody(payload)), upstreamReadingBody(streamed, HttpStatus.BAD_GATEWAY, HttpStatus.OK)).block();
+        buffer.filter(exchange(postWithBody(payload)), exchange -> retry.filter(exchange,
+                upstreamReadingBody(buffered, HttpStatus.BAD_GATEWAY, HttpStatus.OK))).block();
+
+        assertThat(streamed).containsExactly(payload);
+        assertThat(buffered).containsExactly(payload, payload);
+        assertThat(retries("body_not_replayable")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStopRetryingOnceCircuitBreakerLeavesClosed() {
+        GatewayFilter filter = factory.apply(config());
+        circuitBreakers.circuitBreaker(CIRCUIT_BREAKER).transitionToOpenState();
+        circuitBreakers.circuitBreaker(CIRCUIT_BREAKER).transitionToHalfOpenState();
+        AtomicInteger attempts = new AtomicInteger();
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders/ORD-1")),
+                upstream(attempts, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.OK)).block();
+
+        assertThat(attempts).hasValue(1);
+        assertThat(retries("circuit_not_closed")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCapRetriesAtBudgetShareOfTraffic() {
+        BudgetedRetryGatewayFilterFactory.Config config = config();
+        config.setRetries(3);
+        config.getBudget().setRatio(0.5);
+        config.getBudget().setMinRetriesPerSecond(0);
+        GatewayFilter filter = factory.apply(config);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // A full outage: without a budget every request would be tried 4 times
+        for (int i = 0; i < 10; i++) {
+            filter.filter(exchange(MockServerHttpRequest.get("/api/orders/ORD-1")),
+                    upstream(attempts, HttpStatus.SERVICE_UNAVAILABLE)).block();
+        }
+
+        assertThat(retries("retried")).isEqualTo(5);
+        assertThat(attempts).hasValue(15);
+        assertThat(retries("budget_exhausted")).isEqualTo(10);
+    }
+
+    @Test
+    void shouldJitterBackoffBelowExponentialCeiling() {
+        BudgetedRetryGatewayFilterFactory.Config.Backoff backoff = new BudgetedRetryGatewayFilterFactory.Config.Backoff();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(BudgetedRetryGatewayFilterFactory.backoff(0, backoff)).isBetween(Duration.ZERO, Duration.ofMillis(50));
+            assertThat(BudgetedRetryGatewayFilterFactory.backoff(1, backoff)).isBetween(Duration.ZERO, Duration.ofMillis(100));
+            assertThat(BudgetedRetryGatewayFilterFactory.backoff(10, backoff)).isBetween(Duration.ZERO, Duration.ofMillis(500));
+        }
+    }
+
+    private BudgetedRetryGatewayFilterFactory.Config config() {
+        BudgetedRetryGatewayFilterFactory.Config config = new BudgetedRetryGatewayFilterFactory.Config();
+        config.setRouteId(route.getId());
+        config.getBackoff().setFirstBackoff(Duration.ZERO);
+        return config;
+    }
+
+    private ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return exchange(request.build());
+    }
+
+    private ServerWebExchange exchange(MockServerHttpRequest request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    /**
+     * Answers attempt n with statuses[n], repeating the last status once they run out.
+     */
+    private static GatewayFilterChain upstream(AtomicInteger attempts, HttpStatus... statuses) {
+        AtomicInteger calls = new AtomicInteger();
+        return exchange -> Mono.fromRunnable(() -> {
+            attempts.incrementAndGet();
+            int call = calls.getAndIncrement();
+            exchange.getResponse().setStatusCode(statuses[Math.min(call, statuses.length - 1)]);
+        });
+    }
+
+    private static MockServerHttpRequest postWithBody(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return MockServerHttpRequest.post("/api/orders")
+                .header(BudgetedRetryGatewayFilterFactory.IDEMPOTENCY_KEY_HEADER, "order-42")
+                .contentLength(bytes.length)
+                .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)));
+    }
+
+    /**
+     * Like upstream(), but reads the request body on every attempt as NettyRoutingFilter would.
+     */
+    private static GatewayFilterChain upstreamReadingBody(List<String> bodies, HttpStatus... statuses) {
+        AtomicInteger calls = new AtomicInteger();
+        return exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+                .map(body -> {
+                    String text = body.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(body);
+                    return text;
+                })
+                .doOnNext(bodies::add)
+                .then(Mono.fromRunnable(() -> exchange.getResponse()
+                        .setStatusCode(statuses[Math.min(calls.getAndIncrement(), statuses.length - 1)])));
+    }
+
+    private double retries(String outcome) {
+        Counter counter = registry.find(GatewayMetrics.RETRIES)
+                .tags("route", route.getId(), "outcome", outcome).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
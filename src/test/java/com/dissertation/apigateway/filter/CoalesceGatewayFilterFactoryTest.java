@@ -0,0 +1,214 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalesceGatewayFilterFactoryTest {
+
+    private static final String BODY = "{\"orderId\":\"ORD-7\",\"status\":\"SHIPPED\"}";
+
+    private final Route route = Route.async().id("order-service-single-segment").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final List<NettyDataBuffer> upstreamBuffers = new CopyOnWriteArrayList<>();
+
+    private SimpleMeterRegistry registry;
+
+    private CoalesceGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        factory = new CoalesceGatewayFilterFactory(new GatewayMetrics(registry,
+                beans.getBeanProvider(RouteDefinitionLocator.class), beans.getBeanProvider(CircuitBreakerRegistry.class)));
+    }
+
+    @Test
+    void shouldSendOneUpstreamCallForConcurrentIdenticalGets() {
+        GatewayFilter filter = factory.apply(config(Duration.ofSeconds(5)));
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = upstream(calls, Duration.ofMillis(200), HttpStatus.OK);
+        List<MockServerWebExchange> exchanges = IntStream.range(0, 10)
+                .mapToObj(i -> exchange(MockServerHttpRequest.get(i % 2 == 0 ? "/api/orders/ORD-7?b=2&a=1" : "/api/orders/./ORD-7?a=1&b=2")))
+                .toList();
+
+        Flux.fromIterable(exchanges).flatMap(exchange -> filter.filter(exchange, upstream)).blockLast();
+
+        assertThat(calls).hasValue(1);
+        assertThat(exchanges).allSatisfy(exchange -> {
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getHeaders().getFirst("X-Order-Version")).isEqualTo("3");
+            assertThat(body(exchange)).isEqualTo(BODY);
+        });
+        assertThat(coalesced("leader")).isEqualTo(1);
+        assertThat(coalesced("coalesced")).isEqualTo(9);
+        // The leader's buffers were shared, not copied, and every view has been released
+        assertThat(upstreamBuffers).allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void shouldNotCoalesceRequestsOfDifferentUsers() {
+        GatewayFilter filter = factory.apply(config(Duration.ofSeconds(5)));
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = upstream(calls, Duration.ofMillis(100), HttpStatus.OK);
+
+        Flux.just("alice", "bob", "alice")
+                .flatMap(user -> filter.filter(exchange(MockServerHttpRequest.get("/api/orders/ORD-7")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + user)), upstream))
+                .blockLast();
+
+        assertThat(calls).hasValue(2);
+        assertThat(coalesced("coalesced")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLetFollowersCallUpstreamWhenLeaderFails() {
+        GatewayFilter filter = factory.apply(config(Duration.ofSeconds(5)));
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = exchange -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(100)).then(Mono.defer(() -> {
+                    exchange.getResponse().setStatusCode(HttpStatus.BAD_GATEWAY);
+                    return exchange.getResponse().setComplete();
+                }))
+                : write(exchange, HttpStatus.OK);
+        List<MockServerWebExchange> exchanges = IntStream.range(0, 4)
+                .mapToObj(i -> exchange(MockServerHttpRequest.get("/api/orders/ORD-7")))
+                .toList();
+
+        Flux.fromIterable(exchanges).flatMap(exchange -> filter.filter(exchange, upstream)).blockLast();
+
+        assertThat(calls).hasValue(4);
+        assertThat(exchanges.get(0).getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(exchanges.subList(1, 4)).allSatisfy(exchange -> assertThat(body(exchange)).isEqualTo(BODY));
+        assertThat(coalesced("leader_failed")).isEqualTo(3);
+    }
+
+    @Test
+    void shouldStopWaitingAfterMaxWait() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMillis(50)));
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = upstream(calls, Duration.ofMillis(300), HttpStatus.OK);
+
+        List<MockServerWebExchange> exchanges = IntStream.range(0, 3)
+                .mapToObj(i -> exchange(MockServerHttpRequest.get("/api/orders/ORD-7")))
+                .toList();
+
+        Flux.fromIterable(exchanges).flatMap(exchange -> filter.filter(exchange, upstream)).blockLast();
+
+        assertThat(calls).hasValue(3);
+        assertThat(exchanges).allSatisfy(exchange -> assertThat(body(exchange)).isEqualTo(BODY));
+        assertThat(coalesced("timed_out")).isEqualTo(2);
+        assertThat(upstreamBuffers).allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void shouldReleaseSharedBuffersWhenWaitingFollowerIsCancelled() {
+        GatewayFilter filter = factory.apply(config(Duration.ofSeconds(5)));
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = upstream(calls, Duration.ofMillis(200), HttpStatus.OK);
+        MockServerWebExchange leader = exchange(MockServerHttpRequest.get("/api/orders/ORD-7"));
+        MockServerWebExchange follower = exchange(MockServerHttpRequest.get("/api/orders/ORD-7"));
+        MockServerWebExchange stayed = exchange(MockServerHttpRequest.get("/api/orders/ORD-7"));
+
+        Mono<Void> leading = filter.filter(leader, upstream).cache();
+        leading.subscribe();
+        Disposable waiting = filter.filter(follower, upstream).subscribe();
+        Mono<Void> staying = filter.filter(stayed, upstream).cache();
+        staying.subscribe();
+        // The client goes away while the leader is still waiting on the upstream
+        waiting.dispose();
+        leading.block(Duration.ofSeconds(5));
+        staying.block(Duration.ofSeconds(5));
+
+        assertThat(calls).hasValue(1);
+        assertThat(body(leader)).isEqualTo(BODY);
+        assertThat(body(stayed)).isEqualTo(BODY);
+        assertThat(coalesced("coalesced")).isEqualTo(1);
+        assertThat(upstreamBuffers).isNotEmpty()
+                .allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+    }
+
+    private CoalesceGatewayFilterFactory.Config config(Duration maxWait) {
+        CoalesceGatewayFilterFactory.Config config = new CoalesceGatewayFilterFactory.Config();
+        config.setRouteId(route.getId());
+        config.setMaxWait(maxWait);
+        return config;
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    /**
+     * Answers after a delay, in pooled buffers written through the exchange's response
+     * the way NettyWriteResponseFilter writes them.
+     */
+    private GatewayFilterChain upstream(AtomicInteger calls, Duration delay, HttpStatus status) {
+        return exchange -> {
+            calls.incrementAndGet();
+            return Mono.delay(delay).then(write(exchange, status));
+        };
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, HttpStatus status) {
+        return Mono.defer(() -> {
+            exchange.getResponse().setStatusCode(status);
+            exchange.getResponse().getHeaders().set("X-Order-Version", "3");
+            byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+            return exchange.getResponse().writeWith(Flux.range(0, 2).map(half -> {
+                int offset = half * (bytes.length / 2);
+                int length = half == 0 ? bytes.length / 2 : bytes.length - offset;
+                NettyDataBuffer buffer = bufferFactory.allocateBuffer(length);
+                buffer.write(bytes, offset, length);
+                upstreamBuffers.add(buffer);
+                return buffer;
+            }));
+        });
+    }
+
+    private static String body(MockServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block();
+    }
+
+    private double coalesced(String outcome) {
+        Counter counter = registry.find(GatewayMetrics.COALESCING).tags("route", route.getId(), "outcome", outcome).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,188 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.ConcurrencyLimitProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.controller.FallbackController;
+import com.dissertation.apigateway.limit.ConcurrencyLimiters;
+import com.dissertation.apigateway.limit.Priority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitGatewayFilterFactoryTest {
+
+    private final Route orders = route("order-service", "http://localhost:8082");
+
+    private final Route payments = route("payment-service", "http://localhost:8083");
+
+    private final Route notifications = route("notification-service", "http://localhost:8084");
+
+    private final Sinks.Empty<Void> upstreamResponds = Sinks.empty();
+
+    private final List<String> forwardedTo = new ArrayList<>();
+
+    private SimpleMeterRegistry registry;
+
+    private ConcurrencyLimiters limiters;
+
+    private ConcurrencyLimitGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setMaxInFlight(10);
+        ConcurrencyLimitProperties.Limit fixed = new ConcurrencyLimitProperties.Limit();
+        fixed.setInitialLimit(4);
+        fixed.setMinLimit(4);
+        fixed.setMaxLimit(4);
+        properties.getServices().put("order-service", fixed);
+        UpstreamPoolProperties upstream = new UpstreamPoolProperties();
+        upstream.getServices().put("order-service", pool("http://localhost:8082"));
+        upstream.getServices().put("payment-service", pool("http://localhost:8083"));
+        upstream.getServices().put("notification-service", pool("http://localhost:8084"));
+        limiters = new ConcurrencyLimiters(properties, upstream,
+                new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class));
+        DispatcherHandler fallback = new DispatcherHandler() {
+            @Override
+            public Mono<Void> handle(ServerWebExchange exchange) {
+                forwardedTo.add(exchange.getRequest().getURI().getPath());
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                return exchange.getResponse().setComplete();
+            }
+        };
+        factory = new ConcurrencyLimitGatewayFilterFactory(limiters,
+                new StaticListableBeanFactory(Map.of("dispatcher", fallback)).getBeanProvider(DispatcherHandler.class));
+    }
+
+    @Test
+    void shouldShedRequestsBeyondServiceLimitWithRetryAfter() {
+        GatewayFilter filter = factory.apply(config(Priority.CRITICAL, null));
+        List<Disposable> inFlight = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            inFlight.add(filter.filter(exchange(orders), slowUpstream()).subscribe());
+        }
+
+        MockServerWebExchange shed = exchange(orders);
+        filter.filter(shed, slowUpstream()).block();
+
+        assertThat(shed.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(shed.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(registry.get(ConcurrencyLimiters.SHED).tag("service", "order-service").tag("priority", "critical")
+                .counter().count()).isEqualTo(1);
+
+        upstreamResponds.tryEmitEmpty();
+        assertThat(limiters.limiter("order-service").getInFlight()).isZero();
+        assertThat(limiters.getTotalInFlight()).isZero();
+        MockServerWebExchange admitted = exchange(orders);
+        filter.filter(admitted, exchange -> Mono.empty()).block();
+        assertThat(admitted.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        inFlight.forEach(Disposable::dispose);
+    }
+
+    @Test
+    void shouldShedLowPriorityTrafficBeforePayments() {
+        GatewayFilter paymentFilter = factory.apply(config(Priority.CRITICAL, null));
+        GatewayFilter notificationFilter = factory.apply(config(Priority.LOW, URI.create("forward:/fallback/notification-service")));
+        for (int i = 0; i < 6; i++) {
+            paymentFilter.filter(exchange(payments), slowUpstream()).subscribe();
+        }
+
+        MockServerWebExchange notification = exchange(notifications);
+        notificationFilter.filter(notification, slowUpstream()).subscribe();
+        MockServerWebExchange payment = exchange(payments);
+        paymentFilter.filter(payment, slowUpstream()).subscribe();
+
+        // LOW may only fill 60% of the gateway-wide cap of 10, CRITICAL all of it
+        assertThat(forwardedTo).containsExactly("/fallback/notification-service");
+        assertThat(notification.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(limiters.limiter("payment-service").getInFlight()).isEqualTo(7);
+        upstreamResponds.tryEmitEmpty();
+        assertThat(limiters.getTotalInFlight()).isZero();
+    }
+
+    @Test
+    void shouldAnswerShedWritesFromTheFallbackController() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                FallbackWebConfig.class, FallbackController.class)) {
+            ConcurrencyLimitGatewayFilterFactory factory = new ConcurrencyLimitGatewayFilterFactory(limiters,
+                    context.getBeanProvider(DispatcherHandler.class));
+            GatewayFilter filter = factory.apply(config(Priority.CRITICAL, URI.create("forward:/fallback/order-service")));
+            for (int i = 0; i < 4; i++) {
+                filter.filter(exchange(orders), slowUpstream()).subscribe();
+            }
+
+            MockServerWebExchange shed = MockServerWebExchange.from(MockServerHttpRequest.post("/api/orders")
+                    .contentType(MediaType.APPLICATION_JSON).body("{\"item\":\"book\"}"));
+            shed.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, orders);
+            filter.filter(shed, slowUpstream()).block(Duration.ofSeconds(5));
+
+            // Forwarded with its own method, which the fallback must answer rather than 405
+            assertThat(shed.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(shed.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+            assertThat(shed.getResponse().getBodyAsString().block(Duration.ofSeconds(5)))
+                    .contains("Order Service is currently unavailable");
+            upstreamResponds.tryEmitEmpty();
+        }
+    }
+
+    @Configuration
+    @EnableWebFlux
+    static class FallbackWebConfig {
+    }
+
+    private GatewayFilterChain slowUpstream() {
+        return exchange -> upstreamResponds.asMono().then(Mono.fromRunnable(
+                () -> exchange.getResponse().setStatusCode(HttpStatus.OK)));
+    }
+
+    private static ConcurrencyLimitGatewayFilterFactory.Config config(Priority priority, URI fallbackUri) {
+        ConcurrencyLimitGatewayFilterFactory.Config config = new ConcurrencyLimitGatewayFilterFactory.Config();
+        config.setPriority(priority);
+        config.setFallbackUri(fallbackUri);
+        return config;
+    }
+
+    private static MockServerWebExchange exchange(Route route) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/" + route.getId()));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private static Route route(String id, String uri) {
+        return Route.async().id(id).uri(URI.create(uri)).predicate(exchange -> true).build();
+    }
+
+    private static UpstreamPoolProperties.Pool pool(String url) {
+        UpstreamPoolProperties.Pool pool = new UpstreamPoolProperties.Pool();
+        pool.setUrl(url);
+        return pool;
+    }
+}
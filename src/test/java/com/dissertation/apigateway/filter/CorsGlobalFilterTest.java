@@ -0,0 +1,103 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.CorsPolicyRegistry;
+import com.dissertation.apigateway.config.CorsProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorsGlobalFilterTest {
+
+    private final CorsGlobalFilter filter = new CorsGlobalFilter(new CorsPolicyRegistry(properties()));
+
+    private final List<String> proxied = new ArrayList<>();
+
+    @Test
+    void shouldWritePolicyHeadersOverUpstreamOnesForAllowedOrigin() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/payments/42")
+                .header(HttpHeaders.ORIGIN, "https://shop.example.com"));
+
+        filter.filter(exchange, upstream()).block();
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(proxied).containsExactly("/api/payments/42");
+        assertThat(headers.getAccessControlAllowOrigin()).isEqualTo("https://shop.example.com");
+        assertThat(headers.getAccessControlAllowCredentials()).isTrue();
+        assertThat(headers.getVary()).contains(HttpHeaders.ORIGIN);
+    }
+
+    @Test
+    void shouldChooseThePolicyByPath() {
+        MockServerWebExchange payments = MockServerWebExchange.from(MockServerHttpRequest.get("/api/payments/42")
+                .header(HttpHeaders.ORIGIN, "https://evil.com"));
+        MockServerWebExchange orders = MockServerWebExchange.from(MockServerHttpRequest.get("/api/orders/42")
+                .header(HttpHeaders.ORIGIN, "https://evil.com"));
+
+        filter.filter(payments, upstream()).block();
+        filter.filter(orders, upstream()).block();
+
+        // The payments policy rejects the origin: the request is proxied, but the upstream's CORS headers are
+        // left for the browser to reject, with nothing added by the gateway
+        assertThat(proxied).containsExactly("/api/payments/42", "/api/orders/42");
+        assertThat(payments.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("https://upstream.example");
+        assertThat(payments.getResponse().getHeaders().getAccessControlAllowCredentials()).isFalse();
+        assertThat(payments.getResponse().getHeaders().getVary()).isEmpty();
+        // The default policy allows any origin, without credentials
+        assertThat(orders.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("*");
+    }
+
+    @Test
+    void shouldPassRequestsWithoutOriginThroughUntouched() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/payments/42"));
+
+        filter.filter(exchange, upstream()).block();
+
+        assertThat(proxied).containsExactly("/api/payments/42");
+        assertThat(exchange.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("https://upstream.example");
+        assertThat(exchange.getResponse().getHeaders().getVary()).isEmpty();
+    }
+
+    @Test
+    void shouldAnswerPlainOptionsWithoutProxying() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.options("/api/orders/42")
+                .header(HttpHeaders.ORIGIN, "http://localhost:3000"));
+
+        filter.filter(exchange, upstream()).block();
+
+        assertThat(proxied).isEmpty();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getAccessControlAllowOrigin()).isEqualTo("*");
+    }
+
+    /**
+     * Answers with a CORS header of its own, which the gateway's must replace.
+     */
+    private GatewayFilterChain upstream() {
+        return exchange -> {
+            proxied.add(exchange.getRequest().getPath().value());
+            exchange.getResponse().setStatusCode(HttpStatus.OK);
+            exchange.getResponse().getHeaders().setAccessControlAllowOrigin("https://upstream.example");
+            return exchange.getResponse().setComplete();
+        };
+    }
+
+    private static CorsProperties properties() {
+        CorsProperties properties = new CorsProperties();
+        CorsProperties.Policy payments = new CorsProperties.Policy();
+        payments.setPaths(List.of("/api/payments/**"));
+        payments.setAllowedOrigins(List.of("http://localhost:3000", "https://*.example.com"));
+        payments.setAllowedMethods(List.of("GET", "POST"));
+        payments.setAllowCredentials(true);
+        properties.getPolicies().put("payments", payments);
+        return properties;
+    }
+}
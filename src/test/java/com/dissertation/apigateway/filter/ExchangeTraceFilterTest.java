@@ -0,0 +1,117 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.SlowRequestProperties;
+import com.dissertation.apigateway.trace.ExchangeEvent;
+import com.dissertation.apigateway.trace.ExchangeTrace;
+import com.dissertation.apigateway.trace.Phase;
+import com.dissertation.apigateway.trace.SlowRequest;
+import com.dissertation.apigateway.trace.SlowRequestRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExchangeTraceFilterTest {
+
+    private final Route route = Route.async().id("order-service").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    private SlowRequestRecorder recorder;
+
+    private ExchangeTraceFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        SlowRequestProperties properties = new SlowRequestProperties();
+        properties.setThreshold(Duration.ofMillis(50));
+        recorder = new SlowRequestRecorder(properties);
+        filter = new ExchangeTraceFilter(recorder);
+    }
+
+    @Test
+    void shouldRecordThePhasesOfSlowExchangesOnly() {
+        filter.filter(exchange(), gateway(Duration.ofMillis(80))).block(Duration.ofSeconds(5));
+        // After the slow one, so class loading on a cold JVM does not make it slow too
+        filter.filter(exchange(), gateway(Duration.ZERO)).block(Duration.ofSeconds(5));
+
+        assertThat(recorder.recent()).singleElement().satisfies(request -> {
+            assertThat(request.method()).isEqualTo("GET");
+            assertThat(request.path()).isEqualTo("/api/orders/ORD-1");
+            assertThat(request.routeId()).isEqualTo("order-service");
+            assertThat(request.status()).isEqualTo(200);
+            assertThat(request.durationMillis()).isGreaterThanOrEqualTo(80);
+            assertThat(request.phases()).extracting(SlowRequest.PhaseTiming::phase)
+                    .containsExactly(Phase.ROUTE_MATCH, Phase.UPSTREAM_ATTEMPT, Phase.RESPONSE_WRITE);
+            assertThat(request.phases().get(1).durationMillis()).isGreaterThanOrEqualTo(80);
+            assertThat(request.phases().get(2).detail()).isNull();
+        });
+    }
+
+    @Test
+    void shouldEmitJfrEventsOnlyWhileARecordingEnablesThem(@TempDir Path directory) throws Exception {
+        assertThat(ExchangeEvent.start()).isNull();
+
+        Path file = directory.resolve("gateway.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.dissertation.apigateway.Exchange");
+            recording.enable("com.dissertation.apigateway.ResponseWrite");
+            recording.start();
+            filter.filter(exchange(), gateway(Duration.ZERO)).block(Duration.ofSeconds(5));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertThat(events).extracting(event -> event.getEventType().getName())
+                .containsExactlyInAnyOrder("com.dissertation.apigateway.ResponseWrite", "com.dissertation.apigateway.Exchange");
+        RecordedEvent exchange = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.dissertation.apigateway.Exchange"))
+                .findFirst().orElseThrow();
+        assertThat(exchange.getString("routeId")).isEqualTo("order-service");
+        assertThat(exchange.getInt("status")).isEqualTo(200);
+        assertThat(exchange.getString("path")).isEqualTo("/api/orders/ORD-1");
+    }
+
+    private MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/orders/ORD-1"));
+    }
+
+    /**
+     * Stands in for route matching and the gateway's filters: records the phases they
+     * would and writes the response, as NettyWriteResponseFilter does.
+     */
+    private WebFilterChain gateway(Duration upstreamLatency) {
+        return exchange -> {
+            long start = System.nanoTime();
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+            ExchangeTrace.record(exchange, Phase.ROUTE_MATCH, start, System.nanoTime(), route.getId());
+            long attemptStart = System.nanoTime();
+            return Mono.delay(upstreamLatency)
+                    .then(Mono.defer(() -> {
+                        ExchangeTrace.record(exchange, Phase.UPSTREAM_ATTEMPT, attemptStart, System.nanoTime(),
+                                "http://order-service:8082/api/orders/ORD-1");
+                        exchange.getResponse().setStatusCode(HttpStatus.OK);
+                        byte[] body = "{\"orderId\":\"ORD-1\"}".getBytes(StandardCharsets.UTF_8);
+                        return exchange.getResponse().writeWith(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(body)));
+                    }));
+        };
+    }
+}
@@ -0,0 +1,237 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroup;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.search.RequiredSearch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Requests through the filter and the stock NettyRoutingFilter to stub upstreams.
+ */
+class HedgeGatewayFilterFactoryTest {
+
+    private static final int WARM_UP = 10;
+
+    private final Route route = Route.async().id("order-service-single-segment").uri(URI.create("lb://orders"))
+            .predicate(exchange -> true).build();
+
+    private final HttpClient httpClient = HttpClient.create();
+
+    private final StubUpstream slow = new StubUpstream().delay(Duration.ofMillis(500));
+
+    private final StubUpstream fast = new StubUpstream();
+
+    private final LoadBalancerProperties loadBalancerProperties = new LoadBalancerProperties();
+
+    private final HedgeGatewayFilterFactory.Config config = new HedgeGatewayFilterFactory.Config();
+
+    private SimpleMeterRegistry registry;
+
+    private HedgeGatewayFilterFactory factory;
+
+    private GatewayFilterChain routing;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        factory = new HedgeGatewayFilterFactory(new GatewayMetrics(registry,
+                beans.getBeanProvider(RouteDefinitionLocator.class), beans.getBeanProvider(CircuitBreakerRegistry.class)));
+        NettyRoutingFilter nettyRoutingFilter = new NettyRoutingFilter(httpClient,
+                beans.getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class)),
+                new HttpClientProperties());
+        routing = exchange -> nettyRoutingFilter.filter(exchange, next -> Mono.empty());
+        config.setMinSamples(WARM_UP);
+        // The first warm-up requests on a cold JVM are slow enough to push the p95 past the stubs' delays
+        config.setMinDelay(Duration.ofMillis(20));
+        config.setMaxDelay(Duration.ofMillis(50));
+    }
+
+    @AfterEach
+    void tearDown() {
+        slow.close();
+        fast.close();
+    }
+
+    @Test
+    void shouldHedgeToAnotherReplicaAndUseTheFirstResponse() {
+        config.setMaxHedgePercent(100);
+        GatewayFilter filter = factory.apply(config);
+        UpstreamGroup group = group(slow, fast);
+        warmUp(filter, fast);
+
+        MockServerWebExchange exchange = exchange(slow.getBaseUrl());
+        sendTo(exchange, group, group.getReplicas().get(0));
+        long start = System.nanoTime();
+        filter.filter(exchange, routing).block(Duration.ofSeconds(5));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(400));
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.<URI>getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR).getPort())
+                .isEqualTo(fast.getPort());
+        assertThat(body(exchange)).contains("ORD-1");
+        assertThat(slow.getRequestCount()).isEqualTo(1);
+        assertThat(fast.getRequestCount()).isEqualTo(WARM_UP + 1);
+        // Both replicas' requests were accounted for and have finished; the primary lost, which counts as slow
+        assertThat(group.getReplicas()).allSatisfy(replica -> assertThat(replica.getInFlight()).isZero());
+        assertThat(group.getReplicas().get(0).getConsecutiveFailures()).isEqualTo(1);
+        assertThat(group.getReplicas().get(1).getConsecutiveFailures()).isZero();
+        assertThat(exchange.getAttributes()).containsEntry(LoadBalancerFilter.ACCOUNTED_ATTR, true);
+        assertThat(hedges("hedge_won")).isEqualTo(1);
+        assertThat(hedges("not_hedged")).isEqualTo(WARM_UP);
+    }
+
+    @Test
+    void shouldNotHedgeBeyondTheBudget() {
+        config.setMaxHedgePercent(5);
+        GatewayFilter filter = factory.apply(config);
+        warmUp(filter, fast);
+
+        MockServerWebExchange exchange = exchange(slow.getBaseUrl());
+        filter.filter(exchange, routing).block(Duration.ofSeconds(5));
+
+        assertThat(body(exchange)).contains("ORD-1");
+        assertThat(fast.getRequestCount()).isEqualTo(WARM_UP);
+        assertThat(hedges("budget_exhausted")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepWaitingForThePrimaryWhenTheHedgeFails() {
+        config.setMaxHedgePercent(100);
+        slow.delay(Duration.ofMillis(200));
+        fast.status(503);
+        GatewayFilter filter = factory.apply(config);
+        UpstreamGroup group = group(slow, fast);
+        warmUp(filter, fast);
+
+        MockServerWebExchange exchange = exchange(slow.getBaseUrl());
+        sendTo(exchange, group, group.getReplicas().get(0));
+        filter.filter(exchange, routing).block(Duration.ofSeconds(5));
+
+        // A fast 503 from the hedge does not beat the primary's answer
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(body(exchange)).contains("ORD-1");
+        assertThat(fast.getRequestCount()).isEqualTo(WARM_UP + 1);
+        assertThat(hedges("primary_won")).isEqualTo(1);
+
+        // A primary failing before the hedge delay fails the request without a hedge
+        StubUpstream closed = new StubUpstream();
+        closed.close();
+        assertThatThrownBy(() -> filter.filter(exchange(closed.getBaseUrl()), routing).block(Duration.ofSeconds(5)))
+                .isNotNull();
+        assertThat(fast.getRequestCount()).isEqualTo(WARM_UP + 1);
+    }
+
+    @Test
+    void shouldEjectTheReplicaThatKeepsLosingToItsHedge() {
+        config.setMaxHedgePercent(100);
+        loadBalancerProperties.setAlgorithm(LoadBalancerProperties.Algorithm.LEAST_OUTSTANDING);
+        loadBalancerProperties.getOutlier().setConsecutiveFailures(3);
+        GatewayFilter filter = factory.apply(config);
+        UpstreamGroups groups = groups(slow, fast);
+        LoadBalancerFilter loadBalancer = new LoadBalancerFilter(groups);
+        warmUp(filter, fast);
+
+        for (int i = 0; i < 30; i++) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/orders/ORD-1"));
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create("lb://orders/api/orders/ORD-1"));
+            loadBalancer.filter(exchange, next -> filter.filter(next, routing)).block(Duration.ofSeconds(5));
+            assertThat(body(exchange)).contains("ORD-1");
+        }
+
+        // Each race the slow replica lost counted against it, though every request it got was answered by the hedge
+        UpstreamGroup group = groups.group("orders");
+        assertThat(slow.getRequestCount()).isEqualTo(3);
+        assertThat(group.getReplicas().get(0).getState(System.nanoTime())).isEqualTo(Replica.State.EJECTED);
+        assertThat(group.getReplicas()).allSatisfy(replica -> assertThat(replica.getInFlight()).isZero());
+        assertThat(registry.get(UpstreamGroups.EJECTIONS).tag("group", "orders").counter().count()).isEqualTo(1);
+        assertThat(hedges("hedge_won")).isEqualTo(3);
+    }
+
+    private void warmUp(GatewayFilter filter, StubUpstream upstream) {
+        for (int i = 0; i < WARM_UP; i++) {
+            MockServerWebExchange exchange = exchange(upstream.getBaseUrl());
+            filter.filter(exchange, routing).block(Duration.ofSeconds(5));
+            body(exchange);
+        }
+    }
+
+    /**
+     * Points the exchange at a replica of the group the way LoadBalancerFilter does.
+     */
+    private static void sendTo(MockServerWebExchange exchange, UpstreamGroup group, Replica replica) {
+        exchange.getAttributes().put(LoadBalancerFilter.GROUP_ATTR, group);
+        exchange.getAttributes().put(LoadBalancerFilter.REPLICA_ATTR, replica);
+        group.start(replica);
+    }
+
+    private UpstreamGroup group(StubUpstream... replicas) {
+        return groups(replicas).group("orders");
+    }
+
+    private UpstreamGroups groups(StubUpstream... replicas) {
+        LoadBalancerProperties.Group group = new LoadBalancerProperties.Group();
+        group.setReplicas(Arrays.stream(replicas).map(StubUpstream::getBaseUrl).toList());
+        loadBalancerProperties.getGroups().put("orders", group);
+        loadBalancerProperties.getHealthCheck().setEnabled(false);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("registry", registry));
+        return new UpstreamGroups(loadBalancerProperties, new UpstreamPoolProperties(), httpClient,
+                beans.getBeanProvider(MeterRegistry.class));
+    }
+
+    private MockServerWebExchange exchange(String baseUrl) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/orders/ORD-1"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create(baseUrl + "/api/orders/ORD-1"));
+        return exchange;
+    }
+
+    /**
+     * Reads the winning response's body off its connection, as NettyWriteResponseFilter would.
+     */
+    private static String body(MockServerWebExchange exchange) {
+        Connection connection = exchange.getRequiredAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        return connection.inbound().receive().aggregate().asString().block(Duration.ofSeconds(5));
+    }
+
+    private double hedges(String outcome) {
+        RequiredSearch search = registry.get(GatewayMetrics.HEDGING).tag("outcome", outcome);
+        return search.counter().count();
+    }
+}
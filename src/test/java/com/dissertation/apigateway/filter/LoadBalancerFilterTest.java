@@ -0,0 +1,147 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.upstream.Replica;
+import com.dissertation.apigateway.upstream.UpstreamGroups;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Requests through the filter to stub replicas, with a chain that proxies to the chosen
+ * url the way NettyRoutingFilter would.
+ */
+class LoadBalancerFilterTest {
+
+    private final HttpClient httpClient = HttpClient.create();
+
+    private final StubUpstream first = new StubUpstream();
+
+    private final StubUpstream second = new StubUpstream();
+
+    private final LoadBalancerProperties properties = new LoadBalancerProperties();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AtomicReference<URI> proxied = new AtomicReference<>();
+
+    @AfterEach
+    void tearDown() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void shouldRewriteToAReplicaAndPreferTheFasterOne() throws Exception {
+        first.delay(Duration.ofMillis(50));
+        LoadBalancerFilter filter = filter();
+
+        MockServerWebExchange exchange = send(filter, "/api/orders/ORD-1?expand=items");
+        assertThat(proxied.get().getPath()).isEqualTo("/api/orders/ORD-1");
+        assertThat(proxied.get().getQuery()).isEqualTo("expand=items");
+        assertThat(proxied.get().getPort()).isIn(first.getPort(), second.getPort());
+        Set<URI> original = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        assertThat(original).containsExactly(URI.create("lb://orders/api/orders/ORD-1?expand=items"));
+
+        for (int i = 0; i < 40; i++) {
+            send(filter, "/api/orders/ORD-1");
+        }
+        // Once both have answered, the slower replica only gets traffic again after its latency decays
+        assertThat(first.getRequestCount()).isLessThanOrEqualTo(2);
+        assertThat(second.getRequestCount()).isGreaterThanOrEqualTo(39);
+    }
+
+    @Test
+    void shouldEjectTheReplicaAnswering5xxAndRouteAroundIt() throws Exception {
+        properties.setAlgorithm(LoadBalancerProperties.Algorithm.LEAST_OUTSTANDING);
+        first.status(500);
+        LoadBalancerFilter filter = filter();
+
+        for (int i = 0; i < 60; i++) {
+            send(filter, "/api/orders");
+        }
+
+        assertThat(first.getRequestCount()).isEqualTo(5);
+        assertThat(second.getRequestCount()).isEqualTo(55);
+        assertThat(registry.get(UpstreamGroups.EJECTIONS).tag("group", "orders").counter().count()).isEqualTo(1);
+        assertThat(registry.get(UpstreamGroups.AVAILABLE).tag("group", "orders").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReject503ForUnknownGroupAndPassOtherSchemesThrough() {
+        LoadBalancerFilter filter = filter();
+        MockServerWebExchange unknown = exchange("lb://unknown/api/orders");
+
+        assertThatThrownBy(() -> filter.filter(unknown, chain()).block())
+                .isInstanceOfSatisfying(NotFoundException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        MockServerWebExchange direct = exchange(second.getBaseUrl() + "/api/orders");
+        filter.filter(direct, chain()).block(Duration.ofSeconds(5));
+        assertThat(proxied.get()).isEqualTo(URI.create(second.getBaseUrl() + "/api/orders"));
+        assertThat(direct.getAttributes()).doesNotContainKey(LoadBalancerFilter.REPLICA_ATTR);
+    }
+
+    private LoadBalancerFilter filter() {
+        LoadBalancerProperties.Group group = new LoadBalancerProperties.Group();
+        group.setReplicas(List.of(first.getBaseUrl(), second.getBaseUrl()));
+        properties.getGroups().put("orders", group);
+        properties.getHealthCheck().setEnabled(false);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("registry", registry));
+        return new LoadBalancerFilter(new UpstreamGroups(properties, new UpstreamPoolProperties(), httpClient,
+                beans.getBeanProvider(MeterRegistry.class)));
+    }
+
+    private MockServerWebExchange send(LoadBalancerFilter filter, String path) throws InterruptedException {
+        MockServerWebExchange exchange = exchange("lb://orders" + path);
+        filter.filter(exchange, chain()).block(Duration.ofSeconds(5));
+        Replica replica = exchange.getAttribute(LoadBalancerFilter.REPLICA_ATTR);
+        assertThat(replica).isNotNull();
+        // The attempt is accounted for in doFinally, which may run after block() has returned
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (replica.getInFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return exchange;
+    }
+
+    private static MockServerWebExchange exchange(String url) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, URI.create(url));
+        return exchange;
+    }
+
+    private GatewayFilterChain chain() {
+        return exchange -> {
+            URI url = exchange.getRequiredAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            proxied.set(url);
+            return httpClient.get().uri(url.toString())
+                    .response((response, body) -> body.then(Mono.<Void>fromRunnable(() -> exchange.getResponse()
+                            .setStatusCode(HttpStatusCode.valueOf(response.status().code())))))
+                    .then();
+        };
+    }
+}
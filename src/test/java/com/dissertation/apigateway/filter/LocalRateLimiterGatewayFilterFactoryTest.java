@@ -0,0 +1,63 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.RateLimiterProperties;
+import com.dissertation.apigateway.ratelimit.LocalRateLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterGatewayFilterFactoryTest {
+
+    private final GatewayFilterChain upstream = exchange -> Mono.empty();
+
+    @Test
+    void shouldKeyOnVerifiedUserAndIgnoreClientSentUsername() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setRedisSync(false);
+        LocalRateLimiter limiter = new LocalRateLimiter(properties,
+                new StaticListableBeanFactory().getBeanProvider(ReactiveStringRedisTemplate.class));
+        LocalRateLimiterGatewayFilterFactory.Config config = new LocalRateLimiterGatewayFilterFactory.Config();
+        config.setRouteId("order-service");
+        config.setReplenishRate(1);
+        config.setBurstCapacity(2);
+        GatewayFilter filter = new LocalRateLimiterGatewayFilterFactory(limiter).apply(config);
+
+        // A new X-Username per request does not buy a new bucket
+        for (int i = 0; i < 2; i++) {
+            assertThat(status(filter, exchange("mallory-" + i, null))).isNull();
+        }
+        assertThat(status(filter, exchange("mallory-2", null))).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        // A user verified by AuthenticationFilter has a bucket of their own, whatever the IP
+        assertThat(status(filter, exchange(null, "alice"))).isNull();
+        assertThat(status(filter, exchange(null, "alice"))).isNull();
+        assertThat(status(filter, exchange(null, "alice"))).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private HttpStatus status(GatewayFilter filter, MockServerWebExchange exchange) {
+        filter.filter(exchange, upstream).block();
+        return (HttpStatus) exchange.getResponse().getStatusCode();
+    }
+
+    private static MockServerWebExchange exchange(String claimedUsername, String verifiedUsername) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/orders/user/alice")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000));
+        if (claimedUsername != null) {
+            request.header("X-Username", claimedUsername);
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        if (verifiedUsername != null) {
+            exchange.getAttributes().put(AuthenticationFilter.USERNAME_ATTR, verifiedUsername);
+        }
+        return exchange;
+    }
+}
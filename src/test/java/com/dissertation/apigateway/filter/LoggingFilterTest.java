@@ -0,0 +1,105 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.config.AccessLogProperties;
+import com.dissertation.apigateway.logging.AccessLogWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoggingFilterTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Route route = Route.async().id("order-service").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldLogUpstreamLatencyAndBytesWrittenForChunkedResponses() throws Exception {
+        AccessLogProperties properties = new AccessLogProperties();
+        properties.setFile(dir.resolve("access-log.jsonl").toString());
+        // Records are handed over in doFinally, which may run after block() has returned
+        CountDownLatch recorded = new CountDownLatch(2);
+        AccessLogWriter writer = new AccessLogWriter(properties) {
+            @Override
+            public void record(String method, String path, String routeId, int status, long upstreamLatencyNanos, long bytes) {
+                super.record(method, path, routeId, status, upstreamLatencyNanos, bytes);
+                recorded.countDown();
+            }
+        };
+        ReflectionTestUtils.invokeMethod(writer, "start");
+        LoggingFilter filter = new LoggingFilter(writer, properties);
+
+        // Two chunks without Content-Length; the exchange takes longer than the 40ms upstream attempt
+        GatewayFilterChain proxied = exchange -> {
+            exchange.getAttributes().put(UpstreamAttemptMetricsFilter.UPSTREAM_LATENCY_ATTR,
+                    Duration.ofMillis(40).toNanos());
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            return response.writeWith(Flux.just("[\"ORD-1\",", "\"ORD-2\"]")
+                    .delayElements(Duration.ofMillis(25))
+                    .map(chunk -> buffer(response, chunk)));
+        };
+        filter.filter(exchange("/api/orders/user/alice"), proxied).block(Duration.ofSeconds(5));
+        // Answered by the gateway itself
+        GatewayFilterChain rejected = exchange -> {
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            return exchange.getResponse().setComplete();
+        };
+        filter.filter(exchange("/api/orders/user/bob"), rejected).block(Duration.ofSeconds(5));
+        assertThat(recorded.await(5, TimeUnit.SECONDS)).isTrue();
+        ReflectionTestUtils.invokeMethod(writer, "stop");
+
+        List<String> lines = Files.readAllLines(dir.resolve("access-log.jsonl"));
+        assertThat(lines).hasSize(2);
+        Map<String, JsonNode> records = new HashMap<>();
+        for (String line : lines) {
+            JsonNode record = JSON.readTree(line);
+            records.put(record.get("path").asText(), record);
+        }
+        JsonNode proxiedRecord = records.get("/api/orders/user/alice");
+        assertThat(proxiedRecord.get("route").asText()).isEqualTo("order-service");
+        assertThat(proxiedRecord.get("upstreamUs").asLong()).isEqualTo(40_000);
+        assertThat(proxiedRecord.get("bytes").asLong()).isEqualTo(17);
+        JsonNode rejectedRecord = records.get("/api/orders/user/bob");
+        assertThat(rejectedRecord.get("status").asInt()).isEqualTo(429);
+        assertThat(rejectedRecord.get("upstreamUs").asLong()).isEqualTo(-1);
+        assertThat(rejectedRecord.get("bytes").asLong()).isZero();
+    }
+
+    private MockServerWebExchange exchange(String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private static DataBuffer buffer(ServerHttpResponse response, String chunk) {
+        return response.bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,383 @@
+package com.dissertation.apigateway.filter;
+
+import com.dissertation.apigateway.cache.ResponseCache;
+import com.dissertation.apigateway.config.ResponseCacheProperties;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.support.TestJwks;
+import com.dissertation.apigateway.util.JwksKeyProvider;
+import com.dissertation.apigateway.util.JwtUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheGatewayFilterFactoryTest {
+
+    private static final String SECRET = "5367566B59703373367639792F423F4528482B4D6251655468576D5A71347437";
+
+    private static final KeyPair RSA = TestJwks.rsa();
+
+    @TempDir
+    Path dir;
+
+    private final Route route = Route.async().id("order-service-get-all").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    private SimpleMeterRegistry registry;
+
+    private JwksKeyProvider jwks;
+
+    private JwtUtil jwtUtil;
+
+    private ResponseCacheGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        Path file = dir.resolve("jwks.json");
+        TestJwks.write(file, Map.of("rsa-1", RSA.getPublic()));
+        jwks = new JwksKeyProvider();
+        ReflectionTestUtils.setField(jwks, "uri", file.toUri().toString());
+        ReflectionTestUtils.setField(jwks, "refreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwks, "minRefreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwks, "timeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.invokeMethod(jwks, "init");
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwtUtil, "jwks", jwks);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        ResponseCache cache = new ResponseCache(new ResponseCacheProperties(),
+                beans.getBeanProvider(ReactiveStringRedisTemplate.class), beans.getBeanProvider(ObjectMapper.class),
+                beans.getBeanProvider(MeterRegistry.class));
+        GatewayMetrics metrics = new GatewayMetrics(registry, beans.getBeanProvider(RouteDefinitionLocator.class),
+                beans.getBeanProvider(CircuitBreakerRegistry.class));
+        factory = new ResponseCacheGatewayFilterFactory(cache, jwtUtil, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(jwtUtil, "stop");
+        ReflectionTestUtils.invokeMethod(jwks, "stop");
+    }
+
+    @Test
+    void shouldServeRepeatedGetFromCacheUntilMaxAge() {
+        GatewayFilter filter = factory.apply(config(Duration.ZERO));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        GatewayFilterChain upstream = upstream(upstreamRequests, HttpStatus.OK, "[\"ORD-1\"]",
+                headers -> headers.setCacheControl("public, max-age=60"));
+
+        MockServerWebExchange first = exchange(MockServerHttpRequest.get("/api/orders?page=1"));
+        filter.filter(first, upstream).block();
+        MockServerWebExchange second = exchange(MockServerHttpRequest.get("/api/orders?page=1"));
+        filter.filter(second, upstream).block();
+        MockServerWebExchange otherQuery = exchange(MockServerHttpRequest.get("/api/orders?page=2"));
+        filter.filter(otherQuery, upstream).block();
+
+        assertThat(upstreamRequests).hasSize(2);
+        assertThat(cacheHeader(first)).isEqualTo("MISS");
+        assertThat(cacheHeader(second)).isEqualTo("HIT");
+        assertThat(cacheHeader(otherQuery)).isEqualTo("MISS");
+        assertThat(body(second)).isEqualTo("[\"ORD-1\"]");
+        assertThat(second.getResponse().getHeaders().getCacheControl()).isEqualTo("public, max-age=60");
+        assertThat(cached("hit")).isEqualTo(1);
+        assertThat(cached("miss")).isEqualTo(2);
+        assertThat(registry.get(GatewayMetrics.CACHE_BYTES_SAVED).counter().count()).isEqualTo(9);
+    }
+
+    @Test
+    void shouldKeepEachUsersResponsesApart() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = exchange -> {
+            upstreamRequests.add(exchange.getRequest().getHeaders());
+            return write(exchange.getResponse(), HttpStatus.OK, "orders-" + calls.incrementAndGet(),
+                    headers -> headers.setCacheControl("private, max-age=60"));
+        };
+
+        MockServerWebExchange alice = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, bearer("alice")));
+        filter.filter(alice, upstream).block();
+        MockServerWebExchange bob = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, bearer("bob")));
+        filter.filter(bob, upstream).block();
+        MockServerWebExchange aliceAgain = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, bearer("alice")));
+        filter.filter(aliceAgain, upstream).block();
+        MockServerWebExchange forged = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, bearer("alice") + "x"));
+        filter.filter(forged, upstream).block();
+
+        assertThat(body(bob)).isEqualTo("orders-2");
+        assertThat(body(aliceAgain)).isEqualTo("orders-1");
+        assertThat(cacheHeader(aliceAgain)).isEqualTo("HIT");
+        // A token that does not verify never reaches the cache
+        assertThat(cacheHeader(forged)).isNull();
+        assertThat(upstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void shouldNotTrustClientSentUsername() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = exchange -> {
+            upstreamRequests.add(exchange.getRequest().getHeaders());
+            return write(exchange.getResponse(), HttpStatus.OK, "orders-" + calls.incrementAndGet(),
+                    headers -> headers.setCacheControl("private, max-age=60"));
+        };
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, bearer("alice"))), upstream).block();
+        MockServerWebExchange spoofed = exchange(MockServerHttpRequest.get("/api/orders").header("X-Username", "alice"));
+        filter.filter(spoofed, upstream).block();
+        MockServerWebExchange spoofedAgain = exchange(MockServerHttpRequest.get("/api/orders").header("X-Username", "alice"));
+        filter.filter(spoofedAgain, upstream).block();
+
+        assertThat(body(spoofed)).isEqualTo("orders-2");
+        // A user claimed without a token never reaches the cache
+        assertThat(cacheHeader(spoofed)).isNull();
+        assertThat(body(spoofedAgain)).isEqualTo("orders-3");
+        assertThat(upstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void shouldNotShareAnonymousEntriesBetweenClaimedUsers() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        GatewayFilterChain upstream = exchange -> {
+            upstreamRequests.add(exchange.getRequest().getHeaders());
+            return write(exchange.getResponse(), HttpStatus.OK, "orders-" + calls.incrementAndGet(),
+                    headers -> headers.setCacheControl("public, max-age=60"));
+        };
+
+        MockServerWebExchange alice = exchange(MockServerHttpRequest.get("/api/orders").header("X-Username", "alice"));
+        filter.filter(alice, upstream).block();
+        MockServerWebExchange bob = exchange(MockServerHttpRequest.get("/api/orders").header("X-Username", "bob"));
+        filter.filter(bob, upstream).block();
+        MockServerWebExchange anonymous = exchange(MockServerHttpRequest.get("/api/orders"));
+        filter.filter(anonymous, upstream).block();
+
+        assertThat(body(alice)).isEqualTo("orders-1");
+        assertThat(body(bob)).isEqualTo("orders-2");
+        assertThat(body(anonymous)).isEqualTo("orders-3");
+        assertThat(cacheHeader(alice)).isNull();
+        assertThat(cacheHeader(bob)).isNull();
+        assertThat(cacheHeader(anonymous)).isEqualTo("MISS");
+        assertThat(upstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void shouldNotStoreAnonymousResponsesThatAreNotMarkedPublic() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        GatewayFilterChain upstream = upstream(upstreamRequests, HttpStatus.OK, "orders", headers -> headers.setCacheControl("max-age=60"));
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders")), upstream).block();
+        MockServerWebExchange again = exchange(MockServerHttpRequest.get("/api/orders"));
+        filter.filter(again, upstream).block();
+
+        assertThat(cacheHeader(again)).isEqualTo("MISS");
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void shouldVerifyRsaTokensOffTheCallingThread() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<String> threads = new ArrayList<>();
+        GatewayFilterChain upstream = exchange -> {
+            threads.add(Thread.currentThread().getName());
+            return write(exchange.getResponse(), HttpStatus.OK, "orders", headers -> headers.setCacheControl("private, max-age=60"));
+        };
+        String token = "Bearer " + TestJwks.token("carol", "rsa-1", RSA.getPrivate(), SignatureAlgorithm.RS256);
+
+        MockServerWebExchange first = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, token));
+        filter.filter(first, upstream).block(Duration.ofSeconds(5));
+        MockServerWebExchange second = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.AUTHORIZATION, token));
+        filter.filter(second, upstream).block(Duration.ofSeconds(5));
+
+        assertThat(threads).singleElement().asString().startsWith("jwt-verify");
+        assertThat(cacheHeader(first)).isEqualTo("MISS");
+        assertThat(cacheHeader(second)).isEqualTo("HIT");
+    }
+
+    @Test
+    void shouldRevalidateStaleEntryWithEtag() {
+        GatewayFilter filter = factory.apply(config(Duration.ZERO));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        GatewayFilterChain upstream = exchange -> {
+            upstreamRequests.add(exchange.getRequest().getHeaders());
+            if (exchange.getRequest().getHeaders().getIfNoneMatch().contains("\"v1\"")) {
+                return write(exchange.getResponse(), HttpStatus.NOT_MODIFIED, "", headers -> headers.setETag("\"v1\""));
+            }
+            return write(exchange.getResponse(), HttpStatus.OK, "ORD-7", headers -> {
+                headers.setCacheControl("public");
+                headers.setETag("\"v1\"");
+            });
+        };
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders/ORD-7")), upstream).block();
+        MockServerWebExchange revalidated = exchange(MockServerHttpRequest.get("/api/orders/ORD-7"));
+        filter.filter(revalidated, upstream).block();
+        MockServerWebExchange conditional = exchange(MockServerHttpRequest.get("/api/orders/ORD-7").ifNoneMatch("\"v1\""));
+        filter.filter(conditional, upstream).block();
+
+        assertThat(upstreamRequests).hasSize(3);
+        assertThat(upstreamRequests.get(1).getIfNoneMatch()).containsExactly("\"v1\"");
+        assertThat(revalidated.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cacheHeader(revalidated)).isEqualTo("REVALIDATED");
+        assertThat(body(revalidated)).isEqualTo("ORD-7");
+        // The client's own validator is passed through and the upstream's 304 reaches it untouched
+        assertThat(conditional.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(cached("revalidated")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldServeStaleEntryWhenUpstreamFails() {
+        GatewayFilter filter = factory.apply(config(Duration.ZERO));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders")), upstream(upstreamRequests, HttpStatus.OK,
+                "[\"ORD-1\"]", headers -> {
+                    headers.setCacheControl("public");
+                    headers.setLastModified(System.currentTimeMillis() - 60_000);
+                })).block();
+        MockServerWebExchange failed = exchange(MockServerHttpRequest.get("/api/orders"));
+        filter.filter(failed, upstream(upstreamRequests, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"Order service is temporarily unavailable\"}", headers -> { })).block();
+
+        assertThat(upstreamRequests.get(1).getIfModifiedSince()).isPositive();
+        assertThat(failed.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cacheHeader(failed)).isEqualTo("STALE");
+        assertThat(body(failed)).isEqualTo("[\"ORD-1\"]");
+    }
+
+    @Test
+    void shouldNotStoreUncacheableResponses() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        GatewayFilterChain noStore = upstream(upstreamRequests, HttpStatus.OK, "a", headers -> headers.setCacheControl("no-store"));
+        GatewayFilterChain varyStar = upstream(upstreamRequests, HttpStatus.OK, "b", headers -> headers.setVary(List.of("*")));
+        GatewayFilterChain cookie = upstream(upstreamRequests, HttpStatus.OK, "c", headers -> headers.add(HttpHeaders.SET_COOKIE, "session=1"));
+
+        for (int i = 0; i < 2; i++) {
+            filter.filter(exchange(MockServerHttpRequest.get("/api/orders/a")), noStore).block();
+            filter.filter(exchange(MockServerHttpRequest.get("/api/orders/b")), varyStar).block();
+            filter.filter(exchange(MockServerHttpRequest.get("/api/orders/c")), cookie).block();
+        }
+
+        assertThat(upstreamRequests).hasSize(6);
+        assertThat(cached("hit")).isZero();
+    }
+
+    @Test
+    void shouldSelectVariantByVaryHeader() {
+        GatewayFilter filter = factory.apply(config(Duration.ofMinutes(1)));
+        List<HttpHeaders> upstreamRequests = new ArrayList<>();
+        GatewayFilterChain upstream = upstream(upstreamRequests, HttpStatus.OK, "orders", headers -> {
+            headers.setCacheControl("public");
+            headers.setVary(List.of("Accept"));
+        });
+
+        filter.filter(exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.ACCEPT, "application/json")), upstream).block();
+        MockServerWebExchange sameVariant = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.ACCEPT, "application/json"));
+        filter.filter(sameVariant, upstream).block();
+        MockServerWebExchange otherVariant = exchange(MockServerHttpRequest.get("/api/orders").header(HttpHeaders.ACCEPT, "text/csv"));
+        filter.filter(otherVariant, upstream).block();
+
+        assertThat(cacheHeader(sameVariant)).isEqualTo("HIT");
+        assertThat(cacheHeader(otherVariant)).isEqualTo("MISS");
+        assertThat(upstreamRequests).hasSize(2);
+    }
+
+    private ResponseCacheGatewayFilterFactory.Config config(Duration ttl) {
+        ResponseCacheGatewayFilterFactory.Config config = new ResponseCacheGatewayFilterFactory.Config();
+        config.setRouteId(route.getId());
+        config.setTtl(ttl);
+        return config;
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    /**
+     * Writes the response the way NettyWriteResponseFilter does, through the exchange's response.
+     */
+    private static GatewayFilterChain upstream(List<HttpHeaders> requests, HttpStatus status, String body,
+                                               Consumer<HttpHeaders> headers) {
+        return exchange -> {
+            requests.add(exchange.getRequest().getHeaders());
+            return write(exchange.getResponse(), status, body, headers);
+        };
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, HttpStatus status, String body, Consumer<HttpHeaders> headers) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        response.setStatusCode(status);
+        headers.accept(response.getHeaders());
+        response.getHeaders().setContentLength(bytes.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(bytes)));
+    }
+
+    private static String body(MockServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block();
+    }
+
+    private static String cacheHeader(MockServerWebExchange exchange) {
+        return exchange.getResponse().getHeaders().getFirst(ResponseCacheGatewayFilterFactory.CACHE_HEADER);
+    }
+
+    private double cached(String result) {
+        Counter counter = registry.find(GatewayMetrics.CACHE_REQUESTS).tags("route", route.getId(), "result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static String bearer(String subject) {
+        return "Bearer " + Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
@@ -0,0 +1,68 @@
+package com.dissertation.apigateway.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradientLimitTest {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private long now;
+
+    @Test
+    void shouldGrowWhileLatencyHoldsAndTheLimitIsUsed() {
+        GradientLimit limit = limit(20);
+
+        runWindows(limit, 50, 10, limit::getLimit, false);
+
+        assertThat(limit.getLimit()).isGreaterThan(40);
+    }
+
+    @Test
+    void shouldNotGrowWhenTrafficNeverApproachesTheLimit() {
+        GradientLimit limit = limit(20);
+
+        runWindows(limit, 50, 10, () -> 3, false);
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldShrinkWhenLatencyRisesAboveBaseline() {
+        GradientLimit limit = limit(100);
+        runWindows(limit, 20, 10, limit::getLimit, false);
+        int healthy = limit.getLimit();
+
+        // The backend slows down fourfold, queueing builds up
+        runWindows(limit, 20, 40, limit::getLimit, false);
+
+        assertThat(limit.getLimit()).isLessThan(healthy / 2);
+    }
+
+    @Test
+    void shouldBackOffOnDropsAndStayWithinBounds() {
+        GradientLimit limit = limit(100);
+
+        runWindows(limit, 200, 10, limit::getLimit, true);
+
+        assertThat(limit.getLimit()).isEqualTo(4);
+    }
+
+    private GradientLimit limit(int initial) {
+        return new GradientLimit(initial, 4, 500, 0.2, 1.5, WINDOW, 10, 600, now);
+    }
+
+    private void runWindows(GradientLimit limit, int windows, long rttMillis,
+                            IntSupplier inFlight, boolean dropped) {
+        for (int window = 0; window < windows; window++) {
+            for (int sample = 0; sample < 10; sample++) {
+                now += WINDOW / 10;
+                limit.onSample(now, TimeUnit.MILLISECONDS.toNanos(rttMillis), inFlight.getAsInt(), dropped);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.dissertation.apigateway.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A run against the baseline result of the same scenario. Latency regresses when it
+ * grows by more than LATENCY_TOLERANCE and by at least a millisecond, goodput when it
+ * drops by more than GOODPUT_TOLERANCE, error rate and amplification when they rise by
+ * more than their absolute tolerances. Everything else is reported for reading only.
+ */
+final class BaselineComparison {
+
+    static final double LATENCY_TOLERANCE = 0.2;
+
+    static final double GOODPUT_TOLERANCE = 0.05;
+
+    static final double ERROR_RATE_TOLERANCE = 0.01;
+
+    static final double AMPLIFICATION_TOLERANCE = 0.1;
+
+    private BaselineComparison() {
+    }
+
+    static List<Difference> compare(LoadTestResult baseline, LoadTestResult current) {
+        List<Difference> differences = new ArrayList<>();
+        requests(differences, "overall", baseline.overall(), current.overall());
+        current.requests().forEach((name, summary) -> {
+            LoadTestResult.RequestSummary before = baseline.requests().get(name);
+            if (before != null) {
+                requests(differences, name, before, summary);
+            }
+        });
+        current.upstreams().forEach((service, summary) -> {
+            LoadTestResult.UpstreamSummary before = baseline.upstreams().get(service);
+            if (before != null) {
+                differences.add(new Difference(service + " amplification", before.amplification(), summary.amplification(),
+                        summary.amplification() > before.amplification() + AMPLIFICATION_TOLERANCE));
+            }
+        });
+        differences.add(new Difference("circuit-breaker transitions", baseline.circuitBreakerTransitions().size(),
+                current.circuitBreakerTransitions().size(), false));
+        differences.add(new Difference("retries", retried(baseline.retries()), retried(current.retries()), false));
+        return differences;
+    }
+
+    private static void requests(List<Difference> differences, String name, LoadTestResult.RequestSummary before,
+                                 LoadTestResult.RequestSummary after) {
+        differences.add(new Difference(name + " goodput", before.goodput(), after.goodput(),
+                after.goodput() < before.goodput() * (1 - GOODPUT_TOLERANCE)));
+        differences.add(new Difference(name + " error rate", before.errorRate(), after.errorRate(),
+                after.errorRate() > before.errorRate() + ERROR_RATE_TOLERANCE));
+        differences.add(latency(name + " p50 ms", before.latencyMillis().p50(), after.latencyMillis().p50()));
+        differences.add(latency(name + " p99 ms", before.latencyMillis().p99(), after.latencyMillis().p99()));
+        differences.add(latency(name + " p99.9 ms", before.latencyMillis().p999(), after.latencyMillis().p999()));
+    }
+
+    private static Difference latency(String metric, double before, double after) {
+        return new Difference(metric, before, after, after > before * (1 + LATENCY_TOLERANCE) && after - before >= 1);
+    }
+
+    private static long retried(Map<String, Long> retries) {
+        return retries.getOrDefault("retried", 0L);
+    }
+
+    record Difference(String metric, double baseline, double current, boolean regression) {
+
+        String format() {
+            String change = baseline != 0 ? String.format("%+.1f%%", (current - baseline) / baseline * 100) : "";
+            return String.format("  %-36s %12.3f %12.3f %9s%s", metric, baseline, current, change,
+                    regression ? "  REGRESSION" : "");
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.dissertation.apigateway.loadtest;
+
+import com.dissertation.apigateway.support.StubUpstream;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load: requests are started on a fixed schedule whether or not earlier ones
+ * have been answered, and each latency is measured from the time its request was due,
+ * not from when it was actually sent. A gateway that stalls therefore shows the stall in
+ * every request that should have gone out meanwhile, instead of the generator quietly
+ * slowing down with it (coordinated omission). Past max-in-flight outstanding requests,
+ * due requests are dropped and counted.
+ */
+final class LoadGenerator {
+
+    private final HttpClient client;
+
+    private final int maxInFlight;
+
+    private final Duration timeout;
+
+    private final Random random;
+
+    // Continues across runs, so a measured run never hits what warm-up left in a cache
+    private final AtomicLong sequence = new AtomicLong();
+
+    LoadGenerator(HttpClient client, int maxInFlight, Duration timeout, long seed) {
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sends the scenario's mix at rate requests per second for the duration, applying its
+     * script to the stubs on the way, and returns once every request was answered or timed out.
+     */
+    Run run(Scenario scenario, int rate, Duration duration, Map<String, StubUpstream> stubs) {
+        List<Scenario.RequestType> mix = scenario.getMix();
+        int totalWeight = mix.stream().mapToInt(Scenario.RequestType::weight).sum();
+        Run run = new Run(mix);
+        Deque<Scenario.Step> steps = new ArrayDeque<>(scenario.getSteps());
+        long interval = 1_000_000_000L / rate;
+        long requests = duration.toNanos() / interval;
+        AtomicInteger inFlight = new AtomicInteger();
+        run.startNanos = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            long due = run.startNanos + i * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            applyDueSteps(steps, run, duration, stubs, false);
+            Scenario.RequestType type = pick(mix, totalWeight);
+            Stats stats = run.stats.get(type.name());
+            if (inFlight.get() >= maxInFlight) {
+                stats.dropped.increment();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            stats.sent.increment();
+            send(type, sequence.getAndIncrement())
+                    .subscribe(
+                            status -> stats.complete(Integer.toString(status), due),
+                            error -> {
+                                stats.complete(error instanceof TimeoutException ? "timeout" : "error", due);
+                                inFlight.decrementAndGet();
+                            },
+                            inFlight::decrementAndGet);
+        }
+        run.endNanos = System.nanoTime();
+        applyDueSteps(steps, run, duration, stubs, true);
+        long deadline = System.nanoTime() + timeout.plusSeconds(1).toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+        }
+        return run;
+    }
+
+    private static void applyDueSteps(Deque<Scenario.Step> steps, Run run, Duration duration,
+                                      Map<String, StubUpstream> stubs, boolean all) {
+        long elapsed = System.nanoTime() - run.startNanos;
+        while (!steps.isEmpty() && (all || steps.peek().fraction() * duration.toNanos() <= elapsed)) {
+            Scenario.Step step = steps.poll();
+            step.action().accept(stubs.get(step.service()));
+            run.events.add(new LoadTestResult.Event(Duration.ofNanos(System.nanoTime() - run.startNanos).toMillis(),
+                    step.description()));
+        }
+    }
+
+    private Scenario.RequestType pick(List<Scenario.RequestType> mix, int totalWeight) {
+        int ticket = random.nextInt(totalWeight);
+        for (Scenario.RequestType type : mix) {
+            ticket -= type.weight();
+            if (ticket < 0) {
+                return type;
+            }
+        }
+        throw new IllegalStateException("Empty request mix");
+    }
+
+    private Mono<Integer> send(Scenario.RequestType type, long n) {
+        String body = type.body(n);
+        byte[] content = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+        HttpClient request = client.headers(headers -> {
+            type.headers().forEach((name, value) -> headers.set(name, value.replace("{n}", Long.toString(n))));
+            if (content != null) {
+                // A known length rather than chunked, as most clients send small JSON bodies
+                headers.set(HttpHeaderNames.CONTENT_LENGTH, content.length);
+            }
+        });
+        HttpClient.RequestSender sender = request.request(HttpMethod.valueOf(type.method().name())).uri(type.path(n));
+        HttpClient.ResponseReceiver<?> receiver = content != null
+                ? sender.send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(content)))
+                : sender;
+        return receiver.responseSingle((response, received) -> received.thenReturn(response.status().code()))
+                .timeout(timeout);
+    }
+
+    /**
+     * What one run sent and got back, by request type.
+     */
+    static final class Run {
+
+        private final Map<String, Stats> stats = new LinkedHashMap<>();
+
+        private final Map<String, String> services = new LinkedHashMap<>();
+
+        private final List<LoadTestResult.Event> events = new ArrayList<>();
+
+        private long startNanos;
+
+        private long endNanos;
+
+        Run(List<Scenario.RequestType> mix) {
+            mix.forEach(type -> {
+                stats.put(type.name(), new Stats());
+                services.put(type.name(), type.service());
+            });
+        }
+
+        long getStartNanos() {
+            return startNanos;
+        }
+
+        Duration getElapsed() {
+            return Duration.ofNanos(endNanos - startNanos);
+        }
+
+        List<LoadTestResult.Event> getEvents() {
+            return List.copyOf(events);
+        }
+
+        /**
+         * Requests sent to the routes of each backend service.
+         */
+        Map<String, Long> sentByService() {
+            Map<String, Long> sent = new LinkedHashMap<>();
+            stats.forEach((name, typeStats) -> sent.merge(services.get(name), typeStats.sent.sum(), Long::sum));
+            return sent;
+        }
+
+        Map<String, LoadTestResult.RequestSummary> summaries() {
+            Map<String, LoadTestResult.RequestSummary> summaries = new LinkedHashMap<>();
+            stats.forEach((name, typeStats) -> summaries.put(name, typeStats.summary(getElapsed())));
+            return summaries;
+        }
+
+        LoadTestResult.RequestSummary overall() {
+            Stats total = new Stats();
+            stats.values().forEach(total::add);
+            return total.summary(getElapsed());
+        }
+    }
+
+    private static final class Stats {
+
+        private final LongAdder sent = new LongAdder();
+
+        private final LongAdder dropped = new LongAdder();
+
+        private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        // Microseconds from when the request was due
+        private final Histogram latency = new ConcurrentHistogram(3);
+
+        void complete(String status, long dueNanos) {
+            latency.recordValue(Math.max(0, (System.nanoTime() - dueNanos) / 1_000));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        void add(Stats other) {
+            sent.add(other.sent.sum());
+            dropped.add(other.dropped.sum());
+            other.statuses.forEach((status, count) ->
+                    statuses.computeIfAbsent(status, key -> new LongAdder()).add(count.sum()));
+            latency.add(other.latency);
+        }
+
+        LoadTestResult.RequestSummary summary(Duration elapsed) {
+            Map<String, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            long completed = counts.values().stream().mapToLong(Long::longValue).sum();
+            long successful = counts.entrySet().stream()
+                    .filter(entry -> entry.getKey().startsWith("2"))
+                    .mapToLong(Map.Entry::getValue).sum();
+            long offered = sent.sum() + dropped.sum();
+            double seconds = elapsed.toNanos() / 1e9;
+            return new LoadTestResult.RequestSummary(
+                    offered,
+                    completed,
+                    dropped.sum(),
+                    round(completed / seconds),
+                    round(successful / seconds),
+                    offered > 0 ? round((double) (offered - successful) / offered) : 0,
+                    counts,
+                    new LoadTestResult.Latency(
+                            millis(latency.getValueAtPercentile(50)),
+                            millis(latency.getValueAtPercentile(90)),
+                            millis(latency.getValueAtPercentile(99)),
+                            millis(latency.getValueAtPercentile(99.9)),
+                            millis(latency.getMaxValue())));
+        }
+
+        private static double millis(long micros) {
+            return round(micros / 1000.0);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dissertation.apigateway.loadtest;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One scenario's outcome as written to {@code <scenario>.json}, and read back as the
+ * baseline of a later run.
+ *
+ * @param upstreams  requests each backend received against requests sent to its routes
+ * @param retries    BudgetedRetry decisions during the run, by outcome
+ * @param events     the scenario's script steps as they were applied
+ */
+public record LoadTestResult(
+        String scenario,
+        String description,
+        String startedAt,
+        int rate,
+        double durationSeconds,
+        RequestSummary overall,
+        Map<String, RequestSummary> requests,
+        Map<String, UpstreamSummary> upstreams,
+        Map<String, Long> retries,
+        List<Transition> circuitBreakerTransitions,
+        List<Event> events) {
+
+    /**
+     * @param offered    requests that were due, including dropped ones
+     * @param throughput responses per second, any status
+     * @param goodput    2xx responses per second
+     * @param errorRate  share of offered requests that did not get a 2xx
+     * @param statuses   response count by status code, plus timeout and error for requests
+     *                   that got no response
+     */
+    public record RequestSummary(long offered, long completed, long dropped, double throughput, double goodput,
+                                 double errorRate, Map<String, Long> statuses, Latency latencyMillis) {
+    }
+
+    /**
+     * Milliseconds from when each request was due until its response was complete.
+     */
+    public record Latency(double p50, double p90, double p99, double p999, double max) {
+    }
+
+    /**
+     * @param amplification upstream requests per client request: above 1 from retries and
+     *                      hedges, below 1 from caching, coalescing, batching and fallbacks
+     */
+    public record UpstreamSummary(long clientRequests, long upstreamRequests, double amplification) {
+    }
+
+    public record Transition(long atMillis, String circuitBreaker, String from, String to) {
+    }
+
+    public record Event(long atMillis, String description) {
+    }
+}
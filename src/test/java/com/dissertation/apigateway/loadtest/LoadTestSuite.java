@@ -0,0 +1,218 @@
+package com.dissertation.apigateway.loadtest;
+
+import com.dissertation.apigateway.ApiGatewayApplication;
+import com.dissertation.apigateway.metrics.GatewayMetrics;
+import com.dissertation.apigateway.support.StubUpstream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * End-to-end load test: for each scenario a fresh gateway, with its real routes and
+ * filters, in front of a fresh in-process stub for every backend service, driven at a
+ * fixed arrival rate by LoadGenerator after a warm-up at the same rate. Each result is
+ * printed, written to {@code <results>/<scenario>.json} and, when a baseline directory
+ * holds a result of the same scenario, compared with it.
+ *
+ * <p>Arguments: results directory, scenarios (comma-separated or "all"), requests per
+ * second, duration, whether a regression fails the run, and optionally the baseline
+ * directory.
+ */
+public final class LoadTestSuite {
+
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    static final int MAX_IN_FLIGHT = 2000;
+
+    static final long SEED = 42;
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private LoadTestSuite() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path results = Path.of(args[0]);
+        String names = args.length > 1 ? args[1] : "all";
+        int rate = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        Duration duration = args.length > 3 ? DurationStyle.detectAndParse(args[3]) : Duration.ofSeconds(30);
+        boolean failOnRegression = args.length > 4 && Boolean.parseBoolean(args[4]);
+        Path baselines = args.length > 5 && !args[5].isBlank() ? Path.of(args[5]) : null;
+        Duration warmup = Duration.ofSeconds(Math.min(10, Math.max(1, duration.toSeconds() / 3)));
+
+        Map<String, Scenario> scenarios = Scenarios.all();
+        List<String> selected = "all".equals(names) ? List.copyOf(scenarios.keySet()) : List.of(names.split(","));
+        Files.createDirectories(results);
+        int regressions = 0;
+        for (String name : selected) {
+            Scenario scenario = scenarios.get(name.trim());
+            if (scenario == null) {
+                throw new IllegalArgumentException("Unknown scenario " + name + ", expected one of " + scenarios.keySet());
+            }
+            // Read first: the baseline may be the previous run in the results directory
+            Path baselineFile = baselines != null ? baselines.resolve(scenario.getName() + ".json") : null;
+            LoadTestResult baseline = baselineFile != null && Files.exists(baselineFile)
+                    ? JSON.readValue(baselineFile.toFile(), LoadTestResult.class) : null;
+            LoadTestResult result = run(scenario, rate, duration, warmup, results);
+            print(result);
+            Path output = results.resolve(scenario.getName() + ".json");
+            JSON.writeValue(output.toFile(), result);
+            System.out.println("Result written to " + output);
+            if (baseline != null) {
+                List<BaselineComparison.Difference> differences = BaselineComparison.compare(baseline, result);
+                System.out.printf("Against %s:%n  %-36s %12s %12s%n", baselineFile, "metric", "baseline", "current");
+                differences.forEach(difference -> System.out.println(difference.format()));
+                regressions += (int) differences.stream().filter(BaselineComparison.Difference::regression).count();
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " metrics regressed against the baseline");
+        }
+        System.exit(failOnRegression && regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Runs one scenario against a gateway started for it and stopped afterwards.
+     */
+    static LoadTestResult run(Scenario scenario, int rate, Duration duration, Duration warmup, Path workDirectory) {
+        Map<String, StubUpstream> stubs = new LinkedHashMap<>();
+        Scenarios.SERVICES.forEach(service -> stubs.put(service,
+                new StubUpstream().delay(Duration.ofMillis(2)).jitter(Duration.ofMillis(5))));
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                // Each request cut off by a scripted outage would otherwise log a warning
+                "--logging.level.reactor.netty.http.client=ERROR",
+                "--gateway.rate-limiter.redis-sync=false",
+                "--gateway.access-log.file=" + workDirectory.resolve("access-log.jsonl")));
+        stubs.forEach((service, stub) ->
+                arguments.add("--gateway.upstream.services." + service + ".url=" + stub.getBaseUrl()));
+        ConfigurableApplicationContext gateway = null;
+        LoopResources loops = LoopResources.create("load-test", 2, true);
+        ConnectionProvider connections = ConnectionProvider.builder("load-test")
+                .maxConnections(MAX_IN_FLIGHT)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try {
+            gateway = new SpringApplicationBuilder(ApiGatewayApplication.class).run(arguments.toArray(String[]::new));
+            int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+            HttpClient client = HttpClient.create(connections).runOn(loops).baseUrl("http://127.0.0.1:" + port);
+            CircuitBreakerRegistry circuitBreakers = gateway.getBean(CircuitBreakerRegistry.class);
+            List<RawTransition> transitions = watchCircuitBreakers(circuitBreakers);
+            MeterRegistry registry = gateway.getBean(MeterRegistry.class);
+            LoadGenerator generator = new LoadGenerator(client, MAX_IN_FLIGHT, REQUEST_TIMEOUT, SEED);
+
+            generator.run(Scenarios.mix(Scenario.named("warm-up", "")), rate, warmup, stubs);
+            // A cold JVM can trip a breaker on its first slow calls; every scenario starts closed
+            circuitBreakers.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+            Map<String, Long> upstreamBefore = upstreamRequests(stubs);
+            Map<String, Long> retriesBefore = retries(registry);
+            String startedAt = Instant.now().toString();
+            LoadGenerator.Run run = generator.run(scenario, rate, duration, stubs);
+            Map<String, Long> upstreamAfter = upstreamRequests(stubs);
+            Map<String, Long> retriesAfter = retries(registry);
+
+            Map<String, LoadTestResult.UpstreamSummary> upstreams = new LinkedHashMap<>();
+            run.sentByService().forEach((service, sent) -> {
+                long received = upstreamAfter.get(service) - upstreamBefore.get(service);
+                upstreams.put(service, new LoadTestResult.UpstreamSummary(sent, received,
+                        sent > 0 ? Math.round(received * 1000.0 / sent) / 1000.0 : 0));
+            });
+            Map<String, Long> retried = new TreeMap<>();
+            retriesAfter.forEach((outcome, count) -> retried.put(outcome, count - retriesBefore.getOrDefault(outcome, 0L)));
+            List<LoadTestResult.Transition> measuredTransitions = transitions.stream()
+                    .filter(transition -> transition.nanos() >= run.getStartNanos())
+                    .map(transition -> new LoadTestResult.Transition(
+                            Duration.ofNanos(transition.nanos() - run.getStartNanos()).toMillis(),
+                            transition.circuitBreaker(), transition.from(), transition.to()))
+                    .toList();
+            return new LoadTestResult(scenario.getName(), scenario.getDescription(), startedAt, rate,
+                    run.getElapsed().toMillis() / 1000.0, run.overall(), run.summaries(), upstreams, retried,
+                    measuredTransitions, run.getEvents());
+        } finally {
+            if (gateway != null) {
+                gateway.close();
+            }
+            connections.disposeLater().block();
+            loops.disposeLater().block();
+            stubs.values().forEach(StubUpstream::close);
+        }
+    }
+
+    private static List<RawTransition> watchCircuitBreakers(CircuitBreakerRegistry registry) {
+        List<RawTransition> transitions = new CopyOnWriteArrayList<>();
+        Consumer<CircuitBreaker> watch = circuitBreaker -> circuitBreaker.getEventPublisher().onStateTransition(event ->
+                transitions.add(new RawTransition(System.nanoTime(), event.getCircuitBreakerName(),
+                        event.getStateTransition().getFromState().name(), event.getStateTransition().getToState().name())));
+        registry.getAllCircuitBreakers().forEach(watch);
+        registry.getEventPublisher().onEntryAdded(event -> watch.accept(event.getAddedEntry()));
+        return transitions;
+    }
+
+    private static Map<String, Long> upstreamRequests(Map<String, StubUpstream> stubs) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        stubs.forEach((service, stub) -> counts.put(service, stub.getRequestCount()));
+        return counts;
+    }
+
+    private static Map<String, Long> retries(MeterRegistry registry) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Counter counter : registry.find(GatewayMetrics.RETRIES).counters()) {
+            counts.merge(counter.getId().getTag("outcome"), (long) counter.count(), Long::sum);
+        }
+        return counts;
+    }
+
+    private static void print(LoadTestResult result) {
+        System.out.printf("%n== %s: %s%n   %d requests/s for %.1fs%n", result.scenario(), result.description(),
+                result.rate(), result.durationSeconds());
+        System.out.printf("   %-16s %8s %8s %8s %7s %8s %8s %8s %8s%n",
+                "request", "offered", "resp/s", "2xx/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        printRow("overall", result.overall());
+        result.requests().forEach(LoadTestSuite::printRow);
+        System.out.println("   status codes: " + result.overall().statuses());
+        result.upstreams().forEach((service, upstream) -> System.out.printf(
+                "   %-20s %6d client -> %6d upstream requests (x%.2f)%n",
+                service, upstream.clientRequests(), upstream.upstreamRequests(), upstream.amplification()));
+        System.out.println("   retries: " + result.retries());
+        List<LoadTestResult.Event> timeline = new ArrayList<>(result.events());
+        result.circuitBreakerTransitions().forEach(transition -> timeline.add(new LoadTestResult.Event(transition.atMillis(),
+                transition.circuitBreaker() + " " + transition.from() + " -> " + transition.to())));
+        timeline.sort(Comparator.comparingLong(LoadTestResult.Event::atMillis));
+        timeline.forEach(event -> System.out.printf("   +%6dms %s%n", event.atMillis(), event.description()));
+    }
+
+    private static void printRow(String name, LoadTestResult.RequestSummary summary) {
+        LoadTestResult.Latency latency = summary.latencyMillis();
+        System.out.printf("   %-16s %8d %8.1f %8.1f %6.1f%% %8.2f %8.2f %8.2f %8.2f%n", name, summary.offered(),
+                summary.throughput(), summary.goodput(), summary.errorRate() * 100,
+                latency.p50(), latency.p99(), latency.p999(), latency.max());
+    }
+
+    private record RawTransition(long nanos, String circuitBreaker, String from, String to) {
+    }
+}
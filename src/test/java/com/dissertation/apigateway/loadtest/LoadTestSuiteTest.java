@@ -0,0 +1,64 @@
+package com.dissertation.apigateway.loadtest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpMethod;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadTestSuiteTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldReportTheCircuitOpeningWhenABackendGoesDown() {
+        Scenario scenario = Scenario.named("outage", "order-service down from the start")
+                .request("get-order", "order-service", 1, HttpMethod.GET, "/api/orders/ORD-{n}")
+                .at(0, "order-service", "order-service down", stub -> stub.down(true));
+
+        LoadTestResult result = LoadTestSuite.run(scenario, 40, Duration.ofSeconds(3), Duration.ofSeconds(1), dir);
+
+        assertThat(result.overall().offered()).isEqualTo(120);
+        assertThat(result.overall().statuses()).containsKey("503");
+        assertThat(result.requests()).containsOnlyKeys("get-order");
+        assertThat(result.events()).extracting(LoadTestResult.Event::description).containsExactly("order-service down");
+        assertThat(result.circuitBreakerTransitions())
+                .anySatisfy(transition -> {
+                    assertThat(transition.circuitBreaker()).isEqualTo("orderServiceCircuitBreaker");
+                    assertThat(transition.to()).isEqualTo("OPEN");
+                });
+        // Once the circuit is open, the fallback answers without touching the backend
+        assertThat(result.upstreams().get("order-service").amplification()).isLessThan(1);
+    }
+
+    @Test
+    void shouldFlagRegressionsBeyondTheTolerances() {
+        LoadTestResult baseline = result(100, 0.001, 10, 40);
+        LoadTestResult slower = result(99, 0.001, 10.4, 60);
+        LoadTestResult failing = result(90, 0.08, 10, 40);
+
+        assertThat(regressions(baseline, baseline)).isEmpty();
+        // p50 grew by 4%, p99 by 50%
+        assertThat(regressions(baseline, slower)).containsExactly("overall p99 ms");
+        assertThat(regressions(baseline, failing)).containsExactly("overall goodput", "overall error rate");
+    }
+
+    private static List<String> regressions(LoadTestResult baseline, LoadTestResult current) {
+        return BaselineComparison.compare(baseline, current).stream()
+                .filter(BaselineComparison.Difference::regression)
+                .map(BaselineComparison.Difference::metric)
+                .toList();
+    }
+
+    private static LoadTestResult result(double goodput, double errorRate, double p50, double p99) {
+        LoadTestResult.RequestSummary summary = new LoadTestResult.RequestSummary(1000, 1000, 0, 100, goodput,
+                errorRate, Map.of("200", 1000L), new LoadTestResult.Latency(p50, p99 / 2, p99, 100, 120));
+        return new LoadTestResult("steady", "", "", 100, 10, summary, Map.of(), Map.of(), Map.of(), List.of(), List.of());
+    }
+}
@@ -0,0 +1,89 @@
+package com.dissertation.apigateway.loadtest;
+
+import com.dissertation.apigateway.support.StubUpstream;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A request mix sent at a fixed arrival rate, plus a script of what the stub backends do
+ * and when. Script steps are placed at a fraction of the run's duration, so a scenario
+ * keeps its shape whether it runs for ten seconds or ten minutes.
+ */
+public final class Scenario {
+
+    private final String name;
+
+    private final String description;
+
+    private final List<RequestType> mix = new ArrayList<>();
+
+    private final List<Step> steps = new ArrayList<>();
+
+    private Scenario(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    public static Scenario named(String name, String description) {
+        return new Scenario(name, description);
+    }
+
+    /**
+     * Adds a request type; {n} in the path or body is replaced by the request's sequence
+     * number, so caching and coalescing do not hide the backend.
+     */
+    public Scenario request(String name, String service, int weight, HttpMethod method, String path,
+                            String body, Map<String, String> headers) {
+        mix.add(new RequestType(name, service, weight, method, path, body, headers));
+        return this;
+    }
+
+    public Scenario request(String name, String service, int weight, HttpMethod method, String path) {
+        return request(name, service, weight, method, path, null, Map.of());
+    }
+
+    /**
+     * Runs the action on the service's stub once this fraction (0 to 1) of the run has passed.
+     */
+    public Scenario at(double fraction, String service, String description, Consumer<StubUpstream> action) {
+        steps.add(new Step(fraction, service, description, action));
+        steps.sort(Comparator.comparingDouble(Step::fraction));
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public List<RequestType> getMix() {
+        return List.copyOf(mix);
+    }
+
+    public List<Step> getSteps() {
+        return List.copyOf(steps);
+    }
+
+    public record RequestType(String name, String service, int weight, HttpMethod method, String path,
+                              String body, Map<String, String> headers) {
+
+        String path(long n) {
+            return path.replace("{n}", Long.toString(n));
+        }
+
+        String body(long n) {
+            return body != null ? body.replace("{n}", Long.toString(n)) : null;
+        }
+    }
+
+    public record Step(double fraction, String service, String description, Consumer<StubUpstream> action) {
+    }
+}
@@ -0,0 +1,58 @@
+package com.dissertation.apigateway.loadtest;
+
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The standard scenarios, all on the same request mix over the real routes: a healthy
+ * baseline, then one misbehaving backend each. Backends answer in 2-7ms when healthy.
+ */
+public final class Scenarios {
+
+    public static final List<String> SERVICES = List.of("user-service", "order-service", "payment-service", "notification-service");
+
+    private Scenarios() {
+    }
+
+    public static Map<String, Scenario> all() {
+        Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        scenarios.put("baseline", mix(Scenario.named("baseline", "All backends healthy")));
+        scenarios.put("slow-orders", mix(Scenario.named("slow-orders",
+                        "order-service answers 250-300ms in the middle third of the run"))
+                .at(1 / 3.0, "order-service", "order-service slow", stub -> stub.delay(Duration.ofMillis(250)))
+                .at(2 / 3.0, "order-service", "order-service recovered", stub -> stub.delay(Duration.ofMillis(2))));
+        scenarios.put("payment-errors", mix(Scenario.named("payment-errors",
+                        "payment-service fails 30% of requests with 503 in the middle third of the run"))
+                .at(1 / 3.0, "payment-service", "payment-service 30% 503", stub -> stub.failureRate(0.3, 503))
+                .at(2 / 3.0, "payment-service", "payment-service recovered", stub -> stub.failureRate(0, 503)));
+        scenarios.put("order-outage", mix(Scenario.named("order-outage",
+                        "order-service drops every connection from 1/4 to 1/2 of the run"))
+                .at(0.25, "order-service", "order-service down", stub -> stub.down(true))
+                .at(0.5, "order-service", "order-service up", stub -> stub.down(false)));
+        return scenarios;
+    }
+
+    /**
+     * Public routes only: AuthenticationFilter is not on the default routes, and per-user
+     * rate-limited paths are left out so 429s do not blur the backend's own behaviour.
+     */
+    static Scenario mix(Scenario scenario) {
+        Map<String, String> json = Map.of("Content-Type", "application/json");
+        return scenario
+                .request("login", "user-service", 10, HttpMethod.POST, "/api/auth/login",
+                        "{\"username\":\"user-{n}\",\"password\":\"password\"}", json)
+                .request("get-order", "order-service", 35, HttpMethod.GET, "/api/orders/ORD-{n}")
+                .request("create-order", "order-service", 15, HttpMethod.POST, "/api/orders",
+                        "{\"productId\":\"P-{n}\",\"quantity\":1}",
+                        Map.of("Content-Type", "application/json", "Idempotency-Key", "order-{n}"))
+                .request("get-payment", "payment-service", 15, HttpMethod.GET, "/api/payments/PAY-{n}")
+                .request("create-payment", "payment-service", 10, HttpMethod.POST, "/api/payments",
+                        "{\"orderId\":\"ORD-{n}\",\"amount\":42.5}", json)
+                .request("notify", "notification-service", 15, HttpMethod.POST, "/api/notifications",
+                        "{\"userId\":\"user-{n}\",\"message\":\"Order shipped\"}", json);
+    }
+}
@@ -0,0 +1,64 @@
+package com.dissertation.apigateway.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogRingBufferTest {
+
+    @Test
+    void shouldDropRecordsWhenFullAndReuseSlotsAfterDrain() {
+        AccessLogRingBuffer ring = new AccessLogRingBuffer(3);
+        assertThat(ring.capacity()).isEqualTo(4);
+
+        for (int i = 0; i < 5; i++) {
+            ring.publish(i, "GET", "/api/orders", "order-service", 200, i, 0);
+        }
+        assertThat(ring.droppedCount()).isEqualTo(1);
+
+        List<Long> timestamps = new ArrayList<>();
+        assertThat(ring.drain(record -> timestamps.add(record.timestamp))).isEqualTo(4);
+        assertThat(timestamps).containsExactly(0L, 1L, 2L, 3L);
+
+        assertThat(ring.publish(9, "POST", "/api/payments", "payment-service", 503, 1, 10)).isTrue();
+        StringBuilder json = new StringBuilder();
+        ring.drain(record -> record.appendJson(json));
+        assertThat(json.toString()).isEqualTo(
+                "{\"ts\":9,\"method\":\"POST\",\"path\":\"/api/payments\",\"route\":\"payment-service\","
+                        + "\"status\":503,\"upstreamUs\":1,\"bytes\":10}");
+    }
+
+    @Test
+    void shouldNotLoseRecordsFromConcurrentProducers() throws Exception {
+        AccessLogRingBuffer ring = new AccessLogRingBuffer(1 << 16);
+        int producers = 4;
+        int perProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ring.publish(i, "GET", "/", null, 200, 0, 0);
+                }
+                done.countDown();
+            });
+        }
+        long drained = 0;
+        while (done.getCount() > 0) {
+            drained += ring.drain(record -> { });
+        }
+        drained += ring.drain(record -> { });
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(drained + ring.droppedCount()).isEqualTo((long) producers * perProducer);
+        assertThat(ring.droppedCount()).isZero();
+    }
+}
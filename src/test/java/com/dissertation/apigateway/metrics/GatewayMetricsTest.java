@@ -0,0 +1,80 @@
+package com.dissertation.apigateway.metrics;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GatewayMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    private CircuitBreakerRegistry circuitBreakers;
+
+    private GatewayMetrics metrics;
+
+    private final Route route = Route.async().id("order-service").uri(URI.create("http://order-service:8082"))
+            .predicate(exchange -> true).build();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+        RouteDefinition definition = new RouteDefinition();
+        definition.setId("order-service");
+        definition.getFilters().add(new FilterDefinition("CircuitBreaker=orderServiceCircuitBreaker"));
+        RouteDefinitionLocator locator = () -> Flux.just(definition);
+
+        metrics = new GatewayMetrics(registry,
+                new StaticListableBeanFactory(Map.of("locator", locator)).getBeanProvider(RouteDefinitionLocator.class),
+                new StaticListableBeanFactory(Map.of("circuitBreakers", circuitBreakers)).getBeanProvider(CircuitBreakerRegistry.class));
+        metrics.onApplicationEvent(new RefreshRoutesResultEvent(this));
+    }
+
+    @Test
+    void shouldTagRequestsByRouteUpstreamStatusAndCircuitBreakerState() {
+        GatewayMetrics.RouteMeters meters = metrics.forRoute(route);
+
+        meters.recordRequest(HttpStatus.OK, 1_000_000);
+        meters.recordRequest(HttpStatus.OK, 3_000_000);
+        circuitBreakers.circuitBreaker("orderServiceCircuitBreaker").transitionToOpenState();
+        meters.recordRequest(HttpStatus.SERVICE_UNAVAILABLE, 500_000);
+
+        Timer closedOk = registry.get(GatewayMetrics.REQUESTS)
+                .tags("route", "order-service", "upstream", "order-service", "status", "2xx", "circuit_breaker", "closed")
+                .timer();
+        assertThat(closedOk.count()).isEqualTo(2);
+        assertThat(registry.get(GatewayMetrics.REQUESTS).tags("status", "5xx", "circuit_breaker", "open").timer().count())
+                .isEqualTo(1);
+        // The same timer instance is reused, not re-registered per request
+        assertThat(registry.find(GatewayMetrics.REQUESTS).timers()).hasSize(2);
+    }
+
+    @Test
+    void shouldSeparateFirstAttemptsFromRetries() {
+        GatewayMetrics.RouteMeters meters = metrics.forRoute(route);
+
+        meters.recordAttempt(false, HttpStatus.BAD_GATEWAY, 2_000_000);
+        meters.recordAttempt(true, HttpStatus.BAD_GATEWAY, 2_000_000);
+        meters.recordAttempt(true, HttpStatus.OK, 1_000_000);
+        metrics.recordAuth(true, 10_000);
+
+        assertThat(registry.get(GatewayMetrics.UPSTREAM_ATTEMPTS).tags("attempt", "first").timer().count()).isEqualTo(1);
+        assertThat(registry.get(GatewayMetrics.UPSTREAM_ATTEMPTS).tags("attempt", "retry").timers()).hasSize(2);
+        assertThat(registry.get(GatewayMetrics.AUTH).tags("outcome", "success").timer().count()).isEqualTo(1);
+    }
+}
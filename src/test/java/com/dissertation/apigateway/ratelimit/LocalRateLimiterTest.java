@@ -0,0 +1,160 @@
+package com.dissertation.apigateway.ratelimit;
+
+import com.dissertation.apigateway.config.RateLimiterProperties;
+import com.dissertation.apigateway.support.InProcessRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalRateLimiterTest {
+
+    private InProcessRedis redis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @Test
+    void shouldAllowBurstThenDenyUntilRefilled() {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket("k:", 10, 3, now);
+
+        assertThat(bucket.tryAcquire(now)).isTrue();
+        assertThat(bucket.tryAcquire(now)).isTrue();
+        assertThat(bucket.tryAcquire(now)).isTrue();
+        assertThat(bucket.tryAcquire(now)).isFalse();
+        assertThat(bucket.remaining(now)).isZero();
+        assertThat(bucket.nanosUntilNextToken(now)).isEqualTo(100_000_000L);
+
+        now += 100_000_000L;
+        assertThat(bucket.tryAcquire(now)).isTrue();
+        assertThat(bucket.tryAcquire(now)).isFalse();
+        assertThat(bucket.drainUnsynced()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldNotDrainBelowEmptyWhenApplyingRemoteConsumption() {
+        TokenBucket bucket = new TokenBucket("k:", 1, 5, 0);
+
+        bucket.consumeRemote(50, 0);
+
+        assertThat(bucket.remaining(0)).isZero();
+        assertThat(bucket.nanosUntilNextToken(0)).isEqualTo(1_000_000_000L);
+    }
+
+    @Test
+    void shouldShareConsumptionBetweenReplicasThroughRedis() throws Exception {
+        redis = new InProcessRedis();
+        ReactiveStringRedisTemplate template = template(redis.getPort());
+        // Open the connection up front so the buckets do not refill while Lettuce connects
+        template.opsForValue().get("warm-up").block(Duration.ofSeconds(5));
+        LocalRateLimiter replicaA = new LocalRateLimiter(properties(), provider(template));
+        LocalRateLimiter replicaB = new LocalRateLimiter(properties(), provider(template));
+        TokenBucket onA = replicaA.group("orders", 1, 10).bucket("user:alice");
+        TokenBucket onB = replicaB.group("orders", 1, 10).bucket("user:alice");
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(onA.tryAcquire(System.nanoTime())).isTrue();
+        }
+        assertThat(onB.tryAcquire(System.nanoTime())).isTrue();
+
+        replicaA.reconcile().block(Duration.ofSeconds(5));
+        replicaB.reconcile().block(Duration.ofSeconds(5));
+        replicaA.reconcile().block(Duration.ofSeconds(5));
+
+        // 7 tokens were taken across both replicas, each now sees the other's share
+        assertThat(onA.remaining(System.nanoTime())).isEqualTo(3);
+        assertThat(onB.remaining(System.nanoTime())).isEqualTo(3);
+        assertThat(redis.snapshot().values()).containsExactly("7");
+    }
+
+    @Test
+    void shouldSettleEachDeltaOnceWhenSyncTimesOut() throws Exception {
+        redis = new InProcessRedis();
+        ReactiveStringRedisTemplate template = template(redis.getPort());
+        template.opsForValue().get("warm-up").block(Duration.ofSeconds(5));
+        LocalRateLimiter limiter = new LocalRateLimiter(properties(), provider(template));
+        TokenBucket bucket = limiter.group("orders", 1, 10).bucket("user:alice");
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(System.nanoTime())).isTrue();
+        }
+
+        // The INCRBY lands and is acknowledged, the round then times out on EXPIRE
+        redis.hold("EXPIRE");
+        assertThatThrownBy(() -> limiter.reconcile().timeout(Duration.ofMillis(300)).block(Duration.ofSeconds(5)))
+                .hasCauseInstanceOf(TimeoutException.class);
+        redis.release();
+        limiter.reconcile().block(Duration.ofSeconds(5));
+
+        // Its own 3 tokens are not mistaken for another replica's on the next round
+        assertThat(bucket.remaining(System.nanoTime())).isGreaterThanOrEqualTo(7);
+
+        // An INCRBY that is never acknowledged keeps its tokens for the next round
+        assertThat(bucket.tryAcquire(System.nanoTime())).isTrue();
+        assertThat(bucket.tryAcquire(System.nanoTime())).isTrue();
+        redis.hold("INCRBY");
+        assertThatThrownBy(() -> limiter.reconcile().timeout(Duration.ofMillis(300)).block(Duration.ofSeconds(5)))
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(bucket.drainUnsynced()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldFallBackToLocalLimitsWhenRedisIsUnavailable() throws Exception {
+        int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unusedPort = socket.getLocalPort();
+        }
+        LocalRateLimiter limiter = new LocalRateLimiter(properties(), provider(template(unusedPort)));
+        TokenBucket bucket = limiter.group("orders", 1, 2).bucket("ip:10.0.0.1");
+        assertThat(bucket.tryAcquire(System.nanoTime())).isTrue();
+
+        limiter.runSync();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!limiter.isDegraded() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(limiter.isDegraded()).isTrue();
+        assertThat(bucket.tryAcquire(System.nanoTime())).isTrue();
+        assertThat(bucket.tryAcquire(System.nanoTime())).isFalse();
+    }
+
+    private ReactiveStringRedisTemplate template(int port) {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        return new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    private static RateLimiterProperties properties() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        // Long window so the test never straddles a window boundary
+        properties.setSyncWindow(Duration.ofHours(1));
+        properties.setSyncTimeout(Duration.ofSeconds(2));
+        return properties;
+    }
+
+    private static ObjectProvider<ReactiveStringRedisTemplate> provider(ReactiveStringRedisTemplate template) {
+        return new StaticListableBeanFactory(Map.of("redisTemplate", template))
+                .getBeanProvider(ReactiveStringRedisTemplate.class);
+    }
+}
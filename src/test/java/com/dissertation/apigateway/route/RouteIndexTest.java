@@ -0,0 +1,90 @@
+package com.dissertation.apigateway.route;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteIndexTest {
+
+    private final List<Route> routes = new ArrayList<>();
+
+    private final Map<String, RouteDefinition> definitions = new LinkedHashMap<>();
+
+    @Test
+    void shouldReturnCandidatesInRouteOrderFilteredByMethod() {
+        route("order-service-post", 1, "Path=/api/orders", "Method=POST");
+        route("order-service-get-all", 2, "Path=/api/orders", "Method=GET");
+        route("order-service-single-segment", 3, "Path=/api/orders/{segment}");
+        route("user-service", 0, "Path=/api/auth/**");
+        route("order-service", 1000, "Path=/api/orders/{segment}/**");
+        RouteIndex index = RouteIndex.build(routes, definitions);
+
+        assertThat(ids(index, "/api/orders", HttpMethod.GET)).containsExactly("order-service-get-all");
+        assertThat(ids(index, "/api/orders/", HttpMethod.POST)).containsExactly("order-service-post");
+        assertThat(ids(index, "/api/orders/ORD-1", HttpMethod.GET))
+                .containsExactly("order-service-single-segment", "order-service");
+        assertThat(ids(index, "/api/orders/user/alice", HttpMethod.GET)).containsExactly("order-service");
+        assertThat(ids(index, "/api/auth", HttpMethod.POST)).containsExactly("user-service");
+        assertThat(ids(index, "/api/unknown", HttpMethod.GET)).isEmpty();
+        assertThat(index.getWarnings()).isEmpty();
+    }
+
+    @Test
+    void shouldAlwaysOfferRoutesWithoutPathPredicate() {
+        route("payment-service", 0, "Path=/api/payments/**");
+        route("by-host", 1, "Host=**.example.com");
+        RouteIndex index = RouteIndex.build(routes, definitions);
+
+        assertThat(ids(index, "/api/payments/1", HttpMethod.GET)).containsExactly("payment-service", "by-host");
+        assertThat(ids(index, "/anything", HttpMethod.GET)).containsExactly("by-host");
+    }
+
+    @Test
+    void shouldDetectShadowedAndAmbiguousRoutes() {
+        route("catch-all", 0, "Path=/api/**");
+        route("orders", 1, "Path=/api/orders/{id}", "Method=GET");
+        route("payments-a", 5, "Path=/pay/{id}");
+        route("payments-b", 5, "Path=/pay/{ref}", "Method=POST");
+        RouteIndex index = RouteIndex.build(routes, definitions);
+
+        assertThat(index.getWarnings()).hasSize(2);
+        assertThat(index.getWarnings().get(0)).contains("'orders' is shadowed by route 'catch-all'");
+        assertThat(index.getWarnings().get(1)).contains("'payments-b' is shadowed by route 'payments-a'");
+    }
+
+    @Test
+    void shouldReportRoutesWithSameOrderAndPattern() {
+        route("a", 0, "Path=/api/orders/{id}", "Method=GET,POST");
+        route("b", 0, "Path=/api/orders/{key}", "Method=POST,PUT");
+        RouteIndex index = RouteIndex.build(routes, definitions);
+
+        assertThat(index.getWarnings()).singleElement().asString().contains("same order (0)");
+    }
+
+    private void route(String id, int order, String... predicates) {
+        RouteDefinition definition = new RouteDefinition();
+        definition.setId(id);
+        definition.setOrder(order);
+        for (String predicate : predicates) {
+            definition.getPredicates().add(new PredicateDefinition(predicate));
+        }
+        definitions.put(id, definition);
+        routes.add(Route.async().id(id).uri(URI.create("http://localhost")).order(order)
+                .predicate(exchange -> true).build());
+    }
+
+    private static List<String> ids(RouteIndex index, String path, HttpMethod method) {
+        return index.candidates(PathContainer.parsePath(path), method).stream().map(Route::getId).toList();
+    }
+}
@@ -0,0 +1,209 @@
+package com.dissertation.apigateway.support;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process Redis stand-in speaking RESP2, enough for the commands the
+ * gateway issues (INCRBY, EXPIRE, GET, SET) plus the Lettuce connection handshake.
+ * Unknown commands, including HELLO, answer with an error so clients fall back to RESP2.
+ */
+public class InProcessRedis implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private final List<Socket> clients = new ArrayList<>();
+
+    // Commands that get no reply until release(), as from a stalled server
+    private final Set<String> held = new HashSet<>();
+
+    private volatile boolean running = true;
+
+    public InProcessRedis() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "in-process-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public Map<String, String> snapshot() {
+        return Map.copyOf(values);
+    }
+
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * Stops answering the named command, and everything behind it on the same
+     * connection, until release() is called. The command still runs once released.
+     */
+    public void hold(String command) {
+        synchronized (held) {
+            held.add(command.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public void release() {
+        synchronized (held) {
+            held.clear();
+            held.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        release();
+        serverSocket.close();
+        synchronized (clients) {
+            for (Socket client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                synchronized (clients) {
+                    clients.add(socket);
+                }
+                Thread handler = new Thread(() -> serve(socket), "in-process-redis-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (running) {
+                List<String> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                commandCount.incrementAndGet();
+                awaitRelease(command.get(0).toUpperCase(Locale.ROOT));
+                out.write(execute(command).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private void awaitRelease(String name) {
+        synchronized (held) {
+            while (running && held.contains(name)) {
+                try {
+                    held.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private String execute(List<String> command) {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING":
+                return "+PONG\r\n";
+            case "CLIENT":
+            case "SELECT":
+                return "+OK\r\n";
+            case "INCRBY":
+            case "INCR": {
+                long delta = name.equals("INCR") ? 1 : Long.parseLong(command.get(2));
+                String updated = values.merge(command.get(1), String.valueOf(delta),
+                        (old, add) -> String.valueOf(Long.parseLong(old) + Long.parseLong(add)));
+                return ":" + updated + "\r\n";
+            }
+            case "EXPIRE":
+            case "PEXPIRE":
+                return values.containsKey(command.get(1)) ? ":1\r\n" : ":0\r\n";
+            case "SET":
+                values.put(command.get(1), command.get(2));
+                return "+OK\r\n";
+            case "GET": {
+                String value = values.get(command.get(1));
+                return value == null ? "$-1\r\n" : bulk(value);
+            }
+            case "DEL":
+                return values.remove(command.get(1)) != null ? ":1\r\n" : ":0\r\n";
+            default:
+                return "-ERR unknown command '" + command.get(0) + "'\r\n";
+        }
+    }
+
+    private static String bulk(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return "$" + bytes.length + "\r\n" + value + "\r\n";
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        if (header.charAt(0) != '*') {
+            return List.of(header.trim().split("\\s+"));
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String lengthLine = readLine(in);
+            int length = Integer.parseInt(lengthLine.substring(1));
+            byte[] data = in.readNBytes(length);
+            in.readNBytes(2);
+            parts.add(new String(data, StandardCharsets.UTF_8));
+        }
+        return parts;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read();
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return null;
+    }
+}
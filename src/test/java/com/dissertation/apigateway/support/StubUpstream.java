@@ -0,0 +1,171 @@
+package com.dissertation.apigateway.support;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process Netty HTTP server standing in for a backend service. Every request
+ * gets the same canned response, optionally after a fixed delay plus random jitter. A
+ * connection delay is added to the first request on each new connection, like a handshake
+ * to a remote host would cost. A share of requests can be failed with an error status, and
+ * while the stub is down it closes each connection without answering. Request paths and
+ * bodies are kept when recording is switched on. Every setting can be changed while the
+ * stub serves traffic.
+ */
+public class StubUpstream implements AutoCloseable {
+
+    private static final String DEFAULT_BODY = "{\"orderId\":\"ORD-1\",\"status\":\"CREATED\",\"amount\":42.5}";
+
+    private final byte[] body;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private volatile int status = 200;
+
+    private volatile Duration delay = Duration.ZERO;
+
+    private volatile Duration connectionDelay = Duration.ZERO;
+
+    private volatile Duration jitter = Duration.ZERO;
+
+    private volatile double failureRate;
+
+    private volatile int failureStatus = 503;
+
+    private volatile boolean down;
+
+    private volatile boolean recording;
+
+    private final Queue<Received> received = new ConcurrentLinkedQueue<>();
+
+    private final Set<SocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+
+    private final DisposableServer server;
+
+    public StubUpstream() {
+        this(DEFAULT_BODY.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public StubUpstream(byte[] body) {
+        this.body = body;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> {
+                    requestCount.incrementAndGet();
+                    if (down) {
+                        // Like a crashed process: the connection goes away, no response
+                        request.withConnection(Connection::dispose);
+                        return Mono.empty();
+                    }
+                    // Each client connection has its own remote port
+                    boolean newConnection = clientAddresses.add(request.remoteAddress());
+                    int replyStatus = failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate
+                            ? failureStatus : status;
+                    Mono<Void> consumed = recording
+                            ? request.receive().aggregate().asString(StandardCharsets.UTF_8).defaultIfEmpty("")
+                                    .doOnNext(content -> received.add(new Received(request.uri(), content))).then()
+                            : request.receive().then();
+                    Mono<Void> reply = consumed.then(Mono.defer(() -> response
+                            .status(HttpResponseStatus.valueOf(replyStatus))
+                            .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                            .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(this.body.length))
+                            .sendByteArray(Mono.just(this.body))
+                            .then()));
+                    Duration currentDelay = newConnection ? delay.plus(connectionDelay) : delay;
+                    if (!jitter.isZero()) {
+                        currentDelay = currentDelay.plusNanos(ThreadLocalRandom.current().nextLong(jitter.toNanos()));
+                    }
+                    return currentDelay.isZero() ? reply : Mono.delay(currentDelay).then(reply);
+                })
+                .bindNow();
+    }
+
+    public int getPort() {
+        return server.port();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getConnectionCount() {
+        return clientAddresses.size();
+    }
+
+    /**
+     * Requests received since recording was switched on, in arrival order.
+     */
+    public List<Received> getReceived() {
+        return List.copyOf(received);
+    }
+
+    public StubUpstream recordBodies() {
+        this.recording = true;
+        return this;
+    }
+
+    public StubUpstream status(int status) {
+        this.status = status;
+        return this;
+    }
+
+    public StubUpstream delay(Duration delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public StubUpstream connectionDelay(Duration connectionDelay) {
+        this.connectionDelay = connectionDelay;
+        return this;
+    }
+
+    /**
+     * Adds a uniformly random delay of up to jitter to every response.
+     */
+    public StubUpstream jitter(Duration jitter) {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Answers this share of requests (0 to 1) with the status instead of the canned response.
+     */
+    public StubUpstream failureRate(double failureRate, int status) {
+        this.failureRate = failureRate;
+        this.failureStatus = status;
+        return this;
+    }
+
+    public StubUpstream down(boolean down) {
+        this.down = down;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    public record Received(String uri, String body) {
+    }
+}
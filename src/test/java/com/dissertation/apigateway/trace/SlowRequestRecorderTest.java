@@ -0,0 +1,81 @@
+package com.dissertation.apigateway.trace;
+
+import com.dissertation.apigateway.config.SlowRequestProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowRequestRecorderTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void shouldKeepOnlyExchangesOverTheThresholdWithTheirPhases() {
+        SlowRequestRecorder recorder = recorder(Duration.ofMillis(100), 10);
+
+        ExchangeTrace fast = new ExchangeTrace(0, 0);
+        fast.record(Phase.UPSTREAM_ATTEMPT, MS, 40 * MS, null);
+        recorder.record(fast, 50 * MS, "GET", "/api/orders/ORD-1", "order-service", 200);
+        assertThat(recorder.recent()).isEmpty();
+
+        ExchangeTrace slow = new ExchangeTrace(0, 1_700_000_000_000L);
+        slow.record(Phase.ROUTE_MATCH, 0, MS / 2, "order-service");
+        slow.record(Phase.AUTH, MS, 3 * MS, "valid");
+        slow.record(Phase.UPSTREAM_ATTEMPT, 3 * MS, 100 * MS, "http://order-service:8082/api/orders/ORD-1");
+        slow.record(Phase.RETRY_BACKOFF, 100 * MS, 140 * MS, "retry 1");
+        slow.record(Phase.UPSTREAM_ATTEMPT, 140 * MS, 150 * MS, "http://order-service:8082/api/orders/ORD-1");
+        slow.record(Phase.RESPONSE_WRITE, 150 * MS, 152 * MS, null);
+        recorder.record(slow, 152 * MS, "GET", "/api/orders/ORD-1", "order-service", 200);
+
+        assertThat(recorder.recent()).singleElement().satisfies(request -> {
+            assertThat(request.durationMillis()).isEqualTo(152.0);
+            assertThat(request.routeId()).isEqualTo("order-service");
+            assertThat(request.timestamp().toEpochMilli()).isEqualTo(1_700_000_000_000L);
+            assertThat(request.phases()).extracting(SlowRequest.PhaseTiming::phase).containsExactly(Phase.ROUTE_MATCH,
+                    Phase.AUTH, Phase.UPSTREAM_ATTEMPT, Phase.RETRY_BACKOFF, Phase.UPSTREAM_ATTEMPT, Phase.RESPONSE_WRITE);
+            assertThat(request.phases().get(3).startMillis()).isEqualTo(100.0);
+            assertThat(request.phases().get(3).durationMillis()).isEqualTo(40.0);
+            assertThat(request.phases().get(3).detail()).isEqualTo("retry 1");
+        });
+        assertThat(recorder.getRecorded()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepTheMostRecentNewestFirst() {
+        SlowRequestRecorder recorder = recorder(Duration.ZERO, 3);
+
+        for (int i = 0; i < 5; i++) {
+            recorder.record(new ExchangeTrace(0, 0), MS, "GET", "/api/orders/ORD-" + i, "order-service", 200);
+        }
+
+        assertThat(recorder.recent()).extracting(SlowRequest::path)
+                .containsExactly("/api/orders/ORD-4", "/api/orders/ORD-3", "/api/orders/ORD-2");
+        assertThat(recorder.getRecorded()).isEqualTo(5);
+    }
+
+    @Test
+    void shouldCapThePhasesKeptPerExchange() {
+        SlowRequestRecorder recorder = recorder(Duration.ZERO, 1);
+        ExchangeTrace trace = new ExchangeTrace(0, 0);
+
+        for (int i = 0; i < ExchangeTrace.MAX_PHASES + 8; i++) {
+            trace.record(Phase.UPSTREAM_ATTEMPT, i * MS, (i + 1) * MS, "attempt " + i);
+        }
+        recorder.record(trace, 50 * MS, "GET", "/api/orders/ORD-1", "order-service", 503);
+
+        SlowRequest request = recorder.recent().get(0);
+        assertThat(request.phases()).hasSize(ExchangeTrace.MAX_PHASES);
+        assertThat(request.phases().get(ExchangeTrace.MAX_PHASES - 1).detail()).isEqualTo("attempt " + (ExchangeTrace.MAX_PHASES - 1));
+        assertThat(request.droppedPhases()).isEqualTo(8);
+    }
+
+    private static SlowRequestRecorder recorder(Duration threshold, int capacity) {
+        SlowRequestProperties properties = new SlowRequestProperties();
+        properties.setThreshold(threshold);
+        properties.setCapacity(capacity);
+        return new SlowRequestRecorder(properties);
+    }
+}
@@ -0,0 +1,124 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamGroupTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadBalancerProperties properties = new LoadBalancerProperties();
+
+    private long now = 1_000_000 * MILLIS;
+
+    @Test
+    void shouldNeverPickTheBusiestReplicaWithTwoChoices() {
+        UpstreamGroup group = group(3);
+        Replica busy = group.getReplicas().get(0);
+        for (int i = 0; i < 10; i++) {
+            group.start(busy);
+        }
+        group.start(group.getReplicas().get(1));
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(group.choose(null, now)).isNotSameAs(busy);
+        }
+    }
+
+    @Test
+    void shouldPreferTheFasterReplicaAndForgetOldLatency() {
+        UpstreamGroup group = group(2);
+        Replica slow = group.getReplicas().get(0);
+        Replica fast = group.getReplicas().get(1);
+        respond(group, slow, 200 * MILLIS, false);
+        respond(group, fast, 5 * MILLIS, false);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(group.choose(null, now)).isSameAs(fast);
+        }
+        // Idle for a minute, the slow replica's average has decayed below the fast one's
+        now += TimeUnit.SECONDS.toNanos(60);
+        respond(group, fast, 5 * MILLIS, false);
+        assertThat(group.choose(null, now)).isSameAs(slow);
+    }
+
+    @Test
+    void shouldPickLeastOutstandingAndAvoidThePreviousAttempt() {
+        properties.setAlgorithm(LoadBalancerProperties.Algorithm.LEAST_OUTSTANDING);
+        UpstreamGroup group = group(3);
+        List<Replica> replicas = group.getReplicas();
+        group.start(replicas.get(0));
+        group.start(replicas.get(1));
+
+        assertThat(group.choose(null, now)).isSameAs(replicas.get(2));
+        // A retry goes elsewhere even though the previous replica is the least loaded
+        assertThat(group.choose(replicas.get(2), now)).isIn(replicas.get(0), replicas.get(1));
+    }
+
+    @Test
+    void shouldEjectFailingReplicaThenReadmitItWithGrowingEjections() {
+        properties.getOutlier().setBaseEjectionTime(Duration.ofSeconds(30));
+        UpstreamGroup group = group(2);
+        Replica failing = group.getReplicas().get(0);
+
+        for (int i = 1; i < 5; i++) {
+            assertThat(respond(group, failing, MILLIS, true)).isFalse();
+        }
+        assertThat(respond(group, failing, MILLIS, true)).isTrue();
+        assertThat(failing.getState(now)).isEqualTo(Replica.State.EJECTED);
+        for (int i = 0; i < 100; i++) {
+            assertThat(group.choose(null, now)).isNotSameAs(failing);
+        }
+
+        now += TimeUnit.SECONDS.toNanos(30);
+        assertThat(failing.getState(now)).isEqualTo(Replica.State.UP);
+
+        // Ejected again soon after readmission, it stays out twice as long
+        for (int i = 0; i < 5; i++) {
+            respond(group, failing, MILLIS, true);
+        }
+        now += TimeUnit.SECONDS.toNanos(59);
+        assertThat(failing.getState(now)).isEqualTo(Replica.State.EJECTED);
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertThat(failing.getState(now)).isEqualTo(Replica.State.UP);
+    }
+
+    @Test
+    void shouldCountSlowResponsesAndKeepAtLeastHalfTheGroup() {
+        UpstreamGroup group = group(2);
+        Replica first = group.getReplicas().get(0);
+        Replica second = group.getReplicas().get(1);
+
+        for (int i = 0; i < 5; i++) {
+            respond(group, first, 3000 * MILLIS, false);
+        }
+        assertThat(first.getState(now)).isEqualTo(Replica.State.EJECTED);
+
+        // Ejecting the second one would leave the group with nothing
+        for (int i = 0; i < 10; i++) {
+            assertThat(respond(group, second, MILLIS, true)).isFalse();
+        }
+        assertThat(second.getState(now)).isEqualTo(Replica.State.UP);
+    }
+
+    private UpstreamGroup group(int replicas) {
+        List<URI> uris = IntStream.range(0, replicas)
+                .mapToObj(i -> URI.create("http://replica-" + i + ":8082"))
+                .toList();
+        return new UpstreamGroup("orders", uris, properties, null);
+    }
+
+    private boolean respond(UpstreamGroup group, Replica replica, long rttNanos, boolean failed) {
+        group.start(replica);
+        now += rttNanos;
+        return group.complete(replica, now, rttNanos, failed);
+    }
+}
@@ -0,0 +1,115 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.support.StubUpstream;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamGroupsTest {
+
+    private final StubUpstream healthy = new StubUpstream();
+
+    private final StubUpstream failing = new StubUpstream().status(503);
+
+    private final LoadBalancerProperties properties = new LoadBalancerProperties();
+
+    private final UpstreamPoolProperties upstreamProperties = new UpstreamPoolProperties();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        healthy.close();
+        failing.close();
+    }
+
+    @Test
+    void shouldTakeReplicasOutOfRotationOnFailedProbesAndBackOnPassedOnes() {
+        group("orders", healthy.getBaseUrl(), failing.getBaseUrl());
+        UpstreamGroups groups = groups();
+        UpstreamGroup orders = groups.group("orders");
+        Replica bad = orders.getReplicas().get(1);
+
+        groups.probe().block(Duration.ofSeconds(5));
+        // One failed probe is below unhealthy-threshold
+        assertThat(bad.getState(System.nanoTime())).isEqualTo(Replica.State.UP);
+        groups.probe().block(Duration.ofSeconds(5));
+        assertThat(bad.getState(System.nanoTime())).isEqualTo(Replica.State.UNHEALTHY);
+        assertThat(orders.getReplicas().get(0).getState(System.nanoTime())).isEqualTo(Replica.State.UP);
+        for (int i = 0; i < 100; i++) {
+            assertThat(orders.choose(null, System.nanoTime())).isNotSameAs(bad);
+        }
+        assertThat(failing.getRequestCount()).isEqualTo(2);
+
+        failing.status(200);
+        groups.probe().block(Duration.ofSeconds(5));
+        groups.probe().block(Duration.ofSeconds(5));
+        assertThat(bad.getState(System.nanoTime())).isEqualTo(Replica.State.UP);
+    }
+
+    @Test
+    void shouldFallBackToTheServiceUrlAndFollowTheGroupsFile() throws IOException {
+        UpstreamPoolProperties.Pool pool = new UpstreamPoolProperties.Pool();
+        pool.setUrl("http://localhost:8082");
+        upstreamProperties.getServices().put("order-service", pool);
+        Path file = directory.resolve("groups.yml");
+        properties.setGroupsFile(file.toString());
+
+        UpstreamGroups groups = groups();
+        assertThat(uris(groups.group("order-service"))).containsExactly("http://localhost:8082");
+
+        write(file, "order-service:\n  - http://order-1:8082\n  - http://order-2:8082\n", 1);
+        assertThat(groups.refresh()).isTrue();
+        assertThat(uris(groups.group("order-service"))).containsExactly("http://order-1:8082", "http://order-2:8082");
+        Replica kept = groups.group("order-service").getReplicas().get(1);
+        assertThat(groups.refresh()).isFalse();
+
+        write(file, "order-service: [http://order-2:8082, http://order-3:8082]\n", 2);
+        groups.refresh();
+        assertThat(uris(groups.group("order-service"))).containsExactly("http://order-2:8082", "http://order-3:8082");
+        assertThat(groups.group("order-service").getReplicas().get(0)).isSameAs(kept);
+
+        // A broken file keeps the replicas it listed last
+        write(file, "order-service: [http://order-4:8082\n", 3);
+        assertThat(groups.refresh()).isFalse();
+        assertThat(uris(groups.group("order-service"))).containsExactly("http://order-2:8082", "http://order-3:8082");
+    }
+
+    private void group(String name, String... replicas) {
+        LoadBalancerProperties.Group group = new LoadBalancerProperties.Group();
+        group.setReplicas(List.of(replicas));
+        properties.getGroups().put(name, group);
+    }
+
+    private UpstreamGroups groups() {
+        return new UpstreamGroups(properties, upstreamProperties, HttpClient.create(),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static List<String> uris(UpstreamGroup group) {
+        return group.getReplicas().stream().map(Replica::getUri).map(URI::toString).toList();
+    }
+
+    private static void write(Path file, String content, int version) throws IOException {
+        Files.writeString(file, content);
+        // Distinct modification times even when writes land within the file system's resolution
+        Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(1_700_000_000L + version)));
+    }
+}
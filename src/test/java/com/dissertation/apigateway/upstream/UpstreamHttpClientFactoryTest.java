@@ -0,0 +1,137 @@
+package com.dissertation.apigateway.upstream;
+
+import com.dissertation.apigateway.config.LoadBalancerProperties;
+import com.dissertation.apigateway.config.UpstreamPoolProperties;
+import com.dissertation.apigateway.support.StubUpstream;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bursts of concurrent requests against a stub upstream whose new connections take
+ * 50ms to start serving, comparing the stock gateway client with the tuned pools. The
+ * comparison counts connections opened during the bursts; the latency it buys is
+ * measured by UpstreamPoolBenchmark, since two p99s are too noisy to order in a test run.
+ */
+class UpstreamHttpClientFactoryTest {
+
+    private static final int CONCURRENCY = 64;
+
+    private static final Duration CONNECTION_COST = Duration.ofMillis(50);
+
+    private StubUpstream upstream;
+
+    // reactor-netty publishes pool metrics to the global registry, which only records with a registry attached
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        upstream = new StubUpstream().connectionDelay(CONNECTION_COST);
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+        upstream.close();
+    }
+
+    @Test
+    void shouldServeBurstsFromWarmedConnections() throws Exception {
+        HttpClient stock = client(new HttpClientFactory(new HttpClientProperties(), new ServerProperties(),
+                sslConfigurer(), List.of()));
+        burst(stock);
+        long stockConnections = upstream.getConnectionCount();
+
+        UpstreamPoolProperties properties = upstreamProperties();
+        UpstreamHttpClientFactory factory = new UpstreamHttpClientFactory(new HttpClientProperties(),
+                new ServerProperties(), sslConfigurer(), List.of(), properties,
+                new LoadBalancerProperties());
+        HttpClient tuned = client(factory);
+        assertThat(new UpstreamPoolWarmer(tuned, properties).warmUp().block()).isEqualTo(CONCURRENCY);
+        long connectionsBefore = upstream.getConnectionCount();
+        burst(tuned);
+
+        // The warm-up opened one connection per concurrent request
+        assertThat(connectionsBefore - stockConnections).isEqualTo(CONCURRENCY);
+        // The warmed connections were reused, the bursts opened none
+        assertThat(upstream.getConnectionCount()).isEqualTo(connectionsBefore);
+    }
+
+    @Test
+    void shouldApplyServicePoolSettingsAndPublishPoolMetrics() throws Exception {
+        UpstreamHttpClientFactory factory = new UpstreamHttpClientFactory(new HttpClientProperties(),
+                new ServerProperties(), sslConfigurer(), List.of(), upstreamProperties(),
+                new LoadBalancerProperties());
+        HttpClient client = client(factory);
+
+        client.get().uri(upstream.getBaseUrl() + "/api/orders/ORD-1")
+                .responseSingle((response, body) -> body.then())
+                .block(Duration.ofSeconds(5));
+
+        assertThat(poolGauge("max.connections").value()).isEqualTo(CONCURRENCY);
+        // The first connection made the pool top itself up to warmup-connections in the background,
+        // each becoming idle once connected
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while ((poolGauge("total.connections").value() < CONCURRENCY || poolGauge("idle.connections").value() < CONCURRENCY)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(poolGauge("total.connections").value()).isEqualTo(CONCURRENCY);
+        assertThat(poolGauge("idle.connections").value()).isEqualTo(CONCURRENCY);
+    }
+
+    private Gauge poolGauge(String name) {
+        Gauge gauge = registry.find("reactor.netty.connection.provider." + name)
+                .tag("name", UpstreamHttpClientFactory.POOL_NAME)
+                .tag("remote.address", "127.0.0.1:" + upstream.getPort())
+                .gauge();
+        assertThat(gauge).as(name).isNotNull();
+        return gauge;
+    }
+
+    private UpstreamPoolProperties upstreamProperties() {
+        UpstreamPoolProperties.Pool pool = new UpstreamPoolProperties.Pool();
+        pool.setUrl(upstream.getBaseUrl());
+        pool.setMaxConnections(CONCURRENCY);
+        pool.setWarmupConnections(CONCURRENCY);
+        UpstreamPoolProperties properties = new UpstreamPoolProperties();
+        properties.getServices().put("order-service", pool);
+        return properties;
+    }
+
+    private void burst(HttpClient client) {
+        String url = upstream.getBaseUrl() + "/api/orders/ORD-1";
+        Flux.range(0, 3)
+                .concatMap(burst -> Flux.range(0, CONCURRENCY)
+                        .flatMap(i -> client.get().uri(url)
+                                .responseSingle((response, body) -> body.then(Mono.just(response.status().code()))),
+                                CONCURRENCY))
+                .blockLast(Duration.ofSeconds(30));
+    }
+
+    private static HttpClient client(HttpClientFactory factory) throws Exception {
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    private static HttpClientSslConfigurer sslConfigurer() {
+        return new HttpClientSslConfigurer(new HttpClientProperties().getSsl(), new ServerProperties()) {
+        };
+    }
+}
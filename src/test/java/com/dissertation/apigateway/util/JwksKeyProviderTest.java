@@ -0,0 +1,128 @@
+package com.dissertation.apigateway.util;
+
+import com.dissertation.apigateway.support.StubUpstream;
+import com.dissertation.apigateway.support.TestJwks;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwksKeyProviderTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private final JwksKeyProvider provider = new JwksKeyProvider();
+
+    @AfterEach
+    void tearDown() {
+        provider.stop();
+    }
+
+    @Test
+    void shouldParseRsaAndEcSigningKeysOnly() throws Exception {
+        KeyPair rsa = TestJwks.rsa();
+        KeyPair ec = TestJwks.ec();
+        String jwks = "{\"keys\":["
+                + json(TestJwks.jwk("rsa-1", rsa.getPublic())) + ","
+                + json(TestJwks.jwk("ec-1", ec.getPublic())) + ","
+                + "{\"kid\":\"enc-1\",\"use\":\"enc\",\"kty\":\"RSA\",\"n\":\"AQAB\",\"e\":\"AQAB\"},"
+                + "{\"kid\":\"oct-1\",\"kty\":\"oct\",\"k\":\"c2VjcmV0\"},"
+                + "{\"kid\":\"ec-2\",\"kty\":\"EC\",\"crv\":\"P-192\",\"x\":\"AQ\",\"y\":\"AQ\"}]}";
+
+        Map<String, PublicKey> keys = JwksKeyProvider.parse(jwks.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(keys).containsOnlyKeys("rsa-1", "ec-1");
+        assertThat(keys.get("rsa-1")).isEqualTo(rsa.getPublic());
+        assertThat(keys.get("ec-1")).isEqualTo(ec.getPublic());
+    }
+
+    @Test
+    void shouldRefreshInTheBackgroundWhenAnUnknownKidShowsUp() throws Exception {
+        Path file = dir.resolve("jwks.json");
+        KeyPair first = TestJwks.rsa();
+        KeyPair rotated = TestJwks.ec();
+        TestJwks.write(file, Map.of("key-1", first.getPublic()));
+        start(file, Duration.ZERO);
+        assertThat(provider.key("key-1")).isEqualTo(first.getPublic());
+
+        TestJwks.write(file, Map.of("key-1", first.getPublic(), "key-2", rotated.getPublic()));
+
+        // The lookup itself never waits for the fetch it starts
+        assertThat(provider.key("key-2")).isNull();
+        assertThat(await("key-2")).isEqualTo(rotated.getPublic());
+    }
+
+    @Test
+    void shouldKeepTheLastKeysWhenAFetchFails() throws Exception {
+        Path file = dir.resolve("jwks.json");
+        KeyPair key = TestJwks.rsa();
+        TestJwks.write(file, Map.of("key-1", key.getPublic()));
+        start(file, Duration.ofHours(1));
+        Files.writeString(file, "{\"keys\":");
+
+        provider.refresh().block(Duration.ofSeconds(5));
+
+        assertThat(provider.size()).isEqualTo(1);
+        assertThat(provider.key("key-1")).isEqualTo(key.getPublic());
+    }
+
+    @Test
+    void shouldRefusePlainHttpUnlessAllowed() throws Exception {
+        KeyPair key = TestJwks.rsa();
+        Path file = dir.resolve("jwks.json");
+        TestJwks.write(file, Map.of("key-1", key.getPublic()));
+        try (StubUpstream identityProvider = new StubUpstream(Files.readAllBytes(file))) {
+            String uri = identityProvider.getBaseUrl() + "/.well-known/jwks.json";
+
+            assertThatThrownBy(() -> start(uri, Duration.ofHours(1)))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("jwt.jwks.allow-insecure-http");
+            assertThat(identityProvider.getRequestCount()).isZero();
+
+            ReflectionTestUtils.setField(provider, "allowInsecureHttp", true);
+            start(uri, Duration.ofHours(1));
+            assertThat(provider.key("key-1")).isEqualTo(key.getPublic());
+        }
+    }
+
+    private void start(Path file, Duration minRefreshInterval) {
+        start(file.toUri().toString(), minRefreshInterval);
+    }
+
+    private void start(String uri, Duration minRefreshInterval) {
+        ReflectionTestUtils.setField(provider, "uri", uri);
+        ReflectionTestUtils.setField(provider, "refreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(provider, "minRefreshInterval", minRefreshInterval);
+        ReflectionTestUtils.setField(provider, "timeout", Duration.ofSeconds(5));
+        provider.init();
+    }
+
+    private PublicKey await(String kid) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        PublicKey key = provider.key(kid);
+        while (key == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            key = provider.key(kid);
+        }
+        return key;
+    }
+
+    private static String json(Map<String, String> jwk) throws Exception {
+        return JSON.writeValueAsString(jwk);
+    }
+}
@@ -0,0 +1,160 @@
+package com.dissertation.apigateway.util;
+
+import com.dissertation.apigateway.support.TestJwks;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "5367566B59703373367639792F423F4528482B4D6251655468576D5A71347437";
+
+    private static final KeyPair RSA = TestJwks.rsa();
+
+    private static final KeyPair EC = TestJwks.ec();
+
+    @TempDir
+    Path dir;
+
+    private SimpleMeterRegistry registry;
+
+    private JwksKeyProvider jwks;
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        Path file = dir.resolve("jwks.json");
+        TestJwks.write(file, Map.of("rsa-1", RSA.getPublic(), "ec-1", EC.getPublic()));
+        jwks = new JwksKeyProvider();
+        ReflectionTestUtils.setField(jwks, "uri", file.toUri().toString());
+        ReflectionTestUtils.setField(jwks, "refreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwks, "minRefreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwks, "timeout", Duration.ofSeconds(5));
+        jwks.init();
+        registry = new SimpleMeterRegistry();
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jwtUtil, "verifyThreads", 2);
+        ReflectionTestUtils.setField(jwtUtil, "meterRegistry", registry);
+        ReflectionTestUtils.setField(jwtUtil, "jwks", jwks);
+        jwtUtil.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwtUtil.stop();
+        jwks.stop();
+    }
+
+    @Test
+    void shouldVerifyTokenOnceAndServeRepeatsFromCache() {
+        String token = token("alice", new Date(System.currentTimeMillis() + 60_000));
+
+        Claims first = jwtUtil.validateToken(token);
+        Claims second = jwtUtil.validateToken(token);
+
+        assertThat(first).isNotNull();
+        assertThat(first.getSubject()).isEqualTo("alice");
+        assertThat(second).isSameAs(first);
+        assertThat(cacheGets("hit")).isEqualTo(1.0);
+        assertThat(cacheGets("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldVerifyEveryTimeWhenCacheIsDisabled() {
+        jwtUtil.stop();
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 0L);
+        jwtUtil.init();
+        String token = token("alice", new Date(System.currentTimeMillis() + 60_000));
+
+        Claims first = jwtUtil.validateToken(token);
+        Claims second = jwtUtil.validateToken(token);
+
+        assertThat(second.getSubject()).isEqualTo("alice");
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    void shouldRejectExpiredAndTamperedTokens() {
+        String expired = token("bob", new Date(System.currentTimeMillis() - 1_000));
+        String valid = token("bob", new Date(System.currentTimeMillis() + 60_000));
+
+        assertThat(jwtUtil.validateToken(expired)).isNull();
+        assertThat(jwtUtil.validateToken(valid + "x")).isNull();
+        assertThat(jwtUtil.validateToken("")).isNull();
+        assertThat(jwtUtil.isTokenValid(valid)).isTrue();
+        assertThat(jwtUtil.extractUsername(valid)).isEqualTo("bob");
+    }
+
+    @Test
+    void shouldVerifyRsaAndEcTokensOnTheVerifierThreads() {
+        String rs256 = TestJwks.token("carol", "rsa-1", RSA.getPrivate(), SignatureAlgorithm.RS256);
+        String es256 = TestJwks.token("dave", "ec-1", EC.getPrivate(), SignatureAlgorithm.ES256);
+        String hs256 = token("erin", new Date(System.currentTimeMillis() + 60_000));
+        String caller = Thread.currentThread().getName();
+
+        assertThat(verifiedOn(rs256)).isEqualTo("carol@jwt-verify");
+        assertThat(verifiedOn(es256)).isEqualTo("dave@jwt-verify");
+        // HMAC is cheap enough to stay inline, and so is a token that is already cached
+        assertThat(verifiedOn(hs256)).isEqualTo("erin@" + caller);
+        assertThat(verifiedOn(rs256)).isEqualTo("carol@" + caller);
+        assertThat(jwtUtil.validateToken(es256).getSubject()).isEqualTo("dave");
+    }
+
+    @Test
+    void shouldRejectTokensWithUnknownOrMismatchedKeys() {
+        KeyPair other = TestJwks.rsa();
+
+        assertThat(jwtUtil.verify(TestJwks.token("mallory", "rsa-2", other.getPrivate(), SignatureAlgorithm.RS256))
+                .blockOptional(Duration.ofSeconds(5))).isEmpty();
+        assertThat(jwtUtil.verify(TestJwks.token("mallory", "rsa-1", other.getPrivate(), SignatureAlgorithm.RS256))
+                .blockOptional(Duration.ofSeconds(5))).isEmpty();
+        // An RS256 kid with an EC signature, and an HMAC token keyed with the public RSA key
+        assertThat(jwtUtil.verify(TestJwks.token("mallory", "rsa-1", EC.getPrivate(), SignatureAlgorithm.ES256))
+                .blockOptional(Duration.ofSeconds(5))).isEmpty();
+        String confused = Jwts.builder()
+                .setHeaderParam("kid", "rsa-1")
+                .setSubject("mallory")
+                .signWith(Keys.hmacShaKeyFor(RSA.getPublic().getEncoded()), SignatureAlgorithm.HS256)
+                .compact();
+        assertThat(jwtUtil.validateToken(confused)).isNull();
+    }
+
+    private String verifiedOn(String token) {
+        return jwtUtil.verify(token)
+                .map(claims -> claims.getSubject() + "@" + Thread.currentThread().getName().replaceAll("-\\d+$", ""))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private double cacheGets(String result) {
+        return registry.get("cache.gets").tag("cache", "jwt.verified-tokens").tag("result", result)
+                .functionCounter().count();
+    }
+
+    private static String token(String subject, Date expiration) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(expiration)
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}